@@ -0,0 +1,103 @@
+/**
+ * Book Search Benchmark
+ * Compares the legacy unanchored regex $or scan with the weighted text index
+ * and prefix autocomplete on a 100k book catalog.
+ *
+ * Usage: npm run bench:book-search
+ */
+
+const mongoose = require('mongoose');
+const Book = require('../models/Book');
+const BookSearchService = require('../services/bookSearchService');
+const { connectDB, closeDB } = require('../tests/helpers/database');
+
+const BOOK_COUNT = 100000;
+const QUERIES_PER_MODE = 200;
+const WORDS = [
+  'river', 'shadow', 'garden', 'empire', 'silent', 'winter', 'ocean', 'memory',
+  'glass', 'mountain', 'kingdom', 'letters', 'journey', 'midnight', 'forest', 'storm',
+  'secret', 'island', 'golden', 'hidden', 'city', 'stars', 'fire', 'dream'
+];
+const AUTHORS = ['Sharma', 'Iyer', 'Khan', 'Das', 'Reddy', 'Smith', 'Garcia', 'Okafor', 'Tanaka', 'Novak'];
+const GENRES = ['Fiction', 'History', 'Science', 'Poetry', 'Biography', 'Fantasy'];
+
+const pick = (list) => list[Math.floor(Math.random() * list.length)];
+
+const percentile = (values, p) => {
+  const sorted = [...values].sort((a, b) => a - b);
+  return sorted[Math.min(sorted.length - 1, Math.floor((p / 100) * sorted.length))];
+};
+
+const seedBooks = async () => {
+  const createdBy = new mongoose.Types.ObjectId();
+  const batchSize = 5000;
+
+  for (let offset = 0; offset < BOOK_COUNT; offset += batchSize) {
+    const batch = Array.from({ length: batchSize }, () => {
+      const title = `The ${pick(WORDS)} of ${pick(WORDS)} ${pick(WORDS)}`;
+      const author = `${pick(['Asha', 'Ravi', 'Maria', 'John', 'Yuki', 'Ade'])} ${pick(AUTHORS)}`;
+      return {
+        title,
+        author,
+        genre: pick(GENRES),
+        language: pick(['English', 'Hindi', 'Tamil']),
+        synopsis: `A story about ${pick(WORDS)}, ${pick(WORDS)} and ${pick(WORDS)}.`,
+        totalCopies: 3,
+        availableCopies: 3,
+        searchPrefixes: Book.buildSearchPrefixes(title, author),
+        createdBy
+      };
+    });
+    await Book.collection.insertMany(batch, { ordered: false });
+  }
+};
+
+const measure = async (label, run) => {
+  const timings = [];
+  for (let i = 0; i < QUERIES_PER_MODE; i++) {
+    const start = process.hrtime.bigint();
+    await run();
+    timings.push(Number(process.hrtime.bigint() - start) / 1e6);
+  }
+  console.log(
+    `${label.padEnd(24)} ${percentile(timings, 50).toFixed(2).padEnd(10)} ${percentile(timings, 99).toFixed(2)}`
+  );
+};
+
+const run = async () => {
+  await connectDB();
+  await Book.init();
+  await seedBooks();
+  console.log(`Seeded ${BOOK_COUNT} books\n`);
+  console.log('mode                     p50 (ms)   p99 (ms)');
+
+  await measure('regex $or (legacy)', () => {
+    const search = `${pick(WORDS)}`;
+    return Book.find({
+      isActive: true,
+      $or: [
+        { title: { $regex: search, $options: 'i' } },
+        { author: { $regex: search, $options: 'i' } },
+        { genre: { $regex: search, $options: 'i' } }
+      ]
+    }).limit(20).lean();
+  });
+
+  await measure('text index (ranked)', () => BookSearchService.search({
+    q: `${pick(WORDS)} ${pick(AUTHORS)}`,
+    limit: 20
+  }));
+
+  await measure('prefix autocomplete', () => BookSearchService.autocomplete(
+    pick(WORDS).slice(0, 3),
+    { limit: 10 }
+  ));
+
+  await closeDB();
+};
+
+run().catch(async (error) => {
+  console.error('Benchmark failed:', error);
+  await closeDB();
+  process.exit(1);
+});
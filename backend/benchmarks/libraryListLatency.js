@@ -0,0 +1,91 @@
+/**
+ * Library List Latency Benchmark
+ * Measures GET /api/libraries latency while the Rating collection grows.
+ * The list reads the rating totals kept on each library, so latency should
+ * stay flat regardless of how many ratings exist.
+ *
+ * Usage: npm run bench:library-list
+ */
+
+const express = require('express');
+const request = require('supertest');
+const mongoose = require('mongoose');
+const Library = require('../models/Library');
+const Rating = require('../models/Rating');
+const { connectDB, closeDB } = require('../tests/helpers/database');
+
+const LIBRARY_COUNT = 50;
+const RATING_STEPS = [0, 1000, 10000, 50000];
+const REQUESTS_PER_STEP = 50;
+
+const percentile = (values, p) => {
+  const sorted = [...values].sort((a, b) => a - b);
+  return sorted[Math.min(sorted.length - 1, Math.floor((p / 100) * sorted.length))];
+};
+
+const seedLibraries = async () => {
+  const createdBy = new mongoose.Types.ObjectId();
+  const libraries = Array.from({ length: LIBRARY_COUNT }, (_, i) => ({
+    name: `Benchmark Library ${i}`,
+    city: 'Bench City',
+    area: `Area ${i}`,
+    address: `${i} Benchmark Road`,
+    phone: '9999999999',
+    email: `library${i}@example.com`,
+    openingHours: { open: '08:00', close: '22:00' },
+    createdBy
+  }));
+  return Library.insertMany(libraries);
+};
+
+const growRatings = async (libraries, target) => {
+  const current = await Rating.countDocuments();
+  const missing = target - current;
+  const batchSize = 5000;
+
+  for (let offset = 0; offset < missing; offset += batchSize) {
+    const batch = Array.from({ length: Math.min(batchSize, missing - offset) }, (_, i) => ({
+      userId: new mongoose.Types.ObjectId(),
+      libraryId: libraries[(offset + i) % libraries.length]._id,
+      rating: 1 + ((offset + i) % 5),
+      review: 'Quiet, clean and well lit. Seats are comfortable and the WiFi is reliable.'
+    }));
+    await Rating.insertMany(batch, { ordered: false });
+  }
+
+  await Library.recalculateRatings();
+};
+
+const run = async () => {
+  await connectDB();
+
+  const app = express();
+  app.use('/api/libraries', require('../routes/libraries'));
+
+  const libraries = await seedLibraries();
+  console.log(`Seeded ${libraries.length} libraries\n`);
+  console.log('ratings    p50 (ms)   p99 (ms)');
+
+  for (const ratingCount of RATING_STEPS) {
+    await growRatings(libraries, ratingCount);
+
+    const timings = [];
+    for (let i = 0; i < REQUESTS_PER_STEP; i++) {
+      const start = process.hrtime.bigint();
+      await request(app).get('/api/libraries').expect(200);
+      timings.push(Number(process.hrtime.bigint() - start) / 1e6);
+    }
+
+    console.log(
+      `${String(ratingCount).padEnd(10)} ${percentile(timings, 50).toFixed(2).padEnd(10)} ${percentile(timings, 99).toFixed(2)}`
+    );
+  }
+
+  await closeDB();
+};
+
+run().catch(async (error) => {
+  console.error('Benchmark failed:', error);
+  await closeDB();
+  process.exit(1);
+});
@@ -0,0 +1,91 @@
+/**
+ * Nearby Library Search Benchmark
+ * Measures GET /api/libraries/nearby latency as the number of branches grows.
+ * The endpoint runs a single $geoNear pipeline on the 2dsphere index, so
+ * latency should track the number of libraries inside the radius, not the
+ * size of the collection.
+ *
+ * Usage: npm run bench:nearby
+ */
+
+const express = require('express');
+const request = require('supertest');
+const mongoose = require('mongoose');
+const Library = require('../models/Library');
+const { connectDB, closeDB } = require('../tests/helpers/database');
+
+const LIBRARY_STEPS = [1000, 10000, 50000];
+const REQUESTS_PER_STEP = 100;
+// Libraries are scattered across India; searches start in central Bengaluru
+const ORIGIN = { lat: 12.9716, lng: 77.5946 };
+const BOUNDS = { minLat: 8, maxLat: 32, minLng: 70, maxLng: 90 };
+
+const percentile = (values, p) => {
+  const sorted = [...values].sort((a, b) => a - b);
+  return sorted[Math.min(sorted.length - 1, Math.floor((p / 100) * sorted.length))];
+};
+
+const growLibraries = async (target) => {
+  const createdBy = new mongoose.Types.ObjectId();
+  const current = await Library.countDocuments();
+  const missing = target - current;
+  const batchSize = 5000;
+
+  for (let offset = 0; offset < missing; offset += batchSize) {
+    const batch = Array.from({ length: Math.min(batchSize, missing - offset) }, (_, i) => {
+      const lat = BOUNDS.minLat + Math.random() * (BOUNDS.maxLat - BOUNDS.minLat);
+      const lng = BOUNDS.minLng + Math.random() * (BOUNDS.maxLng - BOUNDS.minLng);
+      return {
+        name: `Branch ${current + offset + i}`,
+        city: 'Bench City',
+        area: 'Bench Area',
+        address: 'Benchmark Road',
+        phone: '9999999999',
+        email: 'branch@example.com',
+        openingHours: { open: '08:00', close: '22:00' },
+        coordinates: { lat, lng },
+        location: { type: 'Point', coordinates: [lng, lat] },
+        createdBy
+      };
+    });
+    await Library.insertMany(batch, { lean: true });
+  }
+};
+
+const run = async () => {
+  await connectDB();
+  await Library.init();
+
+  const app = express();
+  app.use('/api/libraries', require('../routes/libraries'));
+
+  console.log('libraries  p50 (ms)   p99 (ms)   results');
+
+  for (const libraryCount of LIBRARY_STEPS) {
+    await growLibraries(libraryCount);
+
+    const timings = [];
+    let results = 0;
+    for (let i = 0; i < REQUESTS_PER_STEP; i++) {
+      const start = process.hrtime.bigint();
+      const response = await request(app)
+        .get(`/api/libraries/nearby?lat=${ORIGIN.lat}&lng=${ORIGIN.lng}&radius=25`)
+        .expect(200);
+      timings.push(Number(process.hrtime.bigint() - start) / 1e6);
+      results = response.body.length;
+    }
+
+    console.log(
+      `${String(libraryCount).padEnd(10)} ${percentile(timings, 50).toFixed(2).padEnd(10)} ` +
+      `${percentile(timings, 99).toFixed(2).padEnd(10)} ${results}`
+    );
+  }
+
+  await closeDB();
+};
+
+run().catch(async (error) => {
+  console.error('Benchmark failed:', error);
+  await closeDB();
+  process.exit(1);
+});
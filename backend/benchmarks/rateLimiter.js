@@ -0,0 +1,125 @@
+/**
+ * Rate Limiter Benchmark
+ * Compares Redis commands and key memory per request for the sorted-set
+ * sliding log, the scripted sliding-window counter, and the counter with
+ * local leases. 50 well-behaved clients stay under the limit while one
+ * abusive client sends 20k requests.
+ *
+ * Runs against a real Redis server (REDIS_URL, default localhost); commands
+ * come from INFO stats and memory from MEMORY USAGE. Only rate_limit* keys
+ * are touched, but use a server with no other traffic so the command counts
+ * are not skewed.
+ *
+ * Usage: REDIS_URL=redis://localhost:6379 npm run bench:rate-limiter
+ */
+
+const redis = require('redis');
+const rateLimitService = require('../services/security/rateLimitService');
+const redisService = require('../services/security/redisService');
+const { RATE_LIMIT_KEYS } = require('../services/security/utils/constants');
+
+const REDIS_URL = process.env.REDIS_URL || 'redis://localhost:6379';
+
+const NORMAL_CLIENTS = 50;
+const NORMAL_REQUESTS = 150;
+const ABUSIVE_REQUESTS = 20000;
+
+const MODES = [
+  { label: 'sliding log (MULTI)', algorithm: 'sliding_log', localBucket: false },
+  { label: 'sliding counter (Lua)', algorithm: 'sliding_counter', localBucket: false },
+  { label: 'counter + local lease', algorithm: 'sliding_counter', localBucket: true }
+];
+
+const percentile = (values, p) => {
+  const sorted = [...values].sort((a, b) => a - b);
+  return sorted[Math.min(sorted.length - 1, Math.floor((p / 100) * sorted.length))];
+};
+
+const connect = async () => {
+  const client = redis.createClient({ url: REDIS_URL });
+  await client.connect();
+  return client;
+};
+
+const commandsProcessed = async (client) => {
+  const info = await client.info('stats');
+  return parseInt(/total_commands_processed:(\d+)/.exec(info)[1], 10);
+};
+
+const keyMemory = async (client) => {
+  let total = 0;
+  for await (const key of client.scanIterator({ MATCH: 'rate_limit*' })) {
+    total += (await client.memoryUsage(key)) || 0;
+  }
+  return total;
+};
+
+const clearKeys = async (client) => {
+  for await (const key of client.scanIterator({ MATCH: 'rate_limit*' })) {
+    await client.del(key);
+  }
+};
+
+const measure = async (client, mode) => {
+  await clearKeys(client);
+  rateLimitService.algorithm = mode.algorithm;
+  rateLimitService.localBucketConfig.enabled = mode.localBucket;
+  rateLimitService.localBuckets.clear();
+
+  const requests = [];
+  for (let i = 0; i < NORMAL_CLIENTS; i++) {
+    for (let r = 0; r < NORMAL_REQUESTS; r++) {
+      requests.push(`10.0.${Math.floor(i / 250)}.${i % 250}`);
+    }
+  }
+  for (let r = 0; r < ABUSIVE_REQUESTS; r++) {
+    requests.push('203.0.113.66');
+  }
+
+  // Stop the abusive client's blocked-request events from skewing counts
+  const logEvent = rateLimitService._logRateLimitEvent;
+  rateLimitService._logRateLimitEvent = async () => {};
+
+  const commandsBefore = await commandsProcessed(client);
+  const timings = [];
+  let allowed = 0;
+  for (const ip of requests) {
+    const start = process.hrtime.bigint();
+    const result = await rateLimitService.checkRateLimit(ip, RATE_LIMIT_KEYS.GENERAL_API);
+    timings.push(Number(process.hrtime.bigint() - start) / 1e6);
+    if (result.allowed) allowed++;
+  }
+  const commands = (await commandsProcessed(client)) - commandsBefore;
+
+  rateLimitService._logRateLimitEvent = logEvent;
+  const memory = await keyMemory(client);
+
+  console.log(
+    `${mode.label.padEnd(24)} ${(commands / requests.length).toFixed(3).padEnd(12)} ` +
+    `${(memory / requests.length).toFixed(1).padEnd(14)} ${String(memory).padEnd(12)} ` +
+    `${String(allowed).padEnd(9)} ${percentile(timings, 50).toFixed(3).padEnd(10)} ${percentile(timings, 99).toFixed(3)}`
+  );
+};
+
+const run = async () => {
+  const client = await connect();
+  redisService.client = client;
+  redisService.isConnected = true;
+
+  const total = NORMAL_CLIENTS * NORMAL_REQUESTS + ABUSIVE_REQUESTS;
+  console.log(`${total} requests: ${NORMAL_CLIENTS} clients x ${NORMAL_REQUESTS}, 1 client x ${ABUSIVE_REQUESTS}`);
+  console.log(`Backend: ${REDIS_URL}\n`);
+  console.log('mode                     cmds/req     bytes/req      key bytes    allowed   p50 (ms)   p99 (ms)');
+
+  for (const mode of MODES) {
+    await measure(client, mode);
+  }
+
+  await clearKeys(client);
+  await client.quit();
+};
+
+run().catch((error) => {
+  console.error('Benchmark failed:', error);
+  process.exit(1);
+});
@@ -1,6 +1,8 @@
 const mongoose = require('mongoose');
 const Notification = require('./models/Notification');
+const NotificationInbox = require('./models/NotificationInbox');
 const User = require('./models/User');
+const NotificationService = require('./services/notificationService');
 require('dotenv').config();
 
 const createNotificationsForUser = async () => {
@@ -18,6 +20,7 @@ const createNotificationsForUser = async () => {
     console.log('Creating notifications for user:', user.name, user.email);
 
     // Clear existing notifications for this user
+    await NotificationInbox.deleteMany({ userId: user._id });
     await Notification.deleteMany({ 'recipients.userId': user._id });
 
     const notifications = [
@@ -26,7 +29,7 @@ const createNotificationsForUser = async () => {
         message: 'Thank you for joining LibraryBook. Start exploring libraries and book your seats now!',
         type: 'system',
         priority: 'medium',
-        recipients: [{ userId: user._id, read: false }],
+        read: false,
         createdBy: user._id
       },
       {
@@ -34,7 +37,7 @@ const createNotificationsForUser = async () => {
         message: 'Your seat booking at Central Library has been confirmed for today.',
         type: 'booking',
         priority: 'high',
-        recipients: [{ userId: user._id, read: false }],
+        read: false,
         createdBy: user._id
       },
       {
@@ -42,7 +45,7 @@ const createNotificationsForUser = async () => {
         message: 'Your payment of ₹150 has been processed successfully.',
         type: 'payment',
         priority: 'medium',
-        recipients: [{ userId: user._id, read: false }],
+        read: false,
         createdBy: user._id
       },
       {
@@ -50,7 +53,7 @@ const createNotificationsForUser = async () => {
         message: 'Get 20% off on your next seat booking. Use code SAVE20.',
         type: 'offer',
         priority: 'low',
-        recipients: [{ userId: user._id, read: true }],
+        read: true,
         createdBy: user._id
       },
       {
@@ -58,13 +61,17 @@ const createNotificationsForUser = async () => {
         message: 'Your book "JavaScript Guide" is due in 2 days. Please return or renew.',
         type: 'reminder',
         priority: 'medium',
-        recipients: [{ userId: user._id, read: false }],
+        read: false,
         createdBy: user._id
       }
     ];
 
-    for (const notifData of notifications) {
-      await Notification.create(notifData);
+    // Sent through the service so each one gets an inbox record
+    for (const { read, ...notifData } of notifications) {
+      const notification = await NotificationService.sendToUsers([user._id], notifData);
+      if (read) {
+        await NotificationService.markAsRead(notification._id, user._id);
+      }
     }
 
     console.log(`✅ Created ${notifications.length} notifications for ${user.name}`);
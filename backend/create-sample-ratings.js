@@ -92,6 +92,9 @@ async function createSampleRatings() {
       }
     }
 
+    // Sync the running rating totals kept on each library
+    await Library.recalculateRatings();
+
     console.log(`\n🎉 Successfully created ${ratingsCreated} ratings!`);
     
     // Show summary
@@ -1,5 +1,5 @@
 const jwt = require('jsonwebtoken');
-const User = require('../models/User');
+const principalCacheService = require('../services/security/principalCacheService');
 const { requireRole, logPrivilegeAction } = require('./rbac');
 
 // Simple auth middleware without complex dependencies
@@ -15,7 +15,8 @@ const auth = async (req, res, next) => {
     try {
       // Simple JWT verification
       const decoded = jwt.verify(token, process.env.JWT_SECRET);
-      const user = await User.findById(decoded.id).select('-password');
+      // Cached, projected principal (role, isActive, libraryId, tokenVersion)
+      const user = await principalCacheService.getPrincipal(decoded.id);
       
       if (!user) {
         return res.status(401).json({ message: 'Invalid token. User not found.' });
@@ -25,8 +26,17 @@ const auth = async (req, res, next) => {
         return res.status(403).json({ message: 'Account is deactivated.' });
       }
 
-      // Add user info to request
+      // Tokens that carry a version are revoked by User.invalidateTokens()
+      if (decoded.tokenVersion !== undefined && decoded.tokenVersion !== (user.tokenVersion || 0)) {
+        return res.status(401).json({ 
+          message: 'Token invalidated. Please login again.',
+          code: 'TOKEN_INVALID'
+        });
+      }
+
+      // Add user info to request; long-lived connections re-check the claims
       req.user = user;
+      req.tokenClaims = decoded;
       
       next();
     } catch (jwtError) {
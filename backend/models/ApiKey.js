@@ -243,6 +243,7 @@ apiKeySchema.methods.checkRateLimit = function() {
 };
 
 // Record API key usage
+// Saves the whole document; request handling goes through apiKeyUsageService
 apiKeySchema.methods.recordUsage = async function(requestDetails = {}) {
   this.usage.totalRequests += 1;
   this.usage.requestsThisHour += 1;
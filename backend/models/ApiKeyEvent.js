@@ -0,0 +1,38 @@
+const mongoose = require('mongoose');
+
+// Per-request API key activity lives here rather than in ApiKey.securityEvents
+// so that validating a key never has to load or rewrite its history. The
+// collection is capped, so old entries age out without a cleanup job.
+const apiKeyEventSchema = new mongoose.Schema({
+  apiKeyId: {
+    type: mongoose.Schema.Types.ObjectId,
+    ref: 'ApiKey',
+    required: true
+  },
+  eventType: {
+    type: String,
+    required: true,
+    enum: ['used', 'suspicious_activity', 'rate_limit_exceeded']
+  },
+  timestamp: {
+    type: Date,
+    default: Date.now
+  },
+  details: {
+    ip: String,
+    userAgent: String,
+    endpoint: String,
+    additionalInfo: mongoose.Schema.Types.Mixed
+  }
+}, {
+  capped: {
+    size: parseInt(process.env.API_KEY_EVENT_COLLECTION_BYTES) || 256 * 1024 * 1024,
+    max: parseInt(process.env.API_KEY_EVENT_COLLECTION_MAX) || 1000000
+  },
+  versionKey: false
+});
+
+// Indexes for efficient querying
+apiKeyEventSchema.index({ apiKeyId: 1, timestamp: -1 });
+
+module.exports = mongoose.model('ApiKeyEvent', apiKeyEventSchema);
@@ -17,6 +17,8 @@ const bookSchema = new mongoose.Schema({
     reservationFee: { type: Number, default: 0 }
   },
   isActive: { type: Boolean, default: true },
+  // Lowercased title/author words for prefix autocomplete
+  searchPrefixes: { type: [String], select: false },
   createdBy: {
     type: mongoose.Schema.Types.ObjectId,
     ref: 'User',
@@ -32,4 +34,55 @@ const bookSchema = new mongoose.Schema({
   }
 }, { timestamps: true });
 
+// Keyset pagination order for the catalog listing
+bookSchema.index({ createdAt: -1, _id: -1 });
+
+// Weighted full-text index for ranked catalog search. Books carry their own
+// `language` field, so the text index must not read it as a stemming override.
+bookSchema.index(
+  { title: 'text', author: 'text', genre: 'text', synopsis: 'text' },
+  {
+    name: 'book_search_text',
+    weights: { title: 10, author: 6, genre: 3, synopsis: 1 },
+    default_language: 'none',
+    language_override: 'textLanguage'
+  }
+);
+bookSchema.index({ searchPrefixes: 1 });
+
+// Split text into lowercased, accent-free words
+bookSchema.statics.tokenize = function(text) {
+  return String(text || '')
+    .normalize('NFKD')
+    .replace(/[\u0300-\u036f]/g, '')
+    .toLowerCase()
+    .split(/[^\p{L}\p{N}]+/u)
+    .filter(Boolean);
+};
+
+bookSchema.statics.buildSearchPrefixes = function(title, author) {
+  return [...new Set([...this.tokenize(title), ...this.tokenize(author)])];
+};
+
+bookSchema.pre('validate', function(next) {
+  if (this.isNew || this.isModified('title') || this.isModified('author')) {
+    this.searchPrefixes = this.constructor.buildSearchPrefixes(this.title, this.author);
+  }
+  next();
+});
+
+bookSchema.pre('findOneAndUpdate', async function() {
+  const update = this.getUpdate() || {};
+  const fields = update.$set || update;
+  if (fields.title === undefined && fields.author === undefined) return;
+
+  const current = await this.model.findOne(this.getQuery()).select('title author').lean();
+  if (!current) return;
+
+  fields.searchPrefixes = this.model.buildSearchPrefixes(
+    fields.title !== undefined ? fields.title : current.title,
+    fields.author !== undefined ? fields.author : current.author
+  );
+});
+
 module.exports = mongoose.model('Book', bookSchema);
\ No newline at end of file
@@ -0,0 +1,25 @@
+const mongoose = require('mongoose');
+
+// A user queued for a book with no copies left. Returned copies are handed
+// to the oldest waiting entry before they go back on the shelf.
+const bookWaitlistSchema = new mongoose.Schema({
+  bookId: { type: mongoose.Schema.Types.ObjectId, ref: 'Book', required: true },
+  userId: { type: mongoose.Schema.Types.ObjectId, ref: 'User', required: true },
+  status: {
+    type: String,
+    enum: ['waiting', 'fulfilled', 'cancelled'],
+    default: 'waiting'
+  },
+  bookingId: { type: mongoose.Schema.Types.ObjectId, ref: 'Booking' },
+  fulfilledAt: { type: Date }
+}, { timestamps: true });
+
+// Queue order per book
+bookWaitlistSchema.index({ bookId: 1, status: 1, createdAt: 1 });
+// One place in the queue per user and book
+bookWaitlistSchema.index(
+  { bookId: 1, userId: 1 },
+  { unique: true, partialFilterExpression: { status: 'waiting' } }
+);
+
+module.exports = mongoose.model('BookWaitlist', bookWaitlistSchema);
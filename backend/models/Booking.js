@@ -20,6 +20,11 @@ const bookingSchema = new mongoose.Schema({
   borrowDate: { type: Date },
   returnDate: { type: Date },
   actualReturnDate: { type: Date },
+  // Late fee charged on return, from the book's borrowPolicy
+  fine: { type: Number, default: 0 },
+  // Set on loans that took a copy off the shelf; loans from before copies
+  // were tracked never took one, so closing them must not put one back
+  copyTaken: { type: Boolean, default: false },
   
   // Common fields
   amount: { type: Number, required: true },
@@ -36,4 +41,9 @@ const bookingSchema = new mongoose.Schema({
   refundAmount: { type: Number, default: 0 }
 }, { timestamps: true });
 
+// Keyset pagination order for library booking listings
+bookingSchema.index({ libraryId: 1, createdAt: -1, _id: -1 });
+// Overdue sweep over open book loans
+bookingSchema.index({ type: 1, status: 1, returnDate: 1 });
+
 module.exports = mongoose.model('Booking', bookingSchema);
\ No newline at end of file
@@ -0,0 +1,31 @@
+const mongoose = require('mongoose');
+
+// Progress of the background re-encryption job, so it resumes where it
+// stopped after a restart. One document per job; the lease keeps a single
+// instance running it at a time.
+const encryptionJobSchema = new mongoose.Schema({
+  name: { type: String, required: true, unique: true },
+  // Key everything is being re-encrypted to; a new key restarts the job
+  targetKeyId: { type: Number, required: true },
+  status: {
+    type: String,
+    enum: ['pending', 'running', 'paused', 'completed', 'failed'],
+    default: 'pending'
+  },
+  // Last _id processed per model
+  checkpoints: { type: Map, of: mongoose.Schema.Types.Mixed, default: {} },
+  completedModels: [{ type: String }],
+  stats: {
+    scanned: { type: Number, default: 0 },
+    reencrypted: { type: Number, default: 0 },
+    conflicts: { type: Number, default: 0 },
+    failed: { type: Number, default: 0 }
+  },
+  lockedBy: { type: String, default: null },
+  lockedUntil: { type: Date, default: null },
+  startedAt: { type: Date },
+  finishedAt: { type: Date },
+  error: { type: String }
+}, { timestamps: true });
+
+module.exports = mongoose.model('EncryptionJob', encryptionJobSchema);
@@ -17,12 +17,16 @@ const librarySchema = new mongoose.Schema({
     close: { type: String, required: true }
   },
   facilities: [{ type: String }], // ['WiFi', 'AC', 'Parking']
+  // GeoJSON point [lng, lat], kept in sync with coordinates.lat/lng
   location: {
-    type: { type: String, enum: ['Point'], default: 'Point' },
-    coordinates: { type: [Number], index: '2dsphere' }
+    type: { type: String, enum: ['Point'] },
+    coordinates: { type: [Number], index: '2dsphere', default: undefined }
   },
   images: [{ type: String }],
   isActive: { type: Boolean, default: true },
+  // Running totals of active ratings, maintained by the rating routes
+  ratingSum: { type: Number, default: 0 },
+  ratingCount: { type: Number, default: 0 },
   adminId: { type: mongoose.Schema.Types.ObjectId, ref: 'User' },
   seatLayout: {
     regular: { count: Number, price: Number },
@@ -46,21 +50,82 @@ const librarySchema = new mongoose.Schema({
   }
 }, { timestamps: true });
 
-// Virtual field for average rating
-librarySchema.virtual('averageRating', {
-  ref: 'Rating',
-  localField: '_id',
-  foreignField: 'libraryId',
-  justOne: false
+// Keyset pagination order for library listings
+librarySchema.index({ createdAt: -1, _id: -1 });
+
+const hasLatLng = (coordinates) => coordinates &&
+  typeof coordinates.lat === 'number' && typeof coordinates.lng === 'number';
+
+// Keep the GeoJSON location used by $geoNear in sync with coordinates.lat/lng
+librarySchema.pre('validate', function(next) {
+  if (hasLatLng(this.coordinates)) {
+    this.location = { type: 'Point', coordinates: [this.coordinates.lng, this.coordinates.lat] };
+  }
+  next();
+});
+
+librarySchema.pre('findOneAndUpdate', function(next) {
+  const update = this.getUpdate() || {};
+  const fields = update.$set || update;
+  const coordinates = fields.coordinates || {
+    lat: fields['coordinates.lat'],
+    lng: fields['coordinates.lng']
+  };
+  const lat = Number(coordinates.lat);
+  const lng = Number(coordinates.lng);
+
+  if (coordinates.lat != null && coordinates.lng != null && !isNaN(lat) && !isNaN(lng)) {
+    fields.location = { type: 'Point', coordinates: [lng, lat] };
+  }
+  next();
+});
+
+// Virtual fields for rating summary
+librarySchema.virtual('averageRating').get(function() {
+  if (!this.ratingCount) return 0;
+  return Math.round((this.ratingSum / this.ratingCount) * 10) / 10;
+});
+
+librarySchema.virtual('totalRatings').get(function() {
+  return this.ratingCount || 0;
 });
 
 // Method to calculate average rating
 librarySchema.methods.getAverageRating = async function() {
+  return this.averageRating;
+};
+
+// Apply a change in active ratings to the running totals
+librarySchema.statics.adjustRatings = function(libraryId, sumDelta, countDelta) {
+  if (!sumDelta && !countDelta) return Promise.resolve(null);
+  return this.updateOne(
+    { _id: libraryId },
+    { $inc: { ratingSum: sumDelta, ratingCount: countDelta } }
+  );
+};
+
+// Rebuild running totals from the Rating collection (backfill/repair)
+librarySchema.statics.recalculateRatings = async function(libraryId = null) {
   const Rating = require('./Rating');
-  const ratings = await Rating.find({ libraryId: this._id, isActive: true });
-  if (ratings.length === 0) return 0;
-  const sum = ratings.reduce((acc, rating) => acc + rating.rating, 0);
-  return Math.round((sum / ratings.length) * 10) / 10;
+  const match = { isActive: true };
+  if (libraryId) match.libraryId = new mongoose.Types.ObjectId(libraryId);
+
+  const totals = await Rating.aggregate([
+    { $match: match },
+    { $group: { _id: '$libraryId', sum: { $sum: '$rating' }, count: { $sum: 1 } } }
+  ]);
+
+  const reset = libraryId ? { _id: libraryId } : {};
+  await this.updateMany(reset, { $set: { ratingSum: 0, ratingCount: 0 } });
+  if (totals.length > 0) {
+    await this.bulkWrite(totals.map(total => ({
+      updateOne: {
+        filter: { _id: total._id },
+        update: { $set: { ratingSum: total.sum, ratingCount: total.count } }
+      }
+    })));
+  }
+  return totals.length;
 };
 
 librarySchema.set('toJSON', { virtuals: true });
@@ -1,4 +1,5 @@
 const mongoose = require('mongoose');
+const NotificationInbox = require('./NotificationInbox');
 
 const notificationSchema = new mongoose.Schema({
   title: {
@@ -21,6 +22,8 @@ const notificationSchema = new mongoose.Schema({
     enum: ['low', 'medium', 'high', 'urgent'],
     default: 'medium'
   },
+  // Legacy embedded read state; new notifications keep one NotificationInbox
+  // record per recipient instead (see utils/migrateNotificationInbox.js)
   recipients: [{
     userId: {
       type: mongoose.Schema.Types.ObjectId,
@@ -35,6 +38,10 @@ const notificationSchema = new mongoose.Schema({
       type: Date
     }
   }],
+  recipientCount: {
+    type: Number,
+    default: 0
+  },
   targetRole: {
     type: String,
     enum: ['user', 'admin', 'superadmin', 'all'],
@@ -78,12 +85,12 @@ notificationSchema.statics.createNotification = async function(data) {
 };
 
 notificationSchema.statics.markAsRead = async function(notificationId, userId) {
-  return this.updateOne(
-    { _id: notificationId, 'recipients.userId': userId },
+  return NotificationInbox.updateOne(
+    { notificationId, userId, read: false },
     { 
       $set: { 
-        'recipients.$.read': true,
-        'recipients.$.readAt': new Date()
+        read: true,
+        readAt: new Date()
       }
     }
   );
@@ -0,0 +1,42 @@
+const mongoose = require('mongoose');
+
+// One small record per recipient per notification. The notification content
+// is stored once in Notification; this only carries the user's read state,
+// so a broadcast to every user never grows a single document.
+const notificationInboxSchema = new mongoose.Schema({
+  notificationId: {
+    type: mongoose.Schema.Types.ObjectId,
+    ref: 'Notification',
+    required: true
+  },
+  userId: {
+    type: mongoose.Schema.Types.ObjectId,
+    ref: 'User',
+    required: true
+  },
+  read: {
+    type: Boolean,
+    default: false
+  },
+  readAt: {
+    type: Date
+  },
+  // Copied from the notification so inbox pages sort and expire without a join
+  createdAt: {
+    type: Date,
+    default: Date.now
+  },
+  expiresAt: {
+    type: Date
+  }
+}, {
+  versionKey: false
+});
+
+// Indexes
+notificationInboxSchema.index({ userId: 1, createdAt: -1 });
+notificationInboxSchema.index({ userId: 1, read: 1 });
+notificationInboxSchema.index({ notificationId: 1, userId: 1 }, { unique: true });
+notificationInboxSchema.index({ expiresAt: 1 }, { expireAfterSeconds: 0 });
+
+module.exports = mongoose.model('NotificationInbox', notificationInboxSchema);
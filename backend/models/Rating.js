@@ -41,5 +41,7 @@ const ratingSchema = new mongoose.Schema({
 
 // Prevent duplicate ratings from same user for same library
 ratingSchema.index({ userId: 1, libraryId: 1 }, { unique: true });
+// Keyset pagination order for the superadmin rating listing
+ratingSchema.index({ createdAt: -1, _id: -1 });
 
 module.exports = mongoose.model('Rating', ratingSchema);
\ No newline at end of file
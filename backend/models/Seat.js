@@ -55,5 +55,7 @@ const seatSchema = new mongoose.Schema({
 
 // Unique constraint for seat number per library
 seatSchema.index({ libraryId: 1, seatNumber: 1 }, { unique: true });
+// Keyset pagination order for the superadmin seat listing
+seatSchema.index({ createdAt: -1, _id: -1 });
 
 module.exports = mongoose.model('Seat', seatSchema);
\ No newline at end of file
@@ -0,0 +1,51 @@
+const mongoose = require('mongoose');
+
+// One document per occupied (library, day, time slot, seat). The unique index
+// is what makes a seat reservation atomic: two bookings racing for the same
+// seat cannot both insert the same tuple.
+const seatReservationSchema = new mongoose.Schema({
+  libraryId: {
+    type: mongoose.Schema.Types.ObjectId,
+    ref: 'Library',
+    required: true
+  },
+  date: {
+    type: Date,
+    required: true
+  },
+  slotKey: {
+    type: String,
+    required: true
+  },
+  seatNumber: {
+    type: String,
+    required: true
+  },
+  bookingId: {
+    type: mongoose.Schema.Types.ObjectId,
+    ref: 'Booking',
+    required: true
+  },
+  userId: {
+    type: mongoose.Schema.Types.ObjectId,
+    ref: 'User',
+    required: true
+  },
+  // Reservations are only needed while the slot can still be booked
+  expiresAt: {
+    type: Date,
+    required: true
+  }
+}, {
+  timestamps: true
+});
+
+// Unique constraint for a seat per library, day and time slot
+seatReservationSchema.index(
+  { libraryId: 1, date: 1, slotKey: 1, seatNumber: 1 },
+  { unique: true }
+);
+seatReservationSchema.index({ bookingId: 1 });
+seatReservationSchema.index({ expiresAt: 1 }, { expireAfterSeconds: 0 });
+
+module.exports = mongoose.model('SeatReservation', seatReservationSchema);
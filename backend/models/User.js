@@ -1,6 +1,8 @@
 const mongoose = require('mongoose');
-const bcrypt = require('bcryptjs');
-// const databaseEncryptionService = require('../services/security/databaseEncryptionService');
+const hashingPool = require('../services/security/hashingPool');
+const passwordCostService = require('../services/security/passwordCostService');
+const principalCacheService = require('../services/security/principalCacheService');
+const databaseEncryptionService = require('../services/security/databaseEncryptionService');
 
 const userSchema = new mongoose.Schema({
   name: {
@@ -15,6 +17,8 @@ const userSchema = new mongoose.Schema({
     lowercase: true,
     trim: true
   },
+  // Keyed HMAC of the email, so lookups stay indexed once email is encrypted
+  emailIndex: String,
   password: {
     type: String,
     required: true,
@@ -232,9 +236,9 @@ const userSchema = new mongoose.Schema({
 userSchema.pre('save', async function(next) {
   if (!this.isModified('password')) return next();
   
-  // Use higher cost factor for enhanced security (14 rounds)
-  const saltRounds = process.env.BCRYPT_ROUNDS ? parseInt(process.env.BCRYPT_ROUNDS) : 14;
-  this.password = await bcrypt.hash(this.password, saltRounds);
+  // Cost tuned for this host at startup, or pinned with BCRYPT_ROUNDS; tuning
+  // never goes below the pre-tuning cost (14 unless configured otherwise)
+  this.password = await hashingPool.hash(this.password, passwordCostService.getTargetRounds());
   
   // Update password change timestamp
   if (this.isModified('password')) {
@@ -246,11 +250,12 @@ userSchema.pre('save', async function(next) {
 
 // Compare password method with timing attack protection
 userSchema.methods.comparePassword = async function(candidatePassword) {
-  // Always perform bcrypt comparison to prevent timing attacks
+  // Always perform bcrypt comparison to prevent timing attacks; the work
+  // runs on the hashing pool so it does not block the event loop
   const startTime = process.hrtime.bigint();
   
   try {
-    const isMatch = await bcrypt.compare(candidatePassword, this.password);
+    const isMatch = await hashingPool.compare(candidatePassword, this.password);
     
     // Add consistent delay to prevent timing analysis
     const endTime = process.hrtime.bigint();
@@ -338,7 +343,7 @@ userSchema.methods.isPasswordInHistory = async function(candidatePassword) {
   }
   
   for (const historyEntry of this.passwordHistory) {
-    const isMatch = await bcrypt.compare(candidatePassword, historyEntry.hash);
+    const isMatch = await hashingPool.compare(candidatePassword, historyEntry.hash);
     if (isMatch) {
       return true;
     }
@@ -411,11 +416,51 @@ userSchema.methods.useBackupCode = async function(code) {
   return false;
 };
 
-// Apply database field-level encryption - DISABLED for now
+// Find a user by email through the blind index
+userSchema.statics.emailFilter = function(email) {
+  return this.blindIndexFilter('email', email);
+};
+
+userSchema.statics.findByEmail = async function(email) {
+  return this.findOne(await this.emailFilter(email));
+};
+
+// Apply database field-level encryption - DISABLED for now. applyEncryption
+// maintains the blind indexes too, so it replaces applyBlindIndexes.
 // databaseEncryptionService.applyEncryption(userSchema, 'User');
+databaseEncryptionService.applyBlindIndexes(userSchema, 'User');
+
+// Keep the auth principal cache in step with role, status and token changes
+userSchema.post('save', function(doc) {
+  principalCacheService.invalidate(doc._id);
+});
+
+const invalidateQueriedPrincipal = function() {
+  // Document middleware (doc.deleteOne()) runs with the document as `this`
+  if (typeof this.getFilter !== 'function') {
+    principalCacheService.invalidate(this._id);
+    return;
+  }
+  const id = this.getFilter()._id;
+  if (id && (typeof id === 'string' || id instanceof mongoose.Types.ObjectId)) {
+    principalCacheService.invalidate(id);
+  } else {
+    principalCacheService.invalidateAll();
+  }
+};
+
+userSchema.post(
+  ['findOneAndUpdate', 'findOneAndReplace', 'findOneAndDelete', 'updateOne', 'replaceOne', 'deleteOne'],
+  invalidateQueriedPrincipal
+);
+userSchema.post(['updateMany', 'deleteMany'], function() {
+  principalCacheService.invalidateAll();
+});
 
 // Index for faster queries
 userSchema.index({ email: 1 });
+userSchema.index({ emailIndex: 1 }, { unique: true, sparse: true });
 userSchema.index({ role: 1 });
+userSchema.index({ createdAt: -1, _id: -1 });
 
 module.exports = mongoose.model('User', userSchema);
\ No newline at end of file
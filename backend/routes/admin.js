@@ -4,6 +4,7 @@ const Book = require('../models/Book');
 const Booking = require('../models/Booking');
 const User = require('../models/User');
 const Offer = require('../models/Offer');
+const BookLoanService = require('../services/bookLoanService');
 const { auth, adminAuth, superAdminAuth } = require('../middleware/auth');
 const { 
   checkModifyPermission, 
@@ -11,9 +12,21 @@ const {
   preventPrivilegeEscalation, 
   logPrivilegeAction 
 } = require('../middleware/rbac');
+const { parsePagination, sendPaginated } = require('../utils/pagination');
 
 const router = express.Router();
 
+const USER_FIELDS = [
+  'name', 'email', 'phone', 'address', 'city', 'profileImage', 'role', 'isActive',
+  'totalBookings', 'lastLogin', 'isVerified', 'libraryId', 'privilegeLevel', 'updatedAt'
+];
+
+const BOOKING_FIELDS = [
+  'userId', 'libraryId', 'type', 'seatNumbers', 'seatType', 'date', 'timeSlot',
+  'bookId', 'borrowDate', 'returnDate', 'actualReturnDate', 'amount', 'status',
+  'paymentId', 'cancellationReason', 'refundAmount', 'updatedAt'
+];
+
 // Library Admin Routes
 router.get('/library/dashboard', auth, adminAuth, async (req, res) => {
   try {
@@ -89,9 +102,24 @@ router.post('/books', auth, adminAuth, logPrivilegeAction('create_book'), async
 // Update book
 router.put('/books/:id', ...adminAuth, checkModifyPermission(Book), logPrivilegeAction('update_book'), async (req, res) => {
   try {
+    // Availability is only ever moved by loans and stock changes; a value
+    // posted back from an edit form would overwrite borrows since it loaded
+    const { availableCopies, totalCopies, ...changes } = req.body;
+    
+    if (totalCopies !== undefined) {
+      const stock = await BookLoanService.setTotalCopies(req.params.id, Number(totalCopies));
+      if (!stock.success) {
+        const status = { not_found: 404, invalid_copies: 400 }[stock.reason] || 409;
+        return res.status(status).json({
+          message: BookLoanService.getReasonMessage(stock.reason),
+          reason: stock.reason
+        });
+      }
+    }
+    
     const book = await Book.findByIdAndUpdate(
       req.params.id,
-      { ...req.body, lastModifiedBy: req.user._id },
+      { ...changes, lastModifiedBy: req.user._id },
       { new: true }
     );
     if (!book) {
@@ -220,7 +248,7 @@ router.post('/create-admin', ...superAdminAuth, preventPrivilegeEscalation, logP
       return res.status(400).json({ message: 'Name, email, and password are required' });
     }
     
-    const existingUser = await User.findOne({ $or: [{ email }, ...(phone ? [{ phone }] : [])] });
+    const existingUser = await User.findOne({ $or: [await User.emailFilter(email), ...(phone ? [{ phone }] : [])] });
     if (existingUser) {
       return res.status(400).json({ message: 'User already exists with this email or phone' });
     }
@@ -321,11 +349,17 @@ router.delete('/admins/:id', ...superAdminAuth, canManageUser, logPrivilegeActio
 // Get all users (for super admin)
 router.get('/users', auth, superAdminAuth, async (req, res) => {
   try {
-    const users = await User.find()
-      .select('-password')
-      .populate('libraryId', 'name city')
-      .sort({ createdAt: -1 });
-    res.json(users);
+    const page = parsePagination(req, { fields: USER_FIELDS });
+    if (page.error) {
+      return res.status(400).json({ message: page.error });
+    }
+    
+    const users = User.find()
+      .populate('libraryId', 'name city');
+    if (!page.projection) {
+      users.select('-password');
+    }
+    await sendPaginated(req, res, users, page);
   } catch (error) {
     res.status(500).json({ message: 'Server error', error: error.message });
   }
@@ -636,12 +670,15 @@ router.delete('/offers/:id', auth, adminAuth, async (req, res) => {
 // Get bookings for admin
 router.get('/bookings', auth, adminAuth, async (req, res) => {
   try {
-    const bookings = await Booking.find({ libraryId: req.user.libraryId })
+    const page = parsePagination(req, { fields: BOOKING_FIELDS });
+    if (page.error) {
+      return res.status(400).json({ message: page.error });
+    }
+    
+    const bookings = Booking.find({ libraryId: req.user.libraryId })
       .populate('userId', 'name email phone')
-      .populate('bookId', 'title author')
-      .sort({ createdAt: -1 })
-      .limit(100);
-    res.json(bookings);
+      .populate('bookId', 'title author');
+    await sendPaginated(req, res, bookings, page);
   } catch (error) {
     res.status(500).json({ message: 'Server error', error: error.message });
   }
@@ -4,9 +4,17 @@ const crypto = require('crypto');
 const { body, validationResult } = require('express-validator');
 const User = require('../models/User');
 const { auth } = require('../middleware/auth');
+const { HASH_POOL_SATURATED } = require('../services/security/hashingPool');
+const passwordCostService = require('../services/security/passwordCostService');
 
 const router = express.Router();
 
+// Password hashing is at capacity; ask the client to back off and retry
+const sendHashingBusy = (res) => res.status(429).set('Retry-After', '1').json({
+  message: 'Too many requests right now. Please try again shortly.',
+  code: HASH_POOL_SATURATED
+});
+
 // Register with Email Verification
 router.post('/register', [
   body('name').notEmpty().withMessage('Name is required'),
@@ -29,7 +37,7 @@ router.post('/register', [
       }
     }
     
-    const existingUser = await User.findOne({ email });
+    const existingUser = await User.findByEmail(email);
     if (existingUser) {
       if (!existingUser.isVerified) {
         // User exists but not verified, resend verification email
@@ -81,6 +89,9 @@ router.post('/register', [
       emailSent: emailResult.success
     });
   } catch (error) {
+    if (error.code === HASH_POOL_SATURATED) {
+      return sendHashingBusy(res);
+    }
     console.error('Registration error:', error);
     res.status(500).json({ message: 'Server error', error: error.message });
   }
@@ -99,7 +110,7 @@ router.post('/login', [
 
     const { email, password } = req.body;
     
-    const user = await User.findOne({ email });
+    const user = await User.findByEmail(email);
     
     if (!user) {
       return res.status(400).json({ message: 'Invalid email or password' });
@@ -116,6 +127,9 @@ router.post('/login', [
       return res.status(400).json({ message: 'Invalid email or password' });
     }
     
+    // Bring the stored hash to the current cost policy in the background
+    passwordCostService.scheduleRehash(user, password);
+    
     // Check if email is verified
     if (!user.isVerified) {
       return res.status(400).json({ 
@@ -149,6 +163,9 @@ router.post('/login', [
       }
     });
   } catch (error) {
+    if (error.code === HASH_POOL_SATURATED) {
+      return sendHashingBusy(res);
+    }
     console.error('Login error:', error);
     res.status(500).json({ message: 'Server error', error: error.message });
   }
@@ -168,7 +185,7 @@ router.post('/superadmin-login', [
     const { email, password } = req.body;
     console.log('Super Admin login attempt:', { email });
     
-    const user = await User.findOne({ email });
+    const user = await User.findByEmail(email);
     
     if (!user) {
       return res.status(400).json({ message: 'Super Admin not found with this email' });
@@ -184,6 +201,8 @@ router.post('/superadmin-login', [
     if (!isPasswordValid) {
       return res.status(400).json({ message: 'Invalid super admin password' });
     }
+    
+    passwordCostService.scheduleRehash(user, password);
 
     const token = jwt.sign({ id: user._id }, process.env.JWT_SECRET, { expiresIn: '7d' });
     
@@ -204,6 +223,9 @@ router.post('/superadmin-login', [
       }
     });
   } catch (error) {
+    if (error.code === HASH_POOL_SATURATED) {
+      return sendHashingBusy(res);
+    }
     console.error('Super Admin login error:', error);
     res.status(500).json({ message: 'Server error', error: error.message });
   }
@@ -300,7 +322,7 @@ router.post('/resend-verification', [
 
     const { email } = req.body;
     
-    const user = await User.findOne({ email });
+    const user = await User.findByEmail(email);
     
     if (!user) {
       return res.status(404).json({ message: 'User not found with this email' });
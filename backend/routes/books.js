@@ -1,35 +1,74 @@
 const express = require('express');
 const Book = require('../models/Book');
+const BookSearchService = require('../services/bookSearchService');
+const BookLoanService = require('../services/bookLoanService');
+const { auth } = require('../middleware/auth');
+const { parsePagination, sendPaginated } = require('../utils/pagination');
 
 const router = express.Router();
 
+const BOOK_FIELDS = [
+  'title', 'author', 'isbn', 'genre', 'language', 'synopsis', 'coverImage',
+  'totalCopies', 'availableCopies', 'libraryId', 'borrowPolicy', 'isActive', 'updatedAt'
+];
+
 // Get books (with optional library filter)
 router.get('/', async (req, res) => {
   try {
-    const { libraryId, search, genre } = req.query;
-    let query = { isActive: true };
-    
-    if (libraryId) {
-      query.libraryId = libraryId;
+    const { libraryId, search, genre, language } = req.query;
+    const page = parsePagination(req, { fields: BOOK_FIELDS });
+    const filterError = page.error || BookSearchService.validateFilter({ libraryId });
+    if (filterError) {
+      return res.status(400).json({ message: filterError });
     }
     
+    let query = BookSearchService.buildFilter({ libraryId, genre, language });
+    
     if (search) {
-      query.$or = [
-        { title: { $regex: search, $options: 'i' } },
-        { author: { $regex: search, $options: 'i' } },
-        { genre: { $regex: search, $options: 'i' } }
-      ];
+      query = { ...query, ...BookSearchService.buildTextFilter(search) };
     }
     
-    if (genre) {
-      query.genre = genre;
+    const books = Book.find(query)
+      .populate('libraryId', 'name area city');
+    
+    await sendPaginated(req, res, books, page);
+  } catch (error) {
+    res.status(500).json({ message: 'Server error', error: error.message });
+  }
+});
+
+// Ranked full-text search
+router.get('/search', async (req, res) => {
+  try {
+    const { q, libraryId, genre, language, page, limit } = req.query;
+    
+    if (!q || !String(q).trim()) {
+      return res.status(400).json({ message: 'Search query is required' });
     }
     
-    const books = await Book.find(query)
-      .populate('libraryId', 'name area city')
-      .sort({ createdAt: -1 });
+    const filterError = BookSearchService.validateFilter({ libraryId });
+    if (filterError) {
+      return res.status(400).json({ message: filterError });
+    }
     
-    res.json(books);
+    const results = await BookSearchService.search({ q, libraryId, genre, language, page, limit });
+    res.json(results);
+  } catch (error) {
+    res.status(500).json({ message: 'Server error', error: error.message });
+  }
+});
+
+// Prefix suggestions while typing
+router.get('/autocomplete', async (req, res) => {
+  try {
+    const { q, libraryId, genre, language, limit } = req.query;
+    const filterError = BookSearchService.validateFilter({ libraryId });
+    if (filterError) {
+      return res.status(400).json({ message: filterError });
+    }
+    
+    const suggestions = await BookSearchService.autocomplete(q, { libraryId, genre, language, limit });
+    res.json(suggestions);
   } catch (error) {
     res.status(500).json({ message: 'Server error', error: error.message });
   }
@@ -51,6 +90,39 @@ router.get('/:id', async (req, res) => {
   }
 });
 
+// Join the waitlist for a book with no copies left
+router.post('/:id/waitlist', auth, async (req, res) => {
+  try {
+    const result = await BookLoanService.joinWaitlist(req.params.id, req.user._id);
+    
+    if (!result.success) {
+      return res.status(result.reason === 'not_found' ? 404 : 409).json({
+        message: BookLoanService.getReasonMessage(result.reason),
+        reason: result.reason
+      });
+    }
+    
+    res.status(201).json({ message: 'Added to waitlist', position: result.position });
+  } catch (error) {
+    res.status(500).json({ message: 'Server error', error: error.message });
+  }
+});
+
+// Leave the waitlist
+router.delete('/:id/waitlist', auth, async (req, res) => {
+  try {
+    const removed = await BookLoanService.leaveWaitlist(req.params.id, req.user._id);
+    
+    if (!removed) {
+      return res.status(404).json({ message: 'Not on the waitlist' });
+    }
+    
+    res.json({ message: 'Removed from waitlist' });
+  } catch (error) {
+    res.status(500).json({ message: 'Server error', error: error.message });
+  }
+});
+
 // Update book cover image
 router.put('/:id/image', async (req, res) => {
   try {
@@ -1,13 +1,24 @@
 const express = require('express');
 const Library = require('../models/Library');
 const Book = require('../models/Book');
+const { parsePagination, sendPaginated } = require('../utils/pagination');
 
 const router = express.Router();
 
+const MAX_NEARBY_LIMIT = 100;
+
+const LIBRARY_FIELDS = [
+  'name', 'city', 'area', 'pincode', 'address', 'phone', 'coordinates', 'email',
+  'openingHours', 'facilities', 'location', 'images', 'isActive', 'adminId',
+  'seatLayout', 'timeSlots', 'updatedAt'
+];
+
 // Get nearby libraries (must be before /:id route)
 router.get('/nearby', async (req, res) => {
   try {
     const { lat, lng, radius = 25, city } = req.query;
+    const page = Math.max(parseInt(req.query.page) || 1, 1);
+    const limit = Math.min(Math.max(parseInt(req.query.limit) || 20, 1), MAX_NEARBY_LIMIT);
     
     let query = { isActive: { $ne: false } };
     
@@ -16,63 +27,75 @@ router.get('/nearby', async (req, res) => {
       query.city = { $regex: city, $options: 'i' };
     }
     
-    const Rating = require('../models/Rating');
-    const libraries = await Library.find(query)
-      .populate('adminId', 'name email')
-      .sort({ createdAt: -1 });
-    
-    // Calculate distance if coordinates provided
-    let librariesWithDistance = libraries;
-    if (lat && lng) {
-      const userLat = parseFloat(lat);
-      const userLng = parseFloat(lng);
-      
-      librariesWithDistance = libraries.map(lib => {
-        let distance = 0;
-        if (lib.coordinates && lib.coordinates.lat && lib.coordinates.lng) {
-          // Calculate distance using Haversine formula
-          const R = 6371; // Earth's radius in km
-          const dLat = (lib.coordinates.lat - userLat) * Math.PI / 180;
-          const dLng = (lib.coordinates.lng - userLng) * Math.PI / 180;
-          const a = Math.sin(dLat/2) * Math.sin(dLat/2) +
-                    Math.cos(userLat * Math.PI / 180) * Math.cos(lib.coordinates.lat * Math.PI / 180) *
-                    Math.sin(dLng/2) * Math.sin(dLng/2);
-          const c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1-a));
-          distance = R * c;
-        } else {
-          // Fallback: random distance for demo
-          distance = Math.random() * 20 + 1;
-        }
-        
-        return {
-          ...lib.toObject(),
-          distance: Math.round(distance * 10) / 10
-        };
-      });
+    const userLat = parseFloat(lat);
+    const userLng = parseFloat(lng);
+    
+    // Without a position there is nothing to measure from; list newest first
+    if (isNaN(userLat) || isNaN(userLng)) {
+      const [libraries, total] = await Promise.all([
+        Library.find(query)
+          .populate('adminId', 'name email')
+          .sort({ createdAt: -1 })
+          .skip((page - 1) * limit)
+          .limit(limit),
+        Library.countDocuments(query)
+      ]);
       
-      // Filter by radius and sort by distance
-      librariesWithDistance = librariesWithDistance
-        .filter(lib => lib.distance <= radius)
-        .sort((a, b) => a.distance - b.distance);
+      res.set('X-Total-Count', String(total));
+      return res.json(libraries);
     }
     
-    // Add rating data
-    const librariesWithRatings = await Promise.all(
-      librariesWithDistance.map(async (library) => {
-        const ratings = await Rating.find({ libraryId: library._id, isActive: true });
-        const avgRating = ratings.length > 0 
-          ? ratings.reduce((sum, r) => sum + r.rating, 0) / ratings.length 
-          : 0;
-        
-        return {
-          ...library,
-          averageRating: Math.round(avgRating * 10) / 10,
-          totalRatings: ratings.length
-        };
-      })
-    );
+    // Distance, pagination and rating summary in one pipeline on the 2dsphere index
+    const [result] = await Library.aggregate([
+      {
+        $geoNear: {
+          near: { type: 'Point', coordinates: [userLng, userLat] },
+          key: 'location.coordinates',
+          distanceField: 'distance',
+          distanceMultiplier: 0.001, // meters -> km
+          maxDistance: (parseFloat(radius) || 25) * 1000,
+          spherical: true,
+          query
+        }
+      },
+      {
+        $facet: {
+          libraries: [
+            { $skip: (page - 1) * limit },
+            { $limit: limit },
+            {
+              $lookup: {
+                from: 'users',
+                let: { adminId: '$adminId' },
+                pipeline: [
+                  { $match: { $expr: { $eq: ['$_id', '$$adminId'] } } },
+                  { $project: { name: 1, email: 1 } }
+                ],
+                as: 'adminId'
+              }
+            },
+            {
+              $addFields: {
+                adminId: { $ifNull: [{ $first: '$adminId' }, null] },
+                distance: { $round: ['$distance', 1] },
+                averageRating: {
+                  $cond: [
+                    { $gt: ['$ratingCount', 0] },
+                    { $round: [{ $divide: ['$ratingSum', '$ratingCount'] }, 1] },
+                    0
+                  ]
+                },
+                totalRatings: { $ifNull: ['$ratingCount', 0] }
+              }
+            }
+          ],
+          total: [{ $count: 'count' }]
+        }
+      }
+    ]);
     
-    res.json(librariesWithRatings);
+    res.set('X-Total-Count', String(result.total[0]?.count || 0));
+    res.json(result.libraries);
   } catch (error) {
     res.status(500).json({ message: 'Server error', error: error.message });
   }
@@ -82,6 +105,15 @@ router.get('/nearby', async (req, res) => {
 router.get('/', async (req, res) => {
   try {
     const { search, city } = req.query;
+    const page = parsePagination(req, {
+      fields: LIBRARY_FIELDS,
+      // averageRating/totalRatings are derived from these
+      requiredFields: ['ratingSum', 'ratingCount']
+    });
+    if (page.error) {
+      return res.status(400).json({ message: page.error });
+    }
+    
     let query = { isActive: { $ne: false } };
     
     if (search) {
@@ -96,28 +128,11 @@ router.get('/', async (req, res) => {
       query.city = { $regex: city, $options: 'i' };
     }
     
-    const Rating = require('../models/Rating');
-    const libraries = await Library.find(query)
-      .populate('adminId', 'name email')
-      .sort({ createdAt: -1 });
-    
-    // Add rating data to each library
-    const librariesWithRatings = await Promise.all(
-      libraries.map(async (library) => {
-        const ratings = await Rating.find({ libraryId: library._id, isActive: true });
-        const avgRating = ratings.length > 0 
-          ? ratings.reduce((sum, r) => sum + r.rating, 0) / ratings.length 
-          : 0;
-        
-        return {
-          ...library.toObject(),
-          averageRating: Math.round(avgRating * 10) / 10,
-          totalRatings: ratings.length
-        };
-      })
-    );
+    // Rating data comes from the averageRating/totalRatings virtuals
+    const libraries = Library.find(query)
+      .populate('adminId', 'name email');
     
-    res.json(librariesWithRatings);
+    await sendPaginated(req, res, libraries, page);
   } catch (error) {
     res.status(500).json({ message: 'Server error', error: error.message });
   }
@@ -126,7 +141,6 @@ router.get('/', async (req, res) => {
 // Get single library by ID
 router.get('/:id', async (req, res) => {
   try {
-    const Rating = require('../models/Rating');
     const library = await Library.findById(req.params.id)
       .populate('adminId', 'name email');
     
@@ -134,19 +148,7 @@ router.get('/:id', async (req, res) => {
       return res.status(404).json({ message: 'Library not found' });
     }
     
-    // Add rating data
-    const ratings = await Rating.find({ libraryId: library._id, isActive: true });
-    const avgRating = ratings.length > 0 
-      ? ratings.reduce((sum, r) => sum + r.rating, 0) / ratings.length 
-      : 0;
-    
-    const libraryWithRating = {
-      ...library.toObject(),
-      averageRating: Math.round(avgRating * 10) / 10,
-      totalRatings: ratings.length
-    };
-    
-    res.json(libraryWithRating);
+    res.json(library);
   } catch (error) {
     res.status(500).json({ message: 'Server error', error: error.message });
   }
@@ -1,4 +1,5 @@
 const express = require('express');
+const mongoose = require('mongoose');
 const NotificationService = require('../services/notificationService');
 const router = express.Router();
 
@@ -12,10 +13,10 @@ const authMiddleware = async (req, res, next) => {
     }
 
     const jwt = require('jsonwebtoken');
-    const User = require('../models/User');
+    const principalCacheService = require('../services/security/principalCacheService');
     
     const decoded = jwt.verify(token, process.env.JWT_SECRET);
-    const user = await User.findById(decoded.id).select('-password');
+    const user = await principalCacheService.getPrincipal(decoded.id);
     
     if (!user) {
       return res.status(401).json({ error: 'User not found' });
@@ -67,11 +68,7 @@ router.put('/:id/read', authMiddleware, async (req, res) => {
 // Delete notification
 router.delete('/:id', authMiddleware, async (req, res) => {
   try {
-    const Notification = require('../models/Notification');
-    await Notification.findOneAndDelete({ 
-      _id: req.params.id, 
-      'recipients.userId': req.user._id 
-    });
+    await NotificationService.deleteForUser(req.params.id, req.user._id);
     res.json({ message: 'Notification deleted' });
   } catch (error) {
     res.status(500).json({ error: error.message });
@@ -85,16 +82,22 @@ router.post('/admin', authMiddleware, async (req, res) => {
       return res.status(403).json({ error: 'Access denied' });
     }
     
-    const { message, priority = 'medium' } = req.body;
+    const { message, priority = 'medium', notificationId } = req.body;
     
     if (!message) {
       return res.status(400).json({ error: 'Message is required' });
     }
     
+    if (notificationId && !mongoose.Types.ObjectId.isValid(notificationId)) {
+      return res.status(400).json({ error: 'Invalid notificationId' });
+    }
+    
+    // Resending with the notificationId of a failed send completes it
     const notification = await NotificationService.sendAdminNotification(
       message, 
       priority, 
-      req.user._id
+      req.user._id,
+      notificationId
     );
     
     res.json({ message: 'Admin notification sent', notification });
@@ -110,16 +113,21 @@ router.post('/superadmin', authMiddleware, async (req, res) => {
       return res.status(403).json({ error: 'Access denied' });
     }
     
-    const { message, priority = 'high' } = req.body;
+    const { message, priority = 'high', notificationId } = req.body;
     
     if (!message) {
       return res.status(400).json({ error: 'Message is required' });
     }
     
+    if (notificationId && !mongoose.Types.ObjectId.isValid(notificationId)) {
+      return res.status(400).json({ error: 'Invalid notificationId' });
+    }
+    
     const notification = await NotificationService.sendSuperAdminNotification(
       message, 
       priority, 
-      req.user._id
+      req.user._id,
+      notificationId
     );
     
     res.json({ message: 'Super admin notification sent', notification });
@@ -135,13 +143,18 @@ router.post('/send', authMiddleware, async (req, res) => {
       return res.status(403).json({ error: 'Access denied' });
     }
     
-    const { userIds, title, message, type = 'system', priority = 'medium' } = req.body;
+    const { userIds, title, message, type = 'system', priority = 'medium', notificationId } = req.body;
     
     if (!userIds || !title || !message) {
       return res.status(400).json({ error: 'userIds, title, and message are required' });
     }
     
+    if (notificationId && !mongoose.Types.ObjectId.isValid(notificationId)) {
+      return res.status(400).json({ error: 'Invalid notificationId' });
+    }
+    
     const notification = await NotificationService.sendToUsers(userIds, {
+      ...(notificationId && { _id: notificationId }),
       title,
       message,
       type,
@@ -2,9 +2,14 @@ const express = require('express');
 const Rating = require('../models/Rating');
 const Library = require('../models/Library');
 const { auth, adminAuth, superAdminAuth } = require('../middleware/auth');
+const { parsePagination, sendPaginated } = require('../utils/pagination');
 
 const router = express.Router();
 
+const RATING_FIELDS = [
+  'userId', 'libraryId', 'rating', 'review', 'isActive', 'moderatedBy', 'moderationNote', 'updatedAt'
+];
+
 // Get ratings for a library (public)
 router.get('/library/:libraryId', async (req, res) => {
   try {
@@ -48,9 +53,17 @@ router.post('/library/:libraryId', auth, async (req, res) => {
     });
 
     if (existingRating) {
-      existingRating.rating = rating;
-      existingRating.review = review || '';
-      await existingRating.save();
+      const update = { rating, review: review || '' };
+      // Read the previous value atomically so the library totals stay exact
+      const previous = await Rating.findByIdAndUpdate(
+        existingRating._id,
+        update,
+        { new: false, runValidators: true }
+      );
+      if (previous?.isActive) {
+        await Library.adjustRatings(previous.libraryId, rating - previous.rating, 0);
+      }
+      Object.assign(existingRating, update);
       res.json({ message: 'Rating updated successfully', rating: existingRating });
     } else {
       const newRating = new Rating({
@@ -60,6 +73,7 @@ router.post('/library/:libraryId', auth, async (req, res) => {
         review: review || ''
       });
       await newRating.save();
+      await Library.adjustRatings(newRating.libraryId, newRating.rating, 1);
       res.status(201).json({ message: 'Rating added successfully', rating: newRating });
     }
   } catch (error) {
@@ -99,6 +113,10 @@ router.put('/admin/moderate/:ratingId', auth, adminAuth, async (req, res) => {
   try {
     const { isActive, moderationNote } = req.body;
     
+    if (typeof isActive !== 'boolean') {
+      return res.status(400).json({ message: 'isActive must be true or false' });
+    }
+    
     const rating = await Rating.findById(req.params.ratingId);
     if (!rating) {
       return res.status(404).json({ message: 'Rating not found' });
@@ -112,10 +130,17 @@ router.put('/admin/moderate/:ratingId', auth, adminAuth, async (req, res) => {
       }
     }
 
-    rating.isActive = isActive;
-    rating.moderatedBy = req.user._id;
-    rating.moderationNote = moderationNote || '';
-    await rating.save();
+    const update = {
+      isActive,
+      moderatedBy: req.user._id,
+      moderationNote: moderationNote || ''
+    };
+    const previous = await Rating.findByIdAndUpdate(rating._id, update, { new: false });
+    if (previous && previous.isActive !== isActive) {
+      const direction = isActive ? 1 : -1;
+      await Library.adjustRatings(previous.libraryId, direction * previous.rating, direction);
+    }
+    Object.assign(rating, update);
 
     res.json({ message: 'Rating moderated successfully', rating });
   } catch (error) {
@@ -126,13 +151,17 @@ router.put('/admin/moderate/:ratingId', auth, adminAuth, async (req, res) => {
 // SuperAdmin: Get all ratings
 router.get('/superadmin/all', auth, superAdminAuth, async (req, res) => {
   try {
-    const ratings = await Rating.find()
+    const page = parsePagination(req, { fields: RATING_FIELDS });
+    if (page.error) {
+      return res.status(400).json({ message: page.error });
+    }
+
+    const ratings = Rating.find()
       .populate('userId', 'name email')
       .populate('libraryId', 'name city')
-      .populate('moderatedBy', 'name')
-      .sort({ createdAt: -1 });
+      .populate('moderatedBy', 'name');
 
-    res.json(ratings);
+    await sendPaginated(req, res, ratings, page);
   } catch (error) {
     res.status(500).json({ message: 'Server error', error: error.message });
   }
@@ -141,7 +170,10 @@ router.get('/superadmin/all', auth, superAdminAuth, async (req, res) => {
 // SuperAdmin: Delete rating
 router.delete('/superadmin/:ratingId', auth, superAdminAuth, async (req, res) => {
   try {
-    await Rating.findByIdAndDelete(req.params.ratingId);
+    const rating = await Rating.findByIdAndDelete(req.params.ratingId);
+    if (rating?.isActive) {
+      await Library.adjustRatings(rating.libraryId, -rating.rating, -1);
+    }
     res.json({ message: 'Rating deleted successfully' });
   } catch (error) {
     res.status(500).json({ message: 'Server error', error: error.message });
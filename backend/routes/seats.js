@@ -1,13 +1,55 @@
 const express = require('express');
 const Seat = require('../models/Seat');
 const Library = require('../models/Library');
+const seatAvailabilityService = require('../services/seatAvailabilityService');
+const SeatReservationService = require('../services/seatReservationService');
+const streamService = require('../services/streamService');
+const { parsePagination, sendPaginated } = require('../utils/pagination');
 const { auth, adminAuth, superAdminAuth } = require('../middleware/auth');
 
 const router = express.Router();
 
+const SEAT_FIELDS = [
+  'libraryId', 'seatNumber', 'seatType', 'price', 'isActive', 'isBlocked',
+  'blockReason', 'blockedBy', 'position', 'createdBy', 'lastModifiedBy', 'updatedAt'
+];
+
 // Get seats for a library (public)
+// With ?date=&timeSlot= (or startTime/endTime) returns the availability bitmap instead
 router.get('/library/:libraryId', async (req, res) => {
   try {
+    const { date, timeSlot, startTime, endTime } = req.query;
+    
+    if (date) {
+      const day = SeatReservationService.normalizeDate(date);
+      const slotKey = SeatReservationService.getSlotKey(await SeatReservationService.resolveTimeSlot(
+        req.params.libraryId,
+        startTime && endTime ? { name: timeSlot, startTime, endTime } : timeSlot
+      ));
+      
+      if (!day || !slotKey) {
+        return res.status(400).json({ message: 'Valid date and time slot are required' });
+      }
+      
+      const availability = await seatAvailabilityService.getAvailability(req.params.libraryId, day, slotKey);
+      
+      res.set('ETag', availability.etag);
+      res.set('Cache-Control', 'no-cache');
+      if (req.headers['if-none-match'] === availability.etag) {
+        return res.status(304).end();
+      }
+      
+      return res.json({
+        libraryId: req.params.libraryId,
+        date: day.toISOString().slice(0, 10),
+        timeSlot: slotKey,
+        rows: availability.rows,
+        columns: availability.columns,
+        seats: availability.seats,
+        available: availability.available
+      });
+    }
+    
     const seats = await Seat.find({ 
       libraryId: req.params.libraryId,
       isActive: true 
@@ -60,6 +102,7 @@ router.post('/admin/library/:libraryId', auth, adminAuth, async (req, res) => {
     });
 
     await seat.save();
+    seatAvailabilityService.invalidateLibrary(req.params.libraryId);
     res.status(201).json(seat);
   } catch (error) {
     if (error.code === 11000) {
@@ -89,6 +132,7 @@ router.put('/admin/:seatId', auth, adminAuth, async (req, res) => {
       { ...req.body, lastModifiedBy: req.user._id },
       { new: true }
     );
+    seatAvailabilityService.invalidateLibrary(seat.libraryId._id);
 
     res.json(updatedSeat);
   } catch (error) {
@@ -119,6 +163,12 @@ router.patch('/admin/:seatId/block', auth, adminAuth, async (req, res) => {
     seat.lastModifiedBy = req.user._id;
     
     await seat.save();
+    seatAvailabilityService.invalidateLibrary(seat.libraryId._id);
+    streamService.publish('seats.changed', {
+      libraryId: seat.libraryId._id,
+      seatNumbers: [seat.seatNumber],
+      status: isBlocked ? 'blocked' : 'unblocked'
+    }, { libraryId: seat.libraryId._id });
     res.json({ message: `Seat ${isBlocked ? 'blocked' : 'unblocked'} successfully`, seat });
   } catch (error) {
     res.status(500).json({ message: 'Server error', error: error.message });
@@ -141,6 +191,7 @@ router.delete('/admin/:seatId', auth, adminAuth, async (req, res) => {
     }
 
     await Seat.findByIdAndDelete(req.params.seatId);
+    seatAvailabilityService.invalidateLibrary(seat.libraryId._id);
     res.json({ message: 'Seat deleted successfully' });
   } catch (error) {
     res.status(500).json({ message: 'Server error', error: error.message });
@@ -150,13 +201,17 @@ router.delete('/admin/:seatId', auth, adminAuth, async (req, res) => {
 // SuperAdmin: Get all seats across all libraries
 router.get('/superadmin/all', auth, superAdminAuth, async (req, res) => {
   try {
-    const seats = await Seat.find()
+    const page = parsePagination(req, { fields: SEAT_FIELDS });
+    if (page.error) {
+      return res.status(400).json({ message: page.error });
+    }
+    
+    const seats = Seat.find()
       .populate('libraryId', 'name city')
       .populate('blockedBy', 'name')
-      .populate('createdBy', 'name')
-      .sort({ createdAt: -1 });
+      .populate('createdBy', 'name');
     
-    res.json(seats);
+    await sendPaginated(req, res, seats, page);
   } catch (error) {
     res.status(500).json({ message: 'Server error', error: error.message });
   }
@@ -210,6 +265,17 @@ router.post('/superadmin/bulk-action', auth, superAdminAuth, async (req, res) =>
         return res.status(400).json({ message: 'Invalid action' });
     }
     
+    // Bulk actions can span libraries, so drop every cached layout
+    seatAvailabilityService.invalidateLibrary();
+    
+    if (action === 'block' || action === 'unblock') {
+      // Seats may span libraries; clients reload the layouts they show
+      streamService.publish('seats.changed', {
+        seatIds,
+        status: action === 'block' ? 'blocked' : 'unblocked'
+      });
+    }
+    
     res.json({ message: `Bulk ${action} completed successfully` });
   } catch (error) {
     res.status(500).json({ message: 'Server error', error: error.message });
@@ -240,6 +306,7 @@ router.post('/superadmin/generate/:libraryId', auth, superAdminAuth, async (req,
     }
     
     await Seat.insertMany(seats);
+    seatAvailabilityService.invalidateLibrary(req.params.libraryId);
     res.json({ message: `Generated ${seats.length} seats successfully`, count: seats.length });
   } catch (error) {
     res.status(500).json({ message: 'Server error', error: error.message });
@@ -8,6 +8,10 @@ const router = express.Router();
 const { auth } = require('../middleware/auth');
 const { requireRole } = require('../middleware/rbac');
 const securityDashboardService = require('../services/security/securityDashboardService');
+const principalCacheService = require('../services/security/principalCacheService');
+const hashingPool = require('../services/security/hashingPool');
+const passwordCostService = require('../services/security/passwordCostService');
+const encryptionMigrationService = require('../services/security/encryptionMigrationService');
 const { body, query, validationResult } = require('express-validator');
 
 // Middleware to check for validation errors
@@ -280,6 +284,123 @@ router.get('/health',
   }
 );
 
+/**
+ * @route GET /api/security/principal-cache
+ * @desc Get auth principal cache hit/miss metrics
+ * @access Admin/SuperAdmin
+ */
+router.get('/principal-cache',
+  auth,
+  requireRole('admin'),
+  (req, res) => {
+    res.json({
+      success: true,
+      data: principalCacheService.getStats()
+    });
+  }
+);
+
+/**
+ * @route GET /api/security/hashing-pool
+ * @desc Get password hashing pool queue depth and latency metrics
+ * @access Admin/SuperAdmin
+ */
+router.get('/hashing-pool',
+  auth,
+  requireRole('admin'),
+  (req, res) => {
+    res.json({
+      success: true,
+      data: hashingPool.getMetrics()
+    });
+  }
+);
+
+/**
+ * @route GET /api/security/password-cost
+ * @desc Get the bcrypt cost policy and the cost distribution of stored hashes
+ * @access SuperAdmin
+ */
+router.get('/password-cost',
+  auth,
+  requireRole('superadmin'),
+  async (req, res) => {
+    try {
+      res.json({
+        success: true,
+        data: await passwordCostService.getCostDistribution()
+      });
+    } catch (error) {
+      console.error('Password cost distribution error:', error);
+      res.status(500).json({
+        success: false,
+        error: 'Failed to get password cost distribution',
+        message: error.message
+      });
+    }
+  }
+);
+
+/**
+ * @route GET /api/security/encryption-migration
+ * @desc Get progress of the field re-encryption job
+ * @access SuperAdmin
+ */
+router.get('/encryption-migration',
+  auth,
+  requireRole('superadmin'),
+  async (req, res) => {
+    try {
+      res.json({
+        success: true,
+        data: await encryptionMigrationService.getStatus()
+      });
+    } catch (error) {
+      console.error('Encryption migration status error:', error);
+      res.status(500).json({
+        success: false,
+        error: 'Failed to get encryption migration status',
+        message: error.message
+      });
+    }
+  }
+);
+
+/**
+ * @route POST /api/security/encryption-migration
+ * @desc Start or resume the field re-encryption job on this instance
+ * @access SuperAdmin
+ */
+router.post('/encryption-migration',
+  auth,
+  requireRole('superadmin'),
+  [
+    body('restart')
+      .optional()
+      .isBoolean()
+      .withMessage('Restart must be a boolean')
+  ],
+  handleValidationErrors,
+  async (req, res) => {
+    try {
+      // Runs in the background; progress is on the GET route
+      encryptionMigrationService.start({ restart: req.body.restart === true });
+
+      res.status(202).json({
+        success: true,
+        data: await encryptionMigrationService.getStatus()
+      });
+    } catch (error) {
+      console.error('Encryption migration start error:', error);
+      res.status(500).json({
+        success: false,
+        error: 'Failed to start encryption migration',
+        message: error.message
+      });
+    }
+  }
+);
+
 /**
  * @route GET /api/security/dashboard/config
  * @desc Get dashboard configuration
@@ -0,0 +1,73 @@
+const express = require('express');
+const streamService = require('../services/streamService');
+const principalCacheService = require('../services/security/principalCacheService');
+const { auth } = require('../middleware/auth');
+const router = express.Router();
+
+// EventSource cannot set headers. Browsers holding the accessToken cookie
+// send it with the stream request (withCredentials), which the auth
+// middleware reads; other clients first fetch a short-lived ticket from
+// POST /ticket and pass it as ?ticket=, so the access token itself never
+// appears in a URL or an access log
+const streamAuth = async (req, res, next) => {
+  if (req.header('Authorization') || req.cookies?.accessToken || typeof req.query.ticket !== 'string') {
+    return auth(req, res, next);
+  }
+
+  let claims;
+  try {
+    claims = streamService.verifyTicket(req.query.ticket);
+  } catch (error) {
+    return res.status(401).json({
+      message: 'Invalid or expired stream ticket.',
+      code: 'TOKEN_INVALID'
+    });
+  }
+
+  try {
+    // Same checks as the auth middleware, against the token the ticket came from
+    const user = await principalCacheService.getPrincipal(claims.id);
+
+    if (!user) {
+      return res.status(401).json({ message: 'Invalid token. User not found.' });
+    }
+
+    if (!user.isActive) {
+      return res.status(403).json({ message: 'Account is deactivated.' });
+    }
+
+    if (claims.tokenVersion !== undefined && claims.tokenVersion !== (user.tokenVersion || 0)) {
+      return res.status(401).json({
+        message: 'Token invalidated. Please login again.',
+        code: 'TOKEN_INVALID'
+      });
+    }
+
+    req.user = user;
+    req.tokenClaims = claims;
+    next();
+  } catch (error) {
+    console.error('Stream authentication error:', error);
+    res.status(401).json({ message: 'Invalid token.' });
+  }
+};
+
+// Issue a ticket for opening the event stream
+router.post('/ticket', auth, (req, res) => {
+  res.json({
+    ticket: streamService.issueTicket(req.user._id, req.tokenClaims),
+    expiresIn: streamService.ticketTtlSeconds
+  });
+});
+
+// Open the event stream for the current user
+// Optional ?libraryIds=a,b limits seat events to those libraries
+router.get('/', streamAuth, (req, res) => {
+  const libraryIds = typeof req.query.libraryIds === 'string'
+    ? req.query.libraryIds.split(',').filter(Boolean)
+    : [];
+
+  streamService.connect(req, res, { libraryIds });
+});
+
+module.exports = router;
@@ -108,7 +108,7 @@ router.post('/admins', auth, superAdminAuth, async (req, res) => {
   try {
     const { name, email, password, role = 'admin' } = req.body;
     
-    const existingUser = await User.findOne({ email });
+    const existingUser = await User.findByEmail(email);
     if (existingUser) {
       return res.status(400).json({ message: 'User already exists with this email' });
     }
@@ -7,6 +7,9 @@ const Booking = require('../models/Booking');
 const Library = require('../models/Library');
 const Book = require('../models/Book');
 const NotificationService = require('../services/notificationService');
+const SeatReservationService = require('../services/seatReservationService');
+const BookLoanService = require('../services/bookLoanService');
+const streamService = require('../services/streamService');
 const { auth, userAuth } = require('../middleware/auth');
 const { canManageUser, preventPrivilegeEscalation, logPrivilegeAction } = require('../middleware/rbac');
 
@@ -43,6 +46,26 @@ const upload = multer({
 
 const router = express.Router();
 
+// Push a booking change to the owner's streams and, for seat bookings, the
+// seat occupancy change to everyone watching the library
+const publishBookingEvent = (event, booking, seatStatus) => {
+  streamService.publish(event, {
+    bookingId: booking._id,
+    type: booking.type,
+    status: booking.status
+  }, { userIds: [booking.userId] });
+
+  if (booking.type === 'seat') {
+    streamService.publish('seats.changed', {
+      libraryId: booking.libraryId,
+      date: booking.date,
+      timeSlot: booking.timeSlot,
+      seatNumbers: booking.seatNumbers,
+      status: seatStatus
+    }, { libraryId: booking.libraryId });
+  }
+};
+
 // Get user bookings
 router.get('/bookings', auth, async (req, res) => {
   try {
@@ -65,14 +88,70 @@ router.post('/bookings', auth, async (req, res) => {
       userId: req.user._id
     };
     
-    const booking = new Booking(bookingData);
-    await booking.save();
+    if (bookingData.type === 'seat') {
+      bookingData.seatNumbers = SeatReservationService.normalizeSeatNumbers(req.body.seatNumbers, req.body.seatNumber);
+      // Slots picked by name are stored with their times so they share one occupancy key
+      bookingData.timeSlot = await SeatReservationService.resolveTimeSlot(req.body.libraryId, req.body.timeSlot);
+      
+      if (!bookingData.libraryId || !bookingData.date || !bookingData.timeSlot || bookingData.seatNumbers.length === 0) {
+        return res.status(400).json({ message: 'Library, date, a valid time slot and seats are required' });
+      }
+    }
+    
+    let booking = new Booking(bookingData);
+    
+    // Seat bookings must claim their seats before the booking is stored
+    if (booking.type === 'seat') {
+      await booking.validate();
+      
+      const reservation = await SeatReservationService.reserveSeats({
+        libraryId: booking.libraryId,
+        date: bookingData.date,
+        timeSlot: bookingData.timeSlot,
+        seatNumbers: bookingData.seatNumbers,
+        userId: req.user._id,
+        bookingId: booking._id
+      });
+      
+      if (!reservation.success) {
+        return res.status(409).json({ 
+          message: 'Some seats are no longer available',
+          conflicts: reservation.conflicts
+        });
+      }
+      
+      try {
+        await booking.save();
+      } catch (saveError) {
+        await SeatReservationService.releaseBooking(booking._id);
+        throw saveError;
+      }
+    } else if (booking.type === 'book') {
+      // Book loans take a copy atomically so concurrent borrows cannot oversell.
+      // The loan starts now; a date sent by the client is ignored
+      const loan = await BookLoanService.borrow({
+        bookId: req.body.bookId,
+        userId: req.user._id
+      });
+      
+      if (!loan.success) {
+        return res.status(loan.reason === 'not_found' ? 404 : 409).json({
+          message: BookLoanService.getReasonMessage(loan.reason),
+          reason: loan.reason
+        });
+      }
+      booking = loan.booking;
+    } else {
+      await booking.save();
+    }
+    
+    publishBookingEvent('booking.created', booking, 'reserved');
     
     // Create notification for booking confirmation
     try {
       const library = await Library.findById(booking.libraryId);
       await NotificationService.sendBookingConfirmation(req.user._id, {
-        type: 'seat',
+        type: booking.type,
         libraryName: library?.name || 'Library',
         date: new Date(booking.date).toLocaleDateString(),
         bookingId: booking._id
@@ -90,7 +169,7 @@ router.post('/bookings', auth, async (req, res) => {
 // Cancel booking
 router.put('/bookings/:id/cancel', auth, async (req, res) => {
   try {
-    const booking = await Booking.findOne({ 
+    let booking = await Booking.findOne({ 
       _id: req.params.id, 
       userId: req.user._id 
     });
@@ -103,10 +182,50 @@ router.put('/bookings/:id/cancel', auth, async (req, res) => {
       return res.status(400).json({ message: 'Booking already cancelled' });
     }
     
-    booking.status = 'cancelled';
-    await booking.save();
+    let fine;
+    if (booking.type === 'book') {
+      // Puts the copy back (or hands it to the waitlist) exactly once and
+      // charges any late fee, as a return would
+      const result = await BookLoanService.returnBook(booking._id, {
+        userId: req.user._id,
+        status: 'cancelled'
+      });
+      if (!result.success) {
+        return res.status(400).json({ message: BookLoanService.getReasonMessage(result.reason) });
+      }
+      booking = result.booking;
+      fine = result.fine;
+    } else {
+      booking.status = 'cancelled';
+      await booking.save();
+    }
+    
+    if (booking.type === 'seat') {
+      await SeatReservationService.releaseBooking(booking._id);
+    }
+    
+    publishBookingEvent('booking.cancelled', booking, 'released');
+    
+    res.json({ message: 'Booking cancelled successfully', booking, fine });
+  } catch (error) {
+    res.status(500).json({ message: 'Server error', error: error.message });
+  }
+});
+
+// Return a borrowed book
+router.put('/bookings/:id/return', auth, async (req, res) => {
+  try {
+    const result = await BookLoanService.returnBook(req.params.id, { userId: req.user._id });
+    
+    if (!result.success) {
+      return res.status(result.reason === 'not_found' ? 404 : 400).json({
+        message: result.reason === 'not_found' ? 'Booking not found' : BookLoanService.getReasonMessage(result.reason)
+      });
+    }
+    
+    publishBookingEvent('booking.returned', result.booking);
     
-    res.json({ message: 'Booking cancelled successfully', booking });
+    res.json({ message: 'Book returned successfully', booking: result.booking, fine: result.fine });
   } catch (error) {
     res.status(500).json({ message: 'Server error', error: error.message });
   }
@@ -18,6 +18,11 @@ const { securityHeaders, generalLimiter, sanitizeInput } = require('./middleware
 const databaseSecurityService = require('./services/security/databaseSecurityService');
 const securityMonitorService = require('./services/security/securityMonitorService');
 const configService = require('./services/security/configService');
+const passwordCostService = require('./services/security/passwordCostService');
+const encryptionMigrationService = require('./services/security/encryptionMigrationService');
+const auditTrailService = require('./services/security/auditTrailService');
+const apiKeyUsageService = require('./services/security/apiKeyUsageService');
+const BookLoanService = require('./services/bookLoanService');
 
 require('dotenv').config();
 
@@ -36,6 +41,7 @@ const notificationsRoutes = require('./routes/notifications');
 const securityRoutes = require('./routes/security');
 const apiKeysRoutes = require('./routes/apiKeys');
 const privacyRoutes = require('./routes/privacy');
+const streamRoutes = require('./routes/stream');
 
 const app = express();
 
@@ -73,7 +79,7 @@ app.use(cors({
   credentials: true,
   methods: ['GET', 'POST', 'PUT', 'DELETE', 'OPTIONS'],
   allowedHeaders: ['Content-Type', 'Authorization', 'Cache-Control', 'X-Refresh-Token'],
-  exposedHeaders: ['Content-Length', 'Content-Type', 'X-RateLimit-Limit', 'X-RateLimit-Remaining', 'X-RateLimit-Reset']
+  exposedHeaders: ['Content-Length', 'Content-Type', 'X-RateLimit-Limit', 'X-RateLimit-Remaining', 'X-RateLimit-Reset', 'X-Total-Count', 'X-Next-Cursor']
 }));
 
 // Simple static file serving (backup method)
@@ -170,6 +176,7 @@ app.use('/api/notifications', notificationsRoutes);
 app.use('/api/security', securityRoutes);
 app.use('/api/api-keys', apiKeysRoutes);
 app.use('/api/privacy', privacyRoutes);
+app.use('/api/stream', streamRoutes);
 
 // Initialize security and database
 const initializeServer = async () => {
@@ -181,6 +188,20 @@ const initializeServer = async () => {
     await databaseSecurityService.initializeSecureConnection();
     console.log('Secure MongoDB connection established');
     
+    // Pick the bcrypt cost for this host; runs on the hashing pool in the
+    // background so startup does not wait for it
+    passwordCostService.autotune();
+    
+    // Re-encrypt field ciphertext still in the legacy JSON format or under a
+    // previous key, and backfill blind indexes, a paced batch at a time.
+    // Resumes from its checkpoint; only one instance runs it at a time
+    if (process.env.ENCRYPTION_MIGRATION_ENABLED !== 'false') {
+      encryptionMigrationService.start();
+    }
+    
+    // Flag book loans past their return date as overdue
+    BookLoanService.startOverdueSweep();
+    
     // Log server startup
     // await securityMonitorService.logSecurityEvent(
     //   'server_startup',
@@ -195,14 +216,37 @@ const initializeServer = async () => {
     // );
     
     const PORT = process.env.PORT || 5000;
-    app.listen(PORT, () => {
+    const server = app.listen(PORT, () => {
       console.log(`Server running on port ${PORT} with enhanced security`);
     });
+    
+    process.once('SIGTERM', () => shutdown(server, 'SIGTERM'));
+    process.once('SIGINT', () => shutdown(server, 'SIGINT'));
   } catch (error) {
     console.error('Server initialization error:', error);
     process.exit(1);
   }
 };
 
+// Stop taking requests, then write out everything still buffered in memory
+// before exiting: queued audit entries (under the 'interval' and 'none' fsync
+// policies) and API key usage not yet flushed to Mongo would otherwise be lost
+const shutdown = async (server, signal) => {
+  console.log(`${signal} received, shutting down`);
+  server.close();
+  
+  try {
+    BookLoanService.stopOverdueSweep();
+    await encryptionMigrationService.stop();
+    await apiKeyUsageService.close();
+    await auditTrailService.close();
+    await mongoose.connection.close();
+  } catch (error) {
+    console.error('Shutdown error:', error);
+    process.exit(1);
+  }
+  process.exit(0);
+};
+
 // Start server
 initializeServer();
\ No newline at end of file
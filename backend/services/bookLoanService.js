@@ -0,0 +1,299 @@
+const Book = require('../models/Book');
+const Booking = require('../models/Booking');
+const BookWaitlist = require('../models/BookWaitlist');
+const NotificationService = require('./notificationService');
+
+const DAY_MS = 24 * 60 * 60 * 1000;
+const DUPLICATE_KEY_ERROR = 11000;
+const OVERDUE_SWEEP_MS = parseInt(process.env.BOOK_OVERDUE_SWEEP_MS, 10) || 15 * 60 * 1000;
+// Loans that still hold a copy
+const OPEN_LOAN_STATUSES = ['pending', 'confirmed', 'overdue'];
+
+const REASON_MESSAGES = {
+  not_found: 'Book not found',
+  unavailable: 'No copies available',
+  waitlisted: 'Copies are reserved for the waitlist',
+  available: 'Copies are available to borrow',
+  already_waiting: 'Already on the waitlist',
+  not_open: 'Book is not on loan',
+  invalid_copies: 'Total copies must be a whole number of zero or more',
+  copies_on_loan: 'Copies that are out on loan cannot be removed'
+};
+
+let overdueTimer = null;
+
+class BookLoanService {
+  static getReasonMessage(reason) {
+    return REASON_MESSAGES[reason] || 'Request failed';
+  }
+
+  // Take one copy off the shelf. The availableCopies guard and the $inc run
+  // as one document update, so concurrent borrows can never oversell.
+  static takeCopy(bookId) {
+    return Book.findOneAndUpdate(
+      { _id: bookId, isActive: true, availableCopies: { $gt: 0 } },
+      { $inc: { availableCopies: -1 } },
+      { new: true, projection: 'title libraryId borrowPolicy availableCopies' }
+    ).lean();
+  }
+
+  // Put one copy back, never above totalCopies
+  static putCopyBack(bookId) {
+    return Book.updateOne(
+      { _id: bookId, $expr: { $lt: ['$availableCopies', '$totalCopies'] } },
+      { $inc: { availableCopies: 1 } }
+    );
+  }
+
+  // Loans always start now, on the server clock; a client-chosen date could
+  // push the return date out of reach of the overdue sweep and the fine
+  static createLoan(book, userId) {
+    const borrowedAt = new Date();
+    const maxDays = book.borrowPolicy?.maxDays || 14;
+
+    return Booking.create({
+      userId,
+      libraryId: book.libraryId,
+      type: 'book',
+      bookId: book._id,
+      date: borrowedAt,
+      borrowDate: borrowedAt,
+      returnDate: new Date(borrowedAt.getTime() + maxDays * DAY_MS),
+      amount: book.borrowPolicy?.reservationFee || 0,
+      status: 'confirmed',
+      copyTaken: true
+    });
+  }
+
+  /**
+   * Borrow one copy of a book.
+   * The copy is taken first with a guarded $inc; if the loan cannot be
+   * stored the copy is put back, so a failed borrow never leaks a copy.
+   * Standalone deployments have no multi-document transactions, hence the
+   * compensating update rather than a session.
+   * @returns {Object} { success, booking, reason }
+   */
+  static async borrow({ bookId, userId }) {
+    // Returned copies belong to the queue first
+    if (await BookWaitlist.exists({ bookId, status: 'waiting' })) {
+      return { success: false, reason: 'waitlisted' };
+    }
+
+    const book = await this.takeCopy(bookId);
+    if (!book) {
+      const exists = await Book.exists({ _id: bookId, isActive: true });
+      return { success: false, reason: exists ? 'unavailable' : 'not_found' };
+    }
+
+    try {
+      const booking = await this.createLoan(book, userId);
+      return { success: true, booking };
+    } catch (error) {
+      await this.putCopyBack(bookId);
+      throw error;
+    }
+  }
+
+  /**
+   * Close an open loan (returned or cancelled) and pass the copy on.
+   * The status guard on the update makes a repeated return a no-op, so a
+   * copy is only ever put back once, and only by loans that took one.
+   * Cancelling a late loan still charges
+   * the late fee, since the copy was held past its return date either way.
+   * @returns {Object} { success, booking, fine, reason }
+   */
+  static async returnBook(bookingId, { userId, status = 'completed', returnedAt = new Date() } = {}) {
+    const filter = { _id: bookingId, type: 'book' };
+    if (userId) filter.userId = userId;
+
+    const loan = await Booking.findOne(filter).lean();
+    if (!loan) return { success: false, reason: 'not_found' };
+    if (!OPEN_LOAN_STATUSES.includes(loan.status)) return { success: false, reason: 'not_open' };
+
+    const book = await Book.findById(loan.bookId).select('borrowPolicy').lean();
+    const fine = this.calculateFine(loan, book, returnedAt);
+
+    const booking = await Booking.findOneAndUpdate(
+      { _id: loan._id, status: { $in: OPEN_LOAN_STATUSES } },
+      { $set: { status, actualReturnDate: returnedAt, fine } },
+      { new: true }
+    );
+    if (!booking) return { success: false, reason: 'not_open' };
+
+    if (loan.copyTaken) {
+      await this.putCopyBack(loan.bookId);
+      await this.serveWaitlist(loan.bookId);
+    }
+    return { success: true, booking, fine };
+  }
+
+  /**
+   * Change how many copies a library owns.
+   * Stock moves with a paired $inc on totalCopies and availableCopies, so
+   * borrows and returns that land meanwhile are kept, and the guard on
+   * availableCopies means copies out on loan can never be removed.
+   * @returns {Object} { success, book, reason }
+   */
+  static async setTotalCopies(bookId, totalCopies) {
+    if (!Number.isInteger(totalCopies) || totalCopies < 0) {
+      return { success: false, reason: 'invalid_copies' };
+    }
+
+    // Retry only when another stock change moved totalCopies under us
+    for (let attempt = 0; attempt < 3; attempt++) {
+      const current = await Book.findById(bookId).select('totalCopies availableCopies').lean();
+      if (!current) return { success: false, reason: 'not_found' };
+
+      const delta = totalCopies - current.totalCopies;
+      if (delta === 0) return { success: true, book: current };
+
+      const filter = { _id: bookId, totalCopies: current.totalCopies };
+      if (delta < 0) filter.availableCopies = { $gte: -delta };
+
+      const book = await Book.findOneAndUpdate(
+        filter,
+        { $inc: { totalCopies: delta, availableCopies: delta } },
+        { new: true }
+      ).lean();
+
+      if (book) {
+        if (delta > 0) await this.serveWaitlist(bookId);
+        return { success: true, book };
+      }
+
+      const latest = await Book.findById(bookId).select('totalCopies').lean();
+      if (!latest) return { success: false, reason: 'not_found' };
+      if (latest.totalCopies === current.totalCopies) {
+        return { success: false, reason: 'copies_on_loan' };
+      }
+    }
+
+    return { success: false, reason: 'copies_on_loan' };
+  }
+
+  // Late fee: whole days past the return date times the book's daily fine
+  static calculateFine(loan, book, returnedAt) {
+    if (!loan.returnDate || returnedAt <= loan.returnDate) return 0;
+    const daysLate = Math.ceil((returnedAt - loan.returnDate) / DAY_MS);
+    return daysLate * (book?.borrowPolicy?.fine ?? 0);
+  }
+
+  // Queue a user for a book whose copies are all out
+  static async joinWaitlist(bookId, userId) {
+    const book = await Book.findOne({ _id: bookId, isActive: true }).select('availableCopies').lean();
+    if (!book) return { success: false, reason: 'not_found' };
+
+    if (book.availableCopies > 0 && !(await BookWaitlist.exists({ bookId, status: 'waiting' }))) {
+      return { success: false, reason: 'available' };
+    }
+
+    let entry;
+    try {
+      entry = await BookWaitlist.create({ bookId, userId });
+    } catch (error) {
+      if (error.code === DUPLICATE_KEY_ERROR) return { success: false, reason: 'already_waiting' };
+      throw error;
+    }
+
+    // A copy may have come back while the entry was being written
+    await this.serveWaitlist(bookId);
+
+    const position = await BookWaitlist.countDocuments({
+      bookId,
+      status: 'waiting',
+      createdAt: { $lte: entry.createdAt }
+    });
+    return { success: true, entry, position };
+  }
+
+  static async leaveWaitlist(bookId, userId) {
+    const result = await BookWaitlist.updateOne(
+      { bookId, userId, status: 'waiting' },
+      { $set: { status: 'cancelled' } }
+    );
+    return result.modifiedCount > 0;
+  }
+
+  /**
+   * Hand shelf copies to waiting users, oldest first.
+   * Each hand-off takes its copy with the same guarded $inc as a borrow, and
+   * a copy with nobody left to claim it goes straight back on the shelf.
+   * @returns {number} Loans created
+   */
+  static async serveWaitlist(bookId) {
+    let served = 0;
+
+    while (await BookWaitlist.exists({ bookId, status: 'waiting' })) {
+      const book = await this.takeCopy(bookId);
+      if (!book) break;
+
+      const entry = await BookWaitlist.findOneAndUpdate(
+        { bookId, status: 'waiting' },
+        { $set: { status: 'fulfilled', fulfilledAt: new Date() } },
+        { sort: { createdAt: 1 }, new: true }
+      );
+      if (!entry) {
+        await this.putCopyBack(bookId);
+        break;
+      }
+
+      let booking;
+      try {
+        booking = await this.createLoan(book, entry.userId);
+      } catch (error) {
+        await this.putCopyBack(bookId);
+        await BookWaitlist.updateOne(
+          { _id: entry._id },
+          { $set: { status: 'waiting' }, $unset: { fulfilledAt: 1 } }
+        ).catch(() => {});
+        console.error('BookLoanService: Failed to serve waitlist:', { bookId: String(bookId), error: error.message });
+        break;
+      }
+
+      await BookWaitlist.updateOne({ _id: entry._id }, { $set: { bookingId: booking._id } });
+      served++;
+
+      NotificationService.sendToUsers([entry.userId], {
+        title: 'Your book is ready 📚',
+        message: `"${book.title}" is now on loan to you until ${booking.returnDate.toLocaleDateString()}`,
+        type: 'booking',
+        priority: 'high',
+        relatedId: booking._id,
+        relatedModel: 'Booking',
+        createdBy: entry.userId
+      }).catch(error => console.log('Notification creation failed:', error.message));
+    }
+
+    return served;
+  }
+
+  // Flag open loans that are past their return date
+  static async markOverdue(now = new Date()) {
+    const result = await Booking.updateMany(
+      { type: 'book', status: { $in: ['pending', 'confirmed'] }, returnDate: { $lt: now } },
+      { $set: { status: 'overdue' } }
+    );
+    return result.modifiedCount || 0;
+  }
+
+  // Started once at server startup; catches up on loans that fell due
+  // while no instance was running, then sweeps on an interval
+  static startOverdueSweep() {
+    if (overdueTimer) return;
+    const sweep = () => {
+      this.markOverdue().catch(error => console.error('BookLoanService: Overdue sweep failed:', error.message));
+    };
+    overdueTimer = setInterval(sweep, OVERDUE_SWEEP_MS);
+    sweep();
+    if (overdueTimer.unref) overdueTimer.unref();
+  }
+
+  static stopOverdueSweep() {
+    if (overdueTimer) {
+      clearInterval(overdueTimer);
+      overdueTimer = null;
+    }
+  }
+}
+
+module.exports = BookLoanService;
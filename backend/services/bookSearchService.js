@@ -0,0 +1,92 @@
+const mongoose = require('mongoose');
+const Book = require('../models/Book');
+
+const DEFAULT_LIMIT = 20;
+const MAX_LIMIT = 100;
+const MAX_SUGGESTIONS = 20;
+
+const escapeRegex = (text) => text.replace(/[.*+?^${}()|[\]\\]/g, '\\$&');
+
+class BookSearchService {
+  // Message for filter parameters that cannot be applied, or null
+  static validateFilter({ libraryId } = {}) {
+    if (libraryId && !mongoose.Types.ObjectId.isValid(libraryId)) {
+      return 'Invalid library id';
+    }
+    return null;
+  }
+
+  // Shared filters for catalog queries
+  static buildFilter({ libraryId, genre, language } = {}) {
+    // Dropping a bad library id would widen the search to every library
+    const error = this.validateFilter({ libraryId });
+    if (error) throw new Error(error);
+
+    const filter = { isActive: true };
+    if (libraryId) {
+      filter.libraryId = new mongoose.Types.ObjectId(libraryId);
+    }
+    if (genre) filter.genre = genre;
+    if (language) filter.language = language;
+    return filter;
+  }
+
+  // Full-text match on the weighted book_search_text index
+  static buildTextFilter(query) {
+    return { $text: { $search: String(query) } };
+  }
+
+  /**
+   * Ranked catalog search
+   * @param {Object} options - { q, libraryId, genre, language, page, limit }
+   * @returns {Object} { books, total, page, limit }
+   */
+  static async search({ q, libraryId, genre, language, page = 1, limit = DEFAULT_LIMIT }) {
+    const pageNumber = Math.max(parseInt(page, 10) || 1, 1);
+    const pageSize = Math.min(Math.max(parseInt(limit, 10) || DEFAULT_LIMIT, 1), MAX_LIMIT);
+    const filter = {
+      ...this.buildFilter({ libraryId, genre, language }),
+      ...this.buildTextFilter(q)
+    };
+
+    const [books, total] = await Promise.all([
+      Book.find(filter, { score: { $meta: 'textScore' } })
+        .sort({ score: { $meta: 'textScore' }, _id: 1 })
+        .skip((pageNumber - 1) * pageSize)
+        .limit(pageSize)
+        .populate('libraryId', 'name area city'),
+      Book.countDocuments(filter)
+    ]);
+
+    return { books, total, page: pageNumber, limit: pageSize };
+  }
+
+  /**
+   * Prefix suggestions for a partially typed query.
+   * Every complete word must match a title/author word; the last word only
+   * has to be a prefix, which an anchored regex serves from the index.
+   * @param {string} prefix - Text typed so far
+   * @param {Object} options - { libraryId, genre, language, limit }
+   * @returns {Array} Matching books (title, author, libraryId)
+   */
+  static async autocomplete(prefix, { libraryId, genre, language, limit = 10 } = {}) {
+    const tokens = Book.tokenize(prefix);
+    if (tokens.length === 0) return [];
+
+    const last = tokens.pop();
+    const filter = {
+      ...this.buildFilter({ libraryId, genre, language }),
+      $and: [{ searchPrefixes: new RegExp('^' + escapeRegex(last)) }]
+    };
+    if (tokens.length > 0) {
+      filter.$and.push({ searchPrefixes: { $all: tokens } });
+    }
+
+    return Book.find(filter)
+      .select('title author libraryId')
+      .limit(Math.min(Math.max(parseInt(limit, 10) || 10, 1), MAX_SUGGESTIONS))
+      .lean();
+  }
+}
+
+module.exports = BookSearchService;
@@ -0,0 +1,252 @@
+/**
+ * Notification Counter Service
+ * Per-user unread notification counters cached in Redis so badge polls are
+ * a single GET. Counters are filled from NotificationInbox on a miss,
+ * adjusted in place on fan-out, read and delete, and periodically
+ * reconciled against Mongo to repair drift (for example inbox records
+ * removed by their TTL index).
+ *
+ * Counts taken from Mongo are written back only if no adjustment landed
+ * since the count started: each counter has a version key that adjustments
+ * bump, and fills and reconciliation compare it before writing. A count
+ * that lost the race is dropped and the next read recounts.
+ */
+
+const mongoose = require('mongoose');
+const NotificationInbox = require('../models/NotificationInbox');
+const redisService = require('./security/redisService');
+const { REDIS_PREFIXES } = require('./security/utils/constants');
+const { ADJUST_COUNTERS_IF_PRESENT, SET_COUNTERS_IF_UNCHANGED } = require('./security/utils/redisScripts');
+const { sanitizeForLogging } = require('./security/utils/securityHelpers');
+
+// Keys per script call when adjusting a fan-out batch
+const ADJUST_BATCH_SIZE = 1000;
+
+class NotificationCounterService {
+  constructor() {
+    this.ttlSeconds = parseInt(process.env.NOTIFICATION_UNREAD_TTL_SECONDS, 10) || 60 * 60;
+    this.reconcileIntervalMs = parseInt(process.env.NOTIFICATION_UNREAD_RECONCILE_MS, 10) || 10 * 60 * 1000;
+    this.reconcileBatchSize = 500;
+    this.reconcileTimer = null;
+  }
+
+  /**
+   * Redis key for a user's counter
+   * @param {string} userId - User ID
+   * @returns {string} Counter key
+   */
+  key(userId) {
+    return `${REDIS_PREFIXES.NOTIFICATION_UNREAD}${userId}`;
+  }
+
+  /**
+   * Redis key for the version of a user's counter
+   * @param {string} userId - User ID
+   * @returns {string} Version key
+   */
+  versionKey(userId) {
+    return `${REDIS_PREFIXES.NOTIFICATION_UNREAD_VERSION}${userId}`;
+  }
+
+  /**
+   * Whether Redis can serve counters
+   * @returns {boolean} True if ready
+   */
+  isAvailable() {
+    return typeof redisService.isReady === 'function' && !!redisService.isReady();
+  }
+
+  /**
+   * Get a user's unread count
+   * Falls back to counting inbox records when Redis is unavailable.
+   * @param {string} userId - User ID
+   * @returns {number} Unread notifications
+   */
+  async getUnreadCount(userId) {
+    if (!this.isAvailable()) {
+      return this.countUnread(userId);
+    }
+
+    this.startReconciliation();
+    const key = this.key(userId);
+    const versionKey = this.versionKey(userId);
+    let version;
+
+    try {
+      const cached = await redisService.client.get(key);
+      if (cached !== null) {
+        return Number(cached);
+      }
+      // Register the fill before counting so adjustments from here on bump
+      // the version and the count below is not cached over them
+      await redisService.client.set(versionKey, 0, { NX: true, EX: this.ttlSeconds });
+      version = (await redisService.client.get(versionKey)) || '0';
+    } catch (error) {
+      console.error('NotificationCounterService: Failed to read counter:', sanitizeForLogging({
+        userId,
+        error: error.message
+      }));
+      return this.countUnread(userId);
+    }
+
+    const count = await this.countUnread(userId);
+    try {
+      await this.writeCounts([userId], [count], [version]);
+    } catch (error) {
+      console.error('NotificationCounterService: Failed to fill counter:', sanitizeForLogging({
+        userId,
+        error: error.message
+      }));
+    }
+    return count;
+  }
+
+  /**
+   * Count unread inbox records in Mongo
+   * @param {string} userId - User ID
+   * @returns {number} Unread notifications
+   */
+  async countUnread(userId) {
+    return NotificationInbox.countDocuments({ userId, read: false });
+  }
+
+  /**
+   * Write counted values unless their counter was adjusted since
+   * @param {Array<string>} userIds - User IDs
+   * @param {Array<number>} counts - Counted unread notifications
+   * @param {Array<string>} versions - Counter versions read before counting
+   * @returns {number} Counters written
+   */
+  async writeCounts(userIds, counts, versions) {
+    const keys = userIds.map(userId => this.key(userId))
+      .concat(userIds.map(userId => this.versionKey(userId)));
+    return redisService.runScript(SET_COUNTERS_IF_UNCHANGED, keys, [this.ttlSeconds, ...counts, ...versions]);
+  }
+
+  /**
+   * Adjust the cached counters of several users
+   * Users without a cached counter are skipped; their next read recounts.
+   * Failures are logged and left for reconciliation.
+   * @param {Array<string>} userIds - User IDs
+   * @param {number} delta - Amount to add (negative to subtract)
+   */
+  async adjust(userIds, delta) {
+    if (userIds.length === 0 || !this.isAvailable()) {
+      return;
+    }
+
+    try {
+      for (let i = 0; i < userIds.length; i += ADJUST_BATCH_SIZE) {
+        const batch = userIds.slice(i, i + ADJUST_BATCH_SIZE);
+        const keys = batch.map(userId => this.key(userId))
+          .concat(batch.map(userId => this.versionKey(userId)));
+        await redisService.runScript(ADJUST_COUNTERS_IF_PRESENT, keys, [delta, this.ttlSeconds]);
+      }
+    } catch (error) {
+      console.error('NotificationCounterService: Failed to adjust counters:', sanitizeForLogging({
+        users: userIds.length,
+        delta,
+        error: error.message
+      }));
+    }
+  }
+
+  /**
+   * Recount every cached counter from Mongo
+   * One aggregation per batch of cached users. Counters adjusted while the
+   * batch was being counted are left alone.
+   * @returns {Object} { checked, corrected }
+   */
+  async reconcile() {
+    if (!this.isAvailable()) {
+      return { checked: 0, corrected: 0 };
+    }
+
+    let checked = 0;
+    let corrected = 0;
+    let batch = [];
+
+    const reconcileBatch = async (keys) => {
+      const userIds = keys.map(key => key.slice(REDIS_PREFIXES.NOTIFICATION_UNREAD.length));
+      // Versions are read before counting so later adjustments are detected
+      const values = await redisService.client.mGet(keys.concat(userIds.map(userId => this.versionKey(userId))));
+      const cached = values.slice(0, keys.length);
+      const versions = values.slice(keys.length);
+      const counts = await NotificationInbox.aggregate([
+        { $match: { userId: { $in: userIds.map(toObjectId) }, read: false } },
+        { $group: { _id: '$userId', count: { $sum: 1 } } }
+      ]);
+
+      const actual = new Map(counts.map(({ _id, count }) => [_id.toString(), count]));
+      const drifted = { userIds: [], counts: [], versions: [] };
+      userIds.forEach((userId, index) => {
+        const count = actual.get(userId) || 0;
+        if (cached[index] !== null && Number(cached[index]) !== count) {
+          drifted.userIds.push(userId);
+          drifted.counts.push(count);
+          drifted.versions.push(versions[index] || '0');
+        }
+      });
+
+      checked += keys.length;
+      if (drifted.userIds.length > 0) {
+        corrected += await this.writeCounts(drifted.userIds, drifted.counts, drifted.versions);
+      }
+    };
+
+    try {
+      for await (const key of redisService.client.scanIterator({
+        MATCH: `${REDIS_PREFIXES.NOTIFICATION_UNREAD}*`,
+        COUNT: this.reconcileBatchSize
+      })) {
+        batch.push(key);
+        if (batch.length >= this.reconcileBatchSize) {
+          await reconcileBatch(batch);
+          batch = [];
+        }
+      }
+      if (batch.length > 0) {
+        await reconcileBatch(batch);
+      }
+    } catch (error) {
+      console.error('NotificationCounterService: Reconciliation failed:', sanitizeForLogging({
+        error: error.message
+      }));
+    }
+
+    return { checked, corrected };
+  }
+
+  /**
+   * Start periodic reconciliation if it is not already running
+   */
+  startReconciliation() {
+    if (this.reconcileTimer) return;
+
+    this.reconcileTimer = setInterval(() => {
+      this.reconcile();
+    }, this.reconcileIntervalMs);
+    if (this.reconcileTimer.unref) this.reconcileTimer.unref();
+  }
+
+  /**
+   * Stop periodic reconciliation
+   */
+  stopReconciliation() {
+    if (this.reconcileTimer) {
+      clearInterval(this.reconcileTimer);
+      this.reconcileTimer = null;
+    }
+  }
+}
+
+/**
+ * Convert a user id string to an ObjectId for aggregation matching
+ * @param {string} userId - User ID
+ * @returns {Object} ObjectId, or the input if it is not a valid id
+ */
+function toObjectId(userId) {
+  return mongoose.Types.ObjectId.isValid(userId) ? new mongoose.Types.ObjectId(userId) : userId;
+}
+
+module.exports = new NotificationCounterService();
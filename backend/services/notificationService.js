@@ -1,31 +1,156 @@
 const Notification = require('../models/Notification');
+const NotificationInbox = require('../models/NotificationInbox');
 const User = require('../models/User');
+const notificationCounterService = require('./notificationCounterService');
+const streamService = require('./streamService');
+
+// Inbox records per insertMany, and how many batches may be in flight at once
+const FANOUT_BATCH_SIZE = parseInt(process.env.NOTIFICATION_FANOUT_BATCH_SIZE) || 1000;
+const FANOUT_CONCURRENCY = parseInt(process.env.NOTIFICATION_FANOUT_CONCURRENCY) || 4;
 
 class NotificationService {
+  // Sends are retryable when notificationData carries an _id: a retry after a
+  // failure part-way through picks up the stored notification and only writes
+  // the inbox records that are still missing.
+
   // Send notification to specific users
   static async sendToUsers(userIds, notificationData) {
-    const recipients = userIds.map(userId => ({ userId }));
-    
-    const notification = await Notification.createNotification({
-      ...notificationData,
-      recipients
-    });
-    
+    const uniqueIds = [...new Set(userIds.map(userId => userId.toString()))];
+    const notification = await this.fanOut(uniqueIds, notificationData);
+    if (notification) {
+      streamService.publish('notification', this.toStreamEvent(notification), { userIds: uniqueIds });
+    }
     return notification;
   }
 
-  // Send notification to all users of a specific role
+  // Send notification to all users of a specific role ('all' for every active user)
   static async sendToRole(role, notificationData, createdBy) {
-    const users = await User.find({ role, isActive: true }).select('_id');
-    const userIds = users.map(user => user._id);
-    
-    if (userIds.length === 0) return null;
-    
-    return this.sendToUsers(userIds, {
+    const query = role === 'all' ? { isActive: true } : { role, isActive: true };
+
+    // Stream ids so memory stays bounded however many users match
+    const cursor = User.find(query)
+      .select('_id')
+      .lean()
+      .cursor({ batchSize: FANOUT_BATCH_SIZE });
+
+    const notification = await this.fanOut(cursor, {
       ...notificationData,
       targetRole: role,
       createdBy
     });
+    if (notification) {
+      streamService.publish('notification', this.toStreamEvent(notification), { role });
+    }
+    return notification;
+  }
+
+  // Fields pushed to connected clients; the full record stays behind the API
+  static toStreamEvent(notification) {
+    return {
+      id: notification._id,
+      title: notification.title,
+      message: notification.message,
+      type: notification.type,
+      priority: notification.priority,
+      createdAt: notification.createdAt
+    };
+  }
+
+  // Store the notification once and write one small inbox record per recipient.
+  // Returns null if there were no recipients.
+  static async fanOut(recipients, notificationData) {
+    let notification = null;
+    let recipientCount = 0;
+    let batch = [];
+    let failure = null;
+    const inFlight = new Set();
+
+    // A failed batch stops the send once the writes already started settle;
+    // it is caught here so a write that settles early is not lost from the set
+    const flush = async (userIds) => {
+      const write = this.insertInboxBatch(notification, userIds)
+        .catch((error) => {
+          failure = failure || error;
+        })
+        .finally(() => inFlight.delete(write));
+      inFlight.add(write);
+      if (inFlight.size >= FANOUT_CONCURRENCY) {
+        await Promise.race(inFlight);
+      }
+      if (failure) {
+        await Promise.all(inFlight);
+        throw failure;
+      }
+    };
+
+    for await (const recipient of recipients) {
+      if (!notification) {
+        notification = await this.createOrResume(notificationData);
+      }
+
+      batch.push(recipient._id || recipient);
+      recipientCount++;
+      if (batch.length >= FANOUT_BATCH_SIZE) {
+        await flush(batch);
+        batch = [];
+      }
+    }
+
+    if (!notification) return null;
+
+    if (batch.length > 0) {
+      await flush(batch);
+    }
+    await Promise.all(inFlight);
+    if (failure) throw failure;
+
+    notification.recipientCount = recipientCount;
+    await Notification.updateOne({ _id: notification._id }, { $set: { recipientCount } });
+    return notification;
+  }
+
+  // Store the notification, or return the one an earlier attempt with the
+  // same caller-supplied _id already stored
+  static async createOrResume(notificationData) {
+    if (notificationData._id) {
+      const existing = await Notification.findById(notificationData._id);
+      if (existing) return existing;
+    }
+
+    try {
+      return await Notification.createNotification(notificationData);
+    } catch (error) {
+      // A concurrent retry stored it first
+      if (error.code !== 11000 || !notificationData._id) throw error;
+      return Notification.findById(notificationData._id);
+    }
+  }
+
+  // Insert one batch of inbox records; records already present (a retried
+  // send with the same _id) are skipped rather than failing the batch
+  static async insertInboxBatch(notification, userIds) {
+    const docs = userIds.map(userId => ({
+      notificationId: notification._id,
+      userId,
+      read: false,
+      createdAt: notification.createdAt,
+      expiresAt: notification.expiresAt
+    }));
+
+    let inserted = userIds;
+    try {
+      await NotificationInbox.insertMany(docs, { ordered: false, lean: true });
+    } catch (error) {
+      const writeErrors = error.writeErrors || [];
+      if (writeErrors.length === 0 || writeErrors.some(writeError => writeError.code !== 11000)) {
+        throw error;
+      }
+      const duplicates = new Set(writeErrors.map(writeError => writeError.index));
+      inserted = userIds.filter((userId, index) => !duplicates.has(index));
+    }
+
+    await notificationCounterService.adjust(inserted, 1);
+    return inserted.length;
   }
 
   // Send booking confirmation
@@ -73,8 +198,9 @@ class NotificationService {
   }
 
   // Send admin notification
-  static async sendAdminNotification(message, priority = 'medium', createdBy) {
+  static async sendAdminNotification(message, priority = 'medium', createdBy, notificationId) {
     return this.sendToRole('admin', {
+      ...(notificationId && { _id: notificationId }),
       title: 'Admin Notification 🔔',
       message,
       type: 'admin',
@@ -83,8 +209,9 @@ class NotificationService {
   }
 
   // Send super admin notification
-  static async sendSuperAdminNotification(message, priority = 'high', createdBy) {
+  static async sendSuperAdminNotification(message, priority = 'high', createdBy, notificationId) {
     return this.sendToRole('superadmin', {
+      ...(notificationId && { _id: notificationId }),
       title: 'Super Admin Alert 👑',
       message,
       type: 'system',
@@ -95,47 +222,99 @@ class NotificationService {
   // Get notifications for user
   static async getUserNotifications(userId, page = 1, limit = 20) {
     const skip = (page - 1) * limit;
-    
+
+    const entries = await NotificationInbox.find({ userId })
+      .sort({ createdAt: -1 })
+      .skip(skip)
+      .limit(limit)
+      .lean();
+
+    if (entries.length === 0) return [];
+
     const notifications = await Notification.find({
-      'recipients.userId': userId,
+      _id: { $in: entries.map(entry => entry.notificationId) },
       isActive: true
     })
+    .select('-recipients')
     .populate('createdBy', 'name role')
-    .sort({ createdAt: -1 })
-    .skip(skip)
-    .limit(limit);
-
-    return notifications.map(notification => {
-      const recipient = notification.recipients.find(r => r.userId.toString() === userId.toString());
-      return {
-        ...notification.toObject(),
-        read: recipient?.read || false,
-        readAt: recipient?.readAt
-      };
-    });
+    .lean();
+
+    const notificationsById = new Map(
+      notifications.map(notification => [notification._id.toString(), notification])
+    );
+
+    return entries
+      .filter(entry => notificationsById.has(entry.notificationId.toString()))
+      .map(entry => ({
+        ...notificationsById.get(entry.notificationId.toString()),
+        read: entry.read,
+        readAt: entry.readAt
+      }));
   }
 
   // Mark notification as read
   static async markAsRead(notificationId, userId) {
-    return Notification.markAsRead(notificationId, userId);
+    const result = await Notification.markAsRead(notificationId, userId);
+    if (result.modifiedCount > 0) {
+      await notificationCounterService.adjust([userId], -1);
+    }
+    return result;
+  }
+
+  // Remove a notification from one user's inbox
+  static async deleteForUser(notificationId, userId) {
+    const entry = await NotificationInbox.findOneAndDelete({ notificationId, userId });
+    if (entry && !entry.read) {
+      await notificationCounterService.adjust([userId], -1);
+    }
+    return entry;
   }
 
   // Get unread count
   static async getUnreadCount(userId) {
-    const notifications = await Notification.find({
-      'recipients.userId': userId,
-      isActive: true
-    });
-    
-    let unreadCount = 0;
-    notifications.forEach(notification => {
-      const recipient = notification.recipients.find(r => r.userId.toString() === userId.toString());
-      if (!recipient?.read) {
-        unreadCount++;
+    return notificationCounterService.getUnreadCount(userId);
+  }
+
+  // Move read state from embedded recipients arrays into inbox records.
+  // Used by utils/migrateNotificationInbox.js for notifications sent before
+  // the inbox collection existed.
+  static async migrateEmbeddedRecipients() {
+    const cursor = Notification.find({ 'recipients.0': { $exists: true } })
+      .select('recipients createdAt expiresAt')
+      .lean()
+      .cursor();
+
+    let notificationCount = 0;
+    let recipientCount = 0;
+
+    for await (const notification of cursor) {
+      for (let i = 0; i < notification.recipients.length; i += FANOUT_BATCH_SIZE) {
+        const operations = notification.recipients.slice(i, i + FANOUT_BATCH_SIZE).map(recipient => ({
+          updateOne: {
+            filter: { notificationId: notification._id, userId: recipient.userId },
+            update: {
+              $setOnInsert: {
+                read: recipient.read || false,
+                readAt: recipient.readAt,
+                createdAt: notification.createdAt,
+                expiresAt: notification.expiresAt
+              }
+            },
+            upsert: true
+          }
+        }));
+        await NotificationInbox.bulkWrite(operations, { ordered: false });
       }
-    });
-    
-    return unreadCount;
+
+      await Notification.updateOne(
+        { _id: notification._id },
+        { $set: { recipientCount: notification.recipients.length }, $unset: { recipients: 1 } }
+      );
+      notificationCount++;
+      recipientCount += notification.recipients.length;
+    }
+
+    return { notificationCount, recipientCount };
   }
 
   // Create notification when user books a seat
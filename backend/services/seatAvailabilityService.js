@@ -0,0 +1,304 @@
+const crypto = require('crypto');
+const Seat = require('../models/Seat');
+const SeatReservation = require('../models/SeatReservation');
+const redisService = require('./security/redisService');
+const { REDIS_CHANNELS } = require('./security/utils/constants');
+const { sanitizeForLogging } = require('./security/utils/securityHelpers');
+
+const LAYOUT_TTL_MS = 5 * 60 * 1000;
+// Changes are broadcast to every instance; the TTL is only a backstop
+const SLOT_TTL_MS = 60 * 1000;
+const MAX_SLOT_ENTRIES = 5000;
+
+/**
+ * Seat availability bitmaps per (library, date, time slot).
+ * Bit i (most significant bit first) stands for the seat at
+ * row = floor(i / columns) + 1, column = (i % columns) + 1.
+ * Reservations and seat changes are broadcast over Redis pub/sub so other
+ * instances drop their copies at once; cached bitmaps are only served while
+ * that channel is live.
+ */
+class SeatAvailabilityService {
+  constructor() {
+    this.instanceId = crypto.randomUUID();
+    this.layouts = new Map();
+    this.slots = new Map();
+
+    // Bumped on every invalidation so a read that raced one is not cached
+    this.generation = 0;
+
+    this.subscribed = false;
+    this.subscribing = null;
+
+    if (typeof redisService.onReconnect === 'function') {
+      // Broadcasts sent during the outage were missed
+      redisService.onReconnect(() => this.clear());
+    }
+    if (typeof redisService.onSubscriberLost === 'function') {
+      redisService.onSubscriberLost(() => {
+        this.subscribed = false;
+        this.clear();
+      });
+    }
+  }
+
+  static createBitmap(size) {
+    return Buffer.alloc(Math.ceil(size / 8));
+  }
+
+  static setBit(bitmap, index, value) {
+    const byte = index >> 3;
+    const mask = 0x80 >> (index & 7);
+    if (value) {
+      bitmap[byte] |= mask;
+    } else {
+      bitmap[byte] &= ~mask;
+    }
+  }
+
+  static getBit(bitmap, index) {
+    return (bitmap[index >> 3] & (0x80 >> (index & 7))) !== 0;
+  }
+
+  getSlotKey(libraryId, day, slotKey) {
+    return `${libraryId}:${day.toISOString().slice(0, 10)}:${slotKey}`;
+  }
+
+  /**
+   * Whether cached bitmaps may be served
+   * @returns {boolean} True while the invalidation channel is live
+   */
+  isActive() {
+    if (this.subscribed && redisService.isConnected !== false) {
+      return true;
+    }
+    this.ensureSubscribed();
+    return false;
+  }
+
+  /**
+   * Build (or reuse) the seat grid for a library
+   * @param {string} libraryId - Library identifier
+   * @returns {Object} Layout with grid size, seat index lookup and seat/blocked bitmaps
+   */
+  async getLayout(libraryId) {
+    const key = libraryId.toString();
+    const active = this.isActive();
+    const cached = this.layouts.get(key);
+    if (active && cached && cached.expiresAt > Date.now()) {
+      return cached;
+    }
+    const generation = this.generation;
+
+    const seats = await Seat.find({ libraryId, isActive: true })
+      .select('seatNumber position isBlocked -_id')
+      .lean();
+
+    const rows = seats.reduce((max, seat) => Math.max(max, seat.position.row), 0);
+    const columns = seats.reduce((max, seat) => Math.max(max, seat.position.column), 0);
+    const size = rows * columns;
+    const seatBits = SeatAvailabilityService.createBitmap(size);
+    const blockedBits = SeatAvailabilityService.createBitmap(size);
+    const indexBySeat = new Map();
+
+    for (const seat of seats) {
+      const index = (seat.position.row - 1) * columns + (seat.position.column - 1);
+      indexBySeat.set(seat.seatNumber, index);
+      SeatAvailabilityService.setBit(seatBits, index, true);
+      if (seat.isBlocked) {
+        SeatAvailabilityService.setBit(blockedBits, index, true);
+      }
+    }
+
+    const layout = {
+      rows,
+      columns,
+      indexBySeat,
+      seatBits,
+      blockedBits,
+      expiresAt: Date.now() + LAYOUT_TTL_MS
+    };
+    if (active && generation === this.generation) {
+      this.layouts.set(key, layout);
+    }
+    return layout;
+  }
+
+  async getReservedBitmap(libraryId, layout, day, slotKey) {
+    const key = this.getSlotKey(libraryId, day, slotKey);
+    const active = this.isActive();
+    const cached = this.slots.get(key);
+    if (active && cached && cached.expiresAt > Date.now() && cached.layout === layout) {
+      return cached.reservedBits;
+    }
+    const generation = this.generation;
+
+    const reservations = await SeatReservation.find({ libraryId, date: day, slotKey })
+      .select('seatNumber -_id')
+      .lean();
+
+    const reservedBits = SeatAvailabilityService.createBitmap(layout.rows * layout.columns);
+    for (const reservation of reservations) {
+      const index = layout.indexBySeat.get(reservation.seatNumber);
+      if (index !== undefined) {
+        SeatAvailabilityService.setBit(reservedBits, index, true);
+      }
+    }
+
+    if (!active || generation !== this.generation) {
+      return reservedBits;
+    }
+    if (this.slots.size >= MAX_SLOT_ENTRIES) {
+      this.slots.delete(this.slots.keys().next().value);
+    }
+    this.slots.set(key, { layout, reservedBits, expiresAt: Date.now() + SLOT_TTL_MS });
+    return reservedBits;
+  }
+
+  /**
+   * Availability view for a library, day and time slot
+   * @returns {Object} Grid size, base64 seat/available bitmaps and an ETag
+   */
+  async getAvailability(libraryId, day, slotKey) {
+    const layout = await this.getLayout(libraryId);
+    const reservedBits = await this.getReservedBitmap(libraryId, layout, day, slotKey);
+
+    const available = Buffer.alloc(layout.seatBits.length);
+    for (let i = 0; i < available.length; i++) {
+      available[i] = layout.seatBits[i] & ~layout.blockedBits[i] & ~reservedBits[i];
+    }
+
+    const etag = '"' + crypto.createHash('sha1')
+      .update(`${layout.rows}x${layout.columns}:`)
+      .update(layout.seatBits)
+      .update(available)
+      .digest('base64url')
+      .slice(0, 22) + '"';
+
+    return {
+      rows: layout.rows,
+      columns: layout.columns,
+      seats: layout.seatBits.toString('base64'),
+      available: available.toString('base64'),
+      etag
+    };
+  }
+
+  /**
+   * Patch a cached slot bitmap after seats were reserved or released
+   * Other instances drop their copy of the slot and read it again.
+   * @param {boolean} reserved - True when the seats were taken, false when freed
+   */
+  updateSeats(libraryId, day, slotKey, seatNumbers, reserved) {
+    const key = this.getSlotKey(libraryId, day, slotKey);
+    this.generation++;
+    this.broadcast({ slot: key });
+
+    const cached = this.slots.get(key);
+    if (!cached) return;
+
+    for (const seatNumber of seatNumbers) {
+      const index = cached.layout.indexBySeat.get(seatNumber);
+      if (index !== undefined) {
+        SeatAvailabilityService.setBit(cached.reservedBits, index, reserved);
+      }
+    }
+  }
+
+  // Drop a library's layout after its seats were added, changed or blocked
+  invalidateLibrary(libraryId) {
+    const key = libraryId ? libraryId.toString() : null;
+    this.dropLibrary(key);
+    this.broadcast({ libraryId: key });
+  }
+
+  dropLibrary(libraryId) {
+    this.generation++;
+    if (libraryId) {
+      this.layouts.delete(libraryId);
+    } else {
+      this.layouts.clear();
+    }
+  }
+
+  /**
+   * Tell the other instances to drop a slot or a library
+   * Never throws; if Redis is down no instance serves cached bitmaps anyway.
+   * @param {Object} message - { slot } or { libraryId }, null for every library
+   */
+  broadcast(message) {
+    if (typeof redisService.isReady !== 'function' || !redisService.isReady()) {
+      return;
+    }
+
+    const payload = JSON.stringify({ origin: this.instanceId, ...message });
+    redisService.publish(REDIS_CHANNELS.SEAT_AVAILABILITY_INVALIDATION, payload).catch((error) => {
+      console.error('SeatAvailabilityService: Failed to broadcast invalidation:', sanitizeForLogging({
+        error: error.message
+      }));
+    });
+  }
+
+  /**
+   * Handle an invalidation broadcast by another instance
+   * @param {string} payload - JSON message
+   */
+  handleMessage(payload) {
+    try {
+      const message = JSON.parse(payload);
+      if (message.origin === this.instanceId) return;
+
+      if (message.slot) {
+        this.generation++;
+        this.slots.delete(message.slot);
+      } else {
+        this.dropLibrary(message.libraryId);
+      }
+    } catch (error) {
+      console.error('SeatAvailabilityService: Ignoring malformed invalidation:', sanitizeForLogging({
+        error: error.message
+      }));
+    }
+  }
+
+  /**
+   * Subscribe to invalidations in the background if not already subscribed
+   * @returns {Promise<boolean>} Resolves true once subscribed
+   */
+  ensureSubscribed() {
+    if (this.subscribed) {
+      return Promise.resolve(true);
+    }
+    if (this.subscribing) {
+      return this.subscribing;
+    }
+    if (typeof redisService.isReady !== 'function' || !redisService.isReady()) {
+      return Promise.resolve(false);
+    }
+
+    this.subscribing = redisService.subscribe(
+      REDIS_CHANNELS.SEAT_AVAILABILITY_INVALIDATION,
+      (payload) => this.handleMessage(payload)
+    )
+      .then(() => {
+        this.subscribed = true;
+        return true;
+      })
+      .catch(() => false)
+      .finally(() => {
+        this.subscribing = null;
+      });
+
+    return this.subscribing;
+  }
+
+  // Drop every cached layout and slot
+  clear() {
+    this.generation++;
+    this.layouts.clear();
+    this.slots.clear();
+  }
+}
+
+module.exports = new SeatAvailabilityService();
+module.exports.SeatAvailabilityService = SeatAvailabilityService;
@@ -0,0 +1,160 @@
+const mongoose = require('mongoose');
+const SeatReservation = require('../models/SeatReservation');
+const Library = require('../models/Library');
+const seatAvailabilityService = require('./seatAvailabilityService');
+
+const DUPLICATE_KEY_ERROR = 11000;
+// Occupancy rows expire a day after the booked date has ended
+const RESERVATION_RETENTION_MS = 2 * 24 * 60 * 60 * 1000;
+const TIME_RANGE = /^(\d{2}:\d{2})\s*-\s*(\d{2}:\d{2})$/;
+
+class SeatReservationService {
+  // Normalize a booking date to the start of its (UTC) day
+  static normalizeDate(date) {
+    const day = new Date(date);
+    if (isNaN(day.getTime())) return null;
+    day.setUTCHours(0, 0, 0, 0);
+    return day;
+  }
+
+  // Time slots arrive either as a slot object or as the label picked in the UI
+  static normalizeTimeSlot(timeSlot) {
+    if (!timeSlot) return null;
+    if (typeof timeSlot === 'string') {
+      const name = timeSlot.trim();
+      return name ? { name } : null;
+    }
+    if (!timeSlot.name && !timeSlot.startTime) return null;
+    return {
+      name: timeSlot.name,
+      startTime: timeSlot.startTime,
+      endTime: timeSlot.endTime
+    };
+  }
+
+  /**
+   * Fill in the times of a slot picked by name from the library's time slots,
+   * so a slot always has the same key however the client sent it
+   * @returns {Object|null} Slot with startTime and endTime, or null if unknown
+   */
+  static async resolveTimeSlot(libraryId, timeSlot) {
+    const slot = this.normalizeTimeSlot(timeSlot);
+    if (!slot) return null;
+    if (slot.startTime && slot.endTime) return slot;
+    if (!slot.name || !mongoose.Types.ObjectId.isValid(libraryId)) return null;
+
+    const library = await Library.findById(libraryId).select('timeSlots').lean();
+    const name = slot.name.toLowerCase();
+    const match = (library?.timeSlots || []).find(candidate =>
+      candidate.name && candidate.name.trim().toLowerCase() === name && candidate.startTime && candidate.endTime
+    );
+    if (match) return { name: match.name, startTime: match.startTime, endTime: match.endTime };
+
+    // The booking form labels its slots with their times, e.g. '09:00-12:00'
+    const times = TIME_RANGE.exec(slot.name);
+    return times ? { name: slot.name, startTime: times[1], endTime: times[2] } : null;
+  }
+
+  // Occupancy is keyed on the slot's times only; names are resolved first
+  static getSlotKey(timeSlot) {
+    const slot = this.normalizeTimeSlot(timeSlot);
+    if (!slot || !slot.startTime || !slot.endTime) return null;
+    return `${slot.startTime}-${slot.endTime}`;
+  }
+
+  // Accept seatNumbers arrays as well as the legacy comma separated seatNumber
+  static normalizeSeatNumbers(seatNumbers, seatNumber) {
+    let seats = seatNumbers;
+    if (!seats || (Array.isArray(seats) && seats.length === 0)) {
+      seats = seatNumber ? String(seatNumber).split(',') : [];
+    }
+    if (!Array.isArray(seats)) seats = [seats];
+    return [...new Set(seats.map(seat => String(seat).trim()).filter(Boolean))];
+  }
+
+  /**
+   * Atomically claim every requested seat for a booking.
+   * All seats are inserted in a single unordered insertMany; the unique index
+   * rejects the seats somebody else already holds. If any seat is lost the
+   * seats that were claimed are released again, so a booking gets all or none.
+   * @returns {Object} { success, conflicts }
+   */
+  static async reserveSeats({ libraryId, date, timeSlot, seatNumbers, userId, bookingId }) {
+    const day = this.normalizeDate(date);
+    const slotKey = this.getSlotKey(await this.resolveTimeSlot(libraryId, timeSlot));
+
+    if (!day || !slotKey || !seatNumbers || seatNumbers.length === 0) {
+      throw new Error('libraryId, date, timeSlot and seatNumbers are required for seat reservations');
+    }
+
+    const expiresAt = new Date(day.getTime() + RESERVATION_RETENTION_MS);
+    const docs = seatNumbers.map(seatNumber => ({
+      libraryId,
+      date: day,
+      slotKey,
+      seatNumber,
+      bookingId,
+      userId,
+      expiresAt
+    }));
+
+    try {
+      await SeatReservation.insertMany(docs, { ordered: false });
+      seatAvailabilityService.updateSeats(libraryId, day, slotKey, seatNumbers, true);
+      return { success: true, conflicts: [] };
+    } catch (error) {
+      const writeErrors = error.writeErrors || (error.code === DUPLICATE_KEY_ERROR ? [error] : null);
+      if (!writeErrors) throw error;
+
+      const conflicts = [];
+      let unexpectedError = null;
+      for (const writeError of writeErrors) {
+        const code = writeError.code ?? writeError.err?.code;
+        const index = writeError.index ?? writeError.err?.index;
+        if (code === DUPLICATE_KEY_ERROR && docs[index]) {
+          conflicts.push(docs[index].seatNumber);
+        } else {
+          unexpectedError = writeError;
+        }
+      }
+
+      await this.releaseBooking(bookingId);
+
+      if (unexpectedError) throw error;
+      return { success: false, conflicts };
+    }
+  }
+
+  // Free every seat held by a booking (cancellation or failed booking save)
+  static async releaseBooking(bookingId) {
+    const reservations = await SeatReservation.find({ bookingId })
+      .select('libraryId date slotKey seatNumber -_id')
+      .lean();
+    if (reservations.length === 0) return 0;
+
+    const result = await SeatReservation.deleteMany({ bookingId });
+
+    const { libraryId, date, slotKey } = reservations[0];
+    seatAvailabilityService.updateSeats(
+      libraryId, date, slotKey, reservations.map(reservation => reservation.seatNumber), false
+    );
+    return result.deletedCount || 0;
+  }
+
+  // Seat numbers already taken for a library, day and time slot
+  static async getReservedSeats(libraryId, date, timeSlot) {
+    const day = this.normalizeDate(date);
+    const slotKey = this.getSlotKey(await this.resolveTimeSlot(libraryId, timeSlot));
+    if (!day || !slotKey) return [];
+
+    const reservations = await SeatReservation.find({
+      libraryId: new mongoose.Types.ObjectId(libraryId),
+      date: day,
+      slotKey
+    }).select('seatNumber -_id').lean();
+
+    return reservations.map(reservation => reservation.seatNumber);
+  }
+}
+
+module.exports = SeatReservationService;
@@ -0,0 +1,209 @@
+/**
+ * Unit Tests for the validated API key cache
+ * Two caches sharing an in-memory Redis stand-in play the part of two
+ * application instances.
+ */
+
+const ApiKeyCache = require('../apiKeyCache');
+const apiKeyService = require('../apiKeyService');
+const apiKeyUsageService = require('../apiKeyUsageService');
+const redisService = require('../redisService');
+const principalCacheService = require('../principalCacheService');
+const ApiKey = require('../../../models/ApiKey');
+const { FakeRedisClient } = require('../../../tests/helpers/fakeRedis');
+
+const FULL_KEY = 'lba_prefix.keyid123.secret123';
+
+const makeApiKey = (overrides = {}) => ({
+  _id: 'apikey123',
+  keyId: 'keyid123',
+  name: 'Partner key',
+  userId: { _id: 'user123', name: 'Test User', email: 'test@example.com', role: 'user' },
+  permissions: ['read:books'],
+  scopes: [],
+  rateLimit: { requestsPerHour: 1000, requestsPerDay: 10000 },
+  restrictions: { allowedIPs: ['10.0.0.1'], allowedDomains: [] },
+  expiresAt: null,
+  usage: { totalRequests: 0 },
+  verifyKey: jest.fn().mockReturnValue(true),
+  isValid: jest.fn().mockReturnValue(true),
+  checkIPRestriction: jest.fn().mockReturnValue(true),
+  checkDomainRestriction: jest.fn().mockReturnValue(true),
+  ...overrides
+});
+
+describe('ApiKeyCache', () => {
+  let client;
+
+  beforeEach(async () => {
+    client = new FakeRedisClient();
+    redisService.client = client;
+    redisService.isConnected = true;
+    redisService.subscriber = null;
+  });
+
+  afterEach(() => {
+    jest.restoreAllMocks();
+    redisService.client = null;
+    redisService.subscriber = null;
+    redisService.isConnected = false;
+  });
+
+  it('should not serve entries until the invalidation channel is live', async () => {
+    const cache = new ApiKeyCache();
+
+    expect(cache.get(FULL_KEY)).toBeNull();
+    expect(cache.set(FULL_KEY, makeApiKey())).toBeNull();
+
+    await cache.ensureSubscribed();
+    cache.set(FULL_KEY, makeApiKey());
+
+    expect(cache.get(FULL_KEY).keyId).toBe('keyid123');
+    expect(cache.get('lba_prefix.keyid123.othersecret')).toBeNull();
+  });
+
+  it('should invalidate a key on every instance', async () => {
+    const instanceA = new ApiKeyCache();
+    const instanceB = new ApiKeyCache();
+    await instanceA.ensureSubscribed();
+    await instanceB.ensureSubscribed();
+    instanceA.set(FULL_KEY, makeApiKey());
+    instanceB.set(FULL_KEY, makeApiKey());
+
+    await instanceA.invalidate('keyid123');
+
+    expect(instanceA.get(FULL_KEY)).toBeNull();
+    expect(instanceB.get(FULL_KEY)).toBeNull();
+  });
+
+  it('should not cache a lookup that raced an invalidation', async () => {
+    const cache = new ApiKeyCache();
+    await cache.ensureSubscribed();
+
+    const generation = cache.generation;
+    await cache.invalidate('keyid123');
+    cache.set(FULL_KEY, makeApiKey(), generation);
+
+    expect(cache.get(FULL_KEY)).toBeNull();
+  });
+
+  it('should stop serving while Redis is down and start cold afterwards', async () => {
+    const cache = new ApiKeyCache();
+    await cache.ensureSubscribed();
+    cache.set(FULL_KEY, makeApiKey());
+
+    redisService.isConnected = false;
+    expect(cache.get(FULL_KEY)).toBeNull();
+
+    redisService.isConnected = true;
+    cache.clear();
+    expect(cache.get(FULL_KEY)).toBeNull();
+  });
+
+  it('should start cold and resubscribe when only the subscriber connection drops', async () => {
+    const cache = new ApiKeyCache();
+    await cache.ensureSubscribed();
+    cache.set(FULL_KEY, makeApiKey());
+
+    redisService.dropSubscriber(redisService.subscriber);
+
+    expect(cache.getStats().subscribed).toBe(false);
+    expect(cache.get(FULL_KEY)).toBeNull();
+
+    // get() started a fresh subscription on a new connection
+    await cache.ensureSubscribed();
+    expect(cache.get(FULL_KEY)).toBeNull();
+    cache.set(FULL_KEY, makeApiKey());
+    expect(cache.get(FULL_KEY).keyId).toBe('keyid123');
+  });
+
+  it('should evict least recently used keys beyond its ceiling', async () => {
+    const cache = new ApiKeyCache({ maxEntries: 2 });
+    await cache.ensureSubscribed();
+
+    cache.set('a.a.a', makeApiKey({ keyId: 'a' }));
+    cache.set('b.b.b', makeApiKey({ keyId: 'b' }));
+    cache.get('a.a.a');
+    cache.set('c.c.c', makeApiKey({ keyId: 'c' }));
+
+    expect(cache.get('b.b.b')).toBeNull();
+    expect(cache.get('a.a.a').keyId).toBe('a');
+    expect(cache.getStats().evictions).toBe(1);
+  });
+
+  it('should not outlive the key expiry', async () => {
+    const cache = new ApiKeyCache();
+    await cache.ensureSubscribed();
+
+    cache.set(FULL_KEY, makeApiKey({ expiresAt: new Date(Date.now() - 1) }));
+
+    expect(cache.get(FULL_KEY)).toBeNull();
+  });
+
+  it('should enforce restrictions on cached keys', async () => {
+    const cache = new ApiKeyCache();
+    await cache.ensureSubscribed();
+    const cached = cache.set(FULL_KEY, makeApiKey({
+      restrictions: { allowedIPs: ['10.0.0.1'], allowedDomains: ['example.com'] }
+    }));
+
+    expect(cached.checkIPRestriction('10.0.0.1')).toBe(true);
+    expect(cached.checkIPRestriction('10.0.0.2')).toBe(false);
+    expect(cached.checkDomainRestriction('https://api.example.com')).toBe(true);
+    expect(cached.checkDomainRestriction('https://example.org')).toBe(false);
+  });
+
+  describe('ApiKeyService hot path', () => {
+    const owner = { _id: 'user123', name: 'Test User', email: 'test@example.com', role: 'user', isActive: true };
+
+    beforeEach(async () => {
+      apiKeyService.cache = new ApiKeyCache();
+      await apiKeyService.cache.ensureSubscribed();
+      jest.spyOn(apiKeyUsageService, 'scheduleFlush').mockImplementation(() => {});
+      jest.spyOn(principalCacheService, 'getPrincipal').mockResolvedValue(owner);
+    });
+
+    it('should validate a repeated key without querying Mongo', async () => {
+      const findOne = jest.spyOn(ApiKey, 'findOne').mockReturnValue({
+        populate: jest.fn().mockResolvedValue(makeApiKey())
+      });
+
+      for (let i = 0; i < 5; i++) {
+        const result = await apiKeyService.validateApiKey(FULL_KEY, { ip: '10.0.0.1' });
+        expect(result.apiKey.keyId).toBe('keyid123');
+        expect(result.apiKey.userId).toBe('user123');
+      }
+
+      expect(findOne).toHaveBeenCalledTimes(1);
+      expect(apiKeyService.cache.getStats().hits).toBe(4);
+    });
+
+    it('should reject a cached key from a disallowed IP', async () => {
+      jest.spyOn(ApiKey, 'findOne').mockReturnValue({
+        populate: jest.fn().mockResolvedValue(makeApiKey())
+      });
+      jest.spyOn(apiKeyService, 'recordSuspiciousActivity').mockResolvedValue(undefined);
+
+      await apiKeyService.validateApiKey(FULL_KEY, { ip: '10.0.0.1' });
+      const result = await apiKeyService.validateApiKey(FULL_KEY, { ip: '10.0.0.9' });
+
+      expect(result).toBeNull();
+      expect(apiKeyService.recordSuspiciousActivity).toHaveBeenCalledTimes(1);
+    });
+
+    it('should reject a cached key once its owner is deactivated or deleted', async () => {
+      jest.spyOn(ApiKey, 'findOne').mockReturnValue({
+        populate: jest.fn().mockResolvedValue(makeApiKey())
+      });
+      expect((await apiKeyService.validateApiKey(FULL_KEY, { ip: '10.0.0.1' })).apiKey.user).toBe(owner);
+
+      principalCacheService.getPrincipal.mockResolvedValue({ ...owner, isActive: false });
+      expect(await apiKeyService.validateApiKey(FULL_KEY, { ip: '10.0.0.1' })).toBeNull();
+
+      principalCacheService.getPrincipal.mockResolvedValue(null);
+      expect(await apiKeyService.validateApiKey(FULL_KEY, { ip: '10.0.0.1' })).toBeNull();
+
+      expect(apiKeyService.cache.getStats().hits).toBe(2);
+    });
+  });
+});
@@ -2,6 +2,8 @@ const apiKeyService = require('../apiKeyService');
 const ApiKey = require('../../../models/ApiKey');
 const User = require('../../../models/User');
 const { securityMonitorService } = require('../securityMonitorService');
+const apiKeyUsageService = require('../apiKeyUsageService');
+const principalCacheService = require('../principalCacheService');
 
 // Mock dependencies
 jest.mock('../../../models/ApiKey');
@@ -15,6 +17,8 @@ jest.mock('../securityMonitorService', () => ({
 describe('ApiKeyService', () => {
   beforeEach(() => {
     jest.clearAllMocks();
+    jest.spyOn(apiKeyUsageService, 'recordEvent').mockImplementation(() => {});
+    jest.spyOn(principalCacheService, 'getPrincipal').mockResolvedValue({ _id: 'user123', isActive: true });
   });
 
   describe('createApiKey', () => {
@@ -106,10 +110,13 @@ describe('ApiKeyService', () => {
         isValid: jest.fn().mockReturnValue(true),
         checkIPRestriction: jest.fn().mockReturnValue(true),
         checkDomainRestriction: jest.fn().mockReturnValue(true),
-        checkRateLimit: jest.fn().mockReturnValue({ allowed: true }),
-        recordUsage: jest.fn().mockResolvedValue(true),
         usage: { totalRequests: 10 }
       };
+      jest.spyOn(apiKeyUsageService, 'recordRequest').mockResolvedValue({
+        allowed: true,
+        requestsThisHour: 1,
+        requestsToday: 1
+      });
 
       ApiKey.findOne.mockReturnValue({
         populate: jest.fn().mockResolvedValue(mockApiKey)
@@ -127,13 +134,14 @@ describe('ApiKeyService', () => {
         keyId: 'keyid123',
         prefix: 'lba_prefix',
         isActive: true
-      });
+      }, '-securityEvents');
       expect(mockApiKey.verifyKey).toHaveBeenCalledWith('secret123');
       expect(mockApiKey.isValid).toHaveBeenCalled();
-      expect(mockApiKey.checkRateLimit).toHaveBeenCalled();
-      expect(mockApiKey.recordUsage).toHaveBeenCalledWith(requestContext);
+      expect(apiKeyUsageService.recordRequest).toHaveBeenCalledWith(mockApiKey, requestContext);
       expect(result.apiKey).toBeDefined();
       expect(result.apiKey.keyId).toBe('keyid123');
+      expect(result.apiKey.usage.totalRequests).toBe(11);
+      expect(principalCacheService.getPrincipal).toHaveBeenCalledWith('user123');
     });
 
     it('should return null for invalid key format', async () => {
@@ -173,18 +181,19 @@ describe('ApiKeyService', () => {
     it('should return rate limit error when limits exceeded', async () => {
       const fullKey = 'lba_prefix.keyid123.secret123';
       const mockApiKey = {
+        _id: 'apikey123',
         verifyKey: jest.fn().mockReturnValue(true),
         isValid: jest.fn().mockReturnValue(true),
         checkIPRestriction: jest.fn().mockReturnValue(true),
         checkDomainRestriction: jest.fn().mockReturnValue(true),
-        checkRateLimit: jest.fn().mockReturnValue({ 
-          allowed: false, 
-          reason: 'hourly_limit_exceeded' 
-        }),
         userId: 'user123',
         securityEvents: [],
         save: jest.fn().mockResolvedValue(true)
       };
+      jest.spyOn(apiKeyUsageService, 'recordRequest').mockResolvedValue({
+        allowed: false,
+        reason: 'hourly_limit_exceeded'
+      });
 
       ApiKey.findOne.mockReturnValue({
         populate: jest.fn().mockResolvedValue(mockApiKey)
@@ -193,6 +202,12 @@ describe('ApiKeyService', () => {
       const result = await apiKeyService.validateApiKey(fullKey);
       expect(result.error).toBe('rate_limit_exceeded');
       expect(result.reason).toBe('hourly_limit_exceeded');
+      expect(mockApiKey.save).not.toHaveBeenCalled();
+      expect(apiKeyUsageService.recordEvent).toHaveBeenCalledWith(
+        'apikey123',
+        'rate_limit_exceeded',
+        expect.objectContaining({ additionalInfo: { reason: 'hourly_limit_exceeded' } })
+      );
     });
   });
 
@@ -0,0 +1,167 @@
+/**
+ * Unit Tests for API key usage accounting
+ * Runs the usage accumulator against an in-memory Redis stand-in with the
+ * Mongo writes stubbed out.
+ */
+
+const apiKeyUsageService = require('../apiKeyUsageService');
+const redisService = require('../redisService');
+const ApiKey = require('../../../models/ApiKey');
+const ApiKeyEvent = require('../../../models/ApiKeyEvent');
+const { FakeRedisClient } = require('../../../tests/helpers/fakeRedis');
+
+const makeApiKey = (overrides = {}) => ({
+  _id: 'apikey123',
+  rateLimit: { requestsPerHour: 5, requestsPerDay: 100 },
+  usage: { totalRequests: 0, requestsThisHour: 0, requestsToday: 0 },
+  securityEvents: Array.from({ length: 1000 }, () => ({ eventType: 'used' })),
+  save: jest.fn(),
+  ...overrides
+});
+
+describe('ApiKeyUsageService', () => {
+  let client;
+
+  beforeEach(() => {
+    client = new FakeRedisClient();
+    redisService.client = client;
+    redisService.isConnected = true;
+    apiKeyUsageService.pendingUsage.clear();
+    apiKeyUsageService.pendingEvents = [];
+    apiKeyUsageService.localWindows.clear();
+    jest.spyOn(apiKeyUsageService, 'scheduleFlush').mockImplementation(() => {});
+    jest.spyOn(ApiKey, 'bulkWrite').mockResolvedValue({});
+    jest.spyOn(ApiKeyEvent, 'insertMany').mockResolvedValue([]);
+  });
+
+  afterEach(() => {
+    jest.restoreAllMocks();
+    redisService.client = null;
+    redisService.isConnected = false;
+  });
+
+  it('should enforce the hourly limit without saving the document', async () => {
+    const apiKey = makeApiKey();
+
+    const results = [];
+    for (let i = 0; i < 6; i++) {
+      results.push(await apiKeyUsageService.recordRequest(apiKey, { ip: '10.0.0.1' }));
+    }
+
+    expect(results.slice(0, 5).every(result => result.allowed)).toBe(true);
+    expect(results[5].allowed).toBe(false);
+    expect(results[5].reason).toBe('hourly_limit_exceeded');
+    expect(results[5].requestsThisHour).toBe(5);
+    expect(apiKey.save).not.toHaveBeenCalled();
+  });
+
+  it('should use one round trip per request regardless of key history', async () => {
+    const multi = jest.spyOn(client, 'multi');
+
+    for (let i = 0; i < 3; i++) {
+      await apiKeyUsageService.recordRequest(makeApiKey());
+    }
+
+    expect(multi).toHaveBeenCalledTimes(3);
+  });
+
+  it('should start a new window from the counts already on the document', async () => {
+    const now = new Date();
+    const apiKey = makeApiKey({
+      usage: {
+        totalRequests: 50,
+        requestsThisHour: 4,
+        requestsToday: 40,
+        lastResetHour: now,
+        lastResetDate: now
+      }
+    });
+
+    const first = await apiKeyUsageService.recordRequest(apiKey);
+    const second = await apiKeyUsageService.recordRequest(apiKey);
+
+    expect(first.allowed).toBe(true);
+    expect(first.requestsToday).toBe(41);
+    expect(second.allowed).toBe(false);
+  });
+
+  it('should keep counting in-process while Redis is down', async () => {
+    redisService.isConnected = false;
+    const apiKey = makeApiKey();
+
+    const results = [];
+    for (let i = 0; i < 6; i++) {
+      results.push(await apiKeyUsageService.recordRequest(apiKey));
+    }
+
+    expect(results.filter(result => result.allowed)).toHaveLength(5);
+    expect(client.commandCount).toBe(0);
+  });
+
+  it('should flush accumulated usage as one $inc per key', async () => {
+    for (let i = 0; i < 3; i++) {
+      await apiKeyUsageService.recordRequest(makeApiKey(), { endpoint: 'GET /api/books' });
+    }
+    await apiKeyUsageService.recordRequest(makeApiKey({ _id: 'apikey456' }));
+
+    const result = await apiKeyUsageService.flush();
+
+    expect(result).toEqual({ keys: 2, events: 4 });
+    expect(ApiKey.bulkWrite).toHaveBeenCalledTimes(1);
+    const [operations] = ApiKey.bulkWrite.mock.calls[0];
+    expect(operations[0].updateOne.filter).toEqual({ _id: 'apikey123' });
+    expect(operations[0].updateOne.update.$inc).toEqual({ 'usage.totalRequests': 3 });
+    expect(operations[0].updateOne.update.$set['usage.requestsThisHour']).toBe(3);
+    expect(ApiKeyEvent.insertMany).toHaveBeenCalledTimes(1);
+    expect(apiKeyUsageService.getStats().pendingKeys).toBe(0);
+  });
+
+  it('should keep usage and events for the next flush when Mongo fails', async () => {
+    ApiKey.bulkWrite.mockRejectedValue(new Error('not primary'));
+    ApiKeyEvent.insertMany.mockRejectedValue(new Error('not primary'));
+
+    await apiKeyUsageService.recordRequest(makeApiKey());
+    await apiKeyUsageService.recordRequest(makeApiKey());
+    await apiKeyUsageService.flush();
+
+    expect(apiKeyUsageService.pendingUsage.get('apikey123').requests).toBe(2);
+    expect(apiKeyUsageService.pendingEvents).toHaveLength(2);
+  });
+
+  it('should write out pending usage and stop the timer on close', async () => {
+    apiKeyUsageService.scheduleFlush.mockRestore();
+    await apiKeyUsageService.recordRequest(makeApiKey());
+    expect(apiKeyUsageService.flushTimer).not.toBeNull();
+
+    const result = await apiKeyUsageService.close();
+
+    expect(result).toEqual({ keys: 1, events: 1 });
+    expect(ApiKey.bulkWrite).toHaveBeenCalledTimes(1);
+    expect(apiKeyUsageService.flushTimer).toBeNull();
+  });
+
+  it('should drop the oldest events beyond the pending ceiling', () => {
+    const originalMax = apiKeyUsageService.config.maxPendingEvents;
+    apiKeyUsageService.config.maxPendingEvents = 3;
+
+    for (let i = 0; i < 5; i++) {
+      apiKeyUsageService.recordEvent('apikey123', 'used', { endpoint: `/${i}` });
+    }
+
+    expect(apiKeyUsageService.pendingEvents.map(event => event.details.endpoint)).toEqual(['/2', '/3', '/4']);
+    apiKeyUsageService.config.maxPendingEvents = originalMax;
+  });
+
+  it('should report window counts without counting a request', async () => {
+    const apiKey = makeApiKey();
+    for (let i = 0; i < 5; i++) {
+      await apiKeyUsageService.recordRequest(apiKey);
+    }
+
+    const status = await apiKeyUsageService.getWindowCounts(apiKey);
+    const again = await apiKeyUsageService.getWindowCounts(apiKey);
+
+    expect(status).toEqual({ allowed: false, reason: 'hourly_limit_exceeded', requestsThisHour: 5, requestsToday: 5 });
+    expect(again.requestsToday).toBe(5);
+  });
+});
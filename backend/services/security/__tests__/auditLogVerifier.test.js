@@ -0,0 +1,151 @@
+/**
+ * Unit tests for the streaming Audit Log Verifier
+ */
+
+const crypto = require('crypto');
+const fs = require('fs').promises;
+const os = require('os');
+const path = require('path');
+const zlib = require('zlib');
+const AuditLogVerifier = require('../auditLogVerifier');
+
+describe('AuditLogVerifier', () => {
+  const genesisHash = crypto.createHash('sha256').update('genesis').digest('hex');
+  let tmpDir;
+
+  const calculateHash = entry => crypto
+    .createHash('sha256')
+    .update(JSON.stringify([entry.sequence, entry.previousHash, entry.details]))
+    .digest('hex');
+
+  const buildChain = count => {
+    const entries = [];
+    let previousHash = genesisHash;
+    for (let sequence = 1; sequence <= count; sequence++) {
+      const entry = {
+        sequence,
+        previousHash,
+        correlationId: `id-${sequence}`,
+        details: { value: sequence }
+      };
+      entry.integrityHash = calculateHash(entry);
+      previousHash = entry.integrityHash;
+      entries.push(entry);
+    }
+    return entries;
+  };
+
+  const writeSegment = async (fileName, entries) => {
+    const content = entries.map(entry => JSON.stringify(entry)).join('\n') + '\n';
+    const data = fileName.endsWith('.gz') ? zlib.gzipSync(content) : content;
+    await fs.writeFile(path.join(tmpDir, fileName), data);
+  };
+
+  const createVerifier = (options = {}) => new AuditLogVerifier({
+    directory: tmpDir,
+    calculateHash,
+    genesisHash,
+    ...options
+  });
+
+  const range = [new Date('2025-01-01T00:00:00Z'), new Date('2025-01-31T23:59:59Z')];
+
+  beforeEach(async () => {
+    tmpDir = await fs.mkdtemp(path.join(os.tmpdir(), 'audit-verifier-'));
+  });
+
+  afterEach(async () => {
+    await fs.rm(tmpDir, { recursive: true, force: true });
+  });
+
+  it('should verify a chain split across plain and compressed segments', async () => {
+    const entries = buildChain(300);
+    await writeSegment('audit-2025-01-01-2025-01-01T12-00-00-000Z.log.gz', entries.slice(0, 100));
+    await writeSegment('audit-2025-01-01.log', entries.slice(100, 200));
+    await writeSegment('audit-2025-01-02.log', entries.slice(200));
+
+    const result = await createVerifier().verify(...range);
+
+    expect(result.verified).toBe(true);
+    expect(result.hashChainValid).toBe(true);
+    expect(result.totalEntries).toBe(300);
+    expect(result.verifiedEntries).toBe(300);
+    expect(result.segments.map(segment => segment.firstSequence)).toEqual([1, 101, 201]);
+  });
+
+  it('should detect a tampered entry', async () => {
+    const entries = buildChain(50);
+    entries[20].details.value = 'tampered';
+    await writeSegment('audit-2025-01-05.log', entries);
+
+    const result = await createVerifier().verify(...range);
+
+    expect(result.verified).toBe(false);
+    expect(result.failedEntries).toHaveLength(1);
+    expect(result.failedEntries[0]).toMatchObject({ sequence: 21, reason: 'Hash mismatch' });
+  });
+
+  it('should detect a missing span between segments', async () => {
+    const entries = buildChain(30);
+    await writeSegment('audit-2025-01-05.log', entries.slice(0, 10));
+    await writeSegment('audit-2025-01-06.log', entries.slice(20));
+
+    const result = await createVerifier().verify(...range);
+
+    expect(result.verified).toBe(false);
+    expect(result.hashChainValid).toBe(false);
+    expect(result.failedEntries[0]).toMatchObject({
+      file: 'audit-2025-01-06.log',
+      sequence: 21,
+      reason: 'Segment chain break'
+    });
+  });
+
+  it('should detect a deleted entry inside a segment', async () => {
+    const entries = buildChain(10);
+    entries.splice(4, 1);
+    await writeSegment('audit-2025-01-05.log', entries);
+
+    const result = await createVerifier().verify(...range);
+
+    expect(result.hashChainValid).toBe(false);
+    expect(result.failedEntries[0]).toMatchObject({ sequence: 6, reason: 'Hash chain break' });
+  });
+
+  it('should only read segments inside the date range', async () => {
+    const entries = buildChain(20);
+    await writeSegment('audit-2024-12-31.log', entries.slice(0, 10));
+    await writeSegment('audit-2025-01-01.log', entries.slice(10));
+
+    const result = await createVerifier().verify(...range);
+
+    expect(result.totalEntries).toBe(10);
+    expect(result.verified).toBe(true);
+  });
+
+  it('should cap reported failures while counting all of them', async () => {
+    const entries = buildChain(20).map(entry => ({ ...entry, integrityHash: 'bad' }));
+    await writeSegment('audit-2025-01-05.log', entries);
+
+    const result = await createVerifier({ maxReportedFailures: 5 }).verify(...range);
+
+    expect(result.failedEntries).toHaveLength(5);
+    expect(result.failureCount).toBeGreaterThan(5);
+  });
+
+  it('should report progress per segment', async () => {
+    const entries = buildChain(40);
+    for (let i = 0; i < 4; i++) {
+      await writeSegment(`audit-2025-01-0${i + 1}.log`, entries.slice(i * 10, (i + 1) * 10));
+    }
+    const onProgress = jest.fn();
+
+    await createVerifier({ concurrency: 2, onProgress }).verify(...range);
+
+    expect(onProgress).toHaveBeenCalledTimes(4);
+    const last = onProgress.mock.calls[3][0];
+    expect(last.segmentsVerified).toBe(4);
+    expect(last.entriesVerified).toBe(40);
+    expect(last.bytesRead).toBe(last.bytesTotal);
+  });
+});
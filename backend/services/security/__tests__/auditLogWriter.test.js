@@ -0,0 +1,173 @@
+/**
+ * Unit tests for the group-commit Audit Log Writer
+ */
+
+const fs = require('fs').promises;
+const os = require('os');
+const path = require('path');
+const AuditLogWriter = require('../auditLogWriter');
+
+describe('AuditLogWriter', () => {
+  let tmpDir;
+  let writer;
+
+  const createWriter = (options = {}) => new AuditLogWriter({
+    directory: tmpDir,
+    getFileName: () => 'audit-test.log',
+    rotationSize: 10 * 1024 * 1024,
+    ...options
+  });
+
+  const readEntries = async (fileName = 'audit-test.log') => {
+    const content = await fs.readFile(path.join(tmpDir, fileName), 'utf8');
+    return content.trim().split('\n').map(line => JSON.parse(line));
+  };
+
+  beforeEach(async () => {
+    tmpDir = await fs.mkdtemp(path.join(os.tmpdir(), 'audit-writer-'));
+  });
+
+  afterEach(async () => {
+    if (writer) {
+      await writer.close();
+      writer = null;
+    }
+    await fs.rm(tmpDir, { recursive: true, force: true });
+  });
+
+  it('should write concurrent entries in one batch and in order', async () => {
+    writer = createWriter();
+
+    await Promise.all(
+      Array.from({ length: 100 }, (_, i) => writer.append({ sequence: i + 1 }))
+    );
+
+    const entries = await readEntries();
+    expect(entries.map(entry => entry.sequence)).toEqual(
+      Array.from({ length: 100 }, (_, i) => i + 1)
+    );
+    expect(writer.getStats().batches).toBe(1);
+    expect(writer.getStats().fsyncs).toBe(1);
+  });
+
+  it('should split large bursts by maxBatchSize', async () => {
+    writer = createWriter({ maxBatchSize: 30 });
+
+    await Promise.all(
+      Array.from({ length: 100 }, (_, i) => writer.append({ sequence: i + 1 }))
+    );
+
+    expect(writer.getStats().batches).toBe(4);
+    expect(await readEntries()).toHaveLength(100);
+  });
+
+  it('should report each batch to onFlush after it is written', async () => {
+    const flushed = [];
+    writer = createWriter({ onFlush: async entries => flushed.push(entries.length) });
+
+    await Promise.all([writer.append({ sequence: 1 }), writer.append({ sequence: 2 })]);
+    await writer.append({ sequence: 3 });
+
+    expect(flushed).toEqual([2, 1]);
+  });
+
+  it('should reject every entry in a failed batch', async () => {
+    writer = createWriter({ getFileName: () => path.join('missing-dir', 'audit-test.log') });
+
+    const results = await Promise.allSettled([
+      writer.append({ sequence: 1 }),
+      writer.append({ sequence: 2 })
+    ]);
+
+    expect(results.map(result => result.status)).toEqual(['rejected', 'rejected']);
+  });
+
+  it('should rotate once the file reaches the rotation size', async () => {
+    const onRotate = jest.fn(async filePath => {
+      await fs.rename(filePath, `${filePath}.1`);
+    });
+    const onSwitch = jest.fn();
+    writer = createWriter({ rotationSize: 200, onRotate, onSwitch });
+
+    for (let i = 0; i < 10; i++) {
+      await writer.append({ sequence: i + 1, padding: 'x'.repeat(50) });
+    }
+
+    expect(onRotate).toHaveBeenCalled();
+    expect(onSwitch).toHaveBeenCalledTimes(onRotate.mock.calls.length);
+    const current = await readEntries();
+    expect(current[current.length - 1].sequence).toBe(10);
+  });
+
+  it('should defer fsync to a timer under the interval policy', async () => {
+    writer = createWriter({ fsyncPolicy: 'interval', fsyncIntervalMs: 10 });
+
+    await writer.append({ sequence: 1 });
+    expect(writer.getStats().fsyncs).toBe(0);
+
+    await new Promise(resolve => setTimeout(resolve, 30));
+    expect(writer.getStats().fsyncs).toBe(1);
+  });
+
+  it('should flush pending entries on close', async () => {
+    writer = createWriter({ fsyncPolicy: 'none' });
+
+    const pending = writer.append({ sequence: 1 });
+    await writer.close();
+    writer = null;
+
+    await expect(pending).resolves.toEqual({ sequence: 1 });
+    expect(await readEntries()).toHaveLength(1);
+  });
+
+  it('should sustain concurrent load with far fewer syncs than entries', async () => {
+    writer = createWriter();
+    const total = 5000;
+
+    await Promise.all(
+      Array.from({ length: total }, (_, i) => writer.append({ sequence: i + 1, eventType: 'login_success' }))
+    );
+
+    const stats = writer.getStats();
+    expect(stats.entries).toBe(total);
+    expect(stats.fsyncs).toBeLessThanOrEqual(Math.ceil(total / writer.maxBatchSize));
+    expect(await readEntries()).toHaveLength(total);
+  });
+
+  it('should cut a failed batch out of the file and fail the entries queued behind it', async () => {
+    const onFailure = jest.fn();
+    writer = createWriter({ onFailure });
+    await writer.append({ sequence: 1 });
+
+    // A short write: half the batch reaches the file before the error
+    const handle = writer.handle;
+    const write = handle.write.bind(handle);
+    handle.write = async (data) => {
+      await write(data.slice(0, Math.floor(data.length / 2)));
+      throw new Error('No space left on device');
+    };
+
+    const results = await Promise.allSettled([
+      writer.append({ sequence: 2 }),
+      writer.append({ sequence: 3 })
+    ]);
+
+    expect(results.map(result => result.status)).toEqual(['rejected', 'rejected']);
+    expect(onFailure).toHaveBeenCalledWith([{ sequence: 2 }, { sequence: 3 }]);
+    expect(await readEntries()).toEqual([{ sequence: 1 }]);
+    expect(writer.getStats().failedBatches).toBe(1);
+
+    await writer.append({ sequence: 2 });
+    expect(await readEntries()).toEqual([{ sequence: 1 }, { sequence: 2 }]);
+  });
+
+  it('should refuse entries once a failed batch cannot be cut out of the file', async () => {
+    writer = createWriter();
+    await writer.append({ sequence: 1 });
+    writer.handle.write = async () => { throw new Error('I/O error'); };
+    writer.handle.truncate = async () => { throw new Error('I/O error'); };
+
+    await expect(writer.append({ sequence: 2 })).rejects.toThrow('I/O error');
+    await expect(writer.append({ sequence: 3 })).rejects.toThrow('unknown state');
+  });
+});
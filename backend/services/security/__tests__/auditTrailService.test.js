@@ -25,7 +25,8 @@ jest.mock('fs', () => ({
     stat: jest.fn(),
     rename: jest.fn(),
     unlink: jest.fn(),
-    readdir: jest.fn()
+    readdir: jest.fn(),
+    open: jest.fn()
   }
 }));
 
@@ -65,6 +66,7 @@ jest.mock('../utils/securityHelpers', () => ({
 describe('AuditTrailService', () => {
   let mockConfig;
   let testLogPath;
+  let mockHandle;
 
   beforeEach(() => {
     jest.clearAllMocks();
@@ -99,12 +101,21 @@ describe('AuditTrailService', () => {
     fs.stat.mockResolvedValue({ size: 1000, mtime: new Date() });
     fs.readdir.mockResolvedValue([]);
 
+    mockHandle = {
+      write: jest.fn().mockResolvedValue({}),
+      sync: jest.fn().mockResolvedValue(),
+      truncate: jest.fn().mockResolvedValue(),
+      close: jest.fn().mockResolvedValue()
+    };
+    fs.open.mockResolvedValue(mockHandle);
+
     // Reset service state
     auditTrailService.isInitialized = false;
     auditTrailService.hashChain = null;
     auditTrailService.config = null;
     auditTrailService.auditLogPath = null;
     auditTrailService.encryptionKey = null;
+    auditTrailService.writer = null;
   });
 
   describe('initialize', () => {
@@ -134,6 +145,30 @@ describe('AuditTrailService', () => {
       expect(auditTrailService.hashChain).toEqual(existingHashChain);
     });
 
+    it('should recover entries written after the last checkpoint', async () => {
+      const existingHashChain = {
+        genesis: 'existing-genesis',
+        lastHash: 'hash-100',
+        sequence: 100
+      };
+      const logLines = [100, 101, 102]
+        .map(sequence => JSON.stringify({ sequence, integrityHash: `hash-${sequence}` }))
+        .join('\n') + '\n{"sequence":103,"integ';
+
+      fs.readFile
+        .mockResolvedValueOnce(JSON.stringify(existingHashChain))
+        .mockResolvedValueOnce(logLines);
+      fs.readdir.mockResolvedValueOnce(['audit-2025-01-26.log', 'audit-2025-01-27.log', '.hash_chain']);
+
+      await auditTrailService.initialize({ auditLogPath: testLogPath });
+
+      expect(fs.readFile).toHaveBeenLastCalledWith(
+        path.join(testLogPath, 'audit-2025-01-27.log'), 'utf8'
+      );
+      expect(auditTrailService.hashChain.sequence).toBe(102);
+      expect(auditTrailService.hashChain.lastHash).toBe('hash-102');
+    });
+
     it('should handle initialization errors', async () => {
       configService.getAuditConfig.mockImplementation(() => {
         throw new Error('Config error');
@@ -229,14 +264,72 @@ describe('AuditTrailService', () => {
     it('should write audit entry to log file', async () => {
       await auditTrailService.createAuditEntry('login_success', 'low', {}, 'user123');
 
-      expect(fs.appendFile).toHaveBeenCalledWith(
-        expect.stringContaining('audit-'),
+      expect(fs.open).toHaveBeenCalledWith(expect.stringContaining('audit-'), 'a');
+      expect(mockHandle.write).toHaveBeenCalledWith(
         expect.stringContaining('"eventType":"login_success"')
       );
+      expect(mockHandle.sync).toHaveBeenCalled();
+    });
+
+    it('should group concurrent entries into one write with a linked chain', async () => {
+      const entries = await Promise.all(
+        Array.from({ length: 50 }, (_, i) =>
+          auditTrailService.createAuditEntry('login_success', 'low', { attempt: i }, 'user123')
+        )
+      );
+
+      expect(entries.map(entry => entry.sequence)).toEqual(
+        Array.from({ length: 50 }, (_, i) => i + 1)
+      );
+      for (let i = 1; i < entries.length; i++) {
+        expect(entries[i].previousHash).toBe(entries[i - 1].integrityHash);
+      }
+      expect(mockHandle.write).toHaveBeenCalledTimes(1);
+      expect(mockHandle.write.mock.calls[0][0].trim().split('\n')).toHaveLength(50);
+      expect(fs.open).toHaveBeenCalledTimes(1);
+    });
+
+    it('should checkpoint the hash chain periodically instead of per entry', async () => {
+      await auditTrailService.initialize({ auditLogPath: testLogPath, checkpointInterval: 10 });
+      fs.writeFile.mockClear();
+
+      for (let i = 0; i < 25; i++) {
+        await auditTrailService.createAuditEntry('login_success', 'low', {}, 'user123');
+      }
+
+      expect(fs.writeFile).toHaveBeenCalledTimes(2);
+
+      await auditTrailService.close();
+
+      expect(fs.writeFile).toHaveBeenCalledTimes(3);
+      const checkpoint = JSON.parse(fs.writeFile.mock.calls[2][1]);
+      expect(checkpoint.sequence).toBe(25);
+      expect(checkpoint.lastHash).toBe(auditTrailService.hashChain.lastHash);
+      expect(mockHandle.close).toHaveBeenCalled();
+    });
+
+    it('should link new entries to the last written entry after a batch fails', async () => {
+      const written = await auditTrailService.createAuditEntry('login_success', 'low', {}, 'user123');
+      mockHandle.write.mockRejectedValueOnce(new Error('Disk full'));
+
+      const results = await Promise.allSettled([
+        auditTrailService.createAuditEntry('login_success', 'low', { attempt: 1 }, 'user123'),
+        auditTrailService.createAuditEntry('login_success', 'low', { attempt: 2 }, 'user123')
+      ]);
+
+      expect(results.map(result => result.status)).toEqual(['rejected', 'rejected']);
+      expect(mockHandle.truncate).toHaveBeenCalled();
+      expect(auditTrailService.hashChain.sequence).toBe(written.sequence);
+      expect(auditTrailService.hashChain.lastHash).toBe(written.integrityHash);
+
+      const next = await auditTrailService.createAuditEntry('login_success', 'low', {}, 'user123');
+
+      expect(next.sequence).toBe(written.sequence + 1);
+      expect(next.previousHash).toBe(written.integrityHash);
     });
 
     it('should handle errors gracefully', async () => {
-      fs.appendFile.mockRejectedValueOnce(new Error('File write error'));
+      mockHandle.write.mockRejectedValueOnce(new Error('File write error'));
 
       await expect(
         auditTrailService.createAuditEntry('login_success', 'low', {}, 'user123')
@@ -558,7 +651,7 @@ describe('AuditTrailService', () => {
       ];
 
       jest.spyOn(auditTrailService, 'getAuditEntries').mockResolvedValue(mockEntries);
-      jest.spyOn(auditTrailService, 'verifyAuditTrailIntegrity').mockResolvedValue({
+      jest.spyOn(auditTrailService, 'verifyAuditLogFiles').mockResolvedValue({
         verified: true,
         totalEntries: 2,
         verifiedEntries: 2,
@@ -602,7 +695,7 @@ describe('AuditTrailService', () => {
       ];
 
       jest.spyOn(auditTrailService, 'getAuditEntries').mockResolvedValue(mockEntries);
-      jest.spyOn(auditTrailService, 'verifyAuditTrailIntegrity').mockResolvedValue({
+      jest.spyOn(auditTrailService, 'verifyAuditLogFiles').mockResolvedValue({
         verified: true,
         totalEntries: 1,
         verifiedEntries: 1,
@@ -36,6 +36,9 @@ describe('DatabaseEncryptionService', () => {
     encryptionService.isEncrypted = jest.fn().mockImplementation(data => {
       return typeof data === 'string' && data.startsWith('enc:');
     });
+    encryptionService.computeBlindIndex = jest.fn().mockImplementation(async (data, type) => {
+      return `idx:${type}:${data}`;
+    });
     encryptionService.validateConfiguration = jest.fn().mockReturnValue({
       isValid: true,
       issues: [],
@@ -46,6 +49,7 @@ describe('DatabaseEncryptionService', () => {
     testSchema = new mongoose.Schema({
       name: String,
       email: String,
+      emailIndex: String,
       phone: String,
       address: String,
       totpSecret: String,
@@ -152,10 +156,35 @@ describe('DatabaseEncryptionService', () => {
         expect(encryptionService.encryptField).toHaveBeenCalledWith('test@example.com', 'email');
         expect(encryptionService.encryptField).toHaveBeenCalledWith('+1234567890', 'phoneNumber');
         expect(encryptionService.encryptField).toHaveBeenCalledWith('secret123', 'totpSecret');
-        expect(mockDocument.set).toHaveBeenCalledTimes(3);
+        // Three encrypted fields plus the email blind index
+        expect(mockDocument.set).toHaveBeenCalledTimes(4);
         expect(nextSpy).toHaveBeenCalled();
       });
 
+      it('should compute blind indexes from plaintext before encrypting', async () => {
+        mockDocument.get.mockImplementation((field) => {
+          return field === 'email' ? 'test@example.com' : undefined;
+        });
+
+        const preSaveHook = testSchema._pres.get('save')[0].fn;
+        await preSaveHook.call(mockDocument, jest.fn());
+
+        expect(encryptionService.computeBlindIndex).toHaveBeenCalledWith('test@example.com', 'email');
+        expect(mockDocument.set.mock.calls[0]).toEqual(['emailIndex', 'idx:email:test@example.com']);
+      });
+
+      it('should leave the blind index alone when the field is unchanged', async () => {
+        mockDocument.isModified.mockReturnValue(false);
+        mockDocument.get.mockImplementation((field) => {
+          return field === 'email' ? 'enc:already-encrypted' : undefined;
+        });
+
+        const preSaveHook = testSchema._pres.get('save')[0].fn;
+        await preSaveHook.call(mockDocument, jest.fn());
+
+        expect(encryptionService.computeBlindIndex).not.toHaveBeenCalled();
+      });
+
       it('should handle array fields with objects', async () => {
         const backupCodes = [
           { code: 'code1', used: false, createdAt: new Date() },
@@ -420,6 +449,58 @@ describe('DatabaseEncryptionService', () => {
     });
   });
 
+  describe('blind index plugin', () => {
+    let mockDocument;
+
+    beforeEach(() => {
+      databaseEncryptionService.applyBlindIndexes(testSchema, 'User');
+      mockDocument = {
+        _id: 'test-id',
+        isNew: false,
+        get: jest.fn().mockReturnValue('test@example.com'),
+        set: jest.fn(),
+        isModified: jest.fn().mockReturnValue(true)
+      };
+    });
+
+    it('should maintain the blind index without encrypting', async () => {
+      const preSaveHook = testSchema._pres.get('save')[0].fn;
+      const nextSpy = jest.fn();
+
+      await preSaveHook.call(mockDocument, nextSpy);
+
+      expect(mockDocument.set).toHaveBeenCalledWith('emailIndex', 'idx:email:test@example.com');
+      expect(encryptionService.encryptField).not.toHaveBeenCalled();
+      expect(nextSpy).toHaveBeenCalledWith();
+    });
+
+    it('should drop the blind index of a changed field when keys are unavailable', async () => {
+      encryptionService.computeBlindIndex.mockRejectedValue(new Error('Encryption key not configured'));
+      const consoleSpy = jest.spyOn(console, 'warn').mockImplementation();
+
+      const preSaveHook = testSchema._pres.get('save')[0].fn;
+      const nextSpy = jest.fn();
+      await preSaveHook.call(mockDocument, nextSpy);
+
+      expect(mockDocument.set).toHaveBeenCalledWith('emailIndex', undefined);
+      expect(nextSpy).toHaveBeenCalledWith();
+      consoleSpy.mockRestore();
+    });
+
+    it('should build a lookup filter on the blind index', async () => {
+      const filter = await testSchema.statics.blindIndexFilter('email', 'test@example.com');
+
+      expect(filter).toEqual({
+        $or: [{ emailIndex: 'idx:email:test@example.com' }, { email: 'test@example.com' }]
+      });
+    });
+
+    it('should refuse lookups on fields without a blind index', async () => {
+      await expect(testSchema.statics.blindIndexFilter('phone', '+1234567890'))
+        .rejects.toThrow('phone has no blind index on User');
+    });
+  });
+
   describe('sensitive field management', () => {
     it('should add new sensitive field mapping', () => {
       databaseEncryptionService.addSensitiveField('TestModel', { field: 'newField', type: 'token' });
@@ -439,7 +520,7 @@ describe('DatabaseEncryptionService', () => {
     it('should get sensitive fields for model', () => {
       const userFields = databaseEncryptionService.getSensitiveFields('User');
       expect(userFields).toEqual(expect.arrayContaining([
-        { field: 'email', type: 'email' },
+        { field: 'email', type: 'email', blindIndex: 'emailIndex' },
         { field: 'phone', type: 'phoneNumber' }
       ]));
     });
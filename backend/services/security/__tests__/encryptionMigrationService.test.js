@@ -0,0 +1,416 @@
+/**
+ * Unit Tests for Encryption Migration Service
+ * Tests batching, conditional writes, checkpoints and the job lease against
+ * an in-memory model and job store
+ */
+
+const crypto = require('crypto');
+const mongoose = require('mongoose');
+
+jest.mock('../configService', () => ({
+  configService: {
+    initialize: jest.fn().mockResolvedValue(true),
+    getEncryptionConfig: jest.fn().mockReturnValue({
+      encryptionKey: 'test-encryption-key-for-testing-purposes-12345678901234567890'
+    })
+  }
+}));
+
+jest.mock('../databaseEncryptionService', () => ({
+  sensitiveFieldMappings: {},
+  getSensitiveFields: () => []
+}));
+
+// Just enough of the EncryptionJob model for one job document
+jest.mock('../../../models/EncryptionJob', () => {
+  const store = { doc: null };
+  const copy = doc => (doc ? {
+    ...doc,
+    checkpoints: { ...doc.checkpoints },
+    completedModels: [...doc.completedModels],
+    stats: { ...doc.stats }
+  } : null);
+  const matches = (filter) => {
+    const { doc } = store;
+    if (!doc || doc.name !== filter.name) return false;
+    if ('lockedBy' in filter && doc.lockedBy !== filter.lockedBy) return false;
+    return !filter.$or || filter.$or.some(condition => {
+      if ('lockedBy' in condition) return doc.lockedBy === condition.lockedBy;
+      if (condition.lockedUntil === null) return !doc.lockedUntil;
+      return doc.lockedUntil < condition.lockedUntil.$lt;
+    });
+  };
+  const apply = (update) => {
+    for (const [path, value] of Object.entries(update.$set || {})) {
+      const [key, subKey] = path.split('.');
+      if (subKey) store.doc[key][subKey] = value;
+      else store.doc[key] = value;
+    }
+    for (const [key, value] of Object.entries(update.$addToSet || {})) {
+      if (!store.doc[key].includes(value)) store.doc[key].push(value);
+    }
+  };
+  const query = result => ({ lean: async () => result() });
+
+  return {
+    store,
+    updateOne: jest.fn(async (filter, update, options = {}) => {
+      if (!store.doc && options.upsert) {
+        store.doc = {
+          name: filter.name,
+          checkpoints: {},
+          completedModels: [],
+          stats: { scanned: 0, reencrypted: 0, conflicts: 0, failed: 0 },
+          lockedBy: null,
+          lockedUntil: null,
+          ...update.$setOnInsert
+        };
+        return { matchedCount: 0 };
+      }
+      if (!matches(filter)) return { matchedCount: 0 };
+      apply(update);
+      return { matchedCount: 1 };
+    }),
+    findOneAndUpdate: jest.fn((filter, update) => query(() => {
+      if (!matches(filter)) return null;
+      apply(update);
+      return copy(store.doc);
+    })),
+    findOne: jest.fn(() => query(() => copy(store.doc)))
+  };
+});
+
+const encryptionService = require('../encryptionService');
+const { configService } = require('../configService');
+const databaseEncryptionService = require('../databaseEncryptionService');
+const EncryptionJob = require('../../../models/EncryptionJob');
+const encryptionMigrationService = require('../encryptionMigrationService');
+
+const MAPPINGS = [
+  { field: 'email', type: 'email' },
+  { field: 'backupCodes', type: 'backupCodes', isArray: true },
+  { field: 'mfaRecovery.recoveryCode', type: 'token' }
+];
+
+// Ciphertext as written by releases before the binary envelope
+const encryptLegacy = (data, fieldType) => {
+  const iv = crypto.randomBytes(16);
+  const cipher = crypto.createCipheriv('aes-256-gcm', encryptionService.fieldKeys.get(fieldType), iv);
+  let encrypted = cipher.update(data, 'utf8', 'hex');
+  encrypted += cipher.final('hex');
+  const payload = {
+    algorithm: 'aes-256-gcm',
+    fieldType,
+    iv: iv.toString('hex'),
+    tag: cipher.getAuthTag().toString('hex'),
+    data: encrypted,
+    timestamp: Date.now()
+  };
+  return 'enc:' + Buffer.from(JSON.stringify(payload)).toString('base64');
+};
+
+const getPath = (doc, path) => path.split('.').reduce((value, key) => (value == null ? value : value[key]), doc);
+
+// Just enough of a Mongoose model for the migration queries
+const createModel = (docs) => {
+  const Model = {
+    modelName: 'User',
+    docs,
+    batches: 0,
+    find: jest.fn((filter) => {
+      const afterId = filter._id ? filter._id.$gt : null;
+      const query = {
+        select: () => query,
+        sort: () => query,
+        lean: () => query,
+        cursor: () => {
+          const cursor = (async function* () {
+            for (const doc of docs.filter(candidate => afterId === null || candidate._id > afterId)) {
+              yield JSON.parse(JSON.stringify(doc));
+            }
+          })();
+          cursor.close = jest.fn(async () => cursor.return());
+          Model.cursor = cursor;
+          return cursor;
+        }
+      };
+      return query;
+    }),
+    bulkWrite: jest.fn(async (operations) => {
+      Model.batches++;
+      let modifiedCount = 0;
+      for (const { updateOne: { filter, update } } of operations) {
+        const doc = docs.find(candidate => candidate._id === filter._id);
+        const matches = doc && Object.keys(filter)
+          .filter(key => key !== '_id')
+          .every(key => (filter[key] && filter[key].$exists === false
+            ? getPath(doc, key) === undefined
+            : JSON.stringify(getPath(doc, key)) === JSON.stringify(filter[key])));
+        if (!matches) continue;
+        for (const [path, value] of Object.entries(update.$set)) {
+          const parts = path.split('.');
+          const parent = parts.slice(0, -1).reduce((target, key) => target[key], doc);
+          parent[parts[parts.length - 1]] = value;
+        }
+        modifiedCount++;
+      }
+      return { modifiedCount };
+    })
+  };
+  return Model;
+};
+
+const createUsers = (ids, encrypt = id => encryptLegacy(`user${id}@example.com`, 'email')) =>
+  createModel(ids.map(id => ({ _id: id, email: encrypt(id) })));
+
+describe('EncryptionMigrationService', () => {
+  const NEW_KEY = 'new-master-key-for-rotation-testing-12345678901234567890';
+
+  // A job document leased to this instance, as claim() leaves it
+  const holdLease = () => {
+    EncryptionJob.store.doc = {
+      name: 'field-reencryption',
+      targetKeyId: encryptionService.activeKeyId,
+      status: 'running',
+      checkpoints: {},
+      completedModels: [],
+      stats: { scanned: 0, reencrypted: 0, conflicts: 0, failed: 0 },
+      lockedBy: encryptionMigrationService.instanceId,
+      lockedUntil: new Date(Date.now() + 60000)
+    };
+  };
+
+  beforeEach(async () => {
+    jest.clearAllMocks();
+    encryptionService.initialized = false;
+    await encryptionService.initialize();
+    encryptionMigrationService.resetStats();
+    encryptionMigrationService.stopRequested = false;
+    encryptionMigrationService.batchSize = 2;
+    encryptionMigrationService.pauseMs = 0;
+    databaseEncryptionService.getSensitiveFields = () => MAPPINGS;
+    delete mongoose.models.User;
+    holdLease();
+  });
+
+  describe('migrateModel', () => {
+    it('should move legacy ciphertext to the binary envelope in batches', async () => {
+      const Model = createUsers([1, 2, 3, 4, 5]);
+
+      expect(await encryptionMigrationService.migrateModel(Model, MAPPINGS)).toBe(true);
+
+      expect(Model.batches).toBe(3);
+      expect(encryptionMigrationService.stats.reencrypted).toBe(5);
+      for (const doc of Model.docs) {
+        expect(encryptionService.isLegacyEnvelope(doc.email)).toBe(false);
+        expect(await encryptionService.decryptField(doc.email, 'email')).toBe(`user${doc._id}@example.com`);
+      }
+      expect(Model.cursor.close).toHaveBeenCalled();
+    });
+
+    it('should move ciphertext under a previous key to the active key', async () => {
+      const Model = createModel([]);
+      for (const id of [1, 2, 3]) {
+        Model.docs.push({ _id: id, email: await encryptionService.encryptField(`user${id}@example.com`, 'email') });
+      }
+      await encryptionService.rotateKeys(NEW_KEY);
+
+      await encryptionMigrationService.migrateModel(Model, MAPPINGS);
+
+      expect(encryptionMigrationService.stats.reencrypted).toBe(3);
+      for (const doc of Model.docs) {
+        expect(encryptionService.getKeyId(doc.email)).toBe(2);
+        expect(await encryptionService.decryptField(doc.email, 'email')).toBe(`user${doc._id}@example.com`);
+      }
+    });
+
+    it('should migrate array items and nested fields', async () => {
+      const Model = createModel([{
+        _id: 1,
+        email: await encryptionService.encryptField('new@example.com', 'email'),
+        backupCodes: [{ code: encryptLegacy('code-1', 'backupCodes'), used: false }],
+        mfaRecovery: { recoveryCode: encryptLegacy('recover-1', 'token') }
+      }]);
+      const alreadyMigrated = Model.docs[0].email;
+
+      await encryptionMigrationService.migrateModel(Model, MAPPINGS);
+
+      const [doc] = Model.docs;
+      expect(doc.email).toBe(alreadyMigrated);
+      expect(doc.backupCodes[0].used).toBe(false);
+      expect(await encryptionService.decryptField(doc.backupCodes[0].code, 'backupCodes')).toBe('code-1');
+      expect(await encryptionService.decryptField(doc.mfaRecovery.recoveryCode, 'token')).toBe('recover-1');
+    });
+
+    it('should not overwrite a value changed since it was read', async () => {
+      const Model = createUsers([1]);
+      const bulkWrite = Model.bulkWrite;
+      Model.bulkWrite = jest.fn(async (operations) => {
+        Model.docs[0].email = 'enc:changed-concurrently';
+        return bulkWrite(operations);
+      });
+
+      await encryptionMigrationService.migrateModel(Model, MAPPINGS);
+
+      expect(Model.docs[0].email).toBe('enc:changed-concurrently');
+      expect(encryptionMigrationService.stats.conflicts).toBe(1);
+    });
+
+    it('should skip documents it cannot decrypt and carry on', async () => {
+      const Model = createModel([
+        { _id: 1, email: 'enc:' + Buffer.from('{"invalid":"json"}').toString('base64') },
+        { _id: 2, email: encryptLegacy('ok@example.com', 'email') }
+      ]);
+
+      await encryptionMigrationService.migrateModel(Model, MAPPINGS);
+
+      expect(encryptionMigrationService.stats.failed).toBe(1);
+      expect(encryptionMigrationService.stats.reencrypted).toBe(1);
+      expect(encryptionService.isLegacyEnvelope(Model.docs[1].email)).toBe(false);
+    });
+
+    it('should backfill missing blind indexes', async () => {
+      const mappings = [{ field: 'email', type: 'email', blindIndex: 'emailIndex' }];
+      const Model = createModel([
+        { _id: 1, email: 'plain@example.com' },
+        { _id: 2, email: encryptLegacy('legacy@example.com', 'email') },
+        { _id: 3, email: 'indexed@example.com', emailIndex: 'existing-index' }
+      ]);
+
+      await encryptionMigrationService.migrateModel(Model, mappings);
+
+      const [plain, legacy, indexed] = Model.docs;
+      expect(plain.email).toBe('plain@example.com');
+      expect(plain.emailIndex).toBe(await encryptionService.computeBlindIndex('plain@example.com', 'email'));
+      expect(encryptionService.isLegacyEnvelope(legacy.email)).toBe(false);
+      expect(legacy.emailIndex).toBe(await encryptionService.computeBlindIndex('legacy@example.com', 'email'));
+      expect(indexed.emailIndex).toBe('existing-index');
+    });
+
+    it('should checkpoint after every batch and resume after the checkpoint', async () => {
+      const Model = createUsers([1, 2, 3, 4, 5]);
+
+      await encryptionMigrationService.migrateModel(Model, MAPPINGS, 3);
+
+      expect(Model.find.mock.calls[0][0]).toEqual({ _id: { $gt: 3 } });
+      expect(encryptionMigrationService.stats.scanned).toBe(2);
+      expect(encryptionService.isLegacyEnvelope(Model.docs[2].email)).toBe(true);
+      expect(encryptionService.isLegacyEnvelope(Model.docs[4].email)).toBe(false);
+      expect(EncryptionJob.store.doc.checkpoints.User).toBe(5);
+      expect(EncryptionJob.store.doc.stats.reencrypted).toBe(2);
+    });
+
+    it('should stop after the current batch when asked', async () => {
+      const Model = createUsers([1, 2, 3, 4, 5]);
+      const bulkWrite = Model.bulkWrite;
+      Model.bulkWrite = jest.fn(async (operations) => {
+        encryptionMigrationService.stopRequested = true;
+        return bulkWrite(operations);
+      });
+
+      expect(await encryptionMigrationService.migrateModel(Model, MAPPINGS)).toBe(false);
+
+      expect(encryptionMigrationService.stats.reencrypted).toBe(2);
+      expect(EncryptionJob.store.doc.checkpoints.User).toBe(2);
+      expect(Model.cursor.close).toHaveBeenCalled();
+    });
+
+    it('should stop when another instance takes the lease', async () => {
+      const Model = createUsers([1, 2, 3, 4, 5]);
+      EncryptionJob.store.doc.lockedBy = 'other-host:1';
+
+      expect(await encryptionMigrationService.migrateModel(Model, MAPPINGS)).toBe(false);
+
+      expect(Model.batches).toBe(1);
+      expect(EncryptionJob.store.doc.checkpoints.User).toBeUndefined();
+    });
+  });
+
+  describe('start', () => {
+    it('should run the job to completion and release the lease', async () => {
+      EncryptionJob.store.doc = null;
+      const Model = createUsers([1, 2, 3]);
+      mongoose.models.User = Model;
+
+      await encryptionMigrationService.start({ modelNames: ['User'] });
+
+      const job = EncryptionJob.store.doc;
+      expect(job.status).toBe('completed');
+      expect(job.targetKeyId).toBe(1);
+      expect(job.completedModels).toEqual(['User']);
+      expect(job.checkpoints.User).toBe(3);
+      expect(job.stats.reencrypted).toBe(3);
+      expect(job.lockedBy).toBeNull();
+      expect(encryptionService.isLegacyEnvelope(Model.docs[0].email)).toBe(false);
+    });
+
+    it('should not walk the data again until the active key changes', async () => {
+      EncryptionJob.store.doc = null;
+      const Model = createModel([]);
+      for (const id of [1, 2]) {
+        Model.docs.push({ _id: id, email: await encryptionService.encryptField(`user${id}@example.com`, 'email') });
+      }
+      mongoose.models.User = Model;
+
+      await encryptionMigrationService.start({ modelNames: ['User'] });
+      await encryptionMigrationService.start({ modelNames: ['User'] });
+      expect(Model.find).toHaveBeenCalledTimes(1);
+
+      // Deployments rotate through configuration; the job notices the new key ID
+      configService.getEncryptionConfig.mockReturnValue({
+        encryptionKey: NEW_KEY,
+        keyId: 2,
+        previousKeys: '1:test-encryption-key-for-testing-purposes-12345678901234567890'
+      });
+      encryptionService.initialized = false;
+      await encryptionMigrationService.start({ modelNames: ['User'] });
+      configService.getEncryptionConfig.mockReturnValue({
+        encryptionKey: 'test-encryption-key-for-testing-purposes-12345678901234567890'
+      });
+
+      expect(Model.find).toHaveBeenCalledTimes(2);
+      expect(EncryptionJob.store.doc.targetKeyId).toBe(2);
+      expect(EncryptionJob.store.doc.stats.reencrypted).toBe(2);
+      expect(encryptionService.getKeyId(Model.docs[1].email)).toBe(2);
+    });
+
+    it('should resume from the stored checkpoint', async () => {
+      const Model = createUsers([1, 2, 3, 4]);
+      mongoose.models.User = Model;
+      Object.assign(EncryptionJob.store.doc, {
+        status: 'paused',
+        checkpoints: { User: 2 },
+        stats: { scanned: 2, reencrypted: 2, conflicts: 0, failed: 0 },
+        lockedBy: null,
+        lockedUntil: null
+      });
+
+      await encryptionMigrationService.start({ modelNames: ['User'] });
+
+      expect(Model.find.mock.calls[0][0]).toEqual({ _id: { $gt: 2 } });
+      expect(EncryptionJob.store.doc.status).toBe('completed');
+      expect(EncryptionJob.store.doc.stats.scanned).toBe(4);
+    });
+
+    it('should leave the job alone while another instance holds the lease', async () => {
+      const Model = createUsers([1, 2]);
+      mongoose.models.User = Model;
+      EncryptionJob.store.doc.lockedBy = 'other-host:1';
+
+      await encryptionMigrationService.start({ modelNames: ['User'] });
+
+      expect(Model.find).not.toHaveBeenCalled();
+      expect(EncryptionJob.store.doc.lockedBy).toBe('other-host:1');
+    });
+  });
+
+  describe('getStatus', () => {
+    it('should report the stored job state', async () => {
+      const status = await encryptionMigrationService.getStatus();
+
+      expect(status.activeKeyId).toBe(1);
+      expect(status.runningHere).toBe(false);
+      expect(status.job.status).toBe('running');
+    });
+  });
+});
@@ -1,3 +1,4 @@
+const crypto = require('crypto');
 const encryptionService = require('../encryptionService');
 const { configService } = require('../configService');
 
@@ -15,6 +16,23 @@ jest.mock('../configService', () => ({
   }
 }));
 
+// Ciphertext as written by releases before the binary envelope
+const encryptLegacy = (data, fieldType) => {
+  const iv = crypto.randomBytes(16);
+  const cipher = crypto.createCipheriv('aes-256-gcm', encryptionService.fieldKeys.get(fieldType), iv);
+  let encrypted = cipher.update(typeof data === 'string' ? data : JSON.stringify(data), 'utf8', 'hex');
+  encrypted += cipher.final('hex');
+  const payload = {
+    algorithm: 'aes-256-gcm',
+    fieldType,
+    iv: iv.toString('hex'),
+    tag: cipher.getAuthTag().toString('hex'),
+    data: encrypted,
+    timestamp: Date.now()
+  };
+  return 'enc:' + Buffer.from(JSON.stringify(payload)).toString('base64');
+};
+
 describe('EncryptionService', () => {
   beforeEach(async () => {
     jest.clearAllMocks();
@@ -31,7 +49,7 @@ describe('EncryptionService', () => {
     });
 
     it('should throw error if encryption key is not configured', async () => {
-      configService.getEncryptionConfig.mockReturnValue({});
+      configService.getEncryptionConfig.mockReturnValueOnce({});
       encryptionService.initialized = false;
 
       await expect(encryptionService.initialize()).rejects.toThrow('Encryption service initialization failed');
@@ -101,6 +119,101 @@ describe('EncryptionService', () => {
     });
   });
 
+  describe('binary envelope', () => {
+    it('should write a versioned envelope with the key ID', async () => {
+      const encrypted = await encryptionService.encryptField('john@example.com', 'email');
+      const envelope = Buffer.from(encrypted.substring(4), 'base64url');
+
+      expect(encrypted).toMatch(/^enc:[A-Za-z0-9_-]+$/);
+      expect(envelope[0]).toBe(1);
+      expect(envelope[1]).toBe(encryptionService.activeKeyId);
+      // header (2) + iv (12) + tag (16) + ciphertext
+      expect(envelope.length).toBe(30 + 'john@example.com'.length);
+    });
+
+    it('should be much smaller than the legacy format', async () => {
+      const email = 'john.doe@example.com';
+
+      const encrypted = await encryptionService.encryptField(email, 'email');
+
+      expect(encrypted.length * 3).toBeLessThan(encryptLegacy(email, 'email').length);
+    });
+
+    it('should keep plain strings that look like JSON as strings', async () => {
+      const encrypted = await encryptionService.encryptField('123', 'token');
+
+      expect(await encryptionService.decryptField(encrypted, 'token')).toBe('123');
+    });
+
+    it('should reject a tampered header', async () => {
+      const encrypted = await encryptionService.encryptField('secret', 'token');
+      const envelope = Buffer.from(encrypted.substring(4), 'base64url');
+      envelope[0] |= 0x80;
+
+      await expect(encryptionService.decryptField('enc:' + envelope.toString('base64url'), 'token'))
+        .rejects.toThrow('Failed to decrypt token field');
+    });
+
+    it('should reject an unknown key ID', async () => {
+      const encrypted = await encryptionService.encryptField('secret', 'token');
+      const envelope = Buffer.from(encrypted.substring(4), 'base64url');
+      envelope[1] = 99;
+
+      await expect(encryptionService.decryptField('enc:' + envelope.toString('base64url'), 'token'))
+        .rejects.toThrow('Failed to decrypt token field');
+    });
+
+    it('should still decrypt the legacy JSON format', async () => {
+      const legacy = encryptLegacy({ userId: '123' }, 'token');
+
+      expect(encryptionService.isLegacyEnvelope(legacy)).toBe(true);
+      expect(await encryptionService.decryptField(legacy, 'token')).toEqual({ userId: '123' });
+    });
+
+    it('should re-encrypt legacy ciphertext in the binary envelope', async () => {
+      const legacy = encryptLegacy('john@example.com', 'email');
+
+      const migrated = await encryptionService.reencryptField(legacy, 'email');
+
+      expect(encryptionService.isLegacyEnvelope(migrated)).toBe(false);
+      expect(await encryptionService.decryptField(migrated, 'email')).toBe('john@example.com');
+    });
+  });
+
+  describe('blind index', () => {
+    it('should give equal values the same index', async () => {
+      const first = await encryptionService.computeBlindIndex('john@example.com', 'email');
+      const second = await encryptionService.computeBlindIndex('john@example.com', 'email');
+
+      expect(first).toBe(second);
+      expect(first).toMatch(/^[A-Za-z0-9_-]{43}$/);
+      expect(first).not.toContain('john');
+    });
+
+    it('should ignore case and whitespace for emails', async () => {
+      expect(await encryptionService.computeBlindIndex('  John@Example.com ', 'email'))
+        .toBe(await encryptionService.computeBlindIndex('john@example.com', 'email'));
+    });
+
+    it('should use a different key per field type', async () => {
+      expect(await encryptionService.computeBlindIndex('same-value', 'email'))
+        .not.toBe(await encryptionService.computeBlindIndex('same-value', 'token'));
+    });
+
+    it('should return null for empty values', async () => {
+      expect(await encryptionService.computeBlindIndex('', 'email')).toBeNull();
+      expect(await encryptionService.computeBlindIndex(null, 'email')).toBeNull();
+    });
+
+    it('should not change when the master key is rotated', async () => {
+      const before = await encryptionService.computeBlindIndex('john@example.com', 'email');
+
+      await encryptionService.rotateKeys('new-master-key-for-rotation-testing-12345678901234567890');
+
+      expect(await encryptionService.computeBlindIndex('john@example.com', 'email')).toBe(before);
+    });
+  });
+
   describe('multiple field encryption', () => {
     it('should encrypt multiple fields in an object', async () => {
       const data = {
@@ -267,6 +380,19 @@ describe('EncryptionService', () => {
       
       const metadata = encryptionService.getEncryptionMetadata(encrypted);
       expect(metadata).toEqual({
+        format: 'binary',
+        version: 1,
+        keyId: encryptionService.activeKeyId,
+        algorithm: 'aes-256-gcm',
+        hasTag: true,
+        hasIv: true
+      });
+    });
+
+    it('should extract metadata from legacy ciphertext', () => {
+      const metadata = encryptionService.getEncryptionMetadata(encryptLegacy('test data', 'email'));
+      expect(metadata).toEqual({
+        format: 'legacy',
         algorithm: 'aes-256-gcm',
         fieldType: 'email',
         timestamp: expect.any(Number),
@@ -291,6 +417,68 @@ describe('EncryptionService', () => {
       expect(rotationInfo.oldKeyHash).toBeDefined();
       expect(rotationInfo.newKeyHash).toBeDefined();
       expect(rotationInfo.oldKeyHash).not.toBe(rotationInfo.newKeyHash);
+      expect(rotationInfo.oldKeyId).toBe(1);
+      expect(rotationInfo.newKeyId).toBe(2);
+      expect(encryptionService.activeKeyId).toBe(2);
+    });
+
+    it('should keep decrypting ciphertext written with the previous key', async () => {
+      const oldCiphertext = await encryptionService.encryptField('john@example.com', 'email');
+      const oldLegacy = encryptLegacy('jane@example.com', 'email');
+
+      await encryptionService.rotateKeys('new-master-key-for-rotation-testing-12345678901234567890');
+      const newCiphertext = await encryptionService.encryptField('john@example.com', 'email');
+
+      expect(encryptionService.getKeyId(oldCiphertext)).toBe(1);
+      expect(encryptionService.getKeyId(newCiphertext)).toBe(2);
+      expect(await encryptionService.decryptField(oldCiphertext, 'email')).toBe('john@example.com');
+      expect(await encryptionService.decryptField(oldLegacy, 'email')).toBe('jane@example.com');
+      expect(await encryptionService.decryptField(newCiphertext, 'email')).toBe('john@example.com');
+    });
+
+    it('should flag ciphertext that is not under the active key', async () => {
+      const oldCiphertext = await encryptionService.encryptField('john@example.com', 'email');
+      expect(encryptionService.needsReencryption(oldCiphertext)).toBe(false);
+      expect(encryptionService.needsReencryption('plain text')).toBe(false);
+      expect(encryptionService.needsReencryption(encryptLegacy('john@example.com', 'email'))).toBe(true);
+
+      await encryptionService.rotateKeys('new-master-key-for-rotation-testing-12345678901234567890');
+      const reencrypted = await encryptionService.reencryptField(oldCiphertext, 'email');
+
+      expect(encryptionService.needsReencryption(oldCiphertext)).toBe(true);
+      expect(encryptionService.needsReencryption(reencrypted)).toBe(false);
+      expect(await encryptionService.decryptField(reencrypted, 'email')).toBe('john@example.com');
+    });
+
+    it('should not decrypt with a retired key once it is removed', async () => {
+      const oldCiphertext = await encryptionService.encryptField('secret', 'token');
+      await encryptionService.rotateKeys('new-master-key-for-rotation-testing-12345678901234567890');
+
+      expect(encryptionService.retireKey(1)).toBe(true);
+
+      await expect(encryptionService.decryptField(oldCiphertext, 'token'))
+        .rejects.toThrow('Failed to decrypt token field');
+      expect(() => encryptionService.retireKey(2)).toThrow('cannot be retired');
+    });
+
+    it('should load previous keys from configuration', async () => {
+      const oldCiphertext = await encryptionService.encryptField('john@example.com', 'email');
+      configService.getEncryptionConfig.mockReturnValueOnce({
+        encryptionKey: 'new-master-key-for-rotation-testing-12345678901234567890',
+        keyId: 2,
+        previousKeys: '1:test-encryption-key-for-testing-purposes-12345678901234567890'
+      });
+      encryptionService.initialized = false;
+      await encryptionService.initialize();
+
+      expect(encryptionService.activeKeyId).toBe(2);
+      expect(encryptionService.validateConfiguration().keyIds).toEqual([1, 2]);
+      expect(await encryptionService.decryptField(oldCiphertext, 'email')).toBe('john@example.com');
+    });
+
+    it('should reject malformed previous keys', () => {
+      expect(() => encryptionService.parsePreviousKeys('no-key-id')).toThrow('keyId:key pairs');
+      expect(() => encryptionService.addKey(256, 'key')).toThrow('between 1 and 255');
     });
   });
 
@@ -0,0 +1,89 @@
+const bcrypt = require('bcryptjs');
+const { HashingPool, HASH_POOL_SATURATED } = require('../hashingPool');
+
+describe('HashingPool', () => {
+  let pool;
+
+  beforeEach(() => {
+    pool = new HashingPool({ size: 2, maxQueue: 4, enabled: true });
+  });
+
+  afterEach(async () => {
+    await pool.close();
+  });
+
+  test('should hash on a worker in a format bcryptjs can verify', async () => {
+    const hash = await pool.hash('TestPassword123!', 4);
+
+    expect(hash).toMatch(/^\$2[ab]\$04\$/);
+    expect(await bcrypt.compare('TestPassword123!', hash)).toBe(true);
+  });
+
+  test('should compare passwords on a worker', async () => {
+    const hash = await bcrypt.hash('TestPassword123!', 4);
+
+    expect(await pool.compare('TestPassword123!', hash)).toBe(true);
+    expect(await pool.compare('WrongPassword123!', hash)).toBe(false);
+  });
+
+  test('should never start more workers than its size', async () => {
+    const hash = await bcrypt.hash('TestPassword123!', 4);
+
+    await Promise.all(Array.from({ length: 6 }, () => pool.compare('TestPassword123!', hash)));
+
+    expect(pool.getMetrics().workers).toBe(2);
+    expect(pool.getMetrics().completed).toBe(6);
+  });
+
+  test('should refuse work once the queue is full', async () => {
+    const hash = await bcrypt.hash('TestPassword123!', 8);
+
+    // 2 running + 4 queued fit; the rest are refused
+    const results = await Promise.allSettled(
+      Array.from({ length: 10 }, () => pool.compare('TestPassword123!', hash))
+    );
+
+    const rejected = results.filter(result => result.status === 'rejected');
+    expect(results.filter(result => result.status === 'fulfilled')).toHaveLength(6);
+    expect(rejected).toHaveLength(4);
+    expect(rejected[0].reason.code).toBe(HASH_POOL_SATURATED);
+    expect(rejected[0].reason.status).toBe(429);
+    expect(pool.getMetrics().rejected).toBe(4);
+  });
+
+  test('should report queue depth and latency', async () => {
+    const hash = await bcrypt.hash('TestPassword123!', 6);
+
+    const pending = Array.from({ length: 5 }, () => pool.compare('TestPassword123!', hash));
+    expect(pool.getMetrics().queueDepth).toBe(3);
+    expect(pool.getMetrics().busy).toBe(2);
+    await Promise.all(pending);
+
+    const metrics = pool.getMetrics();
+    expect(metrics.queueDepth).toBe(0);
+    expect(metrics.runMs.p50).toBeGreaterThan(0);
+    expect(metrics.waitMs.p99).toBeGreaterThanOrEqual(metrics.waitMs.p50);
+  });
+
+  test('should replace a worker that dies and fail only its job', async () => {
+    const hash = await bcrypt.hash('TestPassword123!', 4);
+    await pool.compare('TestPassword123!', hash);
+
+    const [slot] = pool.slots;
+    const pending = pool.compare('TestPassword123!', hash);
+    await slot.worker.terminate();
+
+    await expect(pending).rejects.toThrow('Password hashing worker exited');
+    expect(await pool.compare('TestPassword123!', hash)).toBe(true);
+    expect(pool.getMetrics().workerRestarts).toBe(1);
+  });
+
+  test('should hash on the calling thread when disabled', async () => {
+    const inline = new HashingPool({ enabled: false });
+
+    const hash = await inline.hash('TestPassword123!', 4);
+
+    expect(await inline.compare('TestPassword123!', hash)).toBe(true);
+    expect(inline.getMetrics().workers).toBe(0);
+  });
+});
@@ -28,6 +28,8 @@ describe('IncidentResponseService Integration Tests', () => {
       get: jest.fn(),
       addToSet: jest.fn().mockResolvedValue(1),
       getSet: jest.fn().mockResolvedValue([]),
+      getTimelineRange: jest.fn().mockResolvedValue([]),
+      getSecurityEvents: jest.fn().mockResolvedValue([]),
       isReady: jest.fn().mockReturnValue(true)
     };
 
@@ -35,6 +37,8 @@ describe('IncidentResponseService Integration Tests', () => {
     redisService.get = mockRedisClient.get;
     redisService.addToSet = mockRedisClient.addToSet;
     redisService.getSet = mockRedisClient.getSet;
+    redisService.getTimelineRange = mockRedisClient.getTimelineRange;
+    redisService.getSecurityEvents = mockRedisClient.getSecurityEvents;
     redisService.isReady = mockRedisClient.isReady;
 
     // Setup mock config service
@@ -100,21 +104,13 @@ describe('IncidentResponseService Integration Tests', () => {
 
       // Mock Redis responses for data access events
       const mockEventIds = ['event1', 'event2', 'event3'];
-      mockRedisClient.getSet.mockResolvedValue(mockEventIds);
-      
-      // Mock individual event data
-      mockEventIds.forEach((eventId, index) => {
-        mockRedisClient.get.mockImplementation((key) => {
-          if (key === `security_event:${eventId}`) {
-            return Promise.resolve(JSON.stringify({
-              eventType: SECURITY_EVENTS.DATA_ACCESS,
-              timestamp: new Date(Date.now() - (index * 10 * 60 * 1000)).toISOString(), // 10 minutes apart
-              details: { recordId: `record${index}` }
-            }));
-          }
-          return Promise.resolve(null);
-        });
-      });
+      mockRedisClient.getTimelineRange.mockResolvedValue(mockEventIds);
+      
+      mockRedisClient.getSecurityEvents.mockResolvedValue(mockEventIds.map((_, index) => ({
+        eventType: SECURITY_EVENTS.DATA_ACCESS,
+        timestamp: new Date(Date.now() - (index * 10 * 60 * 1000)).toISOString(), // 10 minutes apart
+        details: { recordId: `record${index}` }
+      })));
 
       // Set threshold to trigger detection
       await incidentResponseService.initialize({
@@ -144,12 +140,12 @@ describe('IncidentResponseService Integration Tests', () => {
       };
 
       // Mock minimal Redis responses
-      mockRedisClient.getSet.mockResolvedValue(['event1']);
-      mockRedisClient.get.mockResolvedValue(JSON.stringify({
+      mockRedisClient.getTimelineRange.mockResolvedValue(['event1']);
+      mockRedisClient.getSecurityEvents.mockResolvedValue([{
         eventType: SECURITY_EVENTS.DATA_ACCESS,
         timestamp: new Date().toISOString(),
         details: { recordId: 'record1' }
-      }));
+      }]);
 
       const incidents = await incidentResponseService.detectIncident(securityEvent);
       
@@ -171,20 +167,13 @@ describe('IncidentResponseService Integration Tests', () => {
 
       // Mock Redis responses for failed login events
       const mockEventIds = Array.from({ length: 15 }, (_, i) => `event${i}`);
-      mockRedisClient.getSet.mockResolvedValue(mockEventIds);
-      
-      mockEventIds.forEach((eventId, index) => {
-        mockRedisClient.get.mockImplementation((key) => {
-          if (key === `security_event:${eventId}`) {
-            return Promise.resolve(JSON.stringify({
-              eventType: SECURITY_EVENTS.LOGIN_FAILURE,
-              timestamp: new Date(Date.now() - (index * 1000)).toISOString(), // 1 second apart
-              details: { email: `test${index}@example.com` }
-            }));
-          }
-          return Promise.resolve(null);
-        });
-      });
+      mockRedisClient.getTimelineRange.mockResolvedValue(mockEventIds);
+      
+      mockRedisClient.getSecurityEvents.mockResolvedValue(mockEventIds.map((_, index) => ({
+        eventType: SECURITY_EVENTS.LOGIN_FAILURE,
+        timestamp: new Date(Date.now() - (index * 1000)).toISOString(), // 1 second apart
+        details: { email: `test${index}@example.com` }
+      })));
 
       // Set threshold to trigger detection
       await incidentResponseService.initialize({
@@ -215,20 +204,13 @@ describe('IncidentResponseService Integration Tests', () => {
 
       // Mock moderate number of failed attempts (below notification threshold)
       const mockEventIds = Array.from({ length: 20 }, (_, i) => `event${i}`);
-      mockRedisClient.getSet.mockResolvedValue(mockEventIds);
-      
-      mockEventIds.forEach((eventId, index) => {
-        mockRedisClient.get.mockImplementation((key) => {
-          if (key === `security_event:${eventId}`) {
-            return Promise.resolve(JSON.stringify({
-              eventType: SECURITY_EVENTS.LOGIN_FAILURE,
-              timestamp: new Date(Date.now() - (index * 1000)).toISOString(),
-              details: { email: `test${index}@example.com` }
-            }));
-          }
-          return Promise.resolve(null);
-        });
-      });
+      mockRedisClient.getTimelineRange.mockResolvedValue(mockEventIds);
+      
+      mockRedisClient.getSecurityEvents.mockResolvedValue(mockEventIds.map((_, index) => ({
+        eventType: SECURITY_EVENTS.LOGIN_FAILURE,
+        timestamp: new Date(Date.now() - (index * 1000)).toISOString(),
+        details: { email: `test${index}@example.com` }
+      })));
 
       const incidents = await incidentResponseService.detectIncident(securityEvent);
       
@@ -251,20 +233,13 @@ describe('IncidentResponseService Integration Tests', () => {
 
       // Mock Redis responses for privilege escalation events
       const mockEventIds = Array.from({ length: 6 }, (_, i) => `event${i}`);
-      mockRedisClient.getSet.mockResolvedValue(mockEventIds);
-      
-      mockEventIds.forEach((eventId, index) => {
-        mockRedisClient.get.mockImplementation((key) => {
-          if (key === `security_event:${eventId}`) {
-            return Promise.resolve(JSON.stringify({
-              eventType: SECURITY_EVENTS.PRIVILEGE_ESCALATION,
-              timestamp: new Date(Date.now() - (index * 5 * 60 * 1000)).toISOString(), // 5 minutes apart
-              details: { targetPrivilege: 'admin' }
-            }));
-          }
-          return Promise.resolve(null);
-        });
-      });
+      mockRedisClient.getTimelineRange.mockResolvedValue(mockEventIds);
+      
+      mockRedisClient.getSecurityEvents.mockResolvedValue(mockEventIds.map((_, index) => ({
+        eventType: SECURITY_EVENTS.PRIVILEGE_ESCALATION,
+        timestamp: new Date(Date.now() - (index * 5 * 60 * 1000)).toISOString(), // 5 minutes apart
+        details: { targetPrivilege: 'admin' }
+      })));
 
       const incidents = await incidentResponseService.detectIncident(securityEvent);
       
@@ -0,0 +1,186 @@
+/**
+ * Unit Tests for Password Cost Service
+ * Tests the cost policy, autotuning, background rehash and cost distribution
+ */
+
+const mockUpdateOne = jest.fn();
+const mockAggregate = jest.fn();
+
+jest.mock('../../../models/User', () => ({
+  updateOne: (...args) => mockUpdateOne(...args),
+  aggregate: (...args) => mockAggregate(...args)
+}));
+
+const passwordCostService = require('../passwordCostService');
+const hashingPool = require('../hashingPool');
+
+const hashAt = (rounds) => `$2b$${String(rounds).padStart(2, '0')}$${'a'.repeat(53)}`;
+
+const mockUser = (id, rounds) => ({
+  _id: { toString: () => id },
+  password: hashAt(rounds)
+});
+
+// Let the setImmediate-scheduled rehash run
+const flush = () => new Promise(resolve => setImmediate(() => setImmediate(resolve)));
+
+describe('PasswordCostService', () => {
+  beforeEach(() => {
+    jest.clearAllMocks();
+    jest.restoreAllMocks();
+    passwordCostService.pinnedRounds = null;
+    passwordCostService.tunedRounds = 12;
+    passwordCostService.targetVerifyMs = 250;
+    passwordCostService.minRounds = 10;
+    passwordCostService.pendingRehashes.clear();
+    passwordCostService.stats = { rehashed: 0, skipped: 0, failed: 0 };
+    mockUpdateOne.mockResolvedValue({ modifiedCount: 1 });
+    jest.spyOn(hashingPool, 'hash').mockResolvedValue(hashAt(12));
+  });
+
+  describe('Policy', () => {
+    test('should prefer pinned rounds over tuned rounds', () => {
+      expect(passwordCostService.getTargetRounds()).toBe(12);
+
+      passwordCostService.pinnedRounds = 13;
+
+      expect(passwordCostService.getTargetRounds()).toBe(13);
+    });
+
+    test('should accept hashes at or above the target', () => {
+      expect(passwordCostService.getPolicy()).toEqual({ min: 12 });
+      expect(passwordCostService.needsRehash(hashAt(12))).toBe(false);
+      expect(passwordCostService.needsRehash(hashAt(13))).toBe(false);
+      expect(passwordCostService.needsRehash(hashAt(15))).toBe(false);
+    });
+
+    test('should flag hashes below the policy', () => {
+      expect(passwordCostService.needsRehash(hashAt(10))).toBe(true);
+      expect(passwordCostService.needsRehash('not-a-bcrypt-hash')).toBe(true);
+    });
+
+    test('should default the floor to the configured hashing cost', () => {
+      const service = new passwordCostService.constructor();
+
+      expect(service.minRounds).toBe(service.hashing.getConfig().saltRounds);
+      expect(service.getTargetRounds()).toBe(service.minRounds);
+    });
+  });
+
+  describe('Autotune', () => {
+    test('should pick the highest cost within the verify target', async () => {
+      // Each round doubles the work: 10 -> 60ms, 11 -> 120ms, 12 -> 240ms, 13 -> 480ms
+      const measure = jest.fn(async (rounds) => 60 * Math.pow(2, rounds - 10));
+
+      const benchmark = await passwordCostService.autotune(measure);
+
+      expect(benchmark.chosenRounds).toBe(12);
+      expect(passwordCostService.getTargetRounds()).toBe(12);
+      // Stops at the first cost over target
+      expect(measure).toHaveBeenCalledTimes(4);
+    });
+
+    test('should never tune below the minimum rounds', async () => {
+      const benchmark = await passwordCostService.autotune(async () => 1000);
+
+      expect(benchmark.chosenRounds).toBe(10);
+    });
+
+    test('should keep the previous cost when benchmarking fails', async () => {
+      const result = await passwordCostService.autotune(async () => {
+        throw new Error('pool closed');
+      });
+
+      expect(result).toBeNull();
+      expect(passwordCostService.getTargetRounds()).toBe(12);
+    });
+  });
+
+  describe('Background rehash', () => {
+    test('should rehash an outdated hash without waiting for it', async () => {
+      const user = mockUser('user-1', 10);
+
+      expect(passwordCostService.scheduleRehash(user, 'TestPassword123!')).toBe(true);
+      expect(mockUpdateOne).not.toHaveBeenCalled();
+      await flush();
+
+      expect(hashingPool.hash).toHaveBeenCalledWith('TestPassword123!', 12);
+      expect(mockUpdateOne).toHaveBeenCalledWith(
+        { _id: user._id, password: hashAt(10) },
+        { $set: { password: hashAt(12) } }
+      );
+      expect(passwordCostService.stats.rehashed).toBe(1);
+    });
+
+    test('should leave hashes inside the policy alone', () => {
+      expect(passwordCostService.scheduleRehash(mockUser('user-1', 12), 'TestPassword123!')).toBe(false);
+    });
+
+    test('should never rewrite a higher-cost hash at a lower cost', async () => {
+      const user = mockUser('user-1', 14);
+
+      expect(passwordCostService.scheduleRehash(user, 'TestPassword123!')).toBe(false);
+      // Even if the target dropped after a rehash was queued
+      expect(await passwordCostService.rehash(user._id, hashAt(14), 'TestPassword123!')).toBe(false);
+
+      expect(hashingPool.hash).not.toHaveBeenCalled();
+      expect(mockUpdateOne).not.toHaveBeenCalled();
+    });
+
+    test('should not rehash before the host is benchmarked', () => {
+      passwordCostService.tunedRounds = null;
+
+      expect(passwordCostService.scheduleRehash(mockUser('user-1', 10), 'TestPassword123!')).toBe(false);
+    });
+
+    test('should queue one rehash per user at a time', async () => {
+      const user = mockUser('user-1', 10);
+
+      expect(passwordCostService.scheduleRehash(user, 'TestPassword123!')).toBe(true);
+      expect(passwordCostService.scheduleRehash(user, 'TestPassword123!')).toBe(false);
+      await flush();
+
+      expect(mockUpdateOne).toHaveBeenCalledTimes(1);
+    });
+
+    test('should skip rehashing while the hashing pool is backed up', () => {
+      jest.spyOn(hashingPool, 'getMetrics').mockReturnValue({ queueDepth: 40, maxQueue: 64 });
+
+      expect(passwordCostService.scheduleRehash(mockUser('user-1', 10), 'TestPassword123!')).toBe(false);
+      expect(passwordCostService.stats.skipped).toBe(1);
+    });
+
+    test('should not count a rehash that lost to a password change', async () => {
+      mockUpdateOne.mockResolvedValue({ modifiedCount: 0 });
+
+      passwordCostService.scheduleRehash(mockUser('user-1', 10), 'TestPassword123!');
+      await flush();
+
+      expect(passwordCostService.stats.rehashed).toBe(0);
+      expect(passwordCostService.pendingRehashes.size).toBe(0);
+    });
+  });
+
+  describe('Cost distribution', () => {
+    test('should report counts per cost and how many are below policy', async () => {
+      mockAggregate.mockResolvedValue([
+        { _id: '14', count: 3 },
+        { _id: '10', count: 5 },
+        { _id: '12', count: 20 },
+        { _id: 'xx', count: 1 }
+      ]);
+
+      const report = await passwordCostService.getCostDistribution();
+
+      expect(report.targetRounds).toBe(12);
+      expect(report.policy).toEqual({ min: 12 });
+      expect(report.distribution).toEqual([
+        { rounds: 10, count: 5 },
+        { rounds: 12, count: 20 },
+        { rounds: 14, count: 3 }
+      ]);
+      expect(report.total).toBe(28);
+      expect(report.outsidePolicy).toBe(5);
+    });
+  });
+});
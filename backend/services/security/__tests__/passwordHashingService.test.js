@@ -1,4 +1,5 @@
 const PasswordHashingService = require('../passwordHashingService');
+const hashingPool = require('../hashingPool');
 const bcrypt = require('bcryptjs');
 
 describe('PasswordHashingService', () => {
@@ -310,27 +311,30 @@ describe('PasswordHashingService', () => {
   });
 
   describe('Error Handling', () => {
+    afterEach(() => {
+      jest.restoreAllMocks();
+    });
+
     test('should handle bcrypt errors gracefully', async () => {
-      // Mock bcrypt to throw an error
-      const originalCompare = bcrypt.compare;
-      bcrypt.compare = jest.fn().mockRejectedValue(new Error('bcrypt error'));
+      // bcrypt runs on the hashing pool, so fail the pool call
+      jest.spyOn(hashingPool, 'compare').mockRejectedValue(new Error('bcrypt error'));
 
       const isValid = await passwordHashingService.verifyPassword('test', 'hash');
       expect(isValid).toBe(false);
-
-      // Restore original function
-      bcrypt.compare = originalCompare;
     });
 
     test('should handle hash generation errors gracefully', async () => {
-      // Mock bcrypt to throw an error
-      const originalHash = bcrypt.hash;
-      bcrypt.hash = jest.fn().mockRejectedValue(new Error('bcrypt error'));
+      jest.spyOn(hashingPool, 'hash').mockRejectedValue(new Error('bcrypt error'));
 
       await expect(passwordHashingService.hashPassword('test')).rejects.toThrow('bcrypt error');
+    });
+
+    test('should surface a saturated hashing pool instead of reporting a mismatch', async () => {
+      const saturated = new Error('Password hashing capacity exceeded');
+      saturated.code = hashingPool.HASH_POOL_SATURATED;
+      jest.spyOn(hashingPool, 'compare').mockRejectedValue(saturated);
 
-      // Restore original function
-      bcrypt.hash = originalHash;
+      await expect(passwordHashingService.verifyPassword('test', '$2b$10$hash')).rejects.toThrow('capacity exceeded');
     });
   });
 });
\ No newline at end of file
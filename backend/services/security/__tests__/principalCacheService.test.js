@@ -0,0 +1,121 @@
+/**
+ * Unit Tests for Principal Cache Service
+ * Tests caching, LRU eviction, invalidation and metrics
+ */
+
+const mockFindById = jest.fn();
+
+jest.mock('../../../models/User', () => ({
+  findById: (...args) => mockFindById(...args)
+}));
+
+const principalCacheService = require('../principalCacheService');
+
+const mockUser = (id, overrides = {}) => ({
+  _id: { toString: () => id },
+  name: 'Test User',
+  email: `${id}@example.com`,
+  role: 'user',
+  isActive: true,
+  libraryId: null,
+  tokenVersion: 0,
+  ...overrides
+});
+
+const resolveUser = (user) => ({
+  select: jest.fn().mockReturnThis(),
+  lean: jest.fn(() => Promise.resolve(user))
+});
+
+describe('PrincipalCacheService', () => {
+  beforeEach(() => {
+    jest.clearAllMocks();
+    principalCacheService.invalidateAll();
+    principalCacheService.resetStats();
+    principalCacheService.maxEntries = 10000;
+    principalCacheService.ttlMs = 15000;
+    mockFindById.mockImplementation((id) => resolveUser(mockUser(id)));
+  });
+
+  it('should load a projected principal on a miss and serve hits from memory', async () => {
+    const first = await principalCacheService.getPrincipal('user1');
+    const second = await principalCacheService.getPrincipal('user1');
+
+    expect(first.id).toBe('user1');
+    expect(first.role).toBe('user');
+    expect(second).toBe(first);
+    expect(mockFindById).toHaveBeenCalledTimes(1);
+    expect(principalCacheService.getStats()).toMatchObject({ hits: 1, misses: 1, size: 1 });
+  });
+
+  it('should return frozen principals', async () => {
+    const principal = await principalCacheService.getPrincipal('user1');
+
+    expect(Object.isFrozen(principal)).toBe(true);
+  });
+
+  it('should share one query between concurrent misses', async () => {
+    await Promise.all([
+      principalCacheService.getPrincipal('user1'),
+      principalCacheService.getPrincipal('user1'),
+      principalCacheService.getPrincipal('user1')
+    ]);
+
+    expect(mockFindById).toHaveBeenCalledTimes(1);
+  });
+
+  it('should not cache missing users', async () => {
+    mockFindById.mockImplementation(() => resolveUser(null));
+
+    expect(await principalCacheService.getPrincipal('ghost')).toBeNull();
+    expect(principalCacheService.getStats().size).toBe(0);
+  });
+
+  it('should reload after invalidation', async () => {
+    await principalCacheService.getPrincipal('user1');
+    mockFindById.mockImplementation((id) => resolveUser(mockUser(id, { role: 'admin' })));
+
+    principalCacheService.invalidate('user1');
+    const principal = await principalCacheService.getPrincipal('user1');
+
+    expect(principal.role).toBe('admin');
+    expect(mockFindById).toHaveBeenCalledTimes(2);
+  });
+
+  it('should expire entries after the TTL', async () => {
+    principalCacheService.ttlMs = -1;
+
+    await principalCacheService.getPrincipal('user1');
+    await principalCacheService.getPrincipal('user1');
+
+    expect(mockFindById).toHaveBeenCalledTimes(2);
+  });
+
+  it('should evict the least recently used principal when full', async () => {
+    principalCacheService.maxEntries = 2;
+
+    await principalCacheService.getPrincipal('user1');
+    await principalCacheService.getPrincipal('user2');
+    await principalCacheService.getPrincipal('user1');
+    await principalCacheService.getPrincipal('user3');
+
+    expect(principalCacheService.entries.has('user1')).toBe(true);
+    expect(principalCacheService.entries.has('user2')).toBe(false);
+    expect(principalCacheService.getStats().evictions).toBe(1);
+  });
+
+  it('should not cache a principal invalidated while it was loading', async () => {
+    let resolveLoad;
+    mockFindById.mockImplementation(() => ({
+      select: jest.fn().mockReturnThis(),
+      lean: jest.fn(() => new Promise(resolve => { resolveLoad = resolve; }))
+    }));
+
+    const pending = principalCacheService.getPrincipal('user1');
+    principalCacheService.invalidate('user1');
+    resolveLoad(mockUser('user1'));
+    await pending;
+
+    expect(principalCacheService.entries.has('user1')).toBe(false);
+  });
+});
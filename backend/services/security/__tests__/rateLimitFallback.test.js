@@ -0,0 +1,164 @@
+/**
+ * Unit Tests for the in-process rate limit fallback
+ * Covers the bounded local store and RateLimitService behaviour while Redis
+ * is down and after it reconnects.
+ */
+
+const rateLimitService = require('../rateLimitService');
+const redisService = require('../redisService');
+const LocalRateLimitStore = require('../localRateLimitStore');
+const { RATE_LIMIT_KEYS } = require('../utils/constants');
+const { FakeRedisClient } = require('../../../tests/helpers/fakeRedis');
+
+describe('LocalRateLimitStore', () => {
+  const meta = { limitType: 'api:general', identifier: 'x', windowMs: 60000, maxRequests: 3 };
+
+  it('should enforce the limit per key', () => {
+    const store = new LocalRateLimitStore();
+    const now = 120000;
+
+    const results = Array.from({ length: 4 }, () => store.hit('a', meta, now));
+
+    expect(results.map(result => result.allowed)).toEqual([true, true, true, false]);
+    expect(store.hit('b', meta, now).allowed).toBe(true);
+  });
+
+  it('should weight the previous window like the Redis counter', () => {
+    const store = new LocalRateLimitStore();
+    for (let i = 0; i < 3; i++) {
+      store.hit('a', { ...meta, maxRequests: 100 }, 119000);
+    }
+
+    // Halfway through the next window half of the previous count remains
+    expect(store.count('a', 150000)).toBe(1);
+    expect(store.count('a', 190000)).toBe(0);
+  });
+
+  it('should stay within its entry ceiling and evict least recently used keys', () => {
+    const store = new LocalRateLimitStore({ shards: 4, maxEntries: 32 });
+
+    store.hit('keep', meta);
+    for (let i = 0; i < 1000; i++) {
+      store.hit(`key-${i}`, meta);
+      store.hit('keep', { ...meta, maxRequests: 10000 });
+    }
+
+    const stats = store.getStats();
+    expect(stats.entries).toBeLessThanOrEqual(32);
+    expect(stats.evictions).toBeGreaterThan(900);
+    expect(store.count('keep')).toBeGreaterThan(0);
+  });
+
+  it('should expire cached blocks and hand back unsynced state once', () => {
+    const store = new LocalRateLimitStore();
+    store.setBlock('10.0.0.1', { ip: '10.0.0.1', expiresAt: Date.now() + 60000 }, true);
+    store.setBlock('10.0.0.2', { ip: '10.0.0.2', expiresAt: Date.now() - 1 }, true);
+    store.hit('a', meta);
+
+    expect(store.getBlock('10.0.0.2')).toBeNull();
+
+    const first = store.takeUnsynced();
+    expect(first.blocks.map(block => block.ip)).toEqual(['10.0.0.1']);
+    expect(first.counters).toHaveLength(1);
+    expect(first.counters[0].unsynced).toBe(1);
+
+    const second = store.takeUnsynced();
+    expect(second.blocks).toHaveLength(0);
+    expect(second.counters).toHaveLength(0);
+  });
+});
+
+describe('RateLimitService Redis fallback', () => {
+  let client;
+
+  beforeEach(() => {
+    client = new FakeRedisClient();
+    redisService.client = client;
+    rateLimitService.localStore = new LocalRateLimitStore();
+    jest.spyOn(redisService, 'storeSecurityEvent').mockResolvedValue(true);
+  });
+
+  afterEach(() => {
+    jest.restoreAllMocks();
+    redisService.client = null;
+    redisService.isConnected = false;
+  });
+
+  it('should keep limiting locally while Redis is down', async () => {
+    redisService.isConnected = false;
+
+    const results = [];
+    for (let i = 0; i < 11; i++) {
+      results.push(await rateLimitService.checkRateLimit('user@example.com', RATE_LIMIT_KEYS.AUTH_ATTEMPT));
+    }
+
+    expect(results.slice(0, 10).every(result => result.allowed && result.fallback)).toBe(true);
+    expect(results[10].blocked).toBe(true);
+    expect(client.commandCount).toBe(0);
+  });
+
+  it('should fall back locally when a Redis command fails', async () => {
+    redisService.isConnected = true;
+    jest.spyOn(client, 'multi').mockImplementation(() => {
+      throw new Error('Connection reset');
+    });
+
+    const result = await rateLimitService.checkRateLimit('10.0.0.1', RATE_LIMIT_KEYS.GENERAL_API);
+
+    expect(result.allowed).toBe(true);
+    expect(result.fallback).toBe(true);
+    expect(result.error).toBe('Connection reset');
+  });
+
+  it('should block and check IPs from the local cache during an outage', async () => {
+    redisService.isConnected = false;
+
+    const block = await rateLimitService.blockIP('10.0.0.2', 'brute_force');
+    const status = await rateLimitService.checkIPBlock('10.0.0.2');
+
+    expect(block.fallback).toBe(true);
+    expect(status.blocked).toBe(true);
+    expect(status.reason).toBe('brute_force');
+  });
+
+  it('should serve blocks seen before the outage', async () => {
+    redisService.isConnected = true;
+    await rateLimitService.blockIP('10.0.0.3', 'scanner');
+
+    redisService.isConnected = false;
+    const status = await rateLimitService.checkIPBlock('10.0.0.3');
+
+    expect(status.blocked).toBe(true);
+    expect(status.fallback).toBe(true);
+  });
+
+  it('should replay outage counts and blocks to Redis on reconnect', async () => {
+    redisService.isConnected = false;
+    for (let i = 0; i < 5; i++) {
+      await rateLimitService.checkRateLimit('10.0.0.4', RATE_LIMIT_KEYS.GENERAL_API);
+    }
+    await rateLimitService.blockIP('10.0.0.5', 'brute_force');
+
+    redisService.isConnected = true;
+    const synced = await rateLimitService.resyncLocalStore();
+
+    expect(synced).toEqual({ counters: 1, blocks: 1 });
+    expect(await client.zCard(`rate_limit:${RATE_LIMIT_KEYS.GENERAL_API}:10.0.0.4`)).toBe(5);
+    expect((await rateLimitService.checkIPBlock('10.0.0.5')).blocked).toBe(true);
+    expect(await rateLimitService.resyncLocalStore()).toEqual({ counters: 0, blocks: 0 });
+  });
+
+  it('should keep a longer block already in Redis when replaying', async () => {
+    redisService.isConnected = true;
+    await rateLimitService.blockIP('10.0.0.6', 'long_block', { duration: 24 * 60 * 60 * 1000 });
+
+    redisService.isConnected = false;
+    await rateLimitService.blockIP('10.0.0.6', 'short_block', { duration: 1000, exponentialBackoff: false });
+
+    redisService.isConnected = true;
+    await rateLimitService.resyncLocalStore();
+
+    const stored = JSON.parse(await client.get('ip_reputation:block:10.0.0.6'));
+    expect(stored.reason).toBe('long_block');
+  });
+});
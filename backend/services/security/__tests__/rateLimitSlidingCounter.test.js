@@ -0,0 +1,141 @@
+/**
+ * Unit Tests for the scripted sliding-window counter rate limiter
+ * Runs RateLimitService against an in-memory Redis stand-in with a
+ * JavaScript port of the Lua script.
+ */
+
+const rateLimitService = require('../rateLimitService');
+const redisService = require('../redisService');
+const { RATE_LIMIT_KEYS } = require('../utils/constants');
+const { FakeRedisClient } = require('../../../tests/helpers/fakeRedis');
+const { registerScriptPorts } = require('../../../tests/helpers/redisScriptPorts');
+
+describe('RateLimitService sliding counter mode', () => {
+  let client;
+  const originalAlgorithm = rateLimitService.algorithm;
+  const originalLocalBucket = { ...rateLimitService.localBucketConfig };
+
+  beforeEach(() => {
+    client = registerScriptPorts(new FakeRedisClient());
+    redisService.client = client;
+    redisService.isConnected = true;
+    redisService.scriptShas.clear();
+    rateLimitService.algorithm = 'sliding_counter';
+    rateLimitService.localBucketConfig.enabled = false;
+    rateLimitService.localBuckets.clear();
+  });
+
+  afterEach(() => {
+    jest.restoreAllMocks();
+    redisService.client = null;
+    redisService.isConnected = false;
+    rateLimitService.algorithm = originalAlgorithm;
+    Object.assign(rateLimitService.localBucketConfig, originalLocalBucket);
+  });
+
+  it('should use one script call per request and load the script once', async () => {
+    for (let i = 0; i < 5; i++) {
+      await rateLimitService.checkRateLimit('192.168.1.1', RATE_LIMIT_KEYS.GENERAL_API);
+    }
+
+    // First call: EVALSHA (NOSCRIPT) + SCRIPT LOAD + EVALSHA
+    expect(client.commandCount).toBe(3 + 4);
+  });
+
+  it('should block once the limit is reached', async () => {
+    const results = [];
+    for (let i = 0; i < 12; i++) {
+      results.push(await rateLimitService.checkRateLimit(
+        'user@example.com', RATE_LIMIT_KEYS.AUTH_ATTEMPT
+      ));
+    }
+
+    expect(results.slice(0, 10).every(result => result.allowed)).toBe(true);
+    expect(results[9].remaining).toBe(0);
+    expect(results[10].blocked).toBe(true);
+    expect(results[11].blocked).toBe(true);
+  });
+
+  it('should keep two counters regardless of request volume', async () => {
+    for (let i = 0; i < 500; i++) {
+      await rateLimitService.checkRateLimit('10.0.0.1', RATE_LIMIT_KEYS.GENERAL_API);
+    }
+
+    const keys = await client.keys('rate_limit_counter:*');
+    expect(keys).toHaveLength(1);
+    expect(await client.get(keys[0])).toBe('200');
+  });
+
+  it('should weight the previous window by its overlap', async () => {
+    const windowMs = 15 * 60 * 1000;
+    const windowStart = Math.floor(Date.now() / windowMs) * windowMs;
+    jest.spyOn(Date, 'now').mockReturnValue(windowStart - 1000);
+
+    for (let i = 0; i < 100; i++) {
+      await rateLimitService.checkRateLimit('10.0.0.2', RATE_LIMIT_KEYS.GENERAL_API);
+    }
+
+    // A quarter into the next window, 75% of the previous count still applies
+    Date.now.mockReturnValue(windowStart + windowMs / 4);
+    const result = await rateLimitService.checkRateLimit('10.0.0.2', RATE_LIMIT_KEYS.GENERAL_API);
+
+    expect(result.count).toBe(76);
+  });
+
+  it('should serve leased slots locally without exceeding the limit', async () => {
+    rateLimitService.localBucketConfig.enabled = true;
+
+    const results = [];
+    for (let i = 0; i < 250; i++) {
+      results.push(await rateLimitService.checkRateLimit('10.0.0.3', RATE_LIMIT_KEYS.GENERAL_API));
+    }
+
+    const allowed = results.filter(result => result.allowed).length;
+    const local = results.filter(result => result.local).length;
+    expect(allowed).toBeLessThanOrEqual(200);
+    expect(allowed).toBeGreaterThan(190);
+    expect(local).toBeGreaterThan(0);
+    expect(results[249].blocked).toBe(true);
+  });
+
+  it('should not lease slots for low limits', async () => {
+    rateLimitService.localBucketConfig.enabled = true;
+
+    for (let i = 0; i < 3; i++) {
+      const result = await rateLimitService.checkRateLimit(
+        'user@example.com', RATE_LIMIT_KEYS.PASSWORD_RESET
+      );
+      expect(result.local).toBeUndefined();
+    }
+    expect(rateLimitService.localBuckets.size).toBe(0);
+  });
+
+  it('should report status and reset counters', async () => {
+    for (let i = 0; i < 7; i++) {
+      await rateLimitService.checkRateLimit('10.0.0.4', RATE_LIMIT_KEYS.GENERAL_API);
+    }
+
+    expect((await rateLimitService.getRateLimitStatus('10.0.0.4')).current).toBe(7);
+
+    await rateLimitService.resetRateLimit('10.0.0.4');
+
+    expect((await rateLimitService.getRateLimitStatus('10.0.0.4')).current).toBe(0);
+  });
+
+  it('should report status and reset counters for per-call options', async () => {
+    const options = { windowMs: 60 * 1000, maxRequests: 5, algorithm: 'sliding_counter' };
+    rateLimitService.algorithm = 'sliding_log';
+
+    for (let i = 0; i < 3; i++) {
+      await rateLimitService.checkRateLimit('10.0.0.5', RATE_LIMIT_KEYS.GENERAL_API, options);
+    }
+
+    const status = await rateLimitService.getRateLimitStatus('10.0.0.5', RATE_LIMIT_KEYS.GENERAL_API, options);
+    expect(status).toMatchObject({ current: 3, limit: 5, remaining: 2, windowMs: 60 * 1000 });
+
+    await rateLimitService.resetRateLimit('10.0.0.5', RATE_LIMIT_KEYS.GENERAL_API, options);
+
+    expect((await rateLimitService.getRateLimitStatus('10.0.0.5', RATE_LIMIT_KEYS.GENERAL_API, options)).current).toBe(0);
+    expect(await client.keys('rate_limit_counter:*')).toHaveLength(0);
+  });
+});
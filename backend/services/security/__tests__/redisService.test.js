@@ -16,6 +16,9 @@ const mockRedisClient = {
   incr: jest.fn(),
   incrByFloat: jest.fn(),
   expire: jest.fn(),
+  zRem: jest.fn(),
+  zRange: jest.fn(),
+  zRemRangeByScore: jest.fn(),
   multi: jest.fn(),
   on: jest.fn(),
   isReady: true,
@@ -26,6 +29,8 @@ const mockMulti = {
   incr: jest.fn().mockReturnThis(),
   expire: jest.fn().mockReturnThis(),
   incrByFloat: jest.fn().mockReturnThis(),
+  zAdd: jest.fn().mockReturnThis(),
+  zRemRangeByScore: jest.fn().mockReturnThis(),
   exec: jest.fn(),
 };
 
@@ -104,6 +109,10 @@ describe('RedisService', () => {
         expect.any(Number),
         JSON.stringify(sessionData)
       );
+      expect(mockMulti.zAdd).toHaveBeenCalledWith(
+        `${REDIS_PREFIXES.USER_SESSIONS}123`,
+        { score: expect.any(Number), value: sessionId }
+      );
     });
 
     it('should retrieve session data', async () => {
@@ -0,0 +1,94 @@
+/**
+ * Unit Tests for the Redis per-user session index
+ * Runs RedisService against an in-memory Redis stand-in to verify that user
+ * sessions are enumerated from the index rather than a keyspace scan.
+ */
+
+const redisService = require('../redisService');
+const { REDIS_PREFIXES } = require('../utils/constants');
+const { FakeRedisClient } = require('../../../tests/helpers/fakeRedis');
+
+describe('RedisService user session index', () => {
+  let client;
+
+  beforeEach(() => {
+    client = new FakeRedisClient();
+    redisService.client = client;
+    redisService.isConnected = true;
+  });
+
+  afterEach(() => {
+    jest.useRealTimers();
+    redisService.client = null;
+    redisService.isConnected = false;
+  });
+
+  it('should index sessions by user when they are stored', async () => {
+    await redisService.setSession('s1', { userId: 'u1' }, 3600);
+    await redisService.setSession('s2', { userId: 'u1' }, 3600);
+    await redisService.setSession('s3', { userId: 'u2' }, 3600);
+
+    expect((await redisService.getUserSessions('u1')).sort()).toEqual(['s1', 's2']);
+    expect(await redisService.getUserSessions('u2')).toEqual(['s3']);
+    expect(await redisService.getUserSessions('u3')).toEqual([]);
+  });
+
+  it('should not scan the session keyspace', async () => {
+    const keysSpy = jest.spyOn(client, 'keys');
+    const scanSpy = jest.spyOn(client, 'scanIterator');
+
+    for (let i = 0; i < 50; i++) {
+      await redisService.setSession(`other-${i}`, { userId: `other-${i}` }, 3600);
+    }
+    await redisService.setSession('mine', { userId: 'u1' }, 3600);
+
+    const getSpy = jest.spyOn(client, 'get');
+    expect(await redisService.getUserSessions('u1')).toEqual(['mine']);
+    expect(keysSpy).not.toHaveBeenCalled();
+    expect(scanSpy).not.toHaveBeenCalled();
+    expect(getSpy).not.toHaveBeenCalled();
+  });
+
+  it('should keep the index when a session is re-stored with a shorter TTL', async () => {
+    await redisService.setSession('s1', { userId: 'u1' }, 7 * 24 * 60 * 60);
+    await redisService.setSession('s1', { userId: 'u1', isActive: false }, 24 * 60 * 60);
+
+    expect(await redisService.getUserSessions('u1')).toEqual(['s1']);
+    expect(await client.ttl(`${REDIS_PREFIXES.USER_SESSIONS}u1`)).toBeGreaterThanOrEqual(7 * 24 * 60 * 60 - 1);
+  });
+
+  it('should drop expired sessions from the index', async () => {
+    jest.useFakeTimers({ now: Date.now() });
+
+    await redisService.setSession('short', { userId: 'u1' }, 60);
+    await redisService.setSession('long', { userId: 'u1' }, 3600);
+
+    jest.setSystemTime(Date.now() + 120 * 1000);
+
+    expect(await redisService.getUserSessions('u1')).toEqual(['long']);
+    expect(await client.zCard(`${REDIS_PREFIXES.USER_SESSIONS}u1`)).toBe(1);
+  });
+
+  it('should remove sessions from the index when they are deleted', async () => {
+    await redisService.setSession('s1', { userId: 'u1' }, 3600);
+    await redisService.setSession('s2', { userId: 'u1' }, 3600);
+
+    await redisService.deleteSession('s1');
+    await redisService.deleteSession('s2', 'u1');
+
+    expect(await redisService.getUserSessions('u1')).toEqual([]);
+    expect(await redisService.getSession('s1')).toBeNull();
+  });
+
+  it('should rebuild the index from existing sessions', async () => {
+    await client.setEx(`${REDIS_PREFIXES.SESSION}legacy-1`, 3600, JSON.stringify({ userId: 'u1' }));
+    await client.setEx(`${REDIS_PREFIXES.SESSION}legacy-2`, 3600, JSON.stringify({ userId: 'u2' }));
+    await client.setEx(`${REDIS_PREFIXES.SESSION}broken`, 3600, 'not-json');
+
+    const indexed = await redisService.rebuildUserSessionIndex();
+
+    expect(indexed).toBe(2);
+    expect(await redisService.getUserSessions('u1')).toEqual(['legacy-1']);
+    expect(await redisService.getUserSessions('u2')).toEqual(['legacy-2']);
+  });
+});
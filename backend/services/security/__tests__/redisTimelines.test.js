@@ -0,0 +1,72 @@
+/**
+ * Unit Tests for Redis time-ordered timelines
+ * Runs RedisService against an in-memory Redis stand-in to verify range reads
+ * and score-based trimming of the security event timelines.
+ */
+
+const redisService = require('../redisService');
+const { FakeRedisClient } = require('../../../tests/helpers/fakeRedis');
+
+describe('RedisService timelines', () => {
+  const hour = 60 * 60 * 1000;
+  const now = Date.UTC(2025, 0, 27, 12);
+  let client;
+
+  beforeEach(() => {
+    client = new FakeRedisClient();
+    redisService.client = client;
+    redisService.isConnected = true;
+  });
+
+  afterEach(() => {
+    redisService.client = null;
+    redisService.isConnected = false;
+  });
+
+  it('should return only members scored inside the range, oldest first', async () => {
+    await redisService.addToTimelines(['user_timeline:u1'], 'e3', now - 1 * hour, 90 * 24 * hour);
+    await redisService.addToTimelines(['user_timeline:u1'], 'e1', now - 5 * hour, 90 * 24 * hour);
+    await redisService.addToTimelines(['user_timeline:u1'], 'e2', now - 3 * hour, 90 * 24 * hour);
+
+    expect(await redisService.getTimelineRange('user_timeline:u1', now - 4 * hour, now))
+      .toEqual(['e2', 'e3']);
+    expect(await redisService.getTimelineRange('user_timeline:u1', now - 6 * hour, now))
+      .toEqual(['e1', 'e2', 'e3']);
+  });
+
+  it('should index a member on several timelines in one pipeline', async () => {
+    const multiSpy = jest.spyOn(client, 'multi');
+
+    await redisService.addToTimelines(
+      ['security_timeline:2025-01-27', 'user_timeline:u1', 'ip_timeline:10.0.0.1'],
+      'e1',
+      now,
+      90 * 24 * hour
+    );
+
+    expect(multiSpy).toHaveBeenCalledTimes(1);
+    expect(await redisService.getTimelineRange('ip_timeline:10.0.0.1', now - hour, now)).toEqual(['e1']);
+  });
+
+  it('should read several timelines in one pipeline without duplicates', async () => {
+    await redisService.addToTimelines(['security_timeline:2025-01-26'], 'e1', now - 24 * hour, 90 * 24 * hour);
+    await redisService.addToTimelines(['security_timeline:2025-01-27'], 'e2', now, 90 * 24 * hour);
+
+    const multiSpy = jest.spyOn(client, 'multi');
+    const ids = await redisService.getTimelineRange(
+      ['security_timeline:2025-01-26', 'security_timeline:2025-01-27', 'security_timeline:2025-01-27'],
+      now - 48 * hour,
+      now
+    );
+
+    expect(ids).toEqual(['e1', 'e2']);
+    expect(multiSpy).toHaveBeenCalledTimes(1);
+  });
+
+  it('should drop members older than the retention window on write', async () => {
+    await redisService.addToTimelines(['ip_timeline:10.0.0.1'], 'old', now - 3 * hour, 2 * hour);
+    await redisService.addToTimelines(['ip_timeline:10.0.0.1'], 'new', now, 2 * hour);
+
+    expect(await client.zCard('ip_timeline:10.0.0.1')).toBe(1);
+  });
+});
@@ -0,0 +1,110 @@
+/**
+ * Unit Tests for Redis batched reads and sliding-window counters
+ * Runs RedisService against an in-memory Redis stand-in to verify that
+ * detector lookups cost a constant number of round trips.
+ */
+
+const redisService = require('../redisService');
+const { REDIS_PREFIXES, TIMEOUTS } = require('../utils/constants');
+const { FakeRedisClient } = require('../../../tests/helpers/fakeRedis');
+
+describe('RedisService batched reads and window counters', () => {
+  let client;
+
+  beforeEach(() => {
+    client = new FakeRedisClient();
+    redisService.client = client;
+    redisService.isConnected = true;
+  });
+
+  afterEach(() => {
+    redisService.client = null;
+    redisService.isConnected = false;
+  });
+
+  describe('getMany', () => {
+    it('should return values in key order with null for missing keys', async () => {
+      await client.set('a', '1');
+      await client.set('c', '3');
+
+      expect(await redisService.getMany(['a', 'b', 'c'])).toEqual(['1', null, '3']);
+      expect(await redisService.getMany([])).toEqual([]);
+    });
+
+    it('should split large lookups across MGET calls in one pipeline', async () => {
+      const keys = Array.from({ length: 1200 }, (_, i) => `key:${i}`);
+      await Promise.all(keys.map((key, i) => client.set(key, String(i))));
+
+      const multiSpy = jest.spyOn(client, 'multi');
+      const values = await redisService.getMany(keys);
+
+      expect(values).toHaveLength(1200);
+      expect(values[1199]).toBe('1199');
+      expect(multiSpy).toHaveBeenCalledTimes(1);
+    });
+  });
+
+  describe('getSecurityEvents', () => {
+    it('should fetch events in one batch and skip missing or corrupt entries', async () => {
+      await client.set(`${REDIS_PREFIXES.SECURITY_EVENT}e1`, JSON.stringify({ eventType: 'login_failure' }));
+      await client.set(`${REDIS_PREFIXES.SECURITY_EVENT}e2`, '{broken');
+
+      const getSpy = jest.spyOn(client, 'get');
+      const events = await redisService.getSecurityEvents(new Set(['e1', 'e2', 'e3']));
+
+      expect(events).toEqual([{ eventType: 'login_failure' }]);
+      expect(getSpy).not.toHaveBeenCalled();
+    });
+  });
+
+  describe('window counters', () => {
+    const bucketMs = TIMEOUTS.EVENT_COUNTER_BUCKET;
+
+    it('should count occurrences inside the window only', async () => {
+      const now = 1000 * bucketMs;
+
+      await redisService.incrementWindowCounters(['ip:1.2.3.4:login_failure'], now - 20 * 60 * 1000);
+      for (let i = 0; i < 5; i++) {
+        await redisService.incrementWindowCounters(['ip:1.2.3.4:login_failure'], now - i * 60 * 1000);
+      }
+
+      expect(await redisService.getWindowCount('ip:1.2.3.4:login_failure', 15 * 60 * 1000, now)).toBe(5);
+      expect(await redisService.getWindowCount('ip:1.2.3.4:login_failure', 30 * 60 * 1000, now)).toBe(6);
+      expect(await redisService.getWindowCount('ip:5.6.7.8:login_failure', 15 * 60 * 1000, now)).toBe(0);
+    });
+
+    it('should record several scopes in a single round trip', async () => {
+      const multiSpy = jest.spyOn(client, 'multi');
+
+      await redisService.incrementWindowCounters(['ip:1.2.3.4:data_access', 'userId:u1:data_access']);
+
+      expect(multiSpy).toHaveBeenCalledTimes(1);
+      expect(await redisService.getWindowCount('userId:u1:data_access', 60 * 1000)).toBe(1);
+    });
+
+    it('should read a window with a constant number of round trips', async () => {
+      const now = Date.now();
+      for (let i = 0; i < 200; i++) {
+        await redisService.incrementWindowCounters(['ip:1.2.3.4:login_failure'], now - i * 1000);
+      }
+
+      const multiSpy = jest.spyOn(client, 'multi');
+      const getSpy = jest.spyOn(client, 'get');
+      const count = await redisService.getWindowCount('ip:1.2.3.4:login_failure', 15 * 60 * 1000, now);
+
+      expect(count).toBe(200);
+      expect(multiSpy).toHaveBeenCalledTimes(1);
+      expect(getSpy).not.toHaveBeenCalled();
+    });
+
+    it('should let counter buckets expire after the retention period', async () => {
+      await redisService.incrementWindowCounters(['ip:1.2.3.4:login_failure']);
+
+      const [key] = await client.keys(`${REDIS_PREFIXES.EVENT_COUNTER}*`);
+      const ttl = await client.ttl(key);
+
+      expect(ttl).toBeGreaterThan(0);
+      expect(ttl).toBeLessThanOrEqual((TIMEOUTS.EVENT_COUNTER_RETENTION + bucketMs) / 1000);
+    });
+  });
+});
@@ -7,6 +7,7 @@ const User = require('../../../models/User');
 const Booking = require('../../../models/Booking');
 const Favorite = require('../../../models/Favorite');
 const Rating = require('../../../models/Rating');
+const Library = require('../../../models/Library');
 const Notification = require('../../../models/Notification');
 const AuditLog = require('../../../models/AuditLog');
 
@@ -302,6 +303,27 @@ describe('RightToBeForgottenService', () => {
       expect(result.verificationResults.totalRemainingRecords).toBe(0);
     });
 
+    it('should take erased ratings out of the library rating totals', async () => {
+      const otherUserId = new mongoose.Types.ObjectId();
+      const { insertedId: libraryId } = await Library.collection.insertOne({ name: 'Rated Library' });
+      await Rating.collection.insertMany([
+        { userId: testUser._id, libraryId, rating: 2, isActive: true },
+        { userId: testUser._id, libraryId, rating: 1, isActive: false },
+        { userId: otherUserId, libraryId, rating: 4, isActive: true }
+      ]);
+      await Library.recalculateRatings(libraryId);
+
+      await rightToBeForgottenService.executeDataDeletion('test-deletion-request-ratings', { userId: testUserId });
+
+      const library = await Library.collection.findOne({ _id: libraryId });
+      expect(library.ratingSum).toBe(4);
+      expect(library.ratingCount).toBe(1);
+      await Library.recalculateRatings(libraryId);
+      const recalculated = await Library.collection.findOne({ _id: libraryId });
+      expect(recalculated.ratingSum).toBe(library.ratingSum);
+      expect(recalculated.ratingCount).toBe(library.ratingCount);
+    });
+
     it('should handle data retention for legal reasons', async () => {
       const deletionRequestId = 'test-deletion-request-456';
       const options = {
@@ -231,7 +231,7 @@ describe('Security Dashboard Integration Tests', () => {
       ];
 
       auditTrailService.getAuditEntries.mockResolvedValue(mockAuditEntries);
-      auditTrailService.verifyAuditTrailIntegrity.mockResolvedValue({ valid: true });
+      auditTrailService.verifyAuditLogFiles.mockResolvedValue({ valid: true });
 
       const response = await request(app)
         .get('/api/security/metrics/audit')
@@ -223,7 +223,7 @@ describe('SecurityDashboardService', () => {
       ];
 
       auditTrailService.getAuditEntries.mockResolvedValue(mockAuditEntries);
-      auditTrailService.verifyAuditTrailIntegrity.mockResolvedValue({ valid: true });
+      auditTrailService.verifyAuditLogFiles.mockResolvedValue({ valid: true });
 
       const metrics = await securityDashboardService.getDetailedMetrics('audit', '24h');
 
@@ -53,6 +53,11 @@ describe('SecurityMonitorService', () => {
     redisService.addToSet = jest.fn().mockResolvedValue(true);
     redisService.getSet = jest.fn().mockResolvedValue(new Set());
     redisService.get = jest.fn().mockResolvedValue(null);
+    redisService.incrementWindowCounters = jest.fn().mockResolvedValue(true);
+    redisService.getWindowCount = jest.fn().mockResolvedValue(0);
+    redisService.addToTimelines = jest.fn().mockResolvedValue(true);
+    redisService.getTimelineRange = jest.fn().mockResolvedValue([]);
+    redisService.getSecurityEvents = jest.fn().mockResolvedValue([]);
   });
 
   describe('Initialization', () => {
@@ -124,7 +129,17 @@ describe('SecurityMonitorService', () => {
       expect(result.deviceInfo).toHaveProperty('userAgent', 'Mozilla/5.0 Test Browser');
 
       expect(redisService.setWithTTL).toHaveBeenCalled();
-      expect(redisService.addToSet).toHaveBeenCalledTimes(3); // time-series, user events, IP events
+      expect(redisService.addToTimelines).toHaveBeenCalledWith(
+        [
+          `security_timeline:${SECURITY_EVENTS.LOGIN_FAILURE}:${result.timestamp.split('T')[0]}`,
+          `security_timeline:${result.timestamp.split('T')[0]}`,
+          'user_timeline:user123',
+          'ip_timeline:192.168.1.100',
+        ],
+        result.correlationId,
+        Date.parse(result.timestamp),
+        expect.any(Number)
+      );
     });
 
     test('should validate event type', async () => {
@@ -177,23 +192,8 @@ describe('SecurityMonitorService', () => {
     });
 
     test('should detect brute force attack anomaly', async () => {
-      // Mock multiple failed login events from same IP
-      const mockEvents = [];
-      for (let i = 0; i < 6; i++) {
-        mockEvents.push({
-          eventType: SECURITY_EVENTS.LOGIN_FAILURE,
-          timestamp: new Date(Date.now() - i * 60000).toISOString(), // 1 minute apart
-        });
-      }
-
-      redisService.getSet.mockResolvedValue(new Set(['event1', 'event2', 'event3', 'event4', 'event5', 'event6']));
-      redisService.get.mockImplementation((key) => {
-        if (key.startsWith('security_event:')) {
-          const index = parseInt(key.split(':')[1].replace('event', '')) - 1;
-          return Promise.resolve(JSON.stringify(mockEvents[index] || null));
-        }
-        return Promise.resolve(null);
-      });
+      // Six failed logins from the same IP inside the window
+      redisService.getWindowCount.mockResolvedValue(6);
 
       const consoleSpy = jest.spyOn(console, 'error').mockImplementation();
 
@@ -215,23 +215,8 @@ describe('SecurityMonitorService', () => {
     });
 
     test('should detect privilege escalation anomaly', async () => {
-      // Mock multiple privilege escalation events from same user
-      const mockEvents = [];
-      for (let i = 0; i < 4; i++) {
-        mockEvents.push({
-          eventType: SECURITY_EVENTS.PRIVILEGE_ESCALATION,
-          timestamp: new Date(Date.now() - i * 60000).toISOString(),
-        });
-      }
-
-      redisService.getSet.mockResolvedValue(new Set(['event1', 'event2', 'event3', 'event4']));
-      redisService.get.mockImplementation((key) => {
-        if (key.startsWith('security_event:')) {
-          const index = parseInt(key.split(':')[1].replace('event', '')) - 1;
-          return Promise.resolve(JSON.stringify(mockEvents[index] || null));
-        }
-        return Promise.resolve(null);
-      });
+      // Four privilege escalation attempts from the same user inside the window
+      redisService.getWindowCount.mockResolvedValue(4);
 
       const consoleSpy = jest.spyOn(console, 'error').mockImplementation();
 
@@ -253,23 +238,8 @@ describe('SecurityMonitorService', () => {
     });
 
     test('should detect suspicious activity anomaly', async () => {
-      // Mock multiple suspicious activity events from same IP
-      const mockEvents = [];
-      for (let i = 0; i < 11; i++) {
-        mockEvents.push({
-          eventType: SECURITY_EVENTS.SUSPICIOUS_ACTIVITY,
-          timestamp: new Date(Date.now() - i * 60000).toISOString(),
-        });
-      }
-
-      redisService.getSet.mockResolvedValue(new Set(Array.from({ length: 11 }, (_, i) => `event${i + 1}`)));
-      redisService.get.mockImplementation((key) => {
-        if (key.startsWith('security_event:')) {
-          const index = parseInt(key.split(':')[1].replace('event', '')) - 1;
-          return Promise.resolve(JSON.stringify(mockEvents[index] || null));
-        }
-        return Promise.resolve(null);
-      });
+      // Eleven suspicious events from the same IP inside the window
+      redisService.getWindowCount.mockResolvedValue(11);
 
       const consoleSpy = jest.spyOn(console, 'error').mockImplementation();
 
@@ -294,30 +264,10 @@ describe('SecurityMonitorService', () => {
       // Create a spy to capture the triggerAlert call
       const triggerAlertSpy = jest.spyOn(securityMonitorService, 'triggerAlert').mockResolvedValue({});
       
-      // Mock excessive data access events from same user
-      const mockEvents = [];
-      for (let i = 0; i < 101; i++) {
-        mockEvents.push({
-          eventType: SECURITY_EVENTS.DATA_ACCESS,
-          timestamp: new Date(Date.now() - i * 60000).toISOString(),
-        });
-      }
-
-      // Mock getSet to return events for user_events key
-      redisService.getSet.mockImplementation((key) => {
-        if (key.includes('user_events:user123')) {
-          return Promise.resolve(new Set(Array.from({ length: 101 }, (_, i) => `event${i + 1}`)));
-        }
-        return Promise.resolve(new Set());
-      });
-
-      redisService.get.mockImplementation((key) => {
-        if (key.startsWith('security_event:')) {
-          const index = parseInt(key.split(':')[1].replace('event', '')) - 1;
-          return Promise.resolve(JSON.stringify(mockEvents[index] || null));
-        }
-        return Promise.resolve(null);
-      });
+      // Excessive data access from the same user inside the window
+      redisService.getWindowCount.mockImplementation((scope) => (
+        Promise.resolve(scope === `userId:user123:${SECURITY_EVENTS.DATA_ACCESS}` ? 101 : 0)
+      ));
 
       // Mock HTTPS to avoid SIEM errors
       const https = require('https');
@@ -355,8 +305,30 @@ describe('SecurityMonitorService', () => {
       triggerAlertSpy.mockRestore();
     });
 
+    test('should record sliding-window counters for IP and user', async () => {
+      await securityMonitorService.logSecurityEvent(
+        SECURITY_EVENTS.LOGIN_FAILURE,
+        SEVERITY_LEVELS.MEDIUM,
+        { username: 'testuser' },
+        'user123',
+        mockReq
+      );
+
+      expect(redisService.incrementWindowCounters).toHaveBeenCalledWith(
+        [
+          `ip:192.168.1.100:${SECURITY_EVENTS.LOGIN_FAILURE}`,
+          `userId:user123:${SECURITY_EVENTS.LOGIN_FAILURE}`,
+        ],
+        expect.any(Number)
+      );
+      expect(redisService.getWindowCount).toHaveBeenCalledWith(
+        `ip:192.168.1.100:${SECURITY_EVENTS.LOGIN_FAILURE}`,
+        15 * 60 * 1000
+      );
+    });
+
     test('should handle anomaly detection errors gracefully', async () => {
-      redisService.getSet.mockRejectedValue(new Error('Redis error'));
+      redisService.getWindowCount.mockRejectedValue(new Error('Redis error'));
       
       // Mock HTTPS to avoid SIEM errors
       const https = require('https');
@@ -518,32 +490,19 @@ describe('SecurityMonitorService', () => {
         },
       ];
 
-      // Mock getSet to return different sets for different event types
-      redisService.getSet.mockImplementation((key) => {
-        if (key.includes('login_success')) {
-          return Promise.resolve(new Set(['event1']));
-        }
-        if (key.includes('login_failure')) {
-          return Promise.resolve(new Set(['event2']));
-        }
-        return Promise.resolve(new Set());
-      });
-
-      redisService.get.mockImplementation((key) => {
-        if (key === 'security_event:event1') {
-          return Promise.resolve(JSON.stringify(mockEvents[0]));
-        }
-        if (key === 'security_event:event2') {
-          return Promise.resolve(JSON.stringify(mockEvents[1]));
-        }
-        return Promise.resolve(null);
-      });
+      redisService.getTimelineRange.mockResolvedValue(['event1', 'event2']);
+      redisService.getSecurityEvents.mockResolvedValue(mockEvents);
 
       const startDate = new Date('2025-01-27T00:00:00Z');
       const endDate = new Date('2025-01-27T23:59:59Z');
 
       const events = await securityMonitorService.getSecurityEvents(startDate, endDate);
 
+      expect(redisService.getTimelineRange).toHaveBeenCalledWith(
+        ['security_timeline:2025-01-27'],
+        startDate.getTime(),
+        endDate.getTime()
+      );
       expect(events).toHaveLength(2);
       expect(events[0].correlationId).toBe('event2'); // Should be sorted by timestamp desc
       expect(events[1].correlationId).toBe('event1');
@@ -556,8 +515,8 @@ describe('SecurityMonitorService', () => {
         correlationId: 'event1',
       };
 
-      redisService.getSet.mockResolvedValue(new Set(['event1']));
-      redisService.get.mockResolvedValue(JSON.stringify(mockEvent));
+      redisService.getTimelineRange.mockResolvedValue(['event1']);
+      redisService.getSecurityEvents.mockResolvedValue([mockEvent]);
 
       const startDate = new Date('2025-01-27T00:00:00Z');
       const endDate = new Date('2025-01-27T23:59:59Z');
@@ -568,6 +527,11 @@ describe('SecurityMonitorService', () => {
         SECURITY_EVENTS.LOGIN_SUCCESS
       );
 
+      expect(redisService.getTimelineRange).toHaveBeenCalledWith(
+        [`security_timeline:${SECURITY_EVENTS.LOGIN_SUCCESS}:2025-01-27`],
+        startDate.getTime(),
+        endDate.getTime()
+      );
       expect(events).toHaveLength(1);
       expect(events[0].eventType).toBe(SECURITY_EVENTS.LOGIN_SUCCESS);
     });
@@ -591,8 +555,44 @@ describe('SecurityMonitorService', () => {
       expect(alerts[0].type).toBe('brute_force_attack');
     });
 
+    test('should read a single user timeline when filtered by user', async () => {
+      const mockEvents = [
+        {
+          eventType: SECURITY_EVENTS.LOGIN_SUCCESS,
+          timestamp: '2025-01-27T10:00:00Z',
+          correlationId: 'event1',
+        },
+        {
+          eventType: SECURITY_EVENTS.LOGIN_FAILURE,
+          timestamp: '2025-01-27T11:00:00Z',
+          correlationId: 'event2',
+        },
+      ];
+
+      redisService.getTimelineRange.mockResolvedValue(['event1', 'event2']);
+      redisService.getSecurityEvents.mockResolvedValue(mockEvents);
+
+      const startDate = new Date('2025-01-20T00:00:00Z');
+      const endDate = new Date('2025-01-27T23:59:59Z');
+
+      const events = await securityMonitorService.getSecurityEvents(
+        startDate,
+        endDate,
+        SECURITY_EVENTS.LOGIN_FAILURE,
+        { userId: 'user123' }
+      );
+
+      expect(redisService.getTimelineRange).toHaveBeenCalledWith(
+        ['user_timeline:user123'],
+        startDate.getTime(),
+        endDate.getTime()
+      );
+      expect(events).toHaveLength(1);
+      expect(events[0].correlationId).toBe('event2');
+    });
+
     test('should handle retrieval errors', async () => {
-      redisService.getSet.mockRejectedValue(new Error('Redis error'));
+      redisService.getTimelineRange.mockRejectedValue(new Error('Redis error'));
 
       const startDate = new Date('2025-01-27T00:00:00Z');
       const endDate = new Date('2025-01-27T23:59:59Z');
@@ -10,7 +10,8 @@ const {
 } = require('./utils/constants');
 const { 
   sanitizeForLogging,
-  isValidIP
+  isValidIP,
+  generateEventCounterScope
 } = require('./utils/securityHelpers');
 const redisService = require('./redisService');
 const configService = require('./configService');
@@ -203,21 +204,10 @@ class AnomalyDetectionService {
       const groupValue = this.getGroupValue(rule.groupBy, securityEvent);
       if (!groupValue) return null;
 
-      const windowStart = Date.now() - rule.threshold.windowMs;
-      const eventKey = `${rule.groupBy}_events:${groupValue}`;
-      const recentEvents = await redisService.getSet(eventKey) || new Set();
-      
-      let eventCount = 0;
-      for (const eventId of recentEvents) {
-        const eventData = await redisService.get(`security_event:${eventId}`);
-        if (eventData) {
-          const event = JSON.parse(eventData);
-          if (event.eventType === rule.eventType && 
-              new Date(event.timestamp).getTime() > windowStart) {
-            eventCount++;
-          }
-        }
-      }
+      const eventCount = await redisService.getWindowCount(
+        generateEventCounterScope(rule.groupBy, groupValue, rule.eventType),
+        rule.threshold.windowMs
+      );
 
       if (eventCount >= rule.threshold.count) {
         return {
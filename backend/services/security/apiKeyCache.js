@@ -0,0 +1,341 @@
+/**
+ * API Key Cache
+ * Bounded in-process cache of successfully validated API keys, keyed by a
+ * digest of the presented key so a hit skips both the Mongo lookup and the
+ * secret comparison. Revocations, rotations and updates are broadcast over
+ * Redis pub/sub so every instance drops the key at once.
+ */
+
+const crypto = require('crypto');
+const redisService = require('./redisService');
+const { REDIS_CHANNELS } = require('./utils/constants');
+const { sanitizeForLogging } = require('./utils/securityHelpers');
+
+const DEFAULT_MAX_ENTRIES = 10000;
+const DEFAULT_TTL_MS = 5 * 60 * 1000;
+
+/**
+ * Validated key state needed to authorise a request without the document
+ * Restriction checks mirror the ApiKey model methods.
+ */
+class CachedApiKey {
+  /**
+   * @param {Object} apiKey - Validated API key document
+   */
+  constructor(apiKey) {
+    this._id = apiKey._id;
+    this.keyId = apiKey.keyId;
+    this.name = apiKey.name;
+    // Plain copy of the populated owner, so the document can be released
+    const owner = apiKey.userId;
+    this.userId = owner && owner._id
+      ? { _id: owner._id, name: owner.name, email: owner.email, role: owner.role }
+      : owner;
+    this.permissions = [...(apiKey.permissions || [])];
+    this.scopes = [...(apiKey.scopes || [])];
+    this.rateLimit = {
+      requestsPerHour: apiKey.rateLimit?.requestsPerHour,
+      requestsPerDay: apiKey.rateLimit?.requestsPerDay
+    };
+    this.restrictions = {
+      allowedIPs: [...(apiKey.restrictions?.allowedIPs || [])],
+      allowedDomains: [...(apiKey.restrictions?.allowedDomains || [])]
+    };
+    this.expiresAt = apiKey.expiresAt || null;
+    // Only used to seed usage counters that Redis has lost
+    this.usage = {
+      totalRequests: apiKey.usage?.totalRequests || 0,
+      requestsThisHour: apiKey.usage?.requestsThisHour || 0,
+      requestsToday: apiKey.usage?.requestsToday || 0,
+      lastResetHour: apiKey.usage?.lastResetHour,
+      lastResetDate: apiKey.usage?.lastResetDate
+    };
+  }
+
+  /**
+   * Check whether the key has expired since it was cached
+   * @returns {boolean} True if still usable
+   */
+  isValid() {
+    return !(this.expiresAt && this.expiresAt < new Date());
+  }
+
+  /**
+   * Check IP restrictions
+   * @param {string} clientIP - Client IP
+   * @returns {boolean} True if allowed
+   */
+  checkIPRestriction(clientIP) {
+    if (this.restrictions.allowedIPs.length === 0) {
+      return true;
+    }
+    return this.restrictions.allowedIPs.includes(clientIP);
+  }
+
+  /**
+   * Check domain restrictions
+   * @param {string} origin - Request origin
+   * @returns {boolean} True if allowed
+   */
+  checkDomainRestriction(origin) {
+    if (this.restrictions.allowedDomains.length === 0) {
+      return true;
+    }
+    if (!origin) return false;
+
+    try {
+      const url = new URL(origin);
+      return this.restrictions.allowedDomains.some(domain =>
+        url.hostname === domain || url.hostname.endsWith('.' + domain)
+      );
+    } catch (error) {
+      return false;
+    }
+  }
+}
+
+class ApiKeyCache {
+  /**
+   * @param {Object} options - Cache limits
+   * @param {number} options.maxEntries - Keys kept before LRU eviction
+   * @param {number} options.ttlMs - Upper bound on staleness if a broadcast is missed
+   */
+  constructor(options = {}) {
+    this.maxEntries = options.maxEntries
+      || parseInt(process.env.API_KEY_CACHE_MAX_ENTRIES) || DEFAULT_MAX_ENTRIES;
+    this.ttlMs = options.ttlMs || parseInt(process.env.API_KEY_CACHE_TTL_MS) || DEFAULT_TTL_MS;
+    this.enabled = options.enabled !== undefined
+      ? options.enabled
+      : process.env.API_KEY_CACHE_ENABLED !== 'false';
+
+    // digest -> { key, expiresAt }
+    this.entries = new Map();
+    // keyId -> Set of digests, for invalidation
+    this.digestsByKeyId = new Map();
+
+    // Bumped on every invalidation so a lookup that raced one is not cached
+    this.generation = 0;
+
+    this.subscribed = false;
+    this.subscribing = null;
+    this.stats = { hits: 0, misses: 0, invalidations: 0, evictions: 0 };
+
+    if (typeof redisService.onReconnect === 'function') {
+      // Broadcasts sent during the outage were missed
+      redisService.onReconnect(() => this.clear());
+    }
+    if (typeof redisService.onSubscriberLost === 'function') {
+      // Only the subscriber connection dropped: the same applies, and entries
+      // are not trusted again until a fresh subscription is in place
+      redisService.onSubscriberLost(() => {
+        this.subscribed = false;
+        this.clear();
+      });
+    }
+  }
+
+  /**
+   * Digest of a presented key
+   * @param {string} fullKey - Full API key string
+   * @returns {string} SHA-256 hex digest
+   */
+  digest(fullKey) {
+    return crypto.createHash('sha256').update(fullKey).digest('hex');
+  }
+
+  /**
+   * Whether the cache may serve entries
+   * Entries are only trusted while the invalidation channel is live.
+   * @returns {boolean} True if usable
+   */
+  isActive() {
+    return this.enabled && this.subscribed && redisService.isConnected !== false;
+  }
+
+  /**
+   * Look up a validated key
+   * @param {string} fullKey - Full API key string
+   * @returns {CachedApiKey|null} Cached key or null
+   */
+  get(fullKey) {
+    if (!this.isActive()) {
+      this.ensureSubscribed();
+      return null;
+    }
+
+    const digest = this.digest(fullKey);
+    const entry = this.entries.get(digest);
+    if (!entry || entry.expiresAt <= Date.now()) {
+      if (entry) this.remove(digest);
+      this.stats.misses++;
+      return null;
+    }
+
+    // Re-insert so Map order tracks recency
+    this.entries.delete(digest);
+    this.entries.set(digest, entry);
+    this.stats.hits++;
+    return entry.key;
+  }
+
+  /**
+   * Cache a key that has just passed validation
+   * @param {string} fullKey - Full API key string
+   * @param {Object} apiKey - Validated API key document
+   * @param {number} generation - Cache generation read before the lookup
+   * @returns {CachedApiKey|null} Cached key
+   */
+  set(fullKey, apiKey, generation = this.generation) {
+    if (!this.isActive() || generation !== this.generation) {
+      return null;
+    }
+
+    const digest = this.digest(fullKey);
+    const key = new CachedApiKey(apiKey);
+    let expiresAt = Date.now() + this.ttlMs;
+    if (key.expiresAt) {
+      expiresAt = Math.min(expiresAt, new Date(key.expiresAt).getTime());
+    }
+
+    this.remove(digest);
+    this.entries.set(digest, { key, expiresAt });
+
+    let digests = this.digestsByKeyId.get(key.keyId);
+    if (!digests) {
+      digests = new Set();
+      this.digestsByKeyId.set(key.keyId, digests);
+    }
+    digests.add(digest);
+
+    while (this.entries.size > this.maxEntries) {
+      this.remove(this.entries.keys().next().value);
+      this.stats.evictions++;
+    }
+    return key;
+  }
+
+  /**
+   * Drop one entry
+   * @param {string} digest - Entry digest
+   */
+  remove(digest) {
+    const entry = this.entries.get(digest);
+    if (!entry) return;
+
+    this.entries.delete(digest);
+    const digests = this.digestsByKeyId.get(entry.key.keyId);
+    if (digests) {
+      digests.delete(digest);
+      if (digests.size === 0) this.digestsByKeyId.delete(entry.key.keyId);
+    }
+  }
+
+  /**
+   * Drop all entries for a key on this instance
+   * @param {string} keyId - API key keyId
+   */
+  evictKey(keyId) {
+    this.generation++;
+    const digests = this.digestsByKeyId.get(keyId);
+    if (!digests) return;
+
+    for (const digest of digests) {
+      this.entries.delete(digest);
+    }
+    this.digestsByKeyId.delete(keyId);
+    this.stats.invalidations++;
+  }
+
+  /**
+   * Drop a key everywhere: locally and on every subscribed instance
+   * @param {string} keyId - API key keyId
+   */
+  async invalidate(keyId) {
+    this.evictKey(keyId);
+
+    if (!redisService.isConnected) {
+      // Other instances will clear their caches when Redis reconnects
+      return;
+    }
+
+    try {
+      await redisService.publish(REDIS_CHANNELS.API_KEY_INVALIDATION, JSON.stringify({ keyId }));
+    } catch (error) {
+      console.error('ApiKeyCache: Failed to broadcast invalidation:', sanitizeForLogging({
+        keyId,
+        error: error.message
+      }));
+    }
+  }
+
+  /**
+   * Handle an invalidation broadcast
+   * @param {string} message - JSON payload
+   */
+  handleMessage(message) {
+    try {
+      const { keyId } = JSON.parse(message);
+      if (keyId) this.evictKey(keyId);
+    } catch (error) {
+      console.error('ApiKeyCache: Ignoring malformed invalidation:', sanitizeForLogging({
+        error: error.message
+      }));
+    }
+  }
+
+  /**
+   * Subscribe to invalidations in the background if not already subscribed
+   * @returns {Promise<boolean>} Resolves true once subscribed
+   */
+  ensureSubscribed() {
+    if (this.subscribed || !this.enabled) {
+      return Promise.resolve(this.subscribed);
+    }
+    if (this.subscribing) {
+      return this.subscribing;
+    }
+    if (typeof redisService.isReady !== 'function' || !redisService.isReady()) {
+      return Promise.resolve(false);
+    }
+
+    this.subscribing = redisService.subscribe(
+      REDIS_CHANNELS.API_KEY_INVALIDATION,
+      (message) => this.handleMessage(message)
+    )
+      .then(() => {
+        this.subscribed = true;
+        return true;
+      })
+      .catch(() => false)
+      .finally(() => {
+        this.subscribing = null;
+      });
+
+    return this.subscribing;
+  }
+
+  /**
+   * Drop every entry
+   */
+  clear() {
+    this.generation++;
+    this.entries.clear();
+    this.digestsByKeyId.clear();
+  }
+
+  /**
+   * Get cache statistics
+   * @returns {Object} Cache statistics
+   */
+  getStats() {
+    return {
+      ...this.stats,
+      entries: this.entries.size,
+      maxEntries: this.maxEntries,
+      subscribed: this.subscribed
+    };
+  }
+}
+
+module.exports = ApiKeyCache;
+module.exports.CachedApiKey = CachedApiKey;
@@ -2,9 +2,15 @@ const ApiKey = require('../../models/ApiKey');
 const User = require('../../models/User');
 const crypto = require('crypto');
 const { securityMonitorService } = require('./securityMonitorService');
+const apiKeyUsageService = require('./apiKeyUsageService');
+const principalCacheService = require('./principalCacheService');
+const ApiKeyCache = require('./apiKeyCache');
 
 class ApiKeyService {
   constructor() {
+    // Validated keys, invalidated across instances over Redis pub/sub
+    this.cache = new ApiKeyCache();
+
     this.defaultPermissions = [
       'read:books',
       'read:bookings',
@@ -128,14 +134,21 @@ class ApiKeyService {
         return null;
       }
 
+      // Keys validated recently are authorised without touching Mongo
+      const cached = this.cache.get(fullKey);
+      if (cached) {
+        return await this.authorizeRequest(cached, requestContext);
+      }
+
       const [prefix, keyId, secret] = keyParts;
+      const generation = this.cache.generation;
 
-      // Find API key by keyId and prefix
+      // Find API key by keyId and prefix; embedded history is not needed here
       const apiKey = await ApiKey.findOne({ 
         keyId, 
         prefix,
         isActive: true 
-      }).populate('userId', 'name email role');
+      }, '-securityEvents').populate('userId', 'name email role');
 
       if (!apiKey) {
         return null;
@@ -152,51 +165,80 @@ class ApiKeyService {
         return null;
       }
 
-      // Check IP restrictions
-      if (requestContext.ip && !apiKey.checkIPRestriction(requestContext.ip)) {
-        await this.recordSuspiciousActivity(apiKey, 'ip_restriction_violation', requestContext);
-        return null;
-      }
-
-      // Check domain restrictions
-      if (requestContext.origin && !apiKey.checkDomainRestriction(requestContext.origin)) {
-        await this.recordSuspiciousActivity(apiKey, 'domain_restriction_violation', requestContext);
-        return null;
-      }
+      this.cache.set(fullKey, apiKey, generation);
 
-      // Check rate limits
-      const rateLimitCheck = apiKey.checkRateLimit();
-      if (!rateLimitCheck.allowed) {
-        await this.recordRateLimitExceeded(apiKey, rateLimitCheck.reason, requestContext);
-        return { error: 'rate_limit_exceeded', reason: rateLimitCheck.reason };
-      }
-
-      // Record usage
-      await apiKey.recordUsage({
-        ip: requestContext.ip,
-        userAgent: requestContext.userAgent,
-        endpoint: requestContext.endpoint
-      });
-
-      return {
-        apiKey: {
-          id: apiKey._id,
-          name: apiKey.name,
-          keyId: apiKey.keyId,
-          userId: apiKey.userId._id,
-          user: apiKey.userId,
-          permissions: apiKey.permissions,
-          scopes: apiKey.scopes,
-          rateLimit: apiKey.rateLimit,
-          usage: apiKey.usage
-        }
-      };
+      return await this.authorizeRequest(apiKey, requestContext);
     } catch (error) {
       console.error('API key validation error:', error);
       return null;
     }
   }
 
+  /**
+   * Apply per-request checks to a validated key and record its usage
+   * @param {Object} apiKey - API key document or cached key
+   * @param {Object} requestContext - Request context for validation
+   * @returns {Object} Validated API key, rate limit error, or null
+   */
+  async authorizeRequest(apiKey, requestContext) {
+    // Cached keys may have expired since they were cached
+    if (!apiKey.isValid()) {
+      return null;
+    }
+
+    // The owner is re-read on every request, cached key or not, so deleting
+    // or deactivating a user shuts off their keys the way it does their tokens
+    const ownerId = apiKey.userId && (apiKey.userId._id || apiKey.userId);
+    const owner = ownerId ? await principalCacheService.getPrincipal(ownerId) : null;
+    if (!owner || !owner.isActive) {
+      return null;
+    }
+
+    // Check IP restrictions
+    if (requestContext.ip && !apiKey.checkIPRestriction(requestContext.ip)) {
+      await this.recordSuspiciousActivity(apiKey, 'ip_restriction_violation', requestContext);
+      return null;
+    }
+
+    // Check domain restrictions
+    if (requestContext.origin && !apiKey.checkDomainRestriction(requestContext.origin)) {
+      await this.recordSuspiciousActivity(apiKey, 'domain_restriction_violation', requestContext);
+      return null;
+    }
+
+    // Check rate limits and record usage without saving the document
+    const usage = await apiKeyUsageService.recordRequest(apiKey, {
+      ip: requestContext.ip,
+      userAgent: requestContext.userAgent,
+      endpoint: requestContext.endpoint
+    });
+    if (!usage.allowed) {
+      await this.recordRateLimitExceeded(apiKey, usage.reason, requestContext);
+      return { error: 'rate_limit_exceeded', reason: usage.reason };
+    }
+
+    return {
+      apiKey: {
+        id: apiKey._id,
+        name: apiKey.name,
+        keyId: apiKey.keyId,
+        userId: owner._id,
+        user: owner,
+        permissions: apiKey.permissions,
+        scopes: apiKey.scopes,
+        rateLimit: apiKey.rateLimit,
+        usage: {
+          totalRequests: (apiKey.usage ? apiKey.usage.totalRequests : 0) + 1,
+          lastUsed: new Date(),
+          requestsThisHour: usage.requestsThisHour,
+          requestsToday: usage.requestsToday,
+          lastResetHour: usage.lastResetHour,
+          lastResetDate: usage.lastResetDate
+        }
+      }
+    };
+  }
+
   /**
    * Check if API key has required permission
    * @param {Object} apiKey - API key object
@@ -286,6 +328,7 @@ class ApiKeyService {
     }
 
     await apiKey.revoke(revokedBy, reason);
+    await this.cache.invalidate(apiKey.keyId);
 
     // Log security event
     await securityMonitorService.logSecurityEvent({
@@ -342,6 +385,7 @@ class ApiKeyService {
 
     // Revoke old API key
     await oldApiKey.revoke(rotatedBy, 'Key rotation');
+    await this.cache.invalidate(oldApiKey.keyId);
 
     // Log security event
     await securityMonitorService.logSecurityEvent({
@@ -392,6 +436,7 @@ class ApiKeyService {
     });
 
     await apiKey.save();
+    await this.cache.invalidate(apiKey.keyId);
 
     // Log security event
     await securityMonitorService.logSecurityEvent({
@@ -434,17 +479,24 @@ class ApiKeyService {
       eventLimit = 100
     } = options;
 
+    const windowCounts = await apiKeyUsageService.getWindowCounts(apiKey);
+    const { requestsThisHour, requestsToday, ...rateLimitStatus } = windowCounts;
+
     const usage = {
       totalRequests: apiKey.usage.totalRequests,
-      requestsToday: apiKey.usage.requestsToday,
-      requestsThisHour: apiKey.usage.requestsThisHour,
+      requestsToday,
+      requestsThisHour,
       lastUsed: apiKey.usage.lastUsed,
       rateLimit: apiKey.rateLimit,
-      rateLimitStatus: apiKey.checkRateLimit()
+      rateLimitStatus
     };
 
     if (includeSecurityEvents) {
-      usage.securityEvents = apiKey.securityEvents
+      // Lifecycle events stay on the document; per-request events are in
+      // the capped ApiKeyEvent collection
+      const requestEvents = await apiKeyUsageService.getEvents(apiKey._id, eventLimit);
+      usage.securityEvents = [...apiKey.securityEvents, ...requestEvents]
+        .sort((a, b) => new Date(a.timestamp) - new Date(b.timestamp))
         .slice(-eventLimit)
         .map(event => ({
           eventType: event.eventType,
@@ -499,19 +551,13 @@ class ApiKeyService {
    * @param {Object} requestContext - Request context
    */
   async recordSuspiciousActivity(apiKey, activityType, requestContext) {
-    apiKey.securityEvents.push({
-      eventType: 'suspicious_activity',
-      timestamp: new Date(),
-      details: {
-        activityType,
-        ip: requestContext.ip,
-        userAgent: requestContext.userAgent,
-        endpoint: requestContext.endpoint
-      }
+    apiKeyUsageService.recordEvent(apiKey._id, 'suspicious_activity', {
+      ip: requestContext.ip,
+      userAgent: requestContext.userAgent,
+      endpoint: requestContext.endpoint,
+      additionalInfo: { activityType }
     });
 
-    await apiKey.save();
-
     // Log to security monitoring
     await securityMonitorService.logSecurityEvent({
       eventType: 'api_key_suspicious_activity',
@@ -532,19 +578,13 @@ class ApiKeyService {
    * @param {Object} requestContext - Request context
    */
   async recordRateLimitExceeded(apiKey, reason, requestContext) {
-    apiKey.securityEvents.push({
-      eventType: 'rate_limit_exceeded',
-      timestamp: new Date(),
-      details: {
-        reason,
-        ip: requestContext.ip,
-        userAgent: requestContext.userAgent,
-        endpoint: requestContext.endpoint
-      }
+    apiKeyUsageService.recordEvent(apiKey._id, 'rate_limit_exceeded', {
+      ip: requestContext.ip,
+      userAgent: requestContext.userAgent,
+      endpoint: requestContext.endpoint,
+      additionalInfo: { reason }
     });
 
-    await apiKey.save();
-
     // Log to security monitoring
     await securityMonitorService.logSecurityEvent({
       eventType: 'api_key_rate_limit_exceeded',
@@ -0,0 +1,466 @@
+/**
+ * API Key Usage Service
+ * Accounts for API key requests outside the ApiKey document: hourly and daily
+ * windows are counted in Redis (or in-process while Redis is down), totals are
+ * flushed to Mongo in periodic $inc batches, and per-request events are
+ * appended to the capped ApiKeyEvent collection.
+ */
+
+const redisService = require('./redisService');
+const ApiKey = require('../../models/ApiKey');
+const ApiKeyEvent = require('../../models/ApiKeyEvent');
+const { REDIS_PREFIXES } = require('./utils/constants');
+const { sanitizeForLogging } = require('./utils/securityHelpers');
+
+const HOUR_MS = 60 * 60 * 1000;
+
+class ApiKeyUsageService {
+  constructor() {
+    this.config = {
+      flushIntervalMs: parseInt(process.env.API_KEY_USAGE_FLUSH_INTERVAL_MS) || 5000,
+      maxPendingEvents: parseInt(process.env.API_KEY_USAGE_MAX_PENDING_EVENTS) || 10000,
+      recordUsageEvents: process.env.API_KEY_USAGE_EVENTS !== 'false',
+      maxLocalWindows: 10000
+    };
+
+    // apiKeyId -> { requests, lastUsed, hourStart, hourCount, dayStart, dayCount }
+    this.pendingUsage = new Map();
+    this.pendingEvents = [];
+    this.droppedEvents = 0;
+
+    // Window counters used while Redis is unreachable: key -> { count, expiresAt }
+    this.localWindows = new Map();
+
+    this.flushTimer = null;
+    this.flushing = null;
+  }
+
+  /**
+   * Start of the hour and day containing a time, matching the ApiKey
+   * lastResetHour/lastResetDate fields
+   * @param {Date} now - Current time
+   * @returns {Object} { hourStart, dayStart, dayEnd } as epoch ms
+   */
+  getWindows(now) {
+    const hourStart = new Date(now.getFullYear(), now.getMonth(), now.getDate(), now.getHours()).getTime();
+    const dayStart = new Date(now.getFullYear(), now.getMonth(), now.getDate()).getTime();
+    const dayEnd = new Date(now.getFullYear(), now.getMonth(), now.getDate() + 1).getTime();
+    return { hourStart, dayStart, dayEnd };
+  }
+
+  /**
+   * Count a request against an API key's hourly and daily limits
+   * Replaces ApiKey#checkRateLimit + ApiKey#recordUsage on the hot path: the
+   * document is only read, never saved.
+   * @param {Object} apiKey - API key document
+   * @param {Object} requestDetails - ip, userAgent, endpoint
+   * @returns {Object} { allowed, reason?, requestsThisHour, requestsToday, lastResetHour, lastResetDate }
+   */
+  async recordRequest(apiKey, requestDetails = {}) {
+    const now = new Date();
+    const windows = this.getWindows(now);
+    const id = String(apiKey._id);
+    const { requestsPerHour, requestsPerDay } = apiKey.rateLimit || {};
+
+    // Seed fresh counters from the document so a Redis flush or restart
+    // does not hand out a second allowance for the current window
+    const usage = apiKey.usage || {};
+    const seedHour = this.inWindow(usage.lastResetHour, windows.hourStart) ? usage.requestsThisHour || 0 : 0;
+    const seedDay = this.inWindow(usage.lastResetDate, windows.dayStart) ? usage.requestsToday || 0 : 0;
+
+    const [hourCount, dayCount] = await this.incrementWindows(id, windows, now, seedHour, seedDay);
+
+    let reason = null;
+    if (requestsPerHour !== undefined && hourCount > requestsPerHour) {
+      reason = 'hourly_limit_exceeded';
+    } else if (requestsPerDay !== undefined && dayCount > requestsPerDay) {
+      reason = 'daily_limit_exceeded';
+    }
+
+    const status = {
+      requestsThisHour: Math.min(hourCount, requestsPerHour ?? hourCount),
+      requestsToday: Math.min(dayCount, requestsPerDay ?? dayCount),
+      lastResetHour: new Date(windows.hourStart),
+      lastResetDate: new Date(windows.dayStart)
+    };
+
+    if (reason) {
+      return { allowed: false, reason, ...status };
+    }
+
+    this.accumulate(id, windows, now, hourCount, dayCount);
+    if (this.config.recordUsageEvents) {
+      this.recordEvent(apiKey._id, 'used', requestDetails);
+    }
+
+    return { allowed: true, ...status };
+  }
+
+  /**
+   * Whether a stored reset timestamp belongs to a window
+   * @param {Date} value - lastResetHour or lastResetDate
+   * @param {number} windowStart - Window start (epoch ms)
+   * @returns {boolean} True if in the window
+   */
+  inWindow(value, windowStart) {
+    return !!value && new Date(value).getTime() >= windowStart;
+  }
+
+  /**
+   * Increment the hourly and daily counters for a key
+   * One MULTI round trip against Redis, or the in-process windows while
+   * Redis is unavailable.
+   * @param {string} id - API key id
+   * @param {Object} windows - Window boundaries
+   * @param {Date} now - Current time
+   * @param {number} seedHour - Count to start a new hourly counter at
+   * @param {number} seedDay - Count to start a new daily counter at
+   * @returns {Array<number>} [hourCount, dayCount]
+   */
+  async incrementWindows(id, windows, now, seedHour, seedDay) {
+    const hourKey = `${REDIS_PREFIXES.API_KEY_USAGE}${id}:h:${windows.hourStart}`;
+    const dayKey = `${REDIS_PREFIXES.API_KEY_USAGE}${id}:d:${windows.dayStart}`;
+    const hourTtl = windows.hourStart + HOUR_MS - now.getTime() + 60000;
+    const dayTtl = windows.dayEnd - now.getTime() + 60000;
+
+    if (redisService.isConnected && redisService.client) {
+      try {
+        const results = await redisService.client.multi()
+          .set(hourKey, seedHour, { NX: true, PX: hourTtl })
+          .incr(hourKey)
+          .set(dayKey, seedDay, { NX: true, PX: dayTtl })
+          .incr(dayKey)
+          .exec();
+        return [Number(results[1]), Number(results[3])];
+      } catch (error) {
+        console.error('ApiKeyUsageService: Failed to increment usage windows:', sanitizeForLogging({
+          apiKeyId: id,
+          error: error.message
+        }));
+      }
+    }
+
+    return [
+      this.incrementLocal(hourKey, seedHour, now.getTime() + hourTtl),
+      this.incrementLocal(dayKey, seedDay, now.getTime() + dayTtl)
+    ];
+  }
+
+  /**
+   * Increment an in-process window counter
+   * @param {string} key - Counter key
+   * @param {number} seed - Starting count for a new counter
+   * @param {number} expiresAt - Expiry (epoch ms)
+   * @returns {number} New count
+   */
+  incrementLocal(key, seed, expiresAt) {
+    let entry = this.localWindows.get(key);
+    if (!entry || entry.expiresAt <= Date.now()) {
+      entry = { count: seed, expiresAt };
+      this.localWindows.set(key, entry);
+      this.pruneLocalWindows();
+    }
+    entry.count++;
+    return entry.count;
+  }
+
+  /**
+   * Drop expired in-process counters, then the oldest beyond the ceiling
+   */
+  pruneLocalWindows() {
+    if (this.localWindows.size <= this.config.maxLocalWindows) return;
+
+    const now = Date.now();
+    for (const [key, entry] of this.localWindows) {
+      if (entry.expiresAt <= now) this.localWindows.delete(key);
+    }
+    while (this.localWindows.size > this.config.maxLocalWindows) {
+      this.localWindows.delete(this.localWindows.keys().next().value);
+    }
+  }
+
+  /**
+   * Add an allowed request to the pending Mongo update for its key
+   * @param {string} id - API key id
+   * @param {Object} windows - Window boundaries
+   * @param {Date} now - Request time
+   * @param {number} hourCount - Hourly count after this request
+   * @param {number} dayCount - Daily count after this request
+   */
+  accumulate(id, windows, now, hourCount, dayCount) {
+    const pending = this.pendingUsage.get(id);
+    if (pending) {
+      pending.requests++;
+      pending.lastUsed = now;
+      // Windows only move forward; keep the newest snapshot of each
+      if (windows.hourStart > pending.hourStart) {
+        pending.hourStart = windows.hourStart;
+        pending.hourCount = hourCount;
+      } else {
+        pending.hourCount = Math.max(pending.hourCount, hourCount);
+      }
+      if (windows.dayStart > pending.dayStart) {
+        pending.dayStart = windows.dayStart;
+        pending.dayCount = dayCount;
+      } else {
+        pending.dayCount = Math.max(pending.dayCount, dayCount);
+      }
+    } else {
+      this.pendingUsage.set(id, {
+        requests: 1,
+        lastUsed: now,
+        hourStart: windows.hourStart,
+        hourCount,
+        dayStart: windows.dayStart,
+        dayCount
+      });
+    }
+    this.scheduleFlush();
+  }
+
+  /**
+   * Queue an API key event for the capped event collection
+   * @param {string} apiKeyId - API key id
+   * @param {string} eventType - Event type
+   * @param {Object} details - ip, userAgent, endpoint, additionalInfo
+   */
+  recordEvent(apiKeyId, eventType, details = {}) {
+    if (this.pendingEvents.length >= this.config.maxPendingEvents) {
+      this.pendingEvents.shift();
+      this.droppedEvents++;
+    }
+
+    this.pendingEvents.push({
+      apiKeyId,
+      eventType,
+      timestamp: new Date(),
+      details: {
+        ip: details.ip,
+        userAgent: details.userAgent,
+        endpoint: details.endpoint,
+        additionalInfo: details.additionalInfo
+      }
+    });
+    this.scheduleFlush();
+  }
+
+  /**
+   * Arm the flush timer if it is not already running
+   */
+  scheduleFlush() {
+    if (this.flushTimer) return;
+
+    this.flushTimer = setTimeout(() => {
+      this.flushTimer = null;
+      this.flush().catch(() => {});
+    }, this.config.flushIntervalMs);
+    if (this.flushTimer.unref) this.flushTimer.unref();
+  }
+
+  /**
+   * Write pending usage and events to Mongo
+   * Usage goes out as one unordered bulkWrite of $inc/$max/$set updates and
+   * events as one insertMany; anything that fails is merged back for the
+   * next flush.
+   * @returns {Object} { keys, events } written
+   */
+  async flush() {
+    if (this.flushing) {
+      await this.flushing;
+    }
+
+    const usage = this.pendingUsage;
+    const events = this.pendingEvents;
+    this.pendingUsage = new Map();
+    this.pendingEvents = [];
+
+    this.flushing = Promise.all([
+      this.flushUsage(usage),
+      this.flushEvents(events)
+    ]);
+
+    try {
+      const [keys, written] = await this.flushing;
+      return { keys, events: written };
+    } finally {
+      this.flushing = null;
+    }
+  }
+
+  /**
+   * Write out everything still pending and stop the flush timer
+   * Pending usage only lives in this process, so this runs on shutdown.
+   * @returns {Object} { keys, events } written
+   */
+  async close() {
+    this.cancelFlush();
+    const result = await this.flush();
+    // A failed write re-arms the timer; nothing is left to run it
+    this.cancelFlush();
+    return result;
+  }
+
+  /**
+   * Disarm the flush timer
+   */
+  cancelFlush() {
+    if (!this.flushTimer) return;
+
+    clearTimeout(this.flushTimer);
+    this.flushTimer = null;
+  }
+
+  /**
+   * Apply accumulated usage to ApiKey documents
+   * @param {Map} usage - Pending usage by key id
+   * @returns {number} Keys updated
+   */
+  async flushUsage(usage) {
+    if (usage.size === 0) return 0;
+
+    const operations = [...usage].map(([id, pending]) => ({
+      updateOne: {
+        filter: { _id: id },
+        update: {
+          $inc: { 'usage.totalRequests': pending.requests },
+          $max: { 'usage.lastUsed': pending.lastUsed },
+          // Window counts are snapshots of the shared counters, not deltas
+          $set: {
+            'usage.requestsThisHour': pending.hourCount,
+            'usage.requestsToday': pending.dayCount,
+            'usage.lastResetHour': new Date(pending.hourStart),
+            'usage.lastResetDate': new Date(pending.dayStart)
+          }
+        }
+      }
+    }));
+
+    try {
+      await ApiKey.bulkWrite(operations, { ordered: false });
+      return operations.length;
+    } catch (error) {
+      console.error('ApiKeyUsageService: Failed to flush usage:', sanitizeForLogging({
+        documents: operations.length,
+        error: error.message
+      }));
+      for (const [id, pending] of usage) {
+        this.restoreUsage(id, pending);
+      }
+      this.scheduleFlush();
+      return 0;
+    }
+  }
+
+  /**
+   * Merge usage that failed to flush back into the pending map
+   * @param {string} id - API key id
+   * @param {Object} pending - Usage that was not written
+   */
+  restoreUsage(id, pending) {
+    const current = this.pendingUsage.get(id);
+    if (!current) {
+      this.pendingUsage.set(id, pending);
+      return;
+    }
+
+    current.requests += pending.requests;
+    if (pending.lastUsed > current.lastUsed) current.lastUsed = pending.lastUsed;
+  }
+
+  /**
+   * Append queued events to the capped collection
+   * @param {Array} events - Pending events
+   * @returns {number} Events written
+   */
+  async flushEvents(events) {
+    if (events.length === 0) return 0;
+
+    try {
+      await ApiKeyEvent.insertMany(events, { ordered: false, lean: true });
+      return events.length;
+    } catch (error) {
+      console.error('ApiKeyUsageService: Failed to flush events:', sanitizeForLogging({
+        events: events.length,
+        error: error.message
+      }));
+      const room = this.config.maxPendingEvents - this.pendingEvents.length;
+      const kept = events.slice(Math.max(0, events.length - room));
+      this.droppedEvents += events.length - kept.length;
+      this.pendingEvents = kept.concat(this.pendingEvents);
+      this.scheduleFlush();
+      return 0;
+    }
+  }
+
+  /**
+   * Current window counts for a key without counting a request
+   * @param {Object} apiKey - API key document
+   * @returns {Object} { requestsThisHour, requestsToday, allowed, reason? }
+   */
+  async getWindowCounts(apiKey) {
+    const now = new Date();
+    const windows = this.getWindows(now);
+    const id = String(apiKey._id);
+    const hourKey = `${REDIS_PREFIXES.API_KEY_USAGE}${id}:h:${windows.hourStart}`;
+    const dayKey = `${REDIS_PREFIXES.API_KEY_USAGE}${id}:d:${windows.dayStart}`;
+
+    let hourCount = null;
+    let dayCount = null;
+    if (redisService.isConnected && redisService.client) {
+      try {
+        [hourCount, dayCount] = await redisService.client.mGet([hourKey, dayKey]);
+      } catch (error) {
+        console.error('ApiKeyUsageService: Failed to read usage windows:', sanitizeForLogging({
+          apiKeyId: id,
+          error: error.message
+        }));
+      }
+    }
+
+    const usage = apiKey.usage || {};
+    const fallbackHour = this.localWindows.get(hourKey)?.count
+      ?? (this.inWindow(usage.lastResetHour, windows.hourStart) ? usage.requestsThisHour || 0 : 0);
+    const fallbackDay = this.localWindows.get(dayKey)?.count
+      ?? (this.inWindow(usage.lastResetDate, windows.dayStart) ? usage.requestsToday || 0 : 0);
+
+    const { requestsPerHour, requestsPerDay } = apiKey.rateLimit || {};
+    const requestsThisHour = Math.min(hourCount !== null ? Number(hourCount) : fallbackHour, requestsPerHour ?? Infinity);
+    const requestsToday = Math.min(dayCount !== null ? Number(dayCount) : fallbackDay, requestsPerDay ?? Infinity);
+
+    if (requestsThisHour >= requestsPerHour) {
+      return { allowed: false, reason: 'hourly_limit_exceeded', requestsThisHour, requestsToday };
+    }
+    if (requestsToday >= requestsPerDay) {
+      return { allowed: false, reason: 'daily_limit_exceeded', requestsThisHour, requestsToday };
+    }
+    return { allowed: true, requestsThisHour, requestsToday };
+  }
+
+  /**
+   * Most recent events for a key from the capped collection
+   * @param {string} apiKeyId - API key id
+   * @param {number} limit - Maximum events
+   * @returns {Array} Events, newest first
+   */
+  async getEvents(apiKeyId, limit = 100) {
+    return ApiKeyEvent.find({ apiKeyId })
+      .sort({ timestamp: -1 })
+      .limit(limit)
+      .lean();
+  }
+
+  /**
+   * Get accumulator statistics
+   * @returns {Object} Pending and dropped counts
+   */
+  getStats() {
+    return {
+      pendingKeys: this.pendingUsage.size,
+      pendingEvents: this.pendingEvents.length,
+      droppedEvents: this.droppedEvents,
+      localWindows: this.localWindows.size
+    };
+  }
+}
+
+module.exports = new ApiKeyUsageService();
@@ -0,0 +1,268 @@
+/**
+ * Audit Log Verifier
+ * Streams audit log segments from disk and checks hash-chain integrity
+ */
+
+const fs = require('fs');
+const os = require('os');
+const path = require('path');
+const readline = require('readline');
+const zlib = require('zlib');
+const { sanitizeForLogging } = require('./utils/securityHelpers');
+
+const SEGMENT_PATTERN = /^audit-(\d{4}-\d{2}-\d{2}).*\.log(\.gz)?$/;
+
+class AuditLogVerifier {
+  /**
+   * @param {Object} options - Verifier options
+   * @param {string} options.directory - Directory holding the audit log files
+   * @param {Function} options.calculateHash - Computes the integrity hash of an entry
+   * @param {string} options.genesisHash - Chain head before the first entry
+   * @param {number} options.concurrency - Segments verified at the same time
+   * @param {number} options.maxReportedFailures - Cap on failures kept in the result
+   * @param {Function} options.onProgress - Called as segments are read and completed
+   */
+  constructor(options) {
+    this.directory = options.directory;
+    this.calculateHash = options.calculateHash;
+    this.genesisHash = options.genesisHash || null;
+    this.concurrency = options.concurrency || Math.min(4, os.cpus().length);
+    this.maxReportedFailures = options.maxReportedFailures || 100;
+    this.onProgress = options.onProgress || (() => {});
+  }
+
+  /**
+   * List the log segments whose file date falls in the range
+   * @param {Date} startDate - Start date
+   * @param {Date} endDate - End date
+   * @returns {Array} Segment descriptors
+   */
+  async listSegments(startDate, endDate) {
+    const startDay = new Date(startDate).toISOString().split('T')[0];
+    const endDay = new Date(endDate).toISOString().split('T')[0];
+    const files = await fs.promises.readdir(this.directory);
+
+    const segments = [];
+    for (const file of files) {
+      const match = SEGMENT_PATTERN.exec(file);
+      if (!match || match[1] < startDay || match[1] > endDay) continue;
+
+      const filePath = path.join(this.directory, file);
+      const stats = await fs.promises.stat(filePath);
+      segments.push({
+        file,
+        path: filePath,
+        date: match[1],
+        compressed: !!match[2],
+        size: stats.size
+      });
+    }
+
+    return segments;
+  }
+
+  /**
+   * Verify every segment in the range and stitch them into one chain
+   * Each segment is checked independently; its first previousHash is the
+   * anchor that must equal the last integrityHash of the segment before it.
+   * @param {Date} startDate - Start date
+   * @param {Date} endDate - End date
+   * @returns {Object} Verification result
+   */
+  async verify(startDate, endDate) {
+    const segments = await this.listSegments(startDate, endDate);
+    const progress = {
+      segmentsTotal: segments.length,
+      segmentsVerified: 0,
+      entriesVerified: 0,
+      bytesTotal: segments.reduce((sum, segment) => sum + segment.size, 0),
+      bytesRead: 0
+    };
+    const failures = [];
+    const recordFailure = failure => {
+      if (failures.length < this.maxReportedFailures) {
+        failures.push(failure);
+      }
+    };
+
+    // Fixed pool of workers pulling from a shared cursor
+    const summaries = new Array(segments.length);
+    let cursor = 0;
+    const worker = async () => {
+      while (cursor < segments.length) {
+        const index = cursor++;
+        summaries[index] = await this.verifySegment(segments[index], recordFailure, progress);
+        progress.segmentsVerified++;
+        this.onProgress({ ...progress, segment: segments[index].file });
+      }
+    };
+    await Promise.all(
+      Array.from({ length: Math.min(this.concurrency, segments.length) }, worker)
+    );
+
+    const result = {
+      verified: true,
+      totalEntries: 0,
+      verifiedEntries: 0,
+      failedEntries: failures,
+      failureCount: 0,
+      hashChainValid: true,
+      segments: [],
+      errors: []
+    };
+
+    const ordered = summaries
+      .filter(summary => summary.entries > 0 || summary.error)
+      .sort((a, b) => (a.firstSequence || 0) - (b.firstSequence || 0));
+
+    let previous = null;
+    for (const summary of ordered) {
+      result.totalEntries += summary.entries;
+      result.verifiedEntries += summary.verifiedEntries;
+      result.failureCount += summary.failureCount;
+      result.segments.push({
+        file: summary.file,
+        entries: summary.entries,
+        firstSequence: summary.firstSequence,
+        lastSequence: summary.lastSequence,
+        anchorHash: summary.anchorHash,
+        lastHash: summary.lastHash
+      });
+
+      if (summary.error) {
+        result.errors.push({ file: summary.file, error: summary.error });
+      }
+
+      if (summary.entries === 0) continue;
+
+      // Stitch this segment onto the one before it
+      const expectedAnchor = previous
+        ? previous.lastHash
+        : (summary.firstSequence === 1 ? this.genesisHash : null);
+      const expectedSequence = previous ? previous.lastSequence + 1 : summary.firstSequence;
+
+      if ((expectedAnchor && summary.anchorHash !== expectedAnchor) ||
+          summary.firstSequence !== expectedSequence) {
+        result.hashChainValid = false;
+        result.failureCount++;
+        recordFailure({
+          file: summary.file,
+          sequence: summary.firstSequence,
+          reason: 'Segment chain break',
+          expected: expectedAnchor,
+          actual: summary.anchorHash
+        });
+      }
+
+      if (!summary.chainValid) {
+        result.hashChainValid = false;
+      }
+      previous = summary;
+    }
+
+    result.verified = result.failureCount === 0 && result.errors.length === 0;
+    return result;
+  }
+
+  /**
+   * Stream one segment and check it line by line
+   * @param {Object} segment - Segment descriptor
+   * @param {Function} recordFailure - Collects failure details
+   * @param {Object} progress - Shared progress counters
+   * @returns {Object} Segment summary
+   */
+  async verifySegment(segment, recordFailure, progress) {
+    const summary = {
+      file: segment.file,
+      entries: 0,
+      verifiedEntries: 0,
+      failureCount: 0,
+      chainValid: true,
+      firstSequence: null,
+      lastSequence: null,
+      anchorHash: null,
+      lastHash: null,
+      error: null
+    };
+
+    const fileStream = fs.createReadStream(segment.path);
+    fileStream.on('data', chunk => {
+      progress.bytesRead += chunk.length;
+    });
+    const input = segment.compressed ? fileStream.pipe(zlib.createGunzip()) : fileStream;
+    const lines = readline.createInterface({ input, crlfDelay: Infinity });
+
+    const fail = (entry, reason, details = {}) => {
+      summary.failureCount++;
+      recordFailure({
+        file: segment.file,
+        correlationId: entry?.correlationId,
+        sequence: entry?.sequence,
+        reason,
+        ...details
+      });
+    };
+
+    try {
+      for await (const line of lines) {
+        if (!line.trim()) continue;
+
+        let entry;
+        try {
+          entry = JSON.parse(line);
+        } catch (error) {
+          fail(null, 'Unparseable entry');
+          continue;
+        }
+
+        summary.entries++;
+
+        if (summary.firstSequence === null) {
+          summary.firstSequence = entry.sequence;
+          summary.anchorHash = entry.previousHash;
+        } else {
+          if (entry.previousHash !== summary.lastHash) {
+            summary.chainValid = false;
+            fail(entry, 'Hash chain break', {
+              expected: summary.lastHash,
+              actual: entry.previousHash
+            });
+          } else if (entry.sequence !== summary.lastSequence + 1) {
+            summary.chainValid = false;
+            fail(entry, 'Sequence gap', {
+              expected: summary.lastSequence + 1,
+              actual: entry.sequence
+            });
+          }
+        }
+
+        const calculatedHash = this.calculateHash(entry);
+        if (calculatedHash !== entry.integrityHash) {
+          fail(entry, 'Hash mismatch', {
+            expected: entry.integrityHash,
+            calculated: calculatedHash
+          });
+        } else {
+          summary.verifiedEntries++;
+          progress.entriesVerified++;
+        }
+
+        // Follow the stored hash so one bad entry is reported once
+        summary.lastSequence = entry.sequence;
+        summary.lastHash = entry.integrityHash;
+      }
+    } catch (error) {
+      console.error('Failed to read audit log segment:', sanitizeForLogging({
+        file: segment.file,
+        error: error.message
+      }));
+      summary.error = error.message;
+    } finally {
+      fileStream.destroy();
+    }
+
+    return summary;
+  }
+}
+
+module.exports = AuditLogVerifier;
@@ -0,0 +1,273 @@
+/**
+ * Audit Log Writer
+ * Single-writer, group-commit append pipeline for the audit log files
+ */
+
+const fs = require('fs').promises;
+const path = require('path');
+const { sanitizeForLogging } = require('./utils/securityHelpers');
+
+const FSYNC_POLICIES = ['batch', 'interval', 'none'];
+
+class AuditLogWriter {
+  /**
+   * @param {Object} options - Writer options
+   * @param {string} options.directory - Directory holding the audit log files
+   * @param {Function} options.getFileName - Returns the current log file name
+   * @param {number} options.rotationSize - Rotate once the file reaches this many bytes
+   * @param {Function} options.onRotate - Called with the full path of a file to rotate
+   * @param {Function} options.onSwitch - Called before the writer leaves the open file
+   * @param {Function} options.onFlush - Called with each batch once it has been written
+   * @param {Function} options.onFailure - Called synchronously with the entries of a failed
+   *   batch and every entry queued behind it, before their promises reject
+   * @param {string} options.fsyncPolicy - 'batch' (fsync before acknowledging each batch),
+   *   'interval' (fsync on a timer) or 'none' (leave it to the OS)
+   * @param {number} options.fsyncIntervalMs - Timer period for the 'interval' policy
+   * @param {number} options.maxBatchSize - Most entries written in one batch
+   */
+  constructor(options) {
+    this.directory = options.directory;
+    this.getFileName = options.getFileName;
+    this.rotationSize = options.rotationSize;
+    this.onRotate = options.onRotate || (async () => {});
+    this.onSwitch = options.onSwitch || (async () => {});
+    this.onFlush = options.onFlush || (async () => {});
+    this.onFailure = options.onFailure || (() => {});
+    this.fsyncPolicy = FSYNC_POLICIES.includes(options.fsyncPolicy) ? options.fsyncPolicy : 'batch';
+    this.fsyncIntervalMs = options.fsyncIntervalMs || 1000;
+    this.maxBatchSize = options.maxBatchSize || 1000;
+
+    this.queue = [];
+    this.flushing = null;
+    this.handle = null;
+    this.filePath = null;
+    this.fileSize = 0;
+    this.dirty = false;
+    this.fsyncTimer = null;
+    // Set when a failed batch could not be cut back out of the file
+    this.brokenError = null;
+    this.stats = { entries: 0, batches: 0, fsyncs: 0, failedBatches: 0 };
+  }
+
+  /**
+   * Queue an entry for writing
+   * Entries are written in the order they are queued; the returned promise
+   * settles once the batch holding the entry has been written (and synced,
+   * under the 'batch' policy).
+   * @param {Object} entry - Audit entry to append as one JSON line
+   * @returns {Promise<Object>} The entry once written
+   */
+  append(entry) {
+    if (this.brokenError) {
+      return Promise.reject(this.brokenError);
+    }
+
+    return new Promise((resolve, reject) => {
+      this.queue.push({ entry, line: JSON.stringify(entry) + '\n', resolve, reject });
+      if (!this.flushing) {
+        // Yield once so callers arriving in the same tick share the batch
+        this.flushing = new Promise(done => setImmediate(done)).then(() => this.drain());
+      }
+    });
+  }
+
+  /**
+   * Write queued entries until the queue is empty
+   */
+  async drain() {
+    try {
+      while (this.queue.length > 0) {
+        const batch = this.queue.splice(0, this.maxBatchSize);
+        try {
+          await this.writeBatch(batch);
+          batch.forEach(item => item.resolve(item.entry));
+        } catch (error) {
+          // Entries queued behind the batch may depend on it (the audit trail
+          // links each entry to the previous one), so they fail with it
+          const failed = batch.concat(this.queue.splice(0));
+          this.stats.failedBatches++;
+          console.error('Failed to write audit batch:', sanitizeForLogging({
+            entries: failed.length,
+            error: error.message
+          }));
+          this.onFailure(failed.map(item => item.entry));
+          failed.forEach(item => item.reject(error));
+        }
+      }
+    } finally {
+      this.flushing = null;
+    }
+  }
+
+  /**
+   * Write one batch through the open file handle
+   * @param {Array} batch - Queued items
+   */
+  async writeBatch(batch) {
+    await this.ensureHandle();
+
+    const data = batch.map(item => item.line).join('');
+    const sizeBefore = this.fileSize;
+    try {
+      await this.handle.write(data);
+      this.fileSize += Buffer.byteLength(data);
+      if (this.fsyncPolicy === 'batch') {
+        await this.sync();
+      }
+    } catch (error) {
+      await this.discardBatch(sizeBefore);
+      throw error;
+    }
+    this.stats.entries += batch.length;
+    this.stats.batches++;
+
+    if (this.fsyncPolicy !== 'batch') {
+      this.dirty = true;
+      this.scheduleSync();
+    }
+
+    await this.onFlush(batch.map(item => item.entry));
+  }
+
+  /**
+   * Cut a failed batch back out of the file and drop the handle, so the file
+   * ends with the last batch that was written in full. If that fails too the
+   * file state is unknown and the writer refuses further entries.
+   * @param {number} size - File size before the batch
+   */
+  async discardBatch(size) {
+    const handle = this.handle;
+    this.handle = null;
+    this.filePath = null;
+    this.fileSize = size;
+    this.dirty = false;
+    if (this.fsyncTimer) {
+      clearTimeout(this.fsyncTimer);
+      this.fsyncTimer = null;
+    }
+
+    try {
+      await handle.truncate(size);
+      await handle.sync();
+    } catch (error) {
+      this.brokenError = new Error(`Audit log is in an unknown state after a failed write: ${error.message}`);
+      console.error('Failed to discard partial audit batch:', sanitizeForLogging({
+        error: error.message
+      }));
+    } finally {
+      await handle.close().catch(() => {});
+    }
+  }
+
+  /**
+   * Open the current log file, switching files on date change or rotation
+   */
+  async ensureHandle() {
+    const filePath = path.join(this.directory, this.getFileName());
+
+    if (this.handle && filePath === this.filePath && this.fileSize < this.rotationSize) {
+      return;
+    }
+
+    if (this.handle) {
+      await this.onSwitch(this.filePath);
+    }
+    await this.closeHandle();
+
+    // Size is read once per open, not per write
+    try {
+      this.fileSize = (await fs.stat(filePath)).size;
+    } catch (error) {
+      if (error.code !== 'ENOENT') throw error;
+      this.fileSize = 0;
+    }
+
+    if (this.fileSize >= this.rotationSize) {
+      await this.onRotate(filePath);
+      this.fileSize = 0;
+    }
+
+    this.handle = await fs.open(filePath, 'a');
+    this.filePath = filePath;
+  }
+
+  /**
+   * Flush written data to disk
+   */
+  async sync() {
+    if (!this.handle) return;
+    await this.handle.sync();
+    this.dirty = false;
+    this.stats.fsyncs++;
+  }
+
+  /**
+   * Arm the fsync timer for the 'interval' policy
+   */
+  scheduleSync() {
+    if (this.fsyncPolicy !== 'interval' || this.fsyncTimer) return;
+
+    this.fsyncTimer = setTimeout(() => {
+      this.fsyncTimer = null;
+      this.sync().catch(error => {
+        console.error('Failed to sync audit log:', sanitizeForLogging({
+          error: error.message
+        }));
+      });
+    }, this.fsyncIntervalMs);
+    this.fsyncTimer.unref();
+  }
+
+  /**
+   * Close the current file handle, syncing anything not yet on disk
+   */
+  async closeHandle() {
+    if (!this.handle) return;
+
+    if (this.fsyncTimer) {
+      clearTimeout(this.fsyncTimer);
+      this.fsyncTimer = null;
+    }
+    if (this.dirty) {
+      await this.sync();
+    }
+
+    const handle = this.handle;
+    this.handle = null;
+    this.filePath = null;
+    await handle.close();
+  }
+
+  /**
+   * Wait until every queued entry has been written
+   */
+  async flush() {
+    while (this.flushing) {
+      await this.flushing;
+    }
+  }
+
+  /**
+   * Drain the queue and release the file handle
+   */
+  async close() {
+    await this.flush();
+    await this.closeHandle();
+  }
+
+  /**
+   * Get writer statistics
+   * @returns {Object} Writer statistics
+   */
+  getStats() {
+    return {
+      ...this.stats,
+      queued: this.queue.length,
+      fsyncPolicy: this.fsyncPolicy,
+      currentFile: this.filePath,
+      currentFileSize: this.fileSize
+    };
+  }
+}
+
+module.exports = AuditLogWriter;
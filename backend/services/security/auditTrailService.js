@@ -18,6 +18,8 @@ const {
 } = require('./utils/securityHelpers');
 const redisService = require('./redisService');
 const configService = require('./configService');
+const AuditLogWriter = require('./auditLogWriter');
+const AuditLogVerifier = require('./auditLogVerifier');
 
 class AuditTrailService {
   constructor() {
@@ -29,6 +31,10 @@ class AuditTrailService {
     this.maxLogFiles = 100;
     this.hashChain = null; // For tamper-proof logging
     this.encryptionKey = null;
+    this.writer = null;
+    this.checkpointInterval = 1000;
+    this.checkpointSequence = 0;
+    this.durableHead = null;
   }
 
   /**
@@ -55,11 +61,23 @@ class AuditTrailService {
       
       // Initialize hash chain for tamper-proof logging
       await this.initializeHashChain();
+      await this.recoverHashChain();
       
       // Set up log rotation parameters
       this.logRotationSize = customConfig.logRotationSize || this.logRotationSize;
       this.maxLogFiles = customConfig.maxLogFiles || this.maxLogFiles;
       
+      // The chain file is checkpointed every N entries rather than per entry
+      this.checkpointInterval = customConfig.checkpointInterval ||
+        parseInt(process.env.AUDIT_CHECKPOINT_INTERVAL) || this.checkpointInterval;
+      this.checkpointSequence = this.hashChain.sequence;
+      this.durableHead = {
+        sequence: this.hashChain.sequence,
+        lastHash: this.hashChain.lastHash
+      };
+      
+      await this.createLogWriter(customConfig);
+      
       this.isInitialized = true;
       console.log('Audit trail service initialized successfully');
     } catch (error) {
@@ -117,13 +135,149 @@ class AuditTrailService {
     }
   }
 
+  /**
+   * Advance the hash chain past entries written after the last checkpoint
+   * The chain file can trail the newest log file by up to one checkpoint
+   * interval, so the newest entries are replayed from the log itself.
+   */
+  async recoverHashChain() {
+    try {
+      const files = await fs.readdir(this.auditLogPath) || [];
+      const latestLog = files
+        .filter(file => file.startsWith('audit-') && file.endsWith('.log'))
+        .sort()
+        .pop();
+
+      if (!latestLog) {
+        return;
+      }
+
+      const content = await fs.readFile(path.join(this.auditLogPath, latestLog), 'utf8');
+      let recovered = 0;
+
+      for (const line of content.split('\n')) {
+        if (!line.trim()) continue;
+        try {
+          const entry = JSON.parse(line);
+          if (entry.sequence > this.hashChain.sequence && entry.integrityHash) {
+            this.hashChain.sequence = entry.sequence;
+            this.hashChain.lastHash = entry.integrityHash;
+            recovered++;
+          }
+        } catch (parseError) {
+          // A torn final line from a crash mid-write is skipped
+        }
+      }
+
+      if (recovered > 0) {
+        console.log('Audit hash chain recovered from log:', sanitizeForLogging({
+          file: latestLog,
+          recovered,
+          sequence: this.hashChain.sequence
+        }));
+        await this.saveHashChain();
+      }
+    } catch (error) {
+      if (error.code !== 'ENOENT') {
+        console.error('Failed to recover hash chain from log:', sanitizeForLogging({
+          error: error.message
+        }));
+      }
+    }
+  }
+
+  /**
+   * Create the group-commit writer for the audit log files
+   * @param {Object} customConfig - Optional custom configuration
+   */
+  async createLogWriter(customConfig = {}) {
+    if (this.writer) {
+      try {
+        await this.writer.close();
+      } catch (error) {
+        console.error('Failed to close previous audit log writer:', sanitizeForLogging({
+          error: error.message
+        }));
+      }
+    }
+
+    this.writer = new AuditLogWriter({
+      directory: this.auditLogPath,
+      getFileName: () => this.getCurrentLogFileName(),
+      rotationSize: this.logRotationSize,
+      onRotate: logFilePath => this.rotateLogFile(logFilePath),
+      onSwitch: () => this.checkpointHashChain(),
+      onFlush: entries => this.onEntriesWritten(entries),
+      onFailure: entries => this.onEntriesFailed(entries),
+      fsyncPolicy: customConfig.fsyncPolicy || process.env.AUDIT_FSYNC_POLICY || 'batch',
+      fsyncIntervalMs: customConfig.fsyncIntervalMs ||
+        parseInt(process.env.AUDIT_FSYNC_INTERVAL_MS) || 1000,
+      maxBatchSize: customConfig.maxBatchSize ||
+        parseInt(process.env.AUDIT_MAX_BATCH_SIZE) || 1000
+    });
+  }
+
+  /**
+   * Track the durable chain head and checkpoint it periodically
+   * @param {Array} entries - Entries just written to the log file
+   */
+  async onEntriesWritten(entries) {
+    const last = entries[entries.length - 1];
+    this.durableHead = {
+      sequence: last.sequence,
+      lastHash: last.integrityHash
+    };
+
+    if (this.durableHead.sequence - this.checkpointSequence >= this.checkpointInterval) {
+      await this.checkpointHashChain();
+    }
+  }
+
+  /**
+   * Roll the chain head back to the last entry that reached the log file
+   * The failed entries were never written, so later entries must link to the
+   * durable head instead. Runs synchronously, before any new entry is linked.
+   * @param {Array} entries - Entries that failed to write
+   */
+  onEntriesFailed(entries) {
+    this.hashChain.sequence = this.durableHead.sequence;
+    this.hashChain.lastHash = this.durableHead.lastHash;
+
+    console.error('Audit hash chain rolled back after a failed write:', sanitizeForLogging({
+      discarded: entries.length,
+      sequence: this.hashChain.sequence
+    }));
+  }
+
+  /**
+   * Persist the newest durably written chain head
+   */
+  async checkpointHashChain() {
+    if (!this.durableHead || this.durableHead.sequence <= this.checkpointSequence) {
+      return;
+    }
+
+    const head = { ...this.durableHead };
+    try {
+      await this.saveHashChain({
+        genesis: this.hashChain.genesis,
+        lastHash: head.lastHash,
+        sequence: head.sequence
+      });
+      this.checkpointSequence = head.sequence;
+    } catch (error) {
+      // Already logged; the next checkpoint or a log replay covers the gap
+    }
+  }
+
   /**
    * Save hash chain to file
+   * @param {Object} chain - Chain state to persist (defaults to the current head)
    */
-  async saveHashChain() {
+  async saveHashChain(chain = this.hashChain) {
     try {
       const hashChainFile = path.join(this.auditLogPath, '.hash_chain');
-      await fs.writeFile(hashChainFile, JSON.stringify(this.hashChain, null, 2));
+      await fs.writeFile(hashChainFile, JSON.stringify(chain, null, 2));
     } catch (error) {
       console.error('Failed to save hash chain:', sanitizeForLogging({ 
         error: error.message 
@@ -151,8 +305,6 @@ class AuditTrailService {
       const auditEntry = {
         ...formatSecurityEvent(eventType, severity, details, userId),
         correlationId: generateCorrelationId(),
-        sequence: this.hashChain.sequence + 1,
-        previousHash: this.hashChain.lastHash,
         timestamp: new Date().toISOString(),
         metadata: {
           service: 'audit-trail',
@@ -179,16 +331,18 @@ class AuditTrailService {
         auditEntry.encrypted = true;
       }
 
-      // Calculate integrity hash
+      // Link into the hash chain. No await between here and the append,
+      // so concurrent callers get gap-free sequences in write order.
+      auditEntry.sequence = this.hashChain.sequence + 1;
+      auditEntry.previousHash = this.hashChain.lastHash;
+
       const entryHash = this.calculateEntryHash(auditEntry);
       auditEntry.integrityHash = entryHash;
 
-      // Update hash chain
       this.hashChain.lastHash = entryHash;
       this.hashChain.sequence = auditEntry.sequence;
-      await this.saveHashChain();
 
-      // Write to audit log file
+      // Group-committed with other pending entries
       await this.writeAuditEntry(auditEntry);
 
       // Store in Redis for quick access
@@ -323,16 +477,7 @@ class AuditTrailService {
    */
   async writeAuditEntry(auditEntry) {
     try {
-      const logFileName = this.getCurrentLogFileName();
-      const logFilePath = path.join(this.auditLogPath, logFileName);
-      
-      // Check if log rotation is needed
-      await this.checkLogRotation(logFilePath);
-      
-      // Write audit entry as JSON line
-      const logLine = JSON.stringify(auditEntry) + '\n';
-      await fs.appendFile(logFilePath, logLine);
-      
+      await this.writer.append(auditEntry);
     } catch (error) {
       console.error('Failed to write audit entry:', sanitizeForLogging({ 
         correlationId: auditEntry.correlationId,
@@ -351,33 +496,6 @@ class AuditTrailService {
     return `audit-${date}.log`;
   }
 
-  /**
-   * Check if log rotation is needed and perform rotation
-   * @param {string} logFilePath - Current log file path
-   */
-  async checkLogRotation(logFilePath) {
-    try {
-      let stats;
-      try {
-        stats = await fs.stat(logFilePath);
-      } catch (error) {
-        if (error.code === 'ENOENT') {
-          return; // File doesn't exist, no rotation needed
-        }
-        throw error;
-      }
-
-      if (stats.size >= this.logRotationSize) {
-        await this.rotateLogFile(logFilePath);
-      }
-    } catch (error) {
-      console.error('Failed to check log rotation:', sanitizeForLogging({ 
-        logFilePath,
-        error: error.message 
-      }));
-    }
-  }
-
   /**
    * Rotate log file when size limit is reached
    * @param {string} logFilePath - Current log file path
@@ -536,6 +654,8 @@ class AuditTrailService {
 
   /**
    * Verify audit trail integrity
+   * Only checks the entries cached in Redis, which may have expired or been
+   * evicted; reports use verifyAuditLogFiles, which reads the log files.
    * @param {Date} startDate - Start date for verification
    * @param {Date} endDate - End date for verification
    * @returns {Object} Verification result
@@ -614,6 +734,45 @@ class AuditTrailService {
     }
   }
 
+  /**
+   * Verify audit trail integrity from the log files on disk
+   * Segments (daily and rotated .log/.log.gz files) are streamed and checked
+   * in parallel, so memory stays flat however long the range is.
+   * @param {Date} startDate - Start date for verification
+   * @param {Date} endDate - End date for verification
+   * @param {Object} options - concurrency, maxReportedFailures, onProgress
+   * @returns {Object} Verification result
+   */
+  async verifyAuditLogFiles(startDate, endDate, options = {}) {
+    try {
+      if (!this.isInitialized) {
+        throw new Error('Audit trail service not initialized');
+      }
+
+      // Entries still queued would otherwise look like a truncated chain
+      await this.flush();
+
+      const verifier = new AuditLogVerifier({
+        directory: this.auditLogPath,
+        calculateHash: entry => this.calculateEntryHash(entry),
+        genesisHash: crypto
+          .createHash('sha256')
+          .update(this.hashChain.genesis)
+          .digest('hex'),
+        ...options
+      });
+
+      return await verifier.verify(startDate, endDate);
+    } catch (error) {
+      console.error('Failed to verify audit log files:', sanitizeForLogging({ 
+        startDate, 
+        endDate, 
+        error: error.message 
+      }));
+      throw error;
+    }
+  }
+
   /**
    * Get audit entries for a specific time range
    * @param {Date} startDate - Start date
@@ -703,7 +862,7 @@ class AuditTrailService {
   async generateAuditReport(startDate, endDate, format = 'json') {
     try {
       const auditEntries = await this.getAuditEntries(startDate, endDate);
-      const integrityCheck = await this.verifyAuditTrailIntegrity(startDate, endDate);
+      const integrityCheck = await this.verifyAuditLogFiles(startDate, endDate);
       
       const report = {
         reportId: generateCorrelationId(),
@@ -856,6 +1015,25 @@ class AuditTrailService {
     };
   }
 
+  /**
+   * Wait for all pending audit entries to be written
+   */
+  async flush() {
+    if (this.writer) {
+      await this.writer.flush();
+    }
+  }
+
+  /**
+   * Write pending entries, checkpoint the hash chain and close the log file
+   */
+  async close() {
+    if (!this.writer) return;
+
+    await this.writer.close();
+    await this.checkpointHashChain();
+  }
+
   /**
    * Get service health status
    * @returns {Object} Health status information
@@ -867,6 +1045,7 @@ class AuditTrailService {
       hashChainSequence: this.hashChain?.sequence || 0,
       redisConnected: redisService.isReady(),
       configLoaded: !!this.config,
+      logWriter: this.writer ? this.writer.getStats() : null
     };
   }
 }
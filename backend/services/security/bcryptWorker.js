@@ -0,0 +1,20 @@
+/**
+ * bcrypt Worker
+ * Runs password hashing and comparison for the hashing pool, off the main
+ * event loop. The synchronous bcryptjs calls are fine here: this thread
+ * does nothing else.
+ */
+
+const { parentPort } = require('worker_threads');
+const bcrypt = require('bcryptjs');
+
+parentPort.on('message', ({ id, op, password, hash, rounds }) => {
+  try {
+    const result = op === 'hash'
+      ? bcrypt.hashSync(password, bcrypt.genSaltSync(rounds))
+      : bcrypt.compareSync(password, hash);
+    parentPort.postMessage({ id, result });
+  } catch (error) {
+    parentPort.postMessage({ id, error: error.message });
+  }
+});
@@ -22,6 +22,8 @@ const environmentSchema = Joi.object({
   // Encryption Configuration
   ENCRYPTION_KEY: Joi.string().min(32).required(),
   FIELD_ENCRYPTION_KEY: Joi.string().min(32).required(),
+  ENCRYPTION_KEY_ID: Joi.number().integer().min(1).max(255).optional(),
+  ENCRYPTION_PREVIOUS_KEYS: Joi.string().optional(),
 
   // Rate Limiting Configuration
   RATE_LIMIT_WINDOW: Joi.number().positive().default(900000), // 15 minutes
@@ -78,6 +80,8 @@ const securityConfigSchema = Joi.object({
   encryption: Joi.object({
     encryptionKey: Joi.string().min(32).required(),
     fieldEncryptionKey: Joi.string().min(32).required(),
+    keyId: Joi.number().integer().min(1).max(255).default(1),
+    previousKeys: Joi.string().optional(),
     algorithm: Joi.string().default('aes-256-gcm'),
     keyDerivation: Joi.string().default('pbkdf2'),
     iterations: Joi.number().positive().default(100000),
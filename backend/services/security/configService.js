@@ -112,6 +112,9 @@ class SecurityConfigService {
       encryption: {
         encryptionKey: env.ENCRYPTION_KEY,
         fieldEncryptionKey: env.FIELD_ENCRYPTION_KEY,
+        // ID of ENCRYPTION_KEY, and retired keys as 'keyId:key,...'
+        keyId: parseInt(env.ENCRYPTION_KEY_ID, 10) || 1,
+        previousKeys: env.ENCRYPTION_PREVIOUS_KEYS,
         algorithm: securityDefaults.encryption.algorithm,
         keyDerivation: securityDefaults.encryption.keyDerivation,
         iterations: securityDefaults.encryption.iterations,
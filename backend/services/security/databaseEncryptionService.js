@@ -6,12 +6,14 @@ class DatabaseEncryptionService {
   constructor() {
     this.encryptedFields = new Map();
     this.initialized = false;
+    this.blindIndexWarningShown = false;
     
     // Define sensitive fields that should be automatically encrypted
     this.sensitiveFieldMappings = {
       // User model sensitive fields
       'User': [
-        { field: 'email', type: 'email' },
+        // Looked up by email, so it also keeps an HMAC blind index
+        { field: 'email', type: 'email', blindIndex: 'emailIndex' },
         { field: 'phone', type: 'phoneNumber' },
         { field: 'address', type: 'address' },
         { field: 'totpSecret', type: 'totpSecret' },
@@ -70,6 +72,8 @@ class DatabaseEncryptionService {
 
     // Store field mappings for this model
     this.encryptedFields.set(modelName, fieldMappings);
+    const indexedMappings = fieldMappings.filter(mapping => mapping.blindIndex);
+    this.addBlindIndexStatics(schema, modelName, indexedMappings);
 
     // Pre-save middleware for encryption
     schema.pre('save', async function(next) {
@@ -78,6 +82,9 @@ class DatabaseEncryptionService {
           await encryptionService.initialize();
         }
 
+        // Indexes are computed from plaintext, so before encrypting
+        await serviceInstance.updateBlindIndexes(this, indexedMappings);
+
         // Encrypt sensitive fields before saving
         for (const mapping of fieldMappings) {
           const fieldValue = this.get(mapping.field);
@@ -224,6 +231,144 @@ class DatabaseEncryptionService {
     };
   }
 
+  /**
+   * Create Mongoose plugin that maintains blind indexes for lookup fields
+   * For models whose fields are not encrypted yet; the encryption plugin
+   * maintains them itself.
+   * @param {Object} schema - Mongoose schema
+   * @param {Object} options - Plugin options
+   */
+  createBlindIndexPlugin(schema, options = {}) {
+    const modelName = options.modelName;
+    const indexedMappings = (this.sensitiveFieldMappings[modelName] || []).filter(mapping => mapping.blindIndex);
+    const serviceInstance = this;
+
+    if (indexedMappings.length === 0) {
+      return;
+    }
+
+    schema.pre('save', async function(next) {
+      try {
+        await serviceInstance.updateBlindIndexes(this, indexedMappings);
+      } catch (error) {
+        // The fields are still plain text here, so lookups fall back to
+        // them. Drop the indexes of changed fields rather than leave stale
+        // ones; the encryption migration backfills them later.
+        if (!serviceInstance.blindIndexWarningShown) {
+          serviceInstance.blindIndexWarningShown = true;
+          console.warn(`Blind indexes unavailable for ${modelName}:`, error.message);
+        }
+        for (const mapping of indexedMappings) {
+          if (this.isNew || this.isModified(mapping.field)) {
+            this.set(mapping.blindIndex, undefined);
+          }
+        }
+      }
+      next();
+    });
+
+    this.addBlindIndexStatics(schema, modelName, indexedMappings);
+  }
+
+  /**
+   * Recompute the blind index of every indexed field that changed
+   * Each mapping with a blindIndex keeps a keyed HMAC of its plaintext in
+   * that path, so the field can be found by equality even when encrypted.
+   * @param {Object} doc - Mongoose document being saved
+   * @param {Array} indexedMappings - Mappings with a blindIndex
+   */
+  async updateBlindIndexes(doc, indexedMappings) {
+    for (const mapping of indexedMappings) {
+      if (!doc.isNew && !doc.isModified(mapping.field)) continue;
+
+      let value = doc.get(mapping.field);
+      if (encryptionService.isEncrypted(value)) {
+        value = await encryptionService.decryptField(value, mapping.type);
+      }
+      // Unset rather than null: the unique sparse index still indexes nulls
+      const index = await encryptionService.computeBlindIndex(value, mapping.type);
+      doc.set(mapping.blindIndex, index === null ? undefined : index);
+    }
+  }
+
+  /**
+   * Keep blind indexes current on update queries and add the
+   * blindIndexFilter static used by lookup helpers
+   * @param {Object} schema - Mongoose schema
+   * @param {string} modelName - Name of the model
+   * @param {Array} indexedMappings - Mappings with a blindIndex
+   */
+  addBlindIndexStatics(schema, modelName, indexedMappings) {
+    if (indexedMappings.length === 0) {
+      return;
+    }
+
+    // Updates that bypass save() set the field directly; keep the index in step
+    schema.pre(['findOneAndUpdate', 'updateOne', 'updateMany'], async function() {
+      const update = this.getUpdate();
+      if (!update) return;
+
+      for (const mapping of indexedMappings) {
+        const target = update.$set && mapping.field in update.$set ? update.$set
+          : mapping.field in update ? update : null;
+        if (!target) continue;
+
+        let index = null;
+        try {
+          let value = target[mapping.field];
+          if (encryptionService.isEncrypted(value)) {
+            value = await encryptionService.decryptField(value, mapping.type);
+          }
+          index = await encryptionService.computeBlindIndex(value, mapping.type);
+        } catch (error) {
+          // Same as on save: no index beats a stale one
+        }
+
+        if (index === null) {
+          delete target[mapping.blindIndex];
+          update.$unset = { ...update.$unset, [mapping.blindIndex]: 1 };
+        } else {
+          target[mapping.blindIndex] = index;
+        }
+      }
+    });
+
+    /**
+     * Query filter that finds documents by the plaintext of a blind-indexed field
+     * Documents whose index has not been backfilled yet, or whose field is
+     * still stored in plain text, match on the field itself.
+     * @param {string} field - Field name
+     * @param {any} value - Plain text value
+     * @returns {Promise<Object>} Query filter
+     */
+    schema.statics.blindIndexFilter = async function(field, value) {
+      const mapping = indexedMappings.find(candidate => candidate.field === field);
+      if (!mapping) {
+        throw new Error(`${field} has no blind index on ${modelName}`);
+      }
+
+      let index;
+      try {
+        index = await encryptionService.computeBlindIndex(value, mapping.type);
+      } catch (error) {
+        // Without keys no index was written either; see createBlindIndexPlugin
+        return { [mapping.field]: value };
+      }
+      return { $or: [{ [mapping.blindIndex]: index }, { [mapping.field]: value }] };
+    };
+  }
+
+  /**
+   * Apply only the blind index plugin to a Mongoose model
+   * For models whose fields are not encrypted yet; applyEncryption already
+   * includes it.
+   * @param {Object} schema - Mongoose schema
+   * @param {string} modelName - Name of the model
+   */
+  applyBlindIndexes(schema, modelName) {
+    schema.plugin(this.createBlindIndexPlugin.bind(this), { modelName });
+  }
+
   /**
    * Apply encryption plugin to a Mongoose model
    * @param {Object} schema - Mongoose schema
@@ -0,0 +1,368 @@
+/**
+ * Encryption Migration Service
+ * Background re-encryption job. Walks every model with sensitive fields in
+ * _id order and rewrites ciphertext that is in the legacy JSON payload
+ * format or under a key other than the active one, and backfills blind
+ * indexes that documents written before them are missing.
+ *
+ * Runs in small, paced bulkWrite batches; each write only lands if the
+ * fields still hold the values that were read, so it never overwrites a
+ * concurrent update. Progress is checkpointed in an EncryptionJob document
+ * after every batch, so a restart resumes where it stopped, and a lease on
+ * that document keeps the job to one instance at a time.
+ */
+
+const os = require('os');
+const mongoose = require('mongoose');
+const encryptionService = require('./encryptionService');
+const databaseEncryptionService = require('./databaseEncryptionService');
+const { sanitizeForLogging } = require('./utils/securityHelpers');
+
+const JOB_NAME = 'field-reencryption';
+
+const getPath = (doc, path) => path.split('.').reduce((value, key) => (value == null ? value : value[key]), doc);
+
+class EncryptionMigrationService {
+  constructor() {
+    this.batchSize = parseInt(process.env.ENCRYPTION_MIGRATION_BATCH_SIZE, 10) || 200;
+    // Minimum pause between batches. The job also waits at least as long as
+    // the last batch took, so it backs off on its own when the database is slow.
+    this.pauseMs = parseInt(process.env.ENCRYPTION_MIGRATION_PAUSE_MS, 10) || 250;
+    // How long another instance waits before taking over from one that died
+    this.leaseMs = parseInt(process.env.ENCRYPTION_MIGRATION_LEASE_MS, 10) || 60000;
+    this.instanceId = `${os.hostname()}:${process.pid}`;
+    this.running = null;
+    this.stopRequested = false;
+    this.resetStats();
+  }
+
+  resetStats() {
+    this.stats = { scanned: 0, reencrypted: 0, conflicts: 0, failed: 0 };
+  }
+
+  /**
+   * Start or resume the job in the background
+   * Does nothing if it already finished for the active key, or another
+   * instance holds the lease.
+   * @param {Object} options - { modelNames, restart }
+   * @returns {Promise} Resolves when the run finishes or is stopped
+   */
+  start({ modelNames = Object.keys(databaseEncryptionService.sensitiveFieldMappings), restart = false } = {}) {
+    if (this.running) {
+      return this.running;
+    }
+
+    this.stopRequested = false;
+    this.running = this.run(modelNames, restart)
+      .catch(async (error) => {
+        console.error('EncryptionMigration: Failed to re-encrypt fields:', sanitizeForLogging({ error: error.message }));
+        await this.release({ status: 'failed', error: error.message }).catch(() => {});
+      })
+      .finally(() => {
+        this.running = null;
+      });
+
+    return this.running;
+  }
+
+  /**
+   * Stop after the current batch; the checkpoint lets it resume later
+   * @returns {Promise} Resolves once the job has stopped
+   */
+  async stop() {
+    this.stopRequested = true;
+    await this.running;
+  }
+
+  /**
+   * Run the job until it finishes, is stopped, or loses its lease
+   * @param {Array} modelNames - Models to walk
+   * @param {boolean} restart - Start over from the first document
+   */
+  async run(modelNames, restart) {
+    const EncryptionJob = require('../../models/EncryptionJob');
+    await encryptionService.initialize();
+
+    const job = await this.claim(restart);
+    if (!job) return;
+
+    this.resetStats();
+    Object.assign(this.stats, job.stats);
+
+    for (const modelName of modelNames) {
+      const Model = mongoose.models[modelName];
+      if (!Model || job.completedModels.includes(modelName)) continue;
+
+      const checkpoint = job.checkpoints ? job.checkpoints[modelName] : null;
+      const finished = await this.migrateModel(Model, databaseEncryptionService.getSensitiveFields(modelName), checkpoint);
+      if (!finished) {
+        await this.release({ status: 'paused' });
+        return;
+      }
+
+      await EncryptionJob.updateOne(
+        { name: JOB_NAME, lockedBy: this.instanceId },
+        { $addToSet: { completedModels: modelName } }
+      );
+    }
+
+    await this.release({ status: 'completed', finishedAt: new Date() });
+    if (this.stats.reencrypted > 0) {
+      console.log(`Encryption migration: ${this.stats.reencrypted} document(s) moved to key ${job.targetKeyId}`);
+    }
+  }
+
+  /**
+   * Take the job lease, starting over if the active key has changed
+   * @param {boolean} restart - Start over even if already completed
+   * @returns {Promise<Object|null>} Job document, or null if there is nothing to do
+   */
+  async claim(restart) {
+    const EncryptionJob = require('../../models/EncryptionJob');
+    const now = new Date();
+    const targetKeyId = encryptionService.activeKeyId;
+
+    await EncryptionJob.updateOne(
+      { name: JOB_NAME },
+      { $setOnInsert: { targetKeyId, status: 'pending' } },
+      { upsert: true }
+    );
+
+    const job = await EncryptionJob.findOneAndUpdate(
+      {
+        name: JOB_NAME,
+        $or: [{ lockedUntil: null }, { lockedUntil: { $lt: now } }, { lockedBy: this.instanceId }]
+      },
+      { $set: { lockedBy: this.instanceId, lockedUntil: new Date(now.getTime() + this.leaseMs) } },
+      { new: true }
+    ).lean();
+    if (!job) return null;
+
+    const reset = restart || job.targetKeyId !== targetKeyId;
+    if (!reset && job.status === 'completed') {
+      await this.release({});
+      return null;
+    }
+
+    const update = { status: 'running' };
+    if (reset) {
+      Object.assign(update, {
+        targetKeyId,
+        checkpoints: {},
+        completedModels: [],
+        stats: { scanned: 0, reencrypted: 0, conflicts: 0, failed: 0 },
+        startedAt: now,
+        finishedAt: null,
+        error: null
+      });
+    } else if (!job.startedAt) {
+      update.startedAt = now;
+    }
+
+    return EncryptionJob.findOneAndUpdate(
+      { name: JOB_NAME, lockedBy: this.instanceId },
+      { $set: update },
+      { new: true }
+    ).lean();
+  }
+
+  /**
+   * Give up the lease, recording where the job got to
+   * @param {Object} fields - Fields to set, e.g. { status }
+   */
+  async release(fields) {
+    const EncryptionJob = require('../../models/EncryptionJob');
+    await EncryptionJob.updateOne(
+      { name: JOB_NAME, lockedBy: this.instanceId },
+      { $set: { ...fields, stats: this.stats, lockedBy: null, lockedUntil: null } }
+    );
+  }
+
+  /**
+   * Record progress and renew the lease
+   * @param {string} modelName - Model being walked
+   * @param {any} lastId - Last _id processed
+   * @returns {Promise<boolean>} False if another instance has taken the lease
+   */
+  async checkpoint(modelName, lastId) {
+    const EncryptionJob = require('../../models/EncryptionJob');
+    const result = await EncryptionJob.updateOne(
+      { name: JOB_NAME, lockedBy: this.instanceId },
+      {
+        $set: {
+          [`checkpoints.${modelName}`]: lastId,
+          stats: this.stats,
+          lockedUntil: new Date(Date.now() + this.leaseMs)
+        }
+      }
+    );
+    return result.matchedCount > 0;
+  }
+
+  /**
+   * Walk a model from a checkpoint, re-encrypting in paced batches
+   * @param {Object} Model - Mongoose model
+   * @param {Array} mappings - Sensitive field mappings for the model
+   * @param {any} afterId - Resume after this _id, or null for the start
+   * @returns {Promise<boolean>} True if the whole model was processed
+   */
+  async migrateModel(Model, mappings, afterId = null) {
+    if (mappings.length === 0) return true;
+
+    const fields = mappings.flatMap(mapping => (mapping.blindIndex ? [mapping.field, mapping.blindIndex] : [mapping.field]));
+    // Which key a ciphertext uses is inside the envelope, so every document
+    // is read; the cursor streams them instead of holding a batch query open
+    const cursor = Model.find(afterId != null ? { _id: { $gt: afterId } } : {})
+      .select(fields.join(' '))
+      .sort({ _id: 1 })
+      .lean()
+      .cursor({ batchSize: this.batchSize });
+
+    try {
+      let batch = [];
+      for await (const doc of cursor) {
+        batch.push(doc);
+        if (batch.length < this.batchSize) continue;
+
+        if (!await this.processBatch(Model, mappings, batch)) return false;
+        batch = [];
+      }
+
+      return batch.length === 0 || await this.processBatch(Model, mappings, batch);
+    } finally {
+      await cursor.close();
+    }
+  }
+
+  /**
+   * Write one batch, checkpoint it, then pause
+   * @param {Object} Model - Mongoose model
+   * @param {Array} mappings - Sensitive field mappings
+   * @param {Array} docs - Lean documents
+   * @returns {Promise<boolean>} False if the job should stop
+   */
+  async processBatch(Model, mappings, docs) {
+    const startedAt = Date.now();
+
+    const operations = [];
+    for (const doc of docs) {
+      const operation = await this.buildUpdate(doc, mappings);
+      if (operation) operations.push(operation);
+    }
+    this.stats.scanned += docs.length;
+
+    if (operations.length > 0) {
+      const result = await Model.bulkWrite(operations, { ordered: false });
+      this.stats.reencrypted += result.modifiedCount;
+      this.stats.conflicts += operations.length - result.modifiedCount;
+    }
+
+    if (!await this.checkpoint(Model.modelName, docs[docs.length - 1]._id)) {
+      console.warn('EncryptionMigration: Lease taken over by another instance, stopping');
+      return false;
+    }
+    if (this.stopRequested) return false;
+
+    await new Promise(resolve => setTimeout(resolve, Math.max(this.pauseMs, Date.now() - startedAt)));
+    return !this.stopRequested;
+  }
+
+  /**
+   * Build the conditional update that re-encrypts a document's stale fields
+   * and fills in its missing blind indexes
+   * @param {Object} doc - Lean document
+   * @param {Array} mappings - Sensitive field mappings
+   * @returns {Object|null} bulkWrite operation, or null if nothing to change
+   */
+  async buildUpdate(doc, mappings) {
+    const filter = { _id: doc._id };
+    const update = {};
+
+    try {
+      for (const mapping of mappings) {
+        const value = getPath(doc, mapping.field);
+        const migrated = await this.migrateValue(value, mapping.type);
+        if (migrated !== value) {
+          filter[mapping.field] = value;
+          update[mapping.field] = migrated;
+        }
+
+        if (mapping.blindIndex && getPath(doc, mapping.blindIndex) === undefined &&
+            typeof value === 'string' && value !== '') {
+          const plaintext = await encryptionService.decryptField(value, mapping.type);
+          filter[mapping.field] = value;
+          filter[mapping.blindIndex] = { $exists: false };
+          update[mapping.blindIndex] = await encryptionService.computeBlindIndex(plaintext, mapping.type);
+        }
+      }
+    } catch (error) {
+      this.stats.failed++;
+      console.error('EncryptionMigration: Failed to re-encrypt document:', sanitizeForLogging({
+        documentId: doc._id.toString(),
+        error: error.message
+      }));
+      return null;
+    }
+
+    if (Object.keys(update).length === 0) return null;
+    return { updateOne: { filter, update: { $set: update } } };
+  }
+
+  /**
+   * Re-encrypt a field value if it is legacy ciphertext or under another key
+   * @param {any} value - Stored value (string, or array of strings or { code })
+   * @param {string} fieldType - Field type used for the key
+   * @returns {Promise<any>} New value, or the same value if nothing changed
+   */
+  async migrateValue(value, fieldType) {
+    if (Array.isArray(value)) {
+      let changed = false;
+      const items = [];
+      for (const item of value) {
+        if (encryptionService.needsReencryption(item)) {
+          items.push(await encryptionService.reencryptField(item, fieldType));
+          changed = true;
+        } else if (item && encryptionService.needsReencryption(item.code)) {
+          items.push({ ...item, code: await encryptionService.reencryptField(item.code, fieldType) });
+          changed = true;
+        } else {
+          items.push(item);
+        }
+      }
+      return changed ? items : value;
+    }
+
+    if (encryptionService.needsReencryption(value)) {
+      return encryptionService.reencryptField(value, fieldType);
+    }
+    return value;
+  }
+
+  /**
+   * Get job progress
+   * @returns {Promise<Object>} Stored job state, and whether it runs here
+   */
+  async getStatus() {
+    const EncryptionJob = require('../../models/EncryptionJob');
+    const job = await EncryptionJob.findOne({ name: JOB_NAME }).lean();
+
+    return {
+      activeKeyId: encryptionService.activeKeyId,
+      runningHere: this.running !== null,
+      job: job ? {
+        targetKeyId: job.targetKeyId,
+        status: job.status,
+        checkpoints: job.checkpoints,
+        completedModels: job.completedModels,
+        stats: job.stats,
+        lockedBy: job.lockedBy,
+        lockedUntil: job.lockedUntil,
+        startedAt: job.startedAt,
+        finishedAt: job.finishedAt,
+        error: job.error
+      } : null
+    };
+  }
+}
+
+module.exports = new EncryptionMigrationService();
@@ -1,6 +1,20 @@
 const crypto = require('crypto');
 const { configService } = require('./configService');
 
+// Field ciphertext is 'enc:' + base64url of a binary envelope:
+//   [version | flags][keyId][iv (12)][tag (16)][ciphertext]
+// Earlier releases stored base64 JSON instead; those start with 'eyJ' ('{"')
+const ENCRYPTED_PREFIX = 'enc:';
+const LEGACY_PAYLOAD_PREFIX = 'eyJ';
+const ENVELOPE_VERSION = 1;
+// Set on the version byte when the plaintext was JSON-encoded
+const ENVELOPE_JSON_FLAG = 0x80;
+const ENVELOPE_IV_LENGTH = 12;
+const ENVELOPE_TAG_LENGTH = 16;
+const ENVELOPE_HEADER_LENGTH = 2 + ENVELOPE_IV_LENGTH + ENVELOPE_TAG_LENGTH;
+// Field types whose blind index ignores case and surrounding whitespace
+const CASE_INSENSITIVE_FIELDS = new Set(['email']);
+
 class EncryptionService {
   constructor() {
     this.algorithm = 'aes-256-gcm';
@@ -8,9 +22,15 @@ class EncryptionService {
     this.ivLength = 16; // 128 bits
     this.tagLength = 16; // 128 bits
     this.saltLength = 32; // 256 bits
+    // Master keys by ID; each envelope records the ID it was written with,
+    // so ciphertext under a retired key stays readable until re-encrypted
+    this.keyring = new Map();
+    this.activeKeyId = 1;
     
     // Field-specific encryption keys
     this.fieldKeys = new Map();
+    // Field-specific blind index (HMAC) keys
+    this.blindIndexKeys = new Map();
     
     // Sensitive field types that should always be encrypted
     this.sensitiveFields = new Set([
@@ -45,11 +65,20 @@ class EncryptionService {
       await configService.initialize();
       const config = configService.getEncryptionConfig();
       
+      // Retired keys stay in the keyring for decryption only
+      this.keyring.clear();
+      for (const { keyId, key } of this.parsePreviousKeys(config.previousKeys)) {
+        this.addKey(keyId, key);
+      }
+      
       // Set master encryption key
-      this.masterKey = this.deriveMasterKey(config.encryptionKey || config.key);
+      this.addKey(config.keyId || 1, config.encryptionKey || config.key);
+      this.useKey(config.keyId || 1);
       
-      // Initialize field-specific keys
-      await this.initializeFieldKeys();
+      // Blind indexes hang off their own key so rotating the master key
+      // does not invalidate every stored index
+      this.blindIndexKey = this.deriveBlindIndexKey(config.fieldEncryptionKey || config.encryptionKey || config.key);
+      this.blindIndexKeys.clear();
       
       this.initialized = true;
     } catch (error) {
@@ -73,24 +102,91 @@ class EncryptionService {
     return crypto.pbkdf2Sync(configKey, salt, 100000, this.keyLength, 'sha256');
   }
 
+  /**
+   * Derive the root key for blind indexes from configuration
+   * @param {string} configKey - Configuration key
+   * @returns {Buffer} Derived blind index key
+   */
+  deriveBlindIndexKey(configKey) {
+    const salt = Buffer.from('library-booking-blind-index-salt', 'utf8');
+    return crypto.pbkdf2Sync(configKey, salt, 100000, this.keyLength, 'sha256');
+  }
+
+  /**
+   * Parse retired keys from configuration
+   * @param {string} previousKeys - Comma-separated 'keyId:key' pairs
+   * @returns {Array} { keyId, key } entries
+   */
+  parsePreviousKeys(previousKeys) {
+    if (!previousKeys) return [];
+
+    return previousKeys.split(',').map(entry => entry.trim()).filter(Boolean).map((entry) => {
+      const separator = entry.indexOf(':');
+      const keyId = parseInt(entry.substring(0, separator), 10);
+      if (separator < 1 || isNaN(keyId)) {
+        throw new Error('Previous encryption keys must be keyId:key pairs');
+      }
+      return { keyId, key: entry.substring(separator + 1) };
+    });
+  }
+
+  /**
+   * Add a master key and its field keys to the keyring
+   * @param {number} keyId - Key ID written into envelopes (1-255)
+   * @param {string} configKey - Configuration key
+   * @returns {Object} Keyring entry
+   */
+  addKey(keyId, configKey) {
+    if (!Number.isInteger(keyId) || keyId < 1 || keyId > 255) {
+      throw new Error(`Encryption key ID must be between 1 and 255, got ${keyId}`);
+    }
+
+    const masterKey = this.deriveMasterKey(configKey);
+    const entry = { keyId, masterKey, fieldKeys: this.deriveFieldKeys(masterKey) };
+    this.keyring.set(keyId, entry);
+    return entry;
+  }
+
+  /**
+   * Make a keyring entry the one new ciphertext is written with
+   * @param {number} keyId - Key ID
+   */
+  useKey(keyId) {
+    const entry = this.keyring.get(keyId);
+    this.activeKeyId = keyId;
+    this.masterKey = entry.masterKey;
+    this.fieldKeys = entry.fieldKeys;
+  }
+
   /**
    * Initialize field-specific encryption keys
    */
   async initializeFieldKeys() {
+    this.fieldKeys = this.deriveFieldKeys(this.masterKey);
+  }
+
+  /**
+   * Derive the field-specific keys of a master key
+   * @param {Buffer} masterKey - Master key
+   * @returns {Map} Field type to key
+   */
+  deriveFieldKeys(masterKey) {
+    const fieldKeys = new Map();
     for (const fieldType of this.sensitiveFields) {
-      const fieldKey = this.deriveFieldKey(fieldType);
-      this.fieldKeys.set(fieldType, fieldKey);
+      fieldKeys.set(fieldType, this.deriveFieldKey(fieldType, masterKey));
     }
+    return fieldKeys;
   }
 
   /**
    * Derive field-specific encryption key
    * @param {string} fieldType - Type of field
+   * @param {Buffer} masterKey - Master key (defaults to the active one)
    * @returns {Buffer} Field-specific key
    */
-  deriveFieldKey(fieldType) {
+  deriveFieldKey(fieldType, masterKey = this.masterKey) {
     const salt = Buffer.from(`field-${fieldType}-salt`, 'utf8');
-    return crypto.pbkdf2Sync(this.masterKey, salt, 50000, this.keyLength, 'sha256');
+    return crypto.pbkdf2Sync(masterKey, salt, 50000, this.keyLength, 'sha256');
   }
 
   /**
@@ -115,28 +211,21 @@ class EncryptionService {
 
     try {
       const fieldKey = this.fieldKeys.get(fieldType) || this.masterKey;
-      const iv = crypto.randomBytes(this.ivLength);
+      const isString = typeof data === 'string';
+      const header = Buffer.alloc(2);
+      header[0] = ENVELOPE_VERSION | (isString ? 0 : ENVELOPE_JSON_FLAG);
+      header[1] = this.activeKeyId;
+
+      const iv = crypto.randomBytes(ENVELOPE_IV_LENGTH);
       const cipher = crypto.createCipheriv(this.algorithm, fieldKey, iv);
-      
-      const plaintext = typeof data === 'string' ? data : JSON.stringify(data);
-      
-      let encrypted = cipher.update(plaintext, 'utf8', 'hex');
-      encrypted += cipher.final('hex');
-      
+      // Bind the header to the ciphertext so it cannot be altered
+      cipher.setAAD(header);
+
+      const plaintext = isString ? data : JSON.stringify(data);
+      const encrypted = Buffer.concat([cipher.update(plaintext, 'utf8'), cipher.final()]);
       const tag = cipher.getAuthTag();
-      
-      // Create encrypted payload with metadata
-      const payload = {
-        algorithm: this.algorithm,
-        fieldType,
-        iv: iv.toString('hex'),
-        tag: tag.toString('hex'),
-        data: encrypted,
-        timestamp: Date.now()
-      };
-      
-      // Return base64 encoded payload with prefix
-      return 'enc:' + Buffer.from(JSON.stringify(payload)).toString('base64');
+
+      return ENCRYPTED_PREFIX + Buffer.concat([header, iv, tag, encrypted]).toString('base64url');
     } catch (error) {
       console.error(`Field encryption error for ${fieldType}:`, error);
       throw new Error(`Failed to encrypt ${fieldType} field`);
@@ -159,45 +248,174 @@ class EncryptionService {
     }
 
     // Check if data is encrypted
-    if (!encryptedData.startsWith('enc:')) {
+    if (!encryptedData.startsWith(ENCRYPTED_PREFIX)) {
       return encryptedData; // Not encrypted
     }
 
     try {
-      // Parse encrypted payload
-      const payloadBase64 = encryptedData.substring(4);
-      const payloadJson = Buffer.from(payloadBase64, 'base64').toString('utf8');
-      const payload = JSON.parse(payloadJson);
-      
-      // Validate payload structure
-      if (!payload.algorithm || !payload.iv || !payload.tag || !payload.data) {
-        throw new Error('Invalid encrypted payload structure');
+      if (this.isLegacyEnvelope(encryptedData)) {
+        return this.decryptLegacyField(encryptedData, fieldType);
       }
-      
-      // Get appropriate key
-      const fieldKey = this.fieldKeys.get(payload.fieldType || fieldType) || this.masterKey;
-      
-      // Decrypt data
-      const iv = Buffer.from(payload.iv, 'hex');
-      const tag = Buffer.from(payload.tag, 'hex');
-      const decipher = crypto.createDecipheriv(payload.algorithm, fieldKey, iv);
-      decipher.setAuthTag(tag);
-      
-      let decrypted = decipher.update(payload.data, 'hex', 'utf8');
-      decrypted += decipher.final('utf8');
-      
-      // Try to parse as JSON, fallback to string
-      try {
-        return JSON.parse(decrypted);
-      } catch {
-        return decrypted;
+
+      const envelope = Buffer.from(encryptedData.substring(ENCRYPTED_PREFIX.length), 'base64url');
+      if (envelope.length < ENVELOPE_HEADER_LENGTH || (envelope[0] & ~ENVELOPE_JSON_FLAG) !== ENVELOPE_VERSION) {
+        throw new Error('Invalid encrypted envelope');
       }
+
+      const fieldKey = this.getFieldKey(fieldType, envelope[1]);
+      const iv = envelope.subarray(2, 2 + ENVELOPE_IV_LENGTH);
+      const tag = envelope.subarray(2 + ENVELOPE_IV_LENGTH, ENVELOPE_HEADER_LENGTH);
+      const decipher = crypto.createDecipheriv(this.algorithm, fieldKey, iv);
+      decipher.setAAD(envelope.subarray(0, 2));
+      decipher.setAuthTag(tag);
+
+      const decrypted = Buffer.concat([
+        decipher.update(envelope.subarray(ENVELOPE_HEADER_LENGTH)),
+        decipher.final()
+      ]).toString('utf8');
+
+      return envelope[0] & ENVELOPE_JSON_FLAG ? JSON.parse(decrypted) : decrypted;
     } catch (error) {
       console.error(`Field decryption error for ${fieldType}:`, error);
       throw new Error(`Failed to decrypt ${fieldType} field`);
     }
   }
 
+  /**
+   * Decrypt a field stored in the JSON payload format of earlier releases
+   * @param {string} encryptedData - 'enc:' + base64 JSON payload
+   * @param {string} fieldType - Type of field being decrypted
+   * @returns {any} Decrypted data
+   */
+  decryptLegacyField(encryptedData, fieldType) {
+    const payloadJson = Buffer.from(encryptedData.substring(ENCRYPTED_PREFIX.length), 'base64').toString('utf8');
+    const payload = JSON.parse(payloadJson);
+
+    // Validate payload structure
+    if (!payload.algorithm || !payload.iv || !payload.tag || !payload.data) {
+      throw new Error('Invalid encrypted payload structure');
+    }
+
+    // The legacy format did not record its key either; GCM authentication
+    // tells which one it was, starting with the active key
+    const entries = [this.keyring.get(this.activeKeyId),
+      ...[...this.keyring.values()].filter(entry => entry.keyId !== this.activeKeyId)];
+    let decrypted = null;
+    let lastError = null;
+
+    for (const entry of entries) {
+      const fieldKey = entry.fieldKeys.get(payload.fieldType || fieldType) || entry.masterKey;
+      try {
+        const decipher = crypto.createDecipheriv(payload.algorithm, fieldKey, Buffer.from(payload.iv, 'hex'));
+        decipher.setAuthTag(Buffer.from(payload.tag, 'hex'));
+        decrypted = decipher.update(payload.data, 'hex', 'utf8');
+        decrypted += decipher.final('utf8');
+        break;
+      } catch (error) {
+        lastError = error;
+      }
+    }
+    if (decrypted === null) {
+      throw lastError;
+    }
+
+    // The legacy format did not record the plaintext type
+    try {
+      return JSON.parse(decrypted);
+    } catch {
+      return decrypted;
+    }
+  }
+
+  /**
+   * Get the key for a field type
+   * @param {string} fieldType - Type of field
+   * @param {number} keyId - Key ID recorded in the envelope
+   * @returns {Buffer} Field key
+   */
+  getFieldKey(fieldType, keyId) {
+    const entry = this.keyring.get(keyId);
+    if (!entry) {
+      throw new Error(`Unknown encryption key ${keyId}`);
+    }
+    return entry.fieldKeys.get(fieldType) || entry.masterKey;
+  }
+
+  /**
+   * Get the key ID a ciphertext was written with
+   * @param {string} encryptedData - Encrypted field value
+   * @returns {number|null} Key ID, or null for plain text and legacy ciphertext
+   */
+  getKeyId(encryptedData) {
+    if (!this.isEncrypted(encryptedData) || this.isLegacyEnvelope(encryptedData)) {
+      return null;
+    }
+    // The key ID is the second envelope byte, within the first 4 characters
+    const head = Buffer.from(encryptedData.substring(ENCRYPTED_PREFIX.length, ENCRYPTED_PREFIX.length + 4), 'base64url');
+    return head.length > 1 ? head[1] : null;
+  }
+
+  /**
+   * Whether a ciphertext should be rewritten with the active key
+   * @param {any} data - Stored value
+   * @returns {boolean} True for legacy ciphertext or a retired key
+   */
+  needsReencryption(data) {
+    if (!this.isEncrypted(data)) return false;
+    return this.isLegacyEnvelope(data) || this.getKeyId(data) !== this.activeKeyId;
+  }
+
+  /**
+   * Whether a value is ciphertext in the legacy JSON payload format
+   * @param {any} data - Stored value
+   * @returns {boolean} True if it should be migrated to the binary envelope
+   */
+  isLegacyEnvelope(data) {
+    return this.isEncrypted(data) && data.startsWith(LEGACY_PAYLOAD_PREFIX, ENCRYPTED_PREFIX.length);
+  }
+
+  /**
+   * Re-encrypt a field value in the current format with the active key
+   * @param {string} encryptedData - Legacy ciphertext or ciphertext under a retired key
+   * @param {string} fieldType - Type of field
+   * @returns {Promise<string>} Ciphertext in the current format
+   */
+  async reencryptField(encryptedData, fieldType) {
+    const decrypted = await this.decryptField(encryptedData, fieldType);
+    return this.encryptField(decrypted, fieldType);
+  }
+
+  /**
+   * Compute the blind index of a field value
+   * A keyed HMAC of the plaintext: equal values give equal indexes, so
+   * encrypted fields can still be looked up through a regular index.
+   * @param {any} data - Plain text value
+   * @param {string} fieldType - Type of field
+   * @returns {Promise<string|null>} base64url HMAC, or null for empty values
+   */
+  async computeBlindIndex(data, fieldType) {
+    if (!this.initialized) {
+      await this.initialize();
+    }
+
+    if (data === null || data === undefined || data === '') {
+      return null;
+    }
+
+    let fieldKey = this.blindIndexKeys.get(fieldType);
+    if (!fieldKey) {
+      fieldKey = crypto.createHmac('sha256', this.blindIndexKey).update(`blind-index-${fieldType}`).digest();
+      this.blindIndexKeys.set(fieldType, fieldKey);
+    }
+
+    let value = typeof data === 'string' ? data : JSON.stringify(data);
+    if (CASE_INSENSITIVE_FIELDS.has(fieldType)) {
+      value = value.trim().toLowerCase();
+    }
+
+    return crypto.createHmac('sha256', fieldKey).update(value, 'utf8').digest('base64url');
+  }
+
   /**
    * Encrypt multiple fields in an object
    * @param {Object} data - Object containing fields to encrypt
@@ -371,6 +589,7 @@ class EncryptionService {
     return {
       algorithm: this.algorithm,
       fieldType,
+      keyId: this.activeKeyId,
       iv: iv.toString('hex'),
       tag: tag.toString('hex'),
       data: encrypted.toString('hex'),
@@ -389,7 +608,8 @@ class EncryptionService {
       await this.initialize();
     }
 
-    const fieldKey = this.fieldKeys.get(encryptedPayload.fieldType) || this.masterKey;
+    // Payloads from before the keyring carry no key ID
+    const fieldKey = this.getFieldKey(encryptedPayload.fieldType, encryptedPayload.keyId || this.activeKeyId);
     const iv = Buffer.from(encryptedPayload.iv, 'hex');
     const tag = Buffer.from(encryptedPayload.tag, 'hex');
     const encryptedData = Buffer.from(encryptedPayload.data, 'hex');
@@ -406,40 +626,63 @@ class EncryptionService {
 
   /**
    * Rotate encryption keys
+   * The old key stays in the keyring so existing ciphertext still decrypts;
+   * the re-encryption job moves it to the new key. This only changes this
+   * process: deployments rotate through ENCRYPTION_KEY, ENCRYPTION_KEY_ID
+   * and ENCRYPTION_PREVIOUS_KEYS so every instance agrees.
    * @param {string} newMasterKey - New master key
+   * @param {number} keyId - ID for the new key (defaults to the next one)
    * @returns {Object} Key rotation result
    */
-  async rotateKeys(newMasterKey) {
+  async rotateKeys(newMasterKey, keyId = null) {
     if (!this.initialized) {
       await this.initialize();
     }
 
+    if (keyId === null) {
+      keyId = Math.max(...this.keyring.keys()) + 1;
+    }
+
+    if (this.keyring.has(keyId)) {
+      throw new Error(`Encryption key ${keyId} already exists`);
+    }
+
     const oldMasterKey = this.masterKey;
-    const newDerivedKey = this.deriveMasterKey(newMasterKey);
+    const oldKeyId = this.activeKeyId;
+    const entry = this.addKey(keyId, newMasterKey);
     
-    // Store old key for decryption during transition
     const rotationInfo = {
       timestamp: Date.now(),
+      oldKeyId,
+      newKeyId: keyId,
       oldKeyHash: crypto.createHash('sha256').update(oldMasterKey).digest('hex'),
-      newKeyHash: crypto.createHash('sha256').update(newDerivedKey).digest('hex')
+      newKeyHash: crypto.createHash('sha256').update(entry.masterKey).digest('hex')
     };
     
-    // Update master key
-    this.masterKey = newDerivedKey;
-    
-    // Regenerate field keys
-    await this.initializeFieldKeys();
+    this.useKey(keyId);
     
     return rotationInfo;
   }
 
+  /**
+   * Drop a retired key once nothing is encrypted with it any more
+   * @param {number} keyId - Key ID
+   * @returns {boolean} True if the key was removed
+   */
+  retireKey(keyId) {
+    if (keyId === this.activeKeyId) {
+      throw new Error('The active encryption key cannot be retired');
+    }
+    return this.keyring.delete(keyId);
+  }
+
   /**
    * Check if data is encrypted
    * @param {any} data - Data to check
    * @returns {boolean} Whether data is encrypted
    */
   isEncrypted(data) {
-    return typeof data === 'string' && data.startsWith('enc:');
+    return typeof data === 'string' && data.startsWith(ENCRYPTED_PREFIX);
   }
 
   /**
@@ -453,16 +696,32 @@ class EncryptionService {
     }
 
     try {
-      const payloadBase64 = encryptedData.substring(4);
-      const payloadJson = Buffer.from(payloadBase64, 'base64').toString('utf8');
-      const payload = JSON.parse(payloadJson);
-      
+      if (this.isLegacyEnvelope(encryptedData)) {
+        const payloadJson = Buffer.from(encryptedData.substring(ENCRYPTED_PREFIX.length), 'base64').toString('utf8');
+        const payload = JSON.parse(payloadJson);
+
+        return {
+          format: 'legacy',
+          algorithm: payload.algorithm,
+          fieldType: payload.fieldType,
+          timestamp: payload.timestamp,
+          hasTag: !!payload.tag,
+          hasIv: !!payload.iv
+        };
+      }
+
+      const envelope = Buffer.from(encryptedData.substring(ENCRYPTED_PREFIX.length), 'base64url');
+      if (envelope.length < ENVELOPE_HEADER_LENGTH) {
+        return null;
+      }
+
       return {
-        algorithm: payload.algorithm,
-        fieldType: payload.fieldType,
-        timestamp: payload.timestamp,
-        hasTag: !!payload.tag,
-        hasIv: !!payload.iv
+        format: 'binary',
+        version: envelope[0] & ~ENVELOPE_JSON_FLAG,
+        keyId: envelope[1],
+        algorithm: this.algorithm,
+        hasTag: true,
+        hasIv: true
       };
     } catch (error) {
       return null;
@@ -500,6 +759,8 @@ class EncryptionService {
       issues,
       warnings,
       keyCount: this.fieldKeys.size,
+      activeKeyId: this.activeKeyId,
+      keyIds: [...this.keyring.keys()],
       algorithm: this.algorithm
     };
   }
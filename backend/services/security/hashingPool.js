@@ -0,0 +1,297 @@
+/**
+ * Hashing Pool
+ * Runs bcrypt hashing and comparison on a fixed set of worker threads so a
+ * burst of logins cannot stall the event loop. Work beyond the pool size
+ * waits in a bounded queue; once that is full new work is refused with a
+ * HASH_POOL_SATURATED error, which routes turn into a 429.
+ */
+
+const os = require('os');
+const path = require('path');
+const bcrypt = require('bcryptjs');
+const { sanitizeForLogging } = require('./utils/securityHelpers');
+
+const WORKER_PATH = path.join(__dirname, 'bcryptWorker.js');
+const HASH_POOL_SATURATED = 'HASH_POOL_SATURATED';
+// Latency samples kept for percentiles
+const LATENCY_SAMPLES = 1024;
+
+let Worker = null;
+try {
+  ({ Worker } = require('worker_threads'));
+} catch (error) {
+  // Runtimes without worker_threads hash inline
+}
+
+/**
+ * Fixed-size ring of recent latency samples
+ */
+class LatencyWindow {
+  constructor(size = LATENCY_SAMPLES) {
+    this.samples = new Array(size);
+    this.size = size;
+    this.count = 0;
+  }
+
+  /**
+   * @param {number} ms - Sample in milliseconds
+   */
+  record(ms) {
+    this.samples[this.count % this.size] = ms;
+    this.count++;
+  }
+
+  /**
+   * @returns {Object} p50/p95/p99 in milliseconds
+   */
+  summary() {
+    const values = this.samples.slice(0, Math.min(this.count, this.size)).sort((a, b) => a - b);
+    const at = (p) => values.length === 0
+      ? 0
+      : Math.round(values[Math.min(values.length - 1, Math.floor(p * values.length))] * 10) / 10;
+    return { p50: at(0.5), p95: at(0.95), p99: at(0.99) };
+  }
+}
+
+class HashingPool {
+  /**
+   * @param {Object} options - Pool limits
+   * @param {number} options.size - Worker threads
+   * @param {number} options.maxQueue - Jobs allowed to wait for a worker
+   * @param {boolean} options.enabled - False to hash on the calling thread
+   */
+  constructor(options = {}) {
+    const cpus = typeof os.availableParallelism === 'function' ? os.availableParallelism() : os.cpus().length;
+    this.size = options.size || parseInt(process.env.BCRYPT_POOL_SIZE, 10) || Math.max(1, cpus - 1);
+    this.maxQueue = options.maxQueue !== undefined
+      ? options.maxQueue
+      : parseInt(process.env.BCRYPT_POOL_MAX_QUEUE, 10) || 64;
+    this.enabled = options.enabled !== undefined
+      ? options.enabled
+      : process.env.BCRYPT_POOL_ENABLED !== 'false' && Worker !== null;
+
+    // { worker, job } per live thread
+    this.slots = [];
+    this.idle = [];
+    this.queue = [];
+    this.nextId = 1;
+
+    this.stats = { completed: 0, failed: 0, rejected: 0, workerRestarts: 0 };
+    this.waitLatency = new LatencyWindow();
+    this.runLatency = new LatencyWindow();
+  }
+
+  /**
+   * Hash a password
+   * @param {string} password - Plain text password
+   * @param {number} rounds - bcrypt cost
+   * @returns {Promise<string>} bcrypt hash
+   */
+  hash(password, rounds) {
+    return this.run({ op: 'hash', password, rounds });
+  }
+
+  /**
+   * Compare a password with a hash
+   * @param {string} password - Plain text password
+   * @param {string} hash - bcrypt hash
+   * @returns {Promise<boolean>} True if they match
+   */
+  compare(password, hash) {
+    return this.run({ op: 'compare', password, hash });
+  }
+
+  /**
+   * Run a job on a worker, queueing it if all workers are busy
+   * @param {Object} job - { op, password, hash, rounds }
+   * @returns {Promise<*>} Job result
+   */
+  run(job) {
+    if (!this.enabled) {
+      return this.runInline(job);
+    }
+
+    return new Promise((resolve, reject) => {
+      const task = { ...job, id: this.nextId++, resolve, reject, queuedAt: process.hrtime.bigint() };
+      const slot = this.acquire();
+
+      if (slot) {
+        this.dispatch(slot, task);
+      } else if (this.queue.length < this.maxQueue) {
+        this.queue.push(task);
+      } else {
+        this.stats.rejected++;
+        const error = new Error('Password hashing capacity exceeded');
+        error.code = HASH_POOL_SATURATED;
+        error.status = 429;
+        reject(error);
+      }
+    });
+  }
+
+  /**
+   * Hash on the calling thread (pool disabled or unavailable)
+   * @param {Object} job - { op, password, hash, rounds }
+   * @returns {Promise<*>} Job result
+   */
+  async runInline(job) {
+    const startedAt = process.hrtime.bigint();
+    try {
+      return job.op === 'hash'
+        ? await bcrypt.hash(job.password, job.rounds)
+        : await bcrypt.compare(job.password, job.hash);
+    } finally {
+      this.stats.completed++;
+      this.runLatency.record(Number(process.hrtime.bigint() - startedAt) / 1e6);
+    }
+  }
+
+  /**
+   * Take an idle worker, starting one if the pool is not yet full
+   * @returns {Object|null} Worker slot
+   */
+  acquire() {
+    if (this.idle.length > 0) {
+      return this.idle.pop();
+    }
+    if (this.slots.length < this.size) {
+      return this.spawn();
+    }
+    return null;
+  }
+
+  /**
+   * Start a worker thread
+   * @returns {Object} Worker slot
+   */
+  spawn() {
+    const slot = { worker: new Worker(WORKER_PATH), job: null };
+
+    slot.worker.on('message', (message) => this.complete(slot, message));
+    slot.worker.on('error', (error) => {
+      console.error('HashingPool: Worker failed:', sanitizeForLogging({ error: error.message }));
+    });
+    slot.worker.on('exit', () => this.retire(slot));
+
+    this.slots.push(slot);
+    return slot;
+  }
+
+  /**
+   * Hand a job to a worker
+   * @param {Object} slot - Worker slot
+   * @param {Object} task - Queued job
+   */
+  dispatch(slot, task) {
+    task.startedAt = process.hrtime.bigint();
+    this.waitLatency.record(Number(task.startedAt - task.queuedAt) / 1e6);
+
+    slot.job = task;
+    // Busy workers keep the process alive; idle ones do not
+    slot.worker.ref();
+    slot.worker.postMessage({
+      id: task.id,
+      op: task.op,
+      password: task.password,
+      hash: task.hash,
+      rounds: task.rounds
+    });
+  }
+
+  /**
+   * Settle a finished job and give the worker the next one
+   * @param {Object} slot - Worker slot
+   * @param {Object} message - { id, result, error }
+   */
+  complete(slot, message) {
+    const task = slot.job;
+    slot.job = null;
+
+    if (task && task.id === message.id) {
+      this.runLatency.record(Number(process.hrtime.bigint() - task.startedAt) / 1e6);
+      if (message.error) {
+        this.stats.failed++;
+        task.reject(new Error(message.error));
+      } else {
+        this.stats.completed++;
+        task.resolve(message.result);
+      }
+    }
+
+    this.release(slot);
+  }
+
+  /**
+   * Return a worker to the pool, or give it the next queued job
+   * @param {Object} slot - Worker slot
+   */
+  release(slot) {
+    const next = this.queue.shift();
+    if (next) {
+      this.dispatch(slot, next);
+      return;
+    }
+    slot.worker.unref();
+    this.idle.push(slot);
+  }
+
+  /**
+   * Forget a worker that exited, failing its job and replacing it if work is waiting
+   * @param {Object} slot - Worker slot
+   */
+  retire(slot) {
+    // Already removed by close()
+    if (!this.slots.includes(slot)) return;
+
+    this.slots = this.slots.filter(candidate => candidate !== slot);
+    this.idle = this.idle.filter(candidate => candidate !== slot);
+
+    if (slot.job) {
+      this.stats.failed++;
+      slot.job.reject(new Error('Password hashing worker exited'));
+      slot.job = null;
+    }
+
+    this.stats.workerRestarts++;
+    if (this.queue.length > 0) {
+      this.dispatch(this.spawn(), this.queue.shift());
+    }
+  }
+
+  /**
+   * Get pool metrics
+   * @returns {Object} Queue depth, utilisation and latency percentiles
+   */
+  getMetrics() {
+    return {
+      enabled: this.enabled,
+      size: this.size,
+      workers: this.slots.length,
+      busy: this.slots.filter(slot => slot.job).length,
+      queueDepth: this.queue.length,
+      maxQueue: this.maxQueue,
+      ...this.stats,
+      waitMs: this.waitLatency.summary(),
+      runMs: this.runLatency.summary()
+    };
+  }
+
+  /**
+   * Stop every worker; pending jobs are rejected
+   */
+  async close() {
+    const slots = this.slots;
+    this.slots = [];
+    this.idle = [];
+
+    const pending = [...this.queue.splice(0), ...slots.map(slot => slot.job).filter(Boolean)];
+    for (const task of pending) {
+      task.reject(new Error('Password hashing pool closed'));
+    }
+    await Promise.all(slots.map(slot => slot.worker.terminate()));
+  }
+}
+
+module.exports = new HashingPool();
+module.exports.HashingPool = HashingPool;
+module.exports.HASH_POOL_SATURATED = HASH_POOL_SATURATED;
@@ -7,7 +7,8 @@ const {
   SECURITY_EVENTS, 
   SEVERITY_LEVELS, 
   ERROR_CODES,
-  TIMEOUTS 
+  TIMEOUTS,
+  REDIS_PREFIXES
 } = require('./utils/constants');
 const { 
   formatSecurityEvent, 
@@ -256,22 +257,19 @@ class IncidentResponseService {
       const windowStart = Date.now() - threshold.timeWindowMs;
       
       // Count data access events in the time window
-      const userEventKey = `user_events:${securityEvent.userId}`;
-      const recentEvents = await redisService.getSet(userEventKey);
+      const userEventKey = `${REDIS_PREFIXES.USER_TIMELINE}${securityEvent.userId}`;
+      const eventIds = await redisService.getTimelineRange(userEventKey, windowStart, Date.now());
+      const recentEvents = await redisService.getSecurityEvents(eventIds);
       
       let dataAccessCount = 0;
       const accessedRecords = new Set();
       
-      for (const eventId of recentEvents) {
-        const eventData = await redisService.get(`security_event:${eventId}`);
-        if (eventData) {
-          const event = JSON.parse(eventData);
-          if (event.eventType === SECURITY_EVENTS.DATA_ACCESS && 
-              new Date(event.timestamp).getTime() > windowStart) {
-            dataAccessCount++;
-            if (event.details.recordId) {
-              accessedRecords.add(event.details.recordId);
-            }
+      for (const event of recentEvents) {
+        if (event.eventType === SECURITY_EVENTS.DATA_ACCESS && 
+            new Date(event.timestamp).getTime() > windowStart) {
+          dataAccessCount++;
+          if (event.details.recordId) {
+            accessedRecords.add(event.details.recordId);
           }
         }
       }
@@ -317,22 +315,19 @@ class IncidentResponseService {
       const windowStart = Date.now() - threshold.timeWindowMs;
       
       // Count failed login attempts from this IP
-      const ipEventKey = `ip_events:${securityEvent.deviceInfo.ip}`;
-      const recentEvents = await redisService.getSet(ipEventKey);
+      const ipEventKey = `${REDIS_PREFIXES.IP_TIMELINE}${securityEvent.deviceInfo.ip}`;
+      const eventIds = await redisService.getTimelineRange(ipEventKey, windowStart, Date.now());
+      const recentEvents = await redisService.getSecurityEvents(eventIds);
       
       let failedLoginCount = 0;
       const targetedAccounts = new Set();
       
-      for (const eventId of recentEvents) {
-        const eventData = await redisService.get(`security_event:${eventId}`);
-        if (eventData) {
-          const event = JSON.parse(eventData);
-          if (event.eventType === SECURITY_EVENTS.LOGIN_FAILURE && 
-              new Date(event.timestamp).getTime() > windowStart) {
-            failedLoginCount++;
-            if (event.details.email) {
-              targetedAccounts.add(event.details.email);
-            }
+      for (const event of recentEvents) {
+        if (event.eventType === SECURITY_EVENTS.LOGIN_FAILURE && 
+            new Date(event.timestamp).getTime() > windowStart) {
+          failedLoginCount++;
+          if (event.details.email) {
+            targetedAccounts.add(event.details.email);
           }
         }
       }
@@ -378,22 +373,19 @@ class IncidentResponseService {
       const windowStart = Date.now() - threshold.timeWindowMs;
       
       // Count privilege escalation attempts from this user
-      const userEventKey = `user_events:${securityEvent.userId}`;
-      const recentEvents = await redisService.getSet(userEventKey);
+      const userEventKey = `${REDIS_PREFIXES.USER_TIMELINE}${securityEvent.userId}`;
+      const eventIds = await redisService.getTimelineRange(userEventKey, windowStart, Date.now());
+      const recentEvents = await redisService.getSecurityEvents(eventIds);
       
       let escalationCount = 0;
       const attemptedPrivileges = new Set();
       
-      for (const eventId of recentEvents) {
-        const eventData = await redisService.get(`security_event:${eventId}`);
-        if (eventData) {
-          const event = JSON.parse(eventData);
-          if (event.eventType === SECURITY_EVENTS.PRIVILEGE_ESCALATION && 
-              new Date(event.timestamp).getTime() > windowStart) {
-            escalationCount++;
-            if (event.details.targetPrivilege) {
-              attemptedPrivileges.add(event.details.targetPrivilege);
-            }
+      for (const event of recentEvents) {
+        if (event.eventType === SECURITY_EVENTS.PRIVILEGE_ESCALATION && 
+            new Date(event.timestamp).getTime() > windowStart) {
+          escalationCount++;
+          if (event.details.targetPrivilege) {
+            attemptedPrivileges.add(event.details.targetPrivilege);
           }
         }
       }
@@ -0,0 +1,245 @@
+/**
+ * Local Rate Limit Store
+ * Bounded in-process fallback for rate-limit counters and IP blocks, used
+ * while Redis is unavailable and replayed to Redis once it reconnects
+ */
+
+// Roughly 200 bytes per counter entry, so the defaults cap out near 10MB
+const DEFAULT_SHARDS = 16;
+const DEFAULT_MAX_ENTRIES = 50000;
+const DEFAULT_MAX_BLOCKS = 10000;
+
+/**
+ * FNV-1a string hash for shard selection
+ * @param {string} value - Key to hash
+ * @returns {number} Unsigned 32-bit hash
+ */
+function hashKey(value) {
+  let hash = 0x811c9dc5;
+  for (let i = 0; i < value.length; i++) {
+    hash ^= value.charCodeAt(i);
+    hash = Math.imul(hash, 0x01000193);
+  }
+  return hash >>> 0;
+}
+
+class LocalRateLimitStore {
+  /**
+   * @param {Object} options - Store limits
+   * @param {number} options.shards - Number of independent LRU shards
+   * @param {number} options.maxEntries - Counter entries kept across all shards
+   * @param {number} options.maxBlocks - IP blocks kept
+   */
+  constructor(options = {}) {
+    const shardCount = options.shards || DEFAULT_SHARDS;
+    this.maxEntries = options.maxEntries || DEFAULT_MAX_ENTRIES;
+    this.maxEntriesPerShard = Math.max(1, Math.ceil(this.maxEntries / shardCount));
+    this.maxBlocks = options.maxBlocks || DEFAULT_MAX_BLOCKS;
+
+    this.shards = Array.from({ length: shardCount }, () => new Map());
+    this.blocks = new Map();
+    this.evictions = 0;
+  }
+
+  /**
+   * Get the shard holding a key
+   * @param {string} key - Counter key
+   * @returns {Map} Shard
+   */
+  shardFor(key) {
+    return this.shards[hashKey(key) % this.shards.length];
+  }
+
+  /**
+   * Record a request against a sliding-window counter
+   * Uses the same two-window weighting as the Redis counter script.
+   * @param {string} key - Counter key
+   * @param {Object} meta - limitType, identifier, windowMs, maxRequests
+   * @param {number} now - Current time
+   * @returns {Object} { allowed, count }
+   */
+  hit(key, meta, now = Date.now()) {
+    const shard = this.shardFor(key);
+    let entry = shard.get(key);
+
+    if (entry) {
+      // Re-insert so Map order tracks recency
+      shard.delete(key);
+    } else {
+      entry = {
+        limitType: meta.limitType,
+        identifier: meta.identifier,
+        windowMs: meta.windowMs,
+        maxRequests: meta.maxRequests,
+        window: Math.floor(now / meta.windowMs),
+        current: 0,
+        previous: 0,
+        unsynced: 0
+      };
+    }
+    shard.set(key, entry);
+    this.evict(shard);
+
+    this.roll(entry, now);
+    const estimated = this.estimate(entry, now);
+
+    if (estimated >= meta.maxRequests) {
+      return { allowed: false, count: estimated };
+    }
+
+    entry.current++;
+    entry.unsynced++;
+    return { allowed: true, count: estimated + 1 };
+  }
+
+  /**
+   * Current estimated count for a key
+   * @param {string} key - Counter key
+   * @param {number} now - Current time
+   * @returns {number} Estimated requests in the rolling window
+   */
+  count(key, now = Date.now()) {
+    const entry = this.shardFor(key).get(key);
+    if (!entry) return 0;
+    this.roll(entry, now);
+    return this.estimate(entry, now);
+  }
+
+  /**
+   * Advance an entry to the window containing `now`
+   * @param {Object} entry - Counter entry
+   * @param {number} now - Current time
+   */
+  roll(entry, now) {
+    const window = Math.floor(now / entry.windowMs);
+    if (window === entry.window) return;
+
+    entry.previous = window === entry.window + 1 ? entry.current : 0;
+    entry.current = 0;
+    entry.unsynced = 0;
+    entry.window = window;
+  }
+
+  /**
+   * Weighted rolling count for an entry
+   * @param {Object} entry - Counter entry
+   * @param {number} now - Current time
+   * @returns {number} Estimated count
+   */
+  estimate(entry, now) {
+    const previousWeight = 1 - (now % entry.windowMs) / entry.windowMs;
+    return Math.floor(entry.previous * previousWeight) + entry.current;
+  }
+
+  /**
+   * Drop least recently used entries beyond the shard ceiling
+   * @param {Map} shard - Shard to trim
+   */
+  evict(shard) {
+    while (shard.size > this.maxEntriesPerShard) {
+      shard.delete(shard.keys().next().value);
+      this.evictions++;
+    }
+  }
+
+  /**
+   * Forget a counter
+   * @param {string} key - Counter key
+   */
+  delete(key) {
+    this.shardFor(key).delete(key);
+  }
+
+  /**
+   * Cache an IP block
+   * @param {string} ip - Blocked IP
+   * @param {Object} blockData - Block record as stored in Redis
+   * @param {boolean} pending - True if Redis has not seen this block yet
+   */
+  setBlock(ip, blockData, pending = false) {
+    this.blocks.delete(ip);
+    this.blocks.set(ip, { data: blockData, pending });
+
+    while (this.blocks.size > this.maxBlocks) {
+      this.blocks.delete(this.blocks.keys().next().value);
+      this.evictions++;
+    }
+  }
+
+  /**
+   * Get a cached IP block if it has not expired
+   * @param {string} ip - IP address
+   * @param {number} now - Current time
+   * @returns {Object|null} Block record
+   */
+  getBlock(ip, now = Date.now()) {
+    const block = this.blocks.get(ip);
+    if (!block) return null;
+
+    if (block.data.expiresAt <= now) {
+      this.blocks.delete(ip);
+      return null;
+    }
+    return block.data;
+  }
+
+  /**
+   * Check whether a cached block still needs writing to Redis
+   * @param {string} ip - IP address
+   * @returns {boolean} True if pending
+   */
+  isBlockPending(ip) {
+    return !!this.blocks.get(ip)?.pending;
+  }
+
+  /**
+   * Forget a cached IP block
+   * @param {string} ip - IP address
+   */
+  deleteBlock(ip) {
+    this.blocks.delete(ip);
+  }
+
+  /**
+   * Collect state Redis has not seen and mark it synced
+   * @param {number} now - Current time
+   * @returns {Object} { counters, blocks } to replay
+   */
+  takeUnsynced(now = Date.now()) {
+    const counters = [];
+    for (const shard of this.shards) {
+      for (const entry of shard.values()) {
+        this.roll(entry, now);
+        if (entry.unsynced > 0) {
+          counters.push({ ...entry });
+          entry.unsynced = 0;
+        }
+      }
+    }
+
+    const blocks = [];
+    for (const block of this.blocks.values()) {
+      if (block.pending && block.data.expiresAt > now) {
+        blocks.push(block.data);
+      }
+      block.pending = false;
+    }
+
+    return { counters, blocks };
+  }
+
+  /**
+   * Get store statistics
+   * @returns {Object} Store statistics
+   */
+  getStats() {
+    return {
+      entries: this.shards.reduce((total, shard) => total + shard.size, 0),
+      maxEntries: this.maxEntries,
+      blocks: this.blocks.size,
+      evictions: this.evictions
+    };
+  }
+}
+
+module.exports = LocalRateLimitStore;
@@ -0,0 +1,226 @@
+/**
+ * Password Cost Service
+ * Chooses the bcrypt cost for this host and keeps stored hashes at it.
+ * At startup the hashing pool is benchmarked to find the highest cost whose
+ * verify time stays within a latency target, never going below the cost
+ * hashes were created at before tuning. After a successful login, a hash
+ * below the target cost is rehashed in the background with the password the
+ * user just proved, so the login response never waits on it. Hashes are only
+ * ever strengthened; one above the target is kept as it is.
+ */
+
+const hashingPool = require('./hashingPool');
+const PasswordHashingService = require('./passwordHashingService');
+const { sanitizeForLogging } = require('./utils/securityHelpers');
+
+const BENCHMARK_PASSWORD = 'cost-benchmark-password';
+const BENCHMARK_SAMPLES = 3;
+
+class PasswordCostService {
+  constructor() {
+    this.hashing = new PasswordHashingService();
+    // Operators can pin the cost; autotuning then only reports
+    this.pinnedRounds = process.env.BCRYPT_ROUNDS ? parseInt(process.env.BCRYPT_ROUNDS, 10) : null;
+    this.targetVerifyMs = parseInt(process.env.PASSWORD_TARGET_VERIFY_MS, 10) || 250;
+    // Policy floor, and the cost used until the benchmark has run; never
+    // tune below it however slow the host is. Defaults to the hashing
+    // service's configured cost, which hashes were created at before tuning.
+    this.minRounds = parseInt(process.env.PASSWORD_MIN_ROUNDS, 10) || this.hashing.getConfig().saltRounds;
+    this.maxRounds = this.hashing.getConfig().maxSaltRounds;
+
+    this.tunedRounds = null;
+    this.benchmark = null;
+    this.tuning = null;
+    this.pendingRehashes = new Set();
+    this.stats = { rehashed: 0, skipped: 0, failed: 0 };
+  }
+
+  /**
+   * Cost new hashes should use
+   * @returns {number} bcrypt rounds
+   */
+  getTargetRounds() {
+    return this.pinnedRounds || this.tunedRounds || this.minRounds;
+  }
+
+  /**
+   * Lowest stored cost that does not need a rehash
+   * There is no upper bound: a stronger hash is never rewritten weaker.
+   * @returns {Object} { min }
+   */
+  getPolicy() {
+    return { min: this.getTargetRounds() };
+  }
+
+  /**
+   * Whether a stored hash is below the cost policy
+   * @param {string} hash - Stored bcrypt hash
+   * @returns {boolean} True if it should be rehashed
+   */
+  needsRehash(hash) {
+    return this.hashing.needsRehash(hash, this.getPolicy().min);
+  }
+
+  /**
+   * Time one bcrypt verify at a cost on the hashing pool
+   * @param {number} rounds - bcrypt rounds
+   * @returns {Promise<number>} Median verify time in milliseconds
+   */
+  async measureVerify(rounds) {
+    const hash = await hashingPool.hash(BENCHMARK_PASSWORD, rounds);
+    const times = [];
+
+    for (let i = 0; i < BENCHMARK_SAMPLES; i++) {
+      const startTime = process.hrtime.bigint();
+      await hashingPool.compare(BENCHMARK_PASSWORD, hash);
+      times.push(Number(process.hrtime.bigint() - startTime) / 1e6);
+    }
+
+    return times.sort((a, b) => a - b)[Math.floor(times.length / 2)];
+  }
+
+  /**
+   * Benchmark the host and pick the highest cost within the verify target
+   * Each extra round doubles the work, so the search stops at the first
+   * cost over target.
+   * @param {Function} measure - Verify timer, (rounds) => milliseconds
+   * @returns {Promise<Object>} Chosen rounds and the timings measured
+   */
+  autotune(measure = (rounds) => this.measureVerify(rounds)) {
+    if (this.tuning) {
+      return this.tuning;
+    }
+
+    this.tuning = (async () => {
+      const timings = [];
+      let chosen = this.minRounds;
+
+      for (let rounds = this.minRounds; rounds <= this.maxRounds; rounds++) {
+        const verifyMs = await measure(rounds);
+        timings.push({ rounds, verifyMs: Math.round(verifyMs) });
+        if (verifyMs > this.targetVerifyMs) break;
+        chosen = rounds;
+      }
+
+      this.tunedRounds = chosen;
+      this.benchmark = { chosenRounds: chosen, targetVerifyMs: this.targetVerifyMs, timings, measuredAt: new Date() };
+      console.log(`Password hashing cost tuned to ${chosen} rounds` +
+        (this.pinnedRounds ? ` (pinned to ${this.pinnedRounds} by BCRYPT_ROUNDS)` : ''));
+      return this.benchmark;
+    })().catch((error) => {
+      console.error('PasswordCost: Failed to benchmark hashing:', sanitizeForLogging({ error: error.message }));
+      return null;
+    }).finally(() => {
+      this.tuning = null;
+    });
+
+    return this.tuning;
+  }
+
+  /**
+   * Rehash a user's password in the background if its cost is below policy
+   * Returns immediately. The write only lands if the stored hash is still the
+   * one that was verified, so a concurrent password change always wins.
+   * Skipped while hashing capacity is needed for logins.
+   * @param {Object} user - User document whose password was just verified
+   * @param {string} password - The verified plain text password
+   * @returns {boolean} True if a rehash was queued
+   */
+  scheduleRehash(user, password) {
+    const currentHash = user && user.password;
+    if (!currentHash || !password) return false;
+
+    // Until the host is benchmarked the target is only a default
+    if (!this.pinnedRounds && this.tunedRounds === null) return false;
+    if (!this.needsRehash(currentHash)) return false;
+
+    const userId = user._id.toString();
+    if (this.pendingRehashes.has(userId)) return false;
+
+    const { queueDepth, maxQueue } = hashingPool.getMetrics();
+    if (queueDepth > maxQueue / 2) {
+      this.stats.skipped++;
+      return false;
+    }
+
+    this.pendingRehashes.add(userId);
+    setImmediate(() => {
+      this.rehash(user._id, currentHash, password)
+        .catch((error) => {
+          this.stats.failed++;
+          console.error('PasswordCost: Failed to rehash password:', sanitizeForLogging({
+            userId,
+            error: error.message
+          }));
+        })
+        .finally(() => this.pendingRehashes.delete(userId));
+    });
+    return true;
+  }
+
+  /**
+   * Replace a stored hash with one at the target cost
+   * The target is checked again here, so a hash is never replaced by a
+   * weaker one even if the target changed after the rehash was queued.
+   * @param {string} userId - User ID
+   * @param {string} currentHash - Hash the password was verified against
+   * @param {string} password - Plain text password
+   * @returns {Promise<boolean>} True if the stored hash was replaced
+   */
+  async rehash(userId, currentHash, password) {
+    const User = require('../../models/User');
+    if (!this.needsRehash(currentHash)) {
+      return false;
+    }
+    const newHash = await hashingPool.hash(password, this.getTargetRounds());
+
+    // updateOne skips the save hook, which would hash the hash again
+    const result = await User.updateOne(
+      { _id: userId, password: currentHash },
+      { $set: { password: newHash } }
+    );
+
+    if (result.modifiedCount > 0) {
+      this.stats.rehashed++;
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Count stored password hashes by cost
+   * @returns {Promise<Object>} Distribution and how much of it is below policy
+   */
+  async getCostDistribution() {
+    const User = require('../../models/User');
+    const { min } = this.getPolicy();
+
+    // bcrypt hashes look like $2b$12$...; the cost is characters 4-5
+    const buckets = await User.aggregate([
+      { $match: { password: { $type: 'string' } } },
+      { $group: { _id: { $substrBytes: ['$password', 4, 2] }, count: { $sum: 1 } } }
+    ]);
+
+    const distribution = buckets
+      .map(bucket => ({ rounds: parseInt(bucket._id, 10), count: bucket.count }))
+      .filter(bucket => !isNaN(bucket.rounds))
+      .sort((a, b) => a.rounds - b.rounds);
+    const total = distribution.reduce((sum, bucket) => sum + bucket.count, 0);
+    const outsidePolicy = distribution
+      .filter(bucket => bucket.rounds < min)
+      .reduce((sum, bucket) => sum + bucket.count, 0);
+
+    return {
+      targetRounds: this.getTargetRounds(),
+      policy: { min },
+      pinned: this.pinnedRounds !== null,
+      benchmark: this.benchmark,
+      total,
+      outsidePolicy,
+      distribution,
+      rehash: { ...this.stats, pending: this.pendingRehashes.size }
+    };
+  }
+}
+
+module.exports = new PasswordCostService();
@@ -1,5 +1,5 @@
-const bcrypt = require('bcryptjs');
 const crypto = require('crypto');
+const hashingPool = require('./hashingPool');
 
 class PasswordHashingService {
   constructor() {
@@ -64,9 +64,10 @@ class PasswordHashingService {
         throw new Error(`Salt rounds must be between 10 and ${this.config.maxSaltRounds}`);
       }
 
-      // Generate salt and hash
-      const salt = await bcrypt.genSalt(saltRounds);
-      const hash = await bcrypt.hash(password, salt);
+      // Generate salt and hash on the worker pool
+      const hash = await hashingPool.hash(password, saltRounds);
+      // bcrypt embeds the salt in the first 29 characters of the hash
+      const salt = hash.slice(0, 29);
 
       // Ensure consistent timing
       await this.ensureMinimumTiming(startTime);
@@ -109,8 +110,8 @@ class PasswordHashingService {
         return false;
       }
 
-      // Perform bcrypt comparison
-      const isMatch = await bcrypt.compare(password, hash);
+      // Perform bcrypt comparison on the worker pool
+      const isMatch = await hashingPool.compare(password, hash);
 
       // Ensure consistent timing regardless of result
       await this.ensureMinimumTiming(startTime);
@@ -120,6 +121,11 @@ class PasswordHashingService {
     } catch (error) {
       // Ensure consistent timing even on error
       await this.ensureMinimumTiming(startTime);
+
+      // Overload is not a mismatch; let the caller answer 429
+      if (error.code === hashingPool.HASH_POOL_SATURATED) {
+        throw error;
+      }
       
       // Log error but don't expose details
       console.error('Password verification error:', error.message);
@@ -1,5 +1,5 @@
-const bcrypt = require('bcryptjs');
 const crypto = require('crypto');
+const hashingPool = require('./hashingPool');
 
 class PasswordPolicyService {
   constructor() {
@@ -236,7 +236,7 @@ class PasswordPolicyService {
     }
 
     for (const historyEntry of passwordHistory) {
-      const isMatch = await bcrypt.compare(newPassword, historyEntry.hash);
+      const isMatch = await hashingPool.compare(newPassword, historyEntry.hash);
       if (isMatch) {
         return true;
       }
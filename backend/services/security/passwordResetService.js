@@ -1,6 +1,7 @@
 const crypto = require('crypto');
-const bcrypt = require('bcryptjs');
 const PasswordPolicyService = require('./passwordPolicyService');
+const hashingPool = require('./hashingPool');
+const passwordCostService = require('./passwordCostService');
 
 class PasswordResetService {
   constructor() {
@@ -270,8 +271,7 @@ class PasswordResetService {
       }
 
       // Hash new password
-      const saltRounds = process.env.BCRYPT_ROUNDS ? parseInt(process.env.BCRYPT_ROUNDS) : 14;
-      const hashedPassword = await bcrypt.hash(newPassword, saltRounds);
+      const hashedPassword = await hashingPool.hash(newPassword, passwordCostService.getTargetRounds());
 
       // Add current password to history before changing
       if (user.password) {
@@ -384,7 +384,7 @@ class PasswordResetService {
       }
 
       // Check if new password is same as current
-      const isSamePassword = await bcrypt.compare(newPassword, user.password);
+      const isSamePassword = await hashingPool.compare(newPassword, user.password);
       if (isSamePassword) {
         return {
           valid: false,
@@ -0,0 +1,129 @@
+/**
+ * Principal Cache Service
+ * Short-lived, bounded cache of the user fields the auth middleware needs,
+ * so authenticated requests do not load the full User document every time
+ */
+
+// Only what auth, RBAC and privilege logging read from req.user
+const PRINCIPAL_FIELDS = '_id name email role isActive libraryId tokenVersion';
+
+class PrincipalCacheService {
+  constructor() {
+    this.entries = new Map();
+    this.pending = new Map();
+    // Bumped on invalidation so in-flight loads do not cache stale data
+    this.invalidationCount = 0;
+    this.invalidatedAt = new Map();
+    this.maxEntries = parseInt(process.env.PRINCIPAL_CACHE_MAX_ENTRIES, 10) || 10000;
+    this.ttlMs = parseInt(process.env.PRINCIPAL_CACHE_TTL_MS, 10) || 15000;
+    this.resetStats();
+  }
+
+  resetStats() {
+    this.stats = { hits: 0, misses: 0, evictions: 0, invalidations: 0 };
+  }
+
+  /**
+   * Get the cached principal for a user, loading it on a miss.
+   * Concurrent misses for the same user share a single query.
+   * @param {string} userId - User ID
+   * @returns {Object|null} Frozen principal or null if the user does not exist
+   */
+  async getPrincipal(userId) {
+    const key = userId.toString();
+    const entry = this.entries.get(key);
+
+    if (entry && entry.expiresAt > Date.now()) {
+      // Re-insert to keep Map order as least-recently-used first
+      this.entries.delete(key);
+      this.entries.set(key, entry);
+      this.stats.hits++;
+      return entry.principal;
+    }
+
+    this.stats.misses++;
+    if (this.pending.has(key)) {
+      return this.pending.get(key);
+    }
+
+    const load = this.loadPrincipal(key).finally(() => {
+      if (this.pending.get(key) === load) {
+        this.pending.delete(key);
+      }
+    });
+    this.pending.set(key, load);
+    return load;
+  }
+
+  async loadPrincipal(key) {
+    const User = require('../../models/User');
+    const generation = this.generation(key);
+    const user = await User.findById(key).select(PRINCIPAL_FIELDS).lean();
+    if (!user) return null;
+
+    const principal = Object.freeze({ ...user, id: user._id.toString() });
+
+    // Skip caching if the user was invalidated while the query was in flight
+    if (generation === this.generation(key)) {
+      this.set(key, principal);
+    }
+    return principal;
+  }
+
+  set(key, principal) {
+    this.entries.delete(key);
+    if (this.entries.size >= this.maxEntries) {
+      this.entries.delete(this.entries.keys().next().value);
+      this.stats.evictions++;
+    }
+    this.entries.set(key, { principal, expiresAt: Date.now() + this.ttlMs });
+  }
+
+  generation(key) {
+    return `${this.invalidationCount}:${this.invalidatedAt.get(key) || 0}`;
+  }
+
+  /**
+   * Drop a user's principal after role, status or token version changes
+   * @param {string} userId - User ID
+   */
+  invalidate(userId) {
+    if (!userId) return;
+    const key = userId.toString();
+    this.entries.delete(key);
+    this.pending.delete(key);
+    this.invalidatedAt.set(key, (this.invalidatedAt.get(key) || 0) + 1);
+    if (this.invalidatedAt.size > this.maxEntries) {
+      this.invalidatedAt.delete(this.invalidatedAt.keys().next().value);
+    }
+    this.stats.invalidations++;
+  }
+
+  /**
+   * Drop every cached principal (bulk user updates)
+   */
+  invalidateAll() {
+    this.entries.clear();
+    this.pending.clear();
+    this.invalidationCount++;
+    this.stats.invalidations++;
+  }
+
+  /**
+   * Cache metrics for monitoring
+   * @returns {Object} Hit/miss counters, hit ratio and size
+   */
+  getStats() {
+    const lookups = this.stats.hits + this.stats.misses;
+    return {
+      ...this.stats,
+      hitRatio: lookups > 0 ? Math.round((this.stats.hits / lookups) * 1000) / 1000 : 0,
+      size: this.entries.size,
+      maxEntries: this.maxEntries,
+      ttlMs: this.ttlMs
+    };
+  }
+}
+
+// Export singleton instance
+module.exports = new PrincipalCacheService();
@@ -19,6 +19,8 @@ const {
   formatSecurityEvent,
   sanitizeForLogging 
 } = require('./utils/securityHelpers');
+const { SLIDING_WINDOW_RATE_LIMIT } = require('./utils/redisScripts');
+const LocalRateLimitStore = require('./localRateLimitStore');
 
 class RateLimitService {
   constructor() {
@@ -52,6 +54,38 @@ class RateLimitService {
       duration: 60 * 60 * 1000, // 1 hour block
       exponentialBackoff: true
     };
+
+    // 'sliding_log' keeps one sorted-set member per request (exact, 4 commands);
+    // 'sliding_counter' keeps two counters per key (approximate, 1 EVALSHA)
+    this.algorithm = process.env.RATE_LIMIT_ALGORITHM === 'sliding_counter'
+      ? 'sliding_counter'
+      : 'sliding_log';
+
+    // In-process leases for the counter mode: slots already reserved in Redis
+    // that this process hands out without a round trip
+    this.localBucketConfig = {
+      enabled: process.env.RATE_LIMIT_LOCAL_BUCKET === 'true',
+      maxLease: 10, // Most slots reserved per round trip
+      leaseFraction: 0.05, // Lease at most 5% of the limit
+      leaseTtlMs: 1000, // Unused slots are dropped after this long
+      maxEntries: 10000
+    };
+    this.localBuckets = new Map();
+
+    // Counters and IP blocks kept in-process while Redis is unreachable
+    this.localStore = new LocalRateLimitStore();
+    if (typeof redisService.onReconnect === 'function') {
+      redisService.onReconnect(() => this.resyncLocalStore());
+    }
+  }
+
+  /**
+   * Whether Redis is known to be down (errored, ended or never connected)
+   * Checked up front because node-redis queues commands while reconnecting.
+   * @returns {boolean} True if requests should go to the local store
+   */
+  _redisDown() {
+    return redisService.isConnected === false;
   }
 
   /**
@@ -67,16 +101,34 @@ class RateLimitService {
         throw new Error('Rate limit identifier is required');
       }
 
-      const config = this.defaultLimits[limitType] || this.defaultLimits[RATE_LIMIT_KEYS.GENERAL_API];
-      const windowMs = options.windowMs || config.window;
-      const maxRequests = options.maxRequests || config.max;
+      const { windowMs, maxRequests } = this._resolveLimit(limitType, options);
 
       // Apply threat level adjustment if provided
       const adjustedMax = options.threatLevel 
         ? Math.floor(maxRequests * (this.threatMultipliers[options.threatLevel] || 1.0))
         : maxRequests;
 
-      const result = await this._slidingWindowRateLimit(identifier, limitType, windowMs, adjustedMax);
+      const algorithm = options.algorithm || this.algorithm;
+      let result;
+      if (this._redisDown()) {
+        result = this._localRateLimit(identifier, limitType, windowMs, adjustedMax);
+      } else {
+        try {
+          result = algorithm === 'sliding_counter'
+            ? await this._slidingCounterRateLimit(identifier, limitType, windowMs, adjustedMax)
+            : await this._slidingWindowRateLimit(identifier, limitType, windowMs, adjustedMax);
+        } catch (error) {
+          console.warn('Rate Limit Service: Redis unavailable, using local limiter:', sanitizeForLogging({
+            identifier,
+            limitType,
+            error: error.message
+          }));
+          result = {
+            ...this._localRateLimit(identifier, limitType, windowMs, adjustedMax),
+            error: error.message
+          };
+        }
+      }
       
       // Log rate limit events for monitoring
       if (result.blocked) {
@@ -123,8 +175,7 @@ class RateLimitService {
     
     // Use Redis sorted set for sliding window
     if (!redisService.client) {
-      console.warn('Redis client not available, skipping rate limiting');
-      return { allowed: true, resetTime: now + windowMs };
+      throw new Error('Redis client not available');
     }
     const multi = redisService.client.multi();
     
@@ -158,6 +209,227 @@ class RateLimitService {
     };
   }
 
+  /**
+   * Window and limit for a check, from per-call options or the type's defaults
+   * @param {string} limitType - Type of rate limit
+   * @param {Object} options - { windowMs, maxRequests }
+   * @returns {Object} { windowMs, maxRequests }
+   */
+  _resolveLimit(limitType, options = {}) {
+    const config = this.defaultLimits[limitType] || this.defaultLimits[RATE_LIMIT_KEYS.GENERAL_API];
+    return {
+      windowMs: options.windowMs || config.window,
+      maxRequests: options.maxRequests || config.max
+    };
+  }
+
+  /**
+   * Sliding-window counter rate limiting in a single script call
+   * Memory per identifier is two integers regardless of request volume; the
+   * count is weighted from the previous fixed window, so it is approximate
+   * at window edges. Callers well under the limit are served from a local
+   * lease of pre-counted slots.
+   * @param {string} identifier - Rate limit identifier
+   * @param {string} limitType - Type of rate limit
+   * @param {number} windowMs - Time window in milliseconds
+   * @param {number} maxRequests - Maximum requests allowed
+   * @returns {Object} Rate limit result
+   */
+  async _slidingCounterRateLimit(identifier, limitType, windowMs, maxRequests) {
+    const now = Date.now();
+    const bucketKey = `${limitType}:${identifier}:${windowMs}:${maxRequests}`;
+    const resetTime = (Math.floor(now / windowMs) + 1) * windowMs;
+
+    const leased = this._takeLocalSlot(bucketKey, now);
+    if (leased) {
+      return {
+        allowed: true,
+        blocked: false,
+        count: leased.count,
+        remaining: Math.max(0, maxRequests - leased.count),
+        resetTime,
+        windowMs,
+        maxRequests,
+        local: true
+      };
+    }
+
+    const window = Math.floor(now / windowMs);
+    const previousWeight = 1 - (now % windowMs) / windowMs;
+    const lease = this.localBucketConfig.enabled
+      ? Math.max(1, Math.min(
+        this.localBucketConfig.maxLease,
+        Math.floor(maxRequests * this.localBucketConfig.leaseFraction)
+      ))
+      : 1;
+
+    const [allowed, count, granted] = await redisService.runScript(
+      SLIDING_WINDOW_RATE_LIMIT,
+      [
+        this._counterKey(limitType, identifier, window),
+        this._counterKey(limitType, identifier, window - 1)
+      ],
+      [previousWeight, maxRequests, windowMs * 2, lease]
+    );
+
+    if (granted > 1) {
+      this._storeLocalLease(bucketKey, granted - 1, count, now);
+    }
+
+    const blocked = allowed !== 1;
+
+    return {
+      allowed: !blocked,
+      blocked,
+      count,
+      remaining: Math.max(0, maxRequests - count),
+      resetTime,
+      windowMs,
+      maxRequests
+    };
+  }
+
+  /**
+   * Rate limit from the in-process store while Redis is unavailable
+   * Limits are per process during an outage; counts are replayed to Redis
+   * by resyncLocalStore once the connection returns.
+   * @param {string} identifier - Rate limit identifier
+   * @param {string} limitType - Type of rate limit
+   * @param {number} windowMs - Time window in milliseconds
+   * @param {number} maxRequests - Maximum requests allowed
+   * @returns {Object} Rate limit result
+   */
+  _localRateLimit(identifier, limitType, windowMs, maxRequests) {
+    const now = Date.now();
+    const { allowed, count } = this.localStore.hit(
+      `${limitType}:${identifier}:${windowMs}`,
+      { limitType, identifier, windowMs, maxRequests },
+      now
+    );
+
+    return {
+      allowed,
+      blocked: !allowed,
+      count,
+      remaining: Math.max(0, maxRequests - count),
+      resetTime: (Math.floor(now / windowMs) + 1) * windowMs,
+      windowMs,
+      maxRequests,
+      fallback: true
+    };
+  }
+
+  /**
+   * Replay counts and blocks recorded during an outage into Redis
+   * Called when the Redis connection comes back.
+   * @returns {Object} Number of counters and blocks written
+   */
+  async resyncLocalStore() {
+    const { counters, blocks } = this.localStore.takeUnsynced();
+    if (counters.length === 0 && blocks.length === 0) {
+      return { counters: 0, blocks: 0 };
+    }
+
+    try {
+      const now = Date.now();
+      const multi = redisService.client.multi();
+
+      for (const entry of counters) {
+        if (this.algorithm === 'sliding_counter') {
+          const key = this._counterKey(entry.limitType, entry.identifier, entry.window);
+          multi.incrBy(key, entry.unsynced);
+          multi.pExpire(key, entry.windowMs * 2);
+        } else {
+          // The log needs one member per request; never more than the limit can see
+          const key = generateRedisKey(REDIS_PREFIXES.RATE_LIMIT, `${entry.limitType}:${entry.identifier}`);
+          const members = Array.from(
+            { length: Math.min(entry.unsynced, entry.maxRequests + 1) },
+            (_, i) => ({ score: now, value: `${now}-resync-${i}-${Math.random()}` })
+          );
+          multi.zAdd(key, members);
+          multi.expire(key, Math.ceil(entry.windowMs / 1000));
+        }
+      }
+
+      for (const blockData of blocks) {
+        // NX so a longer block already in Redis wins
+        multi.set(
+          generateRedisKey(REDIS_PREFIXES.IP_REPUTATION, `block:${blockData.ip}`),
+          JSON.stringify(blockData),
+          { PX: Math.max(1, blockData.expiresAt - now), NX: true }
+        );
+      }
+
+      await multi.exec();
+
+      console.log('Rate Limit Service: Local limiter state resynced to Redis:', sanitizeForLogging({
+        counters: counters.length,
+        blocks: blocks.length
+      }));
+
+      return { counters: counters.length, blocks: blocks.length };
+    } catch (error) {
+      console.error('Rate Limit Service: Error resyncing local limiter state:', sanitizeForLogging({
+        counters: counters.length,
+        blocks: blocks.length,
+        error: error.message
+      }));
+      throw error;
+    }
+  }
+
+  /**
+   * Build the counter key for one fixed window
+   * The hash tag keeps both windows of an identifier on one cluster slot.
+   * @param {string} limitType - Type of rate limit
+   * @param {string} identifier - Rate limit identifier
+   * @param {number} window - Fixed window index
+   * @returns {string} Redis key
+   */
+  _counterKey(limitType, identifier, window) {
+    return generateRedisKey(REDIS_PREFIXES.RATE_LIMIT_COUNTER, `{${limitType}:${identifier}}:${window}`);
+  }
+
+  /**
+   * Take one slot from a local lease if a live one exists
+   * @param {string} bucketKey - Local bucket key
+   * @param {number} now - Current time
+   * @returns {Object|null} Lease state after taking the slot
+   */
+  _takeLocalSlot(bucketKey, now) {
+    const bucket = this.localBuckets.get(bucketKey);
+    if (!bucket) return null;
+
+    if (bucket.expiresAt <= now || bucket.tokens <= 0) {
+      this.localBuckets.delete(bucketKey);
+      return null;
+    }
+
+    bucket.tokens--;
+    bucket.count++;
+    return bucket;
+  }
+
+  /**
+   * Keep the extra slots of a lease for local use
+   * @param {string} bucketKey - Local bucket key
+   * @param {number} tokens - Slots left after the current request
+   * @param {number} count - Estimated count including the current request
+   * @param {number} now - Current time
+   */
+  _storeLocalLease(bucketKey, tokens, count, now) {
+    if (this.localBuckets.size >= this.localBucketConfig.maxEntries) {
+      // Map iteration order is insertion order, so this evicts the oldest lease
+      this.localBuckets.delete(this.localBuckets.keys().next().value);
+    }
+
+    this.localBuckets.set(bucketKey, {
+      tokens,
+      count,
+      expiresAt: now + this.localBucketConfig.leaseTtlMs
+    });
+  }
+
   /**
    * Apply progressive delay for consecutive failed attempts
    * @param {string} identifier - Identifier for tracking attempts
@@ -230,6 +502,10 @@ class RateLimitService {
         return { blocked: false, reason: 'invalid_ip' };
       }
 
+      if (this._redisDown()) {
+        return this._localBlockStatus(ip);
+      }
+
       const blockKey = generateRedisKey(REDIS_PREFIXES.IP_REPUTATION, `block:${ip}`);
       const blockData = await redisService.get(blockKey);
 
@@ -238,6 +514,8 @@ class RateLimitService {
         const now = Date.now();
         
         if (parsed.expiresAt > now) {
+          // Keep a copy so the block survives a Redis outage
+          this.localStore.setBlock(ip, parsed);
           return {
             blocked: true,
             reason: parsed.reason,
@@ -247,8 +525,14 @@ class RateLimitService {
           };
         } else {
           // Block expired, clean up
+          this.localStore.deleteBlock(ip);
           await redisService.delete(blockKey);
         }
+      } else if (this.localStore.isBlockPending(ip)) {
+        // Blocked while Redis was unreachable and not replayed yet
+        return this._localBlockStatus(ip);
+      } else {
+        this.localStore.deleteBlock(ip);
       }
 
       return { blocked: false };
@@ -258,9 +542,30 @@ class RateLimitService {
         error: error.message
       }));
       
-      // Fail open
-      return { blocked: false, error: error.message };
+      // Fall back to blocks seen locally, otherwise fail open
+      return { ...this._localBlockStatus(ip), error: error.message };
+    }
+  }
+
+  /**
+   * IP block status from the local cache
+   * @param {string} ip - IP address
+   * @returns {Object} Block status information
+   */
+  _localBlockStatus(ip) {
+    const blockData = this.localStore.getBlock(ip);
+    if (!blockData) {
+      return { blocked: false, fallback: true };
     }
+
+    return {
+      blocked: true,
+      reason: blockData.reason,
+      expiresAt: blockData.expiresAt,
+      remainingTime: blockData.expiresAt - Date.now(),
+      blockLevel: blockData.blockLevel,
+      fallback: true
+    };
   }
 
   /**
@@ -277,12 +582,15 @@ class RateLimitService {
 
       const config = { ...this.ipBlockConfig, ...options };
       const blockKey = generateRedisKey(REDIS_PREFIXES.IP_REPUTATION, `block:${ip}`);
+      const redisDown = this._redisDown();
       
       // Get current block level for exponential backoff
       let blockLevel = 1;
-      const existingBlock = await redisService.get(blockKey);
+      const existingBlock = redisDown
+        ? this.localStore.getBlock(ip)
+        : await redisService.get(blockKey);
       if (existingBlock) {
-        const parsed = JSON.parse(existingBlock);
+        const parsed = typeof existingBlock === 'string' ? JSON.parse(existingBlock) : existingBlock;
         blockLevel = (parsed.blockLevel || 1) + 1;
       }
 
@@ -299,11 +607,17 @@ class RateLimitService {
         duration
       };
 
-      await redisService.setWithTTL(
-        blockKey,
-        JSON.stringify(blockData),
-        Math.ceil(duration / 1000)
-      );
+      // Recorded locally first so the block holds even if the write fails
+      this.localStore.setBlock(ip, blockData, true);
+
+      if (!redisDown) {
+        await redisService.setWithTTL(
+          blockKey,
+          JSON.stringify(blockData),
+          Math.ceil(duration / 1000)
+        );
+        this.localStore.setBlock(ip, blockData, false);
+      }
 
       // Log security event
       await this._logSecurityEvent(SECURITY_EVENTS.RATE_LIMIT_EXCEEDED, SEVERITY_LEVELS.HIGH, {
@@ -325,7 +639,8 @@ class RateLimitService {
         blocked: true,
         blockLevel,
         duration,
-        expiresAt: blockData.expiresAt
+        expiresAt: blockData.expiresAt,
+        ...(redisDown && { fallback: true })
       };
     } catch (error) {
       console.error('Rate Limit Service: Error blocking IP:', sanitizeForLogging({
@@ -452,13 +767,31 @@ class RateLimitService {
 
   /**
    * Reset rate limit for an identifier
+   * Clears both the sliding log and the counters, since checks may pick the
+   * algorithm per call.
    * @param {string} identifier - Rate limit identifier
    * @param {string} limitType - Type of rate limit
+   * @param {Object} options - { windowMs } used by the checks being reset
    */
-  async resetRateLimit(identifier, limitType = RATE_LIMIT_KEYS.GENERAL_API) {
+  async resetRateLimit(identifier, limitType = RATE_LIMIT_KEYS.GENERAL_API, options = {}) {
     try {
+      const { windowMs } = this._resolveLimit(limitType, options);
       const key = generateRedisKey(REDIS_PREFIXES.RATE_LIMIT, `${limitType}:${identifier}`);
       await redisService.delete(key);
+
+      const window = Math.floor(Date.now() / windowMs);
+      await redisService.delete(this._counterKey(limitType, identifier, window));
+      await redisService.delete(this._counterKey(limitType, identifier, window - 1));
+
+      const windows = new Set(Object.values(this.defaultLimits).map(config => config.window)).add(windowMs);
+      for (const localWindowMs of windows) {
+        this.localStore.delete(`${limitType}:${identifier}:${localWindowMs}`);
+      }
+      for (const bucketKey of this.localBuckets.keys()) {
+        if (bucketKey.startsWith(`${limitType}:${identifier}:`)) {
+          this.localBuckets.delete(bucketKey);
+        }
+      }
       
       console.log('Rate Limit Service: Rate limit reset:', sanitizeForLogging({
         identifier,
@@ -480,28 +813,41 @@ class RateLimitService {
    * Get rate limit status for an identifier
    * @param {string} identifier - Rate limit identifier
    * @param {string} limitType - Type of rate limit
+   * @param {Object} options - { windowMs, maxRequests, algorithm } as passed to checkRateLimit
    * @returns {Object} Rate limit status
    */
-  async getRateLimitStatus(identifier, limitType = RATE_LIMIT_KEYS.GENERAL_API) {
+  async getRateLimitStatus(identifier, limitType = RATE_LIMIT_KEYS.GENERAL_API, options = {}) {
     try {
-      const config = this.defaultLimits[limitType] || this.defaultLimits[RATE_LIMIT_KEYS.GENERAL_API];
+      const { windowMs, maxRequests } = this._resolveLimit(limitType, options);
       const key = generateRedisKey(REDIS_PREFIXES.RATE_LIMIT, `${limitType}:${identifier}`);
       
       const now = Date.now();
-      const windowStart = now - config.window;
+      const windowStart = now - windowMs;
       
       // Count current requests in window
-      const currentCount = await redisService.client.zCount(key, windowStart, now);
-      const remaining = Math.max(0, config.max - currentCount);
+      let currentCount;
+      if ((options.algorithm || this.algorithm) === 'sliding_counter') {
+        const window = Math.floor(now / windowMs);
+        const [current, previous] = await redisService.getMany([
+          this._counterKey(limitType, identifier, window),
+          this._counterKey(limitType, identifier, window - 1)
+        ]);
+        const previousWeight = 1 - (now % windowMs) / windowMs;
+        currentCount = Math.floor((parseInt(previous, 10) || 0) * previousWeight) +
+          (parseInt(current, 10) || 0);
+      } else {
+        currentCount = await redisService.client.zCount(key, windowStart, now);
+      }
+      const remaining = Math.max(0, maxRequests - currentCount);
       
       return {
         identifier,
         limitType,
         current: currentCount,
-        limit: config.max,
+        limit: maxRequests,
         remaining,
-        windowMs: config.window,
-        resetTime: now + config.window
+        windowMs,
+        resetTime: now + windowMs
       };
     } catch (error) {
       console.error('Rate Limit Service: Error getting rate limit status:', sanitizeForLogging({
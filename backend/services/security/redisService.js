@@ -3,10 +3,14 @@
  * Handles Redis connection management, error handling, and security-specific operations
  */
 
+const crypto = require('crypto');
 const redis = require('redis');
 const { REDIS_PREFIXES, TIMEOUTS } = require('./utils/constants');
 const { generateRedisKey, calculateTTL, sanitizeForLogging } = require('./utils/securityHelpers');
 
+// Keys per MGET; larger lookups are split and sent together in one pipeline
+const MGET_BATCH_SIZE = 500;
+
 class RedisService {
   constructor() {
     this.client = null;
@@ -14,6 +18,12 @@ class RedisService {
     this.connectionAttempts = 0;
     this.maxRetries = 5;
     this.retryDelay = 1000; // 1 second
+    this.scriptShas = new Map();
+    this.reconnectListeners = [];
+    this.connectionLost = false;
+    this.subscriber = null;
+    this.subscriberConnecting = null;
+    this.subscriberLostListeners = [];
   }
 
   /**
@@ -83,16 +93,22 @@ class RedisService {
 
     this.client.on('ready', () => {
       console.log('Redis: Ready to accept commands');
+      if (this.connectionLost) {
+        this.connectionLost = false;
+        this.notifyReconnect();
+      }
     });
 
     this.client.on('error', (error) => {
       console.error('Redis: Connection error:', sanitizeForLogging({ error: error.message }));
       this.isConnected = false;
+      this.connectionLost = true;
     });
 
     this.client.on('end', () => {
       console.log('Redis: Connection ended');
       this.isConnected = false;
+      this.connectionLost = true;
     });
 
     this.client.on('reconnecting', () => {
@@ -101,6 +117,39 @@ class RedisService {
     });
   }
 
+  /**
+   * Register a callback for when the connection comes back after an outage
+   * @param {Function} listener - Called with no arguments on reconnect
+   */
+  onReconnect(listener) {
+    this.reconnectListeners.push(listener);
+  }
+
+  /**
+   * Register a callback for when the subscriber connection is lost
+   * Subscriptions are gone by then and messages sent meanwhile are missed;
+   * the callback should drop state that relied on them and subscribe again.
+   * @param {Function} listener - Called with no arguments
+   */
+  onSubscriberLost(listener) {
+    this.subscriberLostListeners.push(listener);
+  }
+
+  /**
+   * Run reconnect callbacks, isolating their failures
+   */
+  notifyReconnect() {
+    for (const listener of this.reconnectListeners) {
+      Promise.resolve()
+        .then(() => listener())
+        .catch(error => {
+          console.error('Redis: Reconnect handler failed:', sanitizeForLogging({
+            error: error.message
+          }));
+        });
+    }
+  }
+
   /**
    * Check if Redis is connected and ready
    * @returns {boolean} Connection status
@@ -126,6 +175,9 @@ class RedisService {
 
     try {
       await this.client.setEx(key, sessionTTL, serializedData);
+      if (sessionData && sessionData.userId) {
+        await this.indexUserSession(sessionData.userId, sessionId, sessionTTL);
+      }
       return true;
     } catch (error) {
       console.error('Redis: Failed to set session:', sanitizeForLogging({ 
@@ -163,8 +215,9 @@ class RedisService {
   /**
    * Delete session data
    * @param {string} sessionId - Session identifier
+   * @param {string} userId - Owning user ID, looked up from the session when omitted
    */
-  async deleteSession(sessionId) {
+  async deleteSession(sessionId, userId = null) {
     if (!this.isReady()) {
       throw new Error('Redis connection not available');
     }
@@ -172,7 +225,16 @@ class RedisService {
     const key = generateRedisKey(REDIS_PREFIXES.SESSION, sessionId);
 
     try {
+      let ownerId = userId;
+      if (!ownerId) {
+        const data = await this.client.get(key);
+        ownerId = data ? JSON.parse(data).userId : null;
+      }
+
       await this.client.del(key);
+      if (ownerId) {
+        await this.client.zRem(generateRedisKey(REDIS_PREFIXES.USER_SESSIONS, ownerId), sessionId);
+      }
       return true;
     } catch (error) {
       console.error('Redis: Failed to delete session:', sanitizeForLogging({ 
@@ -389,8 +451,29 @@ class RedisService {
     }
   }
 
+  /**
+   * Add a session to its user's session index
+   * The index is a sorted set scored by session expiry, so expired members can be
+   * trimmed by score and the set itself never outlives the longest session.
+   * @param {string} userId - User ID
+   * @param {string} sessionId - Session identifier
+   * @param {number} ttl - Session time to live in seconds
+   */
+  async indexUserSession(userId, sessionId, ttl) {
+    const indexKey = generateRedisKey(REDIS_PREFIXES.USER_SESSIONS, userId);
+    const now = Date.now();
+    const indexTTL = Math.max(ttl, calculateTTL('session'));
+
+    const multi = this.client.multi();
+    multi.zAdd(indexKey, { score: now + ttl * 1000, value: sessionId });
+    multi.zRemRangeByScore(indexKey, '-inf', now);
+    multi.expire(indexKey, indexTTL);
+    await multi.exec();
+  }
+
   /**
    * Get all session IDs for a user
+   * Reads the per-user session index instead of scanning the session keyspace.
    * @param {string} userId - User ID
    * @returns {Array} Array of session IDs
    */
@@ -399,29 +482,12 @@ class RedisService {
       throw new Error('Redis connection not available');
     }
 
-    try {
-      // Search for all session keys and filter by userId
-      const sessionPattern = generateRedisKey(REDIS_PREFIXES.SESSION, '*');
-      const keys = await this.client.keys(sessionPattern);
-      const userSessions = [];
-
-      for (const key of keys) {
-        try {
-          const sessionData = await this.client.get(key);
-          if (sessionData) {
-            const parsed = JSON.parse(sessionData);
-            if (parsed.userId === userId) {
-              // Extract session ID from key
-              const sessionId = key.replace(REDIS_PREFIXES.SESSION, '');
-              userSessions.push(sessionId);
-            }
-          }
-        } catch (parseError) {
-          console.warn('Redis: Failed to parse session data for key:', key);
-        }
-      }
+    const indexKey = generateRedisKey(REDIS_PREFIXES.USER_SESSIONS, userId);
 
-      return userSessions;
+    try {
+      const now = Date.now();
+      await this.client.zRemRangeByScore(indexKey, '-inf', now);
+      return await this.client.zRange(indexKey, now, '+inf', { BY: 'SCORE' });
     } catch (error) {
       console.error('Redis: Failed to get user sessions:', sanitizeForLogging({ 
         userId, 
@@ -431,6 +497,39 @@ class RedisService {
     }
   }
 
+  /**
+   * Rebuild the per-user session indexes from the stored sessions
+   * One-off migration for sessions written before the index existed
+   * (npm run rebuild-session-index); walks the keyspace with SCAN so Redis
+   * is not blocked.
+   * @returns {number} Number of sessions indexed
+   */
+  async rebuildUserSessionIndex() {
+    if (!this.isReady()) {
+      throw new Error('Redis connection not available');
+    }
+
+    const sessionPattern = generateRedisKey(REDIS_PREFIXES.SESSION, '*');
+    let indexed = 0;
+
+    for await (const key of this.client.scanIterator({ MATCH: sessionPattern, COUNT: 500 })) {
+      try {
+        const [data, ttl] = await Promise.all([this.client.get(key), this.client.ttl(key)]);
+        if (!data || ttl <= 0) continue;
+
+        const { userId } = JSON.parse(data);
+        if (userId) {
+          await this.indexUserSession(userId, key.slice(REDIS_PREFIXES.SESSION.length), ttl);
+          indexed++;
+        }
+      } catch (parseError) {
+        console.warn('Redis: Failed to parse session data for key:', key);
+      }
+    }
+
+    return indexed;
+  }
+
   /**
    * Increment user token version (invalidates all existing tokens)
    * @param {string} userId - User ID
@@ -485,6 +584,12 @@ class RedisService {
    * Gracefully close Redis connection
    */
   async disconnect() {
+    if (this.subscriber) {
+      const subscriber = this.subscriber;
+      this.subscriber = null;
+      await subscriber.quit().catch(() => {});
+    }
+
     if (this.client && this.isConnected) {
       try {
         await this.client.quit();
@@ -544,6 +649,333 @@ class RedisService {
     }
   }
 
+  /**
+   * Get several values in a single round trip
+   * @param {Array<string>} keys - Redis keys
+   * @returns {Array<string|null>} Values in key order, null where missing
+   */
+  async getMany(keys) {
+    if (!this.isReady()) {
+      throw new Error('Redis connection not available');
+    }
+
+    if (!keys || keys.length === 0) {
+      return [];
+    }
+
+    try {
+      const multi = this.client.multi();
+      for (let i = 0; i < keys.length; i += MGET_BATCH_SIZE) {
+        multi.mGet(keys.slice(i, i + MGET_BATCH_SIZE));
+      }
+      const batches = await multi.exec();
+      return [].concat(...batches);
+    } catch (error) {
+      console.error('Redis: Failed to get keys:', sanitizeForLogging({ 
+        keyCount: keys.length, 
+        error: error.message 
+      }));
+      throw error;
+    }
+  }
+
+  /**
+   * Fetch stored security events by ID in a single round trip
+   * @param {Iterable<string>} eventIds - Security event IDs
+   * @returns {Array<Object>} Parsed events; missing or unreadable events are skipped
+   */
+  async getSecurityEvents(eventIds) {
+    const ids = Array.from(eventIds || []);
+    const values = await this.getMany(ids.map(id => generateRedisKey(REDIS_PREFIXES.SECURITY_EVENT, id)));
+    const events = [];
+
+    for (const value of values) {
+      if (!value) continue;
+      try {
+        const event = JSON.parse(value);
+        if (event) events.push(event);
+      } catch (parseError) {
+        // Skip corrupt entries rather than failing the whole batch
+      }
+    }
+
+    return events;
+  }
+
+  /**
+   * Add a member to several time-ordered sorted sets
+   * Members are scored by timestamp. Entries that have aged out of the retention
+   * window are trimmed with ZREMRANGEBYSCORE in the same pipeline.
+   * @param {Array<string>} keys - Sorted set keys
+   * @param {string} member - Member to add (e.g. an event ID)
+   * @param {number} timestamp - Member score in milliseconds
+   * @param {number} retentionMs - How long members stay queryable
+   */
+  async addToTimelines(keys, member, timestamp, retentionMs) {
+    if (!this.isReady()) {
+      throw new Error('Redis connection not available');
+    }
+
+    try {
+      const multi = this.client.multi();
+      for (const key of keys) {
+        multi.zAdd(key, { score: timestamp, value: member });
+        multi.zRemRangeByScore(key, '-inf', timestamp - retentionMs);
+        multi.pExpire(key, retentionMs);
+      }
+      await multi.exec();
+      return true;
+    } catch (error) {
+      console.error('Redis: Failed to add to timelines:', sanitizeForLogging({ 
+        keys, 
+        member, 
+        error: error.message 
+      }));
+      throw error;
+    }
+  }
+
+  /**
+   * Get members of time-ordered sorted sets scored within a time range
+   * @param {string|Array<string>} keys - Sorted set key or keys, read in one pipeline
+   * @param {number} startMs - Range start in milliseconds (inclusive)
+   * @param {number} endMs - Range end in milliseconds (inclusive)
+   * @returns {Array<string>} Members in ascending score order per key, de-duplicated
+   */
+  async getTimelineRange(keys, startMs, endMs) {
+    if (!this.isReady()) {
+      throw new Error('Redis connection not available');
+    }
+
+    const keyList = [].concat(keys);
+    if (keyList.length === 0) {
+      return [];
+    }
+
+    try {
+      const multi = this.client.multi();
+      for (const key of keyList) {
+        multi.zRange(key, startMs, endMs, { BY: 'SCORE' });
+      }
+      const results = await multi.exec();
+      return [...new Set([].concat(...results))];
+    } catch (error) {
+      console.error('Redis: Failed to get timeline range:', sanitizeForLogging({ 
+        keys: keyList, 
+        error: error.message 
+      }));
+      throw error;
+    }
+  }
+
+  /**
+   * Record one occurrence against several sliding-window counters
+   * Each counter is split into fixed time buckets that expire on their own, so
+   * recording is a single pipelined round trip regardless of history size.
+   * @param {Array<string>} scopes - Counter scopes (e.g. 'ip:1.2.3.4:login_failure')
+   * @param {number} timestamp - Event time in milliseconds
+   */
+  async incrementWindowCounters(scopes, timestamp = Date.now()) {
+    if (!this.isReady()) {
+      throw new Error('Redis connection not available');
+    }
+
+    if (!scopes || scopes.length === 0) {
+      return true;
+    }
+
+    const bucket = Math.floor(timestamp / TIMEOUTS.EVENT_COUNTER_BUCKET);
+    const ttlMs = TIMEOUTS.EVENT_COUNTER_RETENTION + TIMEOUTS.EVENT_COUNTER_BUCKET;
+
+    try {
+      const multi = this.client.multi();
+      for (const scope of scopes) {
+        const key = generateRedisKey(REDIS_PREFIXES.EVENT_COUNTER, `${scope}:${bucket}`);
+        multi.incr(key);
+        multi.pExpire(key, ttlMs);
+      }
+      await multi.exec();
+      return true;
+    } catch (error) {
+      console.error('Redis: Failed to increment window counters:', sanitizeForLogging({ 
+        scopes, 
+        error: error.message 
+      }));
+      throw error;
+    }
+  }
+
+  /**
+   * Count occurrences recorded against a counter within a trailing window
+   * Reads every bucket overlapping the window with one MGET. The oldest bucket is
+   * counted whole, so the effective window may extend up to one bucket further back.
+   * @param {string} scope - Counter scope
+   * @param {number} windowMs - Window length in milliseconds
+   * @param {number} now - Window end in milliseconds
+   * @returns {number} Occurrences in the window
+   */
+  async getWindowCount(scope, windowMs, now = Date.now()) {
+    const lastBucket = Math.floor(now / TIMEOUTS.EVENT_COUNTER_BUCKET);
+    const firstBucket = Math.floor((now - windowMs) / TIMEOUTS.EVENT_COUNTER_BUCKET);
+    const keys = [];
+
+    for (let bucket = firstBucket; bucket <= lastBucket; bucket++) {
+      keys.push(generateRedisKey(REDIS_PREFIXES.EVENT_COUNTER, `${scope}:${bucket}`));
+    }
+
+    const values = await this.getMany(keys);
+    return values.reduce((total, value) => total + (value ? parseInt(value, 10) : 0), 0);
+  }
+
+  /**
+   * Run a Lua script by SHA, loading it only when the server lacks it
+   * @param {string} script - Lua source
+   * @param {Array<string>} keys - Keys the script touches
+   * @param {Array} args - Script arguments
+   * @returns {*} Script reply
+   */
+  async runScript(script, keys, args = []) {
+    if (!this.isReady()) {
+      throw new Error('Redis connection not available');
+    }
+
+    let sha = this.scriptShas.get(script);
+    if (!sha) {
+      sha = crypto.createHash('sha1').update(script).digest('hex');
+      this.scriptShas.set(script, sha);
+    }
+
+    const options = { keys, arguments: args.map(String) };
+
+    try {
+      return await this.client.evalSha(sha, options);
+    } catch (error) {
+      if (!String(error.message).startsWith('NOSCRIPT')) {
+        console.error('Redis: Failed to run script:', sanitizeForLogging({
+          sha,
+          keys,
+          error: error.message
+        }));
+        throw error;
+      }
+    }
+
+    // Script cache was flushed or this is a fresh server
+    try {
+      await this.client.scriptLoad(script);
+      return await this.client.evalSha(sha, options);
+    } catch (error) {
+      console.error('Redis: Failed to load script:', sanitizeForLogging({
+        sha,
+        error: error.message
+      }));
+      throw error;
+    }
+  }
+
+  /**
+   * Publish a message on a channel
+   * @param {string} channel - Channel name
+   * @param {string} message - Message payload
+   * @returns {number} Number of subscribers that received it
+   */
+  async publish(channel, message) {
+    if (!this.isReady()) {
+      throw new Error('Redis connection not available');
+    }
+
+    try {
+      return await this.client.publish(channel, message);
+    } catch (error) {
+      console.error('Redis: Failed to publish message:', sanitizeForLogging({
+        channel,
+        error: error.message
+      }));
+      throw error;
+    }
+  }
+
+  /**
+   * Subscribe to a channel
+   * Subscriptions share one dedicated connection, since a subscribed
+   * connection cannot run other commands.
+   * @param {string} channel - Channel name
+   * @param {Function} listener - Called with (message, channel)
+   */
+  async subscribe(channel, listener) {
+    if (!this.isReady()) {
+      throw new Error('Redis connection not available');
+    }
+
+    try {
+      const subscriber = await this.getSubscriber();
+      await subscriber.subscribe(channel, listener);
+      return true;
+    } catch (error) {
+      console.error('Redis: Failed to subscribe:', sanitizeForLogging({
+        channel,
+        error: error.message
+      }));
+      throw error;
+    }
+  }
+
+  /**
+   * Get the subscriber connection, opening it on first use
+   * @returns {Object} Redis client in subscriber mode
+   */
+  async getSubscriber() {
+    if (this.subscriber) {
+      return this.subscriber;
+    }
+
+    if (!this.subscriberConnecting) {
+      const subscriber = this.client.duplicate();
+      subscriber.on('error', (error) => {
+        console.error('Redis: Subscriber error:', sanitizeForLogging({ error: error.message }));
+        this.dropSubscriber(subscriber);
+      });
+      subscriber.on('end', () => this.dropSubscriber(subscriber));
+
+      this.subscriberConnecting = subscriber.connect()
+        .then(() => {
+          this.subscriber = subscriber;
+          return subscriber;
+        })
+        .finally(() => {
+          this.subscriberConnecting = null;
+        });
+    }
+
+    return this.subscriberConnecting;
+  }
+
+  /**
+   * Discard a subscriber connection that errored or closed
+   * node-redis would quietly resubscribe after reconnecting, hiding the
+   * messages missed in between, so the connection is closed instead and
+   * subscribers are told to start over on a new one.
+   * @param {Object} subscriber - Subscriber connection
+   */
+  dropSubscriber(subscriber) {
+    if (this.subscriber !== subscriber) return;
+
+    this.subscriber = null;
+    Promise.resolve()
+      .then(() => subscriber.disconnect())
+      .catch(() => {});
+
+    for (const listener of this.subscriberLostListeners) {
+      try {
+        listener();
+      } catch (error) {
+        console.error('Redis: Subscriber lost handler failed:', sanitizeForLogging({
+          error: error.message
+        }));
+      }
+    }
+  }
+
   /**
    * Delete a key
    * @param {string} key - Redis key to delete
@@ -8,7 +8,9 @@ const User = require('../../models/User');
 const Booking = require('../../models/Booking');
 const Favorite = require('../../models/Favorite');
 const Rating = require('../../models/Rating');
+const Library = require('../../models/Library');
 const Notification = require('../../models/Notification');
+const NotificationInbox = require('../../models/NotificationInbox');
 const AuditLog = require('../../models/AuditLog');
 
 // Import services
@@ -54,6 +56,7 @@ class RightToBeForgottenService {
       Favorite: { model: Favorite, userField: 'userId', category: this.dataCategories.BEHAVIORAL_DATA },
       Rating: { model: Rating, userField: 'userId', category: this.dataCategories.BEHAVIORAL_DATA },
       Notification: { model: Notification, userField: 'recipients.userId', category: this.dataCategories.TECHNICAL_DATA },
+      NotificationInbox: { model: NotificationInbox, userField: 'userId', category: this.dataCategories.TECHNICAL_DATA },
       AuditLog: { model: AuditLog, userField: 'userId', category: this.dataCategories.AUDIT_DATA }
     };
   }
@@ -363,9 +366,16 @@ class RightToBeForgottenService {
       // Count records before deletion
       const recordCount = await Model.countDocuments(query);
 
+      // Active ratings are summed into each library's running totals
+      const ratingTotals = Model === Rating ? await this.getRatingTotals(userId) : [];
+
       // Perform deletion
       const deleteResult = await Model.deleteMany(query);
 
+      for (const total of ratingTotals) {
+        await Library.adjustRatings(total._id, -total.sum, -total.count);
+      }
+
       return {
         category: category,
         action: 'deleted',
@@ -379,6 +389,18 @@ class RightToBeForgottenService {
     }
   }
 
+  /**
+   * Sum a user's active ratings per library
+   * @param {string} userId - User ID
+   * @returns {Promise<Array>} { _id: libraryId, sum, count } per library
+   */
+  async getRatingTotals(userId) {
+    return Rating.aggregate([
+      { $match: { userId: new mongoose.Types.ObjectId(userId), isActive: true } },
+      { $group: { _id: '$libraryId', sum: { $sum: '$rating' }, count: { $sum: 1 } } }
+    ]);
+  }
+
   /**
    * Delete user files (profile images, uploads, etc.)
    * @param {string} userId - User ID
@@ -568,7 +590,7 @@ class RightToBeForgottenService {
   async exportUserNotifications(userId) {
     try {
       const notifications = await Notification.find({ 'recipients.userId': userId });
-      return notifications.map(notification => {
+      const exported = notifications.map(notification => {
         const notificationObj = notification.toObject();
         // Filter recipients to only include the requesting user
         notificationObj.recipients = notificationObj.recipients.filter(
@@ -576,6 +598,29 @@ class RightToBeForgottenService {
         );
         return notificationObj;
       });
+
+      // Notifications delivered through per-user inbox records
+      const inboxEntries = await NotificationInbox.find({ userId }).lean();
+      if (inboxEntries.length > 0) {
+        const inboxNotifications = await Notification.find({
+          _id: { $in: inboxEntries.map(entry => entry.notificationId) }
+        }).select('-recipients').lean();
+        const notificationsById = new Map(
+          inboxNotifications.map(notification => [notification._id.toString(), notification])
+        );
+
+        for (const entry of inboxEntries) {
+          const notification = notificationsById.get(entry.notificationId.toString());
+          if (notification) {
+            exported.push({
+              ...notification,
+              recipients: [{ userId: entry.userId, read: entry.read, readAt: entry.readAt }]
+            });
+          }
+        }
+      }
+
+      return exported;
     } catch (error) {
       console.error('Error exporting user notifications:', error);
       throw error;
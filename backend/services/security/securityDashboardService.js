@@ -162,7 +162,7 @@ class SecurityDashboardService {
   async getEventMetrics(startDate, endDate, filters = {}) {
     try {
       const events = await securityMonitorService.getSecurityEvents(
-        startDate, endDate, filters.eventType
+        startDate, endDate, filters.eventType, { userId: filters.userId, ip: filters.ip }
       );
 
       const metrics = {
@@ -228,7 +228,10 @@ class SecurityDashboardService {
    */
   async getUserMetrics(startDate, endDate, filters = {}) {
     try {
-      const events = await securityMonitorService.getSecurityEvents(startDate, endDate);
+      // A user filter reads just that user's timeline instead of every event in the range
+      const events = await securityMonitorService.getSecurityEvents(
+        startDate, endDate, filters.eventType, { userId: filters.userId }
+      );
       const userEvents = events.filter(e => e.userId);
 
       const userActivity = {};
@@ -294,7 +297,10 @@ class SecurityDashboardService {
    */
   async getIPMetrics(startDate, endDate, filters = {}) {
     try {
-      const events = await securityMonitorService.getSecurityEvents(startDate, endDate);
+      // An IP filter reads just that address's timeline instead of every event in the range
+      const events = await securityMonitorService.getSecurityEvents(
+        startDate, endDate, filters.eventType, { ip: filters.ip }
+      );
       const ipEvents = events.filter(e => e.deviceInfo && e.deviceInfo.ip);
 
       const ipActivity = {};
@@ -372,7 +378,7 @@ class SecurityDashboardService {
         startDate, endDate, filters.eventType, filters.userId
       );
 
-      const integrityCheck = await auditTrailService.verifyAuditTrailIntegrity(
+      const integrityCheck = await auditTrailService.verifyAuditLogFiles(
         startDate, endDate
       );
 
@@ -7,14 +7,16 @@ const {
   SECURITY_EVENTS, 
   SEVERITY_LEVELS, 
   ERROR_CODES,
-  TIMEOUTS 
+  TIMEOUTS,
+  REDIS_PREFIXES
 } = require('./utils/constants');
 const { 
   formatSecurityEvent, 
   generateCorrelationId, 
   sanitizeForLogging,
   extractDeviceInfo,
-  isValidIP
+  isValidIP,
+  generateEventCounterScope
 } = require('./utils/securityHelpers');
 const redisService = require('./redisService');
 const configService = require('./configService');
@@ -129,21 +131,37 @@ class SecurityMonitorService {
       
       await redisService.setWithTTL(eventKey, JSON.stringify(securityEvent), ttl);
 
-      // Also store in time-series format for analytics
-      const timeSeriesKey = `security_events:${securityEvent.eventType}:${new Date().toISOString().split('T')[0]}`;
-      await redisService.addToSet(timeSeriesKey, securityEvent.correlationId, ttl);
+      // Index the event on time-ordered timelines: per day, per type and day,
+      // per user for behavioral analysis and per IP for reputation tracking
+      const timestamp = Date.parse(securityEvent.timestamp) || Date.now();
+      const timelineKeys = this.getDayTimelineKeys(timestamp, timestamp, securityEvent.eventType);
+      timelineKeys.push(...this.getDayTimelineKeys(timestamp, timestamp));
 
-      // Store user-specific events for behavioral analysis
       if (securityEvent.userId) {
-        const userEventKey = `user_events:${securityEvent.userId}`;
-        await redisService.addToSet(userEventKey, securityEvent.correlationId, ttl);
+        timelineKeys.push(`${REDIS_PREFIXES.USER_TIMELINE}${securityEvent.userId}`);
       }
 
-      // Store IP-specific events for reputation tracking
-      if (securityEvent.deviceInfo.ip && isValidIP(securityEvent.deviceInfo.ip)) {
-        const ipEventKey = `ip_events:${securityEvent.deviceInfo.ip}`;
-        await redisService.addToSet(ipEventKey, securityEvent.correlationId, ttl);
+      const hasValidIP = securityEvent.deviceInfo.ip && isValidIP(securityEvent.deviceInfo.ip);
+      if (hasValidIP) {
+        timelineKeys.push(`${REDIS_PREFIXES.IP_TIMELINE}${securityEvent.deviceInfo.ip}`);
       }
+
+      await redisService.addToTimelines(
+        timelineKeys,
+        securityEvent.correlationId,
+        timestamp,
+        TIMEOUTS.SECURITY_EVENT_TTL
+      );
+
+      // Feed the sliding-window counters the threshold detectors read
+      const counterScopes = [];
+      if (hasValidIP) {
+        counterScopes.push(generateEventCounterScope('ip', securityEvent.deviceInfo.ip, securityEvent.eventType));
+      }
+      if (securityEvent.userId) {
+        counterScopes.push(generateEventCounterScope('userId', securityEvent.userId, securityEvent.eventType));
+      }
+      await redisService.incrementWindowCounters(counterScopes, timestamp);
     } catch (error) {
       console.error('Failed to store security event in Redis:', sanitizeForLogging({ 
         correlationId: securityEvent.correlationId,
@@ -253,23 +271,12 @@ class SecurityMonitorService {
   async detectFailedLoginAnomaly(securityEvent) {
     try {
       const threshold = this.alertThresholds.failedLogins;
-      const windowStart = Date.now() - threshold.windowMs;
-      
+
       // Count failed login attempts from this IP in the time window
-      const ipEventKey = `ip_events:${securityEvent.deviceInfo.ip}`;
-      const recentEvents = await redisService.getSet(ipEventKey);
-      
-      let failedLoginCount = 0;
-      for (const eventId of recentEvents) {
-        const eventData = await redisService.get(`security_event:${eventId}`);
-        if (eventData) {
-          const event = JSON.parse(eventData);
-          if (event.eventType === SECURITY_EVENTS.LOGIN_FAILURE && 
-              new Date(event.timestamp).getTime() > windowStart) {
-            failedLoginCount++;
-          }
-        }
-      }
+      const failedLoginCount = await redisService.getWindowCount(
+        generateEventCounterScope('ip', securityEvent.deviceInfo.ip, SECURITY_EVENTS.LOGIN_FAILURE),
+        threshold.windowMs
+      );
 
       if (failedLoginCount >= threshold.count) {
         return {
@@ -300,25 +307,14 @@ class SecurityMonitorService {
   async detectPrivilegeEscalationAnomaly(securityEvent) {
     try {
       const threshold = this.alertThresholds.privilegeEscalation;
-      const windowStart = Date.now() - threshold.windowMs;
-      
+
       if (!securityEvent.userId) return null;
 
       // Count privilege escalation attempts from this user in the time window
-      const userEventKey = `user_events:${securityEvent.userId}`;
-      const recentEvents = await redisService.getSet(userEventKey);
-      
-      let escalationCount = 0;
-      for (const eventId of recentEvents) {
-        const eventData = await redisService.get(`security_event:${eventId}`);
-        if (eventData) {
-          const event = JSON.parse(eventData);
-          if (event.eventType === SECURITY_EVENTS.PRIVILEGE_ESCALATION && 
-              new Date(event.timestamp).getTime() > windowStart) {
-            escalationCount++;
-          }
-        }
-      }
+      const escalationCount = await redisService.getWindowCount(
+        generateEventCounterScope('userId', securityEvent.userId, SECURITY_EVENTS.PRIVILEGE_ESCALATION),
+        threshold.windowMs
+      );
 
       if (escalationCount >= threshold.count) {
         return {
@@ -349,23 +345,12 @@ class SecurityMonitorService {
   async detectSuspiciousActivityAnomaly(securityEvent) {
     try {
       const threshold = this.alertThresholds.suspiciousActivity;
-      const windowStart = Date.now() - threshold.windowMs;
-      
+
       // Count suspicious activities from this IP in the time window
-      const ipEventKey = `ip_events:${securityEvent.deviceInfo.ip}`;
-      const recentEvents = await redisService.getSet(ipEventKey);
-      
-      let suspiciousCount = 0;
-      for (const eventId of recentEvents) {
-        const eventData = await redisService.get(`security_event:${eventId}`);
-        if (eventData) {
-          const event = JSON.parse(eventData);
-          if (event.eventType === SECURITY_EVENTS.SUSPICIOUS_ACTIVITY && 
-              new Date(event.timestamp).getTime() > windowStart) {
-            suspiciousCount++;
-          }
-        }
-      }
+      const suspiciousCount = await redisService.getWindowCount(
+        generateEventCounterScope('ip', securityEvent.deviceInfo.ip, SECURITY_EVENTS.SUSPICIOUS_ACTIVITY),
+        threshold.windowMs
+      );
 
       if (suspiciousCount >= threshold.count) {
         return {
@@ -396,25 +381,14 @@ class SecurityMonitorService {
   async detectDataAccessAnomaly(securityEvent) {
     try {
       const threshold = this.alertThresholds.dataAccess;
-      const windowStart = Date.now() - threshold.windowMs;
-      
+
       if (!securityEvent.userId) return null;
 
       // Count data access events from this user in the time window
-      const userEventKey = `user_events:${securityEvent.userId}`;
-      const recentEvents = await redisService.getSet(userEventKey);
-      
-      let accessCount = 0;
-      for (const eventId of recentEvents) {
-        const eventData = await redisService.get(`security_event:${eventId}`);
-        if (eventData) {
-          const event = JSON.parse(eventData);
-          if (event.eventType === SECURITY_EVENTS.DATA_ACCESS && 
-              new Date(event.timestamp).getTime() > windowStart) {
-            accessCount++;
-          }
-        }
-      }
+      const accessCount = await redisService.getWindowCount(
+        generateEventCounterScope('userId', securityEvent.userId, SECURITY_EVENTS.DATA_ACCESS),
+        threshold.windowMs
+      );
 
       if (accessCount >= threshold.count) {
         return {
@@ -629,60 +603,63 @@ class SecurityMonitorService {
     }
   }
 
+  /**
+   * Get the day-bucketed timeline keys covering a time range
+   * @param {number} startMs - Range start in milliseconds
+   * @param {number} endMs - Range end in milliseconds
+   * @param {string} eventType - Optional event type
+   * @returns {Array<string>} Timeline keys, one per UTC day
+   */
+  getDayTimelineKeys(startMs, endMs, eventType = null) {
+    const keys = [];
+    const dayMs = 24 * 60 * 60 * 1000;
+    const prefix = eventType
+      ? `${REDIS_PREFIXES.SECURITY_TIMELINE}${eventType}:`
+      : REDIS_PREFIXES.SECURITY_TIMELINE;
+
+    for (let day = Math.floor(startMs / dayMs); day <= Math.floor(endMs / dayMs); day++) {
+      keys.push(`${prefix}${new Date(day * dayMs).toISOString().split('T')[0]}`);
+    }
+
+    return keys;
+  }
+
   /**
    * Get security events for a specific time range
+   * Reads only the timeline entries scored inside the range, then fetches the
+   * matching events in one batch.
    * @param {Date} startDate - Start date
    * @param {Date} endDate - End date
    * @param {string} eventType - Optional event type filter
-   * @returns {Array} Array of security events
+   * @param {Object} filters - Optional filters
+   * @param {string} filters.userId - Only events for this user
+   * @param {string} filters.ip - Only events from this IP address
+   * @returns {Array} Array of security events, newest first
    */
-  async getSecurityEvents(startDate, endDate, eventType = null) {
+  async getSecurityEvents(startDate, endDate, eventType = null, filters = {}) {
     try {
-      const events = [];
-      const start = new Date(startDate);
-      const end = new Date(endDate);
-      
-      // Generate date range
-      const currentDate = new Date(start);
-      while (currentDate <= end) {
-        const dateKey = currentDate.toISOString().split('T')[0];
-        
-        if (eventType) {
-          const timeSeriesKey = `security_events:${eventType}:${dateKey}`;
-          const eventIds = await redisService.getSet(timeSeriesKey);
-          
-          for (const eventId of eventIds) {
-            const eventData = await redisService.get(`security_event:${eventId}`);
-            if (eventData) {
-              const event = JSON.parse(eventData);
-              const eventTime = new Date(event.timestamp);
-              if (eventTime >= start && eventTime <= end) {
-                events.push(event);
-              }
-            }
-          }
-        } else {
-          // Get all event types for this date
-          for (const type of Object.values(SECURITY_EVENTS)) {
-            const timeSeriesKey = `security_events:${type}:${dateKey}`;
-            const eventIds = await redisService.getSet(timeSeriesKey);
-            
-            for (const eventId of eventIds) {
-              const eventData = await redisService.get(`security_event:${eventId}`);
-              if (eventData) {
-                const event = JSON.parse(eventData);
-                const eventTime = new Date(event.timestamp);
-                if (eventTime >= start && eventTime <= end) {
-                  events.push(event);
-                }
-              }
-            }
-          }
-        }
-        
-        currentDate.setDate(currentDate.getDate() + 1);
+      const start = new Date(startDate).getTime();
+      const end = new Date(endDate).getTime();
+
+      let timelineKeys;
+      if (filters.userId) {
+        timelineKeys = [`${REDIS_PREFIXES.USER_TIMELINE}${filters.userId}`];
+      } else if (filters.ip) {
+        timelineKeys = [`${REDIS_PREFIXES.IP_TIMELINE}${filters.ip}`];
+      } else {
+        timelineKeys = this.getDayTimelineKeys(start, end, eventType);
       }
-      
+
+      const eventIds = await redisService.getTimelineRange(timelineKeys, start, end);
+      let events = await redisService.getSecurityEvents(eventIds);
+
+      if (eventType && (filters.userId || filters.ip)) {
+        events = events.filter(event => event.eventType === eventType);
+      }
+      if (filters.userId && filters.ip) {
+        events = events.filter(event => event.deviceInfo && event.deviceInfo.ip === filters.ip);
+      }
+
       // Sort by timestamp
       return events.sort((a, b) => new Date(b.timestamp) - new Date(a.timestamp));
     } catch (error) {
@@ -767,33 +744,8 @@ class SecurityMonitorService {
    */
   async getRecentEvents(userId, eventType, timeWindowMs = 24 * 60 * 60 * 1000) {
     try {
-      const key = `security_events:${userId}:${eventType}`;
-      const cutoffTime = Date.now() - timeWindowMs;
-      
-      // Get events from Redis
-      const events = await redisService.getClient().zrangebyscore(
-        key,
-        cutoffTime,
-        '+inf',
-        'WITHSCORES'
-      );
-      
-      // Parse events
-      const recentEvents = [];
-      for (let i = 0; i < events.length; i += 2) {
-        try {
-          const eventData = JSON.parse(events[i]);
-          const timestamp = parseInt(events[i + 1]);
-          recentEvents.push({
-            ...eventData,
-            timestamp: new Date(timestamp)
-          });
-        } catch (parseError) {
-          console.error('Error parsing security event:', parseError);
-        }
-      }
-      
-      return recentEvents;
+      const now = Date.now();
+      return await this.getSecurityEvents(new Date(now - timeWindowMs), new Date(now), eventType, { userId });
     } catch (error) {
       console.error('Error getting recent events:', error);
       return [];
@@ -44,11 +44,27 @@ module.exports = {
   // Redis Key Prefixes
   REDIS_PREFIXES: {
     SESSION: 'session:',
+    USER_SESSIONS: 'user_sessions:',
     RATE_LIMIT: 'rate_limit:',
+    RATE_LIMIT_COUNTER: 'rate_limit_counter:',
     TOKEN_BLACKLIST: 'token_blacklist:',
     SECURITY_EVENT: 'security_event:',
+    EVENT_COUNTER: 'event_counter:',
+    SECURITY_TIMELINE: 'security_timeline:',
+    USER_TIMELINE: 'user_timeline:',
+    IP_TIMELINE: 'ip_timeline:',
     IP_REPUTATION: 'ip_reputation:',
     USER_ACTIVITY: 'user_activity:',
+    API_KEY_USAGE: 'api_key_usage:',
+    NOTIFICATION_UNREAD: 'notification_unread:',
+    NOTIFICATION_UNREAD_VERSION: 'notification_unread_version:',
+  },
+
+  // Redis Pub/Sub Channels
+  REDIS_CHANNELS: {
+    API_KEY_INVALIDATION: 'api_key:invalidate',
+    STREAM_EVENTS: 'stream:events',
+    SEAT_AVAILABILITY_INVALIDATION: 'seat_availability:invalidate',
   },
 
   // Token Types
@@ -90,5 +106,7 @@ module.exports = {
     RATE_LIMIT_WINDOW: 15 * 60 * 1000, // 15 minutes
     IP_BLOCK_TTL: 60 * 60 * 1000, // 1 hour
     SECURITY_EVENT_TTL: 90 * 24 * 60 * 60 * 1000, // 90 days
+    EVENT_COUNTER_BUCKET: 10 * 1000, // 10 seconds
+    EVENT_COUNTER_RETENTION: 2 * 60 * 60 * 1000, // 2 hours, longest detection window plus headroom
   },
 };
\ No newline at end of file
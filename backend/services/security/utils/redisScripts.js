@@ -0,0 +1,114 @@
+/**
+ * Redis Lua Scripts
+ * Server-side scripts run through RedisService.runScript (EVALSHA)
+ */
+
+/**
+ * Sliding-window counter rate limit
+ * Estimates the rolling count from the current and previous fixed windows
+ * and, if under the limit, reserves `grant` slots with a single INCRBY.
+ * Callers well under the limit may reserve several slots at once (a lease)
+ * to serve locally; close to the limit only one slot is granted.
+ *
+ * KEYS[1] - counter for the current window
+ * KEYS[2] - counter for the previous window
+ * ARGV[1] - weight of the previous window still inside the rolling window (0..1)
+ * ARGV[2] - maximum requests per window
+ * ARGV[3] - counter expiry in milliseconds
+ * ARGV[4] - slots requested for a local lease
+ *
+ * Returns { allowed (0|1), estimated count including this request, granted slots }
+ */
+const SLIDING_WINDOW_RATE_LIMIT = `
+local current = tonumber(redis.call('GET', KEYS[1]) or '0')
+local previous = tonumber(redis.call('GET', KEYS[2]) or '0')
+local max = tonumber(ARGV[2])
+local estimated = math.floor(previous * tonumber(ARGV[1])) + current
+
+if estimated >= max then
+  return {0, estimated, 0}
+end
+
+local grant = tonumber(ARGV[4])
+if estimated + grant > max / 2 then
+  grant = 1
+end
+
+if redis.call('INCRBY', KEYS[1], grant) == grant then
+  redis.call('PEXPIRE', KEYS[1], ARGV[3])
+end
+
+return {1, estimated + 1, grant}
+`;
+
+/**
+ * Adjust cached counters that are already present
+ * Missing counters are left missing so the next read recounts from the
+ * source of truth instead of starting from a partial value. Counters never
+ * go below zero. Each counter has a version key that is bumped whenever the
+ * counter exists or a fill has registered one, so a fill or reconcile that
+ * read the old version knows its count may be missing this adjustment.
+ *
+ * KEYS     - counters to adjust, followed by their version keys in the same order
+ * ARGV[1]  - amount to add (negative to subtract)
+ * ARGV[2]  - version key expiry in seconds
+ *
+ * Returns the number of counters adjusted
+ */
+const ADJUST_COUNTERS_IF_PRESENT = `
+local delta = tonumber(ARGV[1])
+local count = #KEYS / 2
+local adjusted = 0
+
+for i = 1, count do
+  local key = KEYS[i]
+  local versionKey = KEYS[count + i]
+  local value = redis.call('GET', key)
+  if value or redis.call('EXISTS', versionKey) == 1 then
+    redis.call('INCR', versionKey)
+    redis.call('EXPIRE', versionKey, ARGV[2])
+  end
+  if value then
+    local updated = math.max(tonumber(value) + delta, 0)
+    redis.call('SET', key, updated, 'KEEPTTL')
+    adjusted = adjusted + 1
+  end
+end
+
+return adjusted
+`;
+
+/**
+ * Write counters computed from the source of truth, unless adjusted since
+ * Each value is written only if its version key still holds the version
+ * read before the count was taken (a missing key counts as '0'), so a
+ * count that may have missed a concurrent adjustment is dropped instead of
+ * overwriting it.
+ *
+ * KEYS     - counters to write, followed by their version keys in the same order
+ * ARGV[1]  - counter expiry in seconds
+ * ARGV[2..n+1]    - counted values
+ * ARGV[n+2..2n+1] - versions read before counting
+ *
+ * Returns the number of counters written
+ */
+const SET_COUNTERS_IF_UNCHANGED = `
+local count = #KEYS / 2
+local written = 0
+
+for i = 1, count do
+  local version = redis.call('GET', KEYS[count + i]) or '0'
+  if version == ARGV[count + i + 1] then
+    redis.call('SET', KEYS[i], ARGV[i + 1], 'EX', ARGV[1])
+    written = written + 1
+  end
+end
+
+return written
+`;
+
+module.exports = {
+  SLIDING_WINDOW_RATE_LIMIT,
+  ADJUST_COUNTERS_IF_PRESENT,
+  SET_COUNTERS_IF_UNCHANGED
+};
@@ -157,6 +157,17 @@ function formatSecurityEvent(eventType, severity, details, userId = null) {
   };
 }
 
+/**
+ * Build the sliding-window counter scope for an event dimension
+ * @param {string} groupBy - Dimension name ('ip' or 'userId')
+ * @param {string} value - Dimension value
+ * @param {string} eventType - Security event type
+ * @returns {string} Counter scope
+ */
+function generateEventCounterScope(groupBy, value, eventType) {
+  return `${groupBy}:${value}:${eventType}`;
+}
+
 module.exports = {
   generateSecureToken,
   generateRedisKey,
@@ -168,4 +179,5 @@ module.exports = {
   isValidIP,
   generateCorrelationId,
   formatSecurityEvent,
+  generateEventCounterScope,
 };
\ No newline at end of file
@@ -0,0 +1,426 @@
+/**
+ * Stream Service
+ * Server-Sent Events push channel for notifications, bookings and seat
+ * changes. Events are delivered to this instance's connections directly and
+ * relayed to every other instance over a Redis pub/sub backplane. Without
+ * Redis, events still reach clients connected to the publishing instance.
+ * Open streams are re-authorised on each heartbeat, so an expired or revoked
+ * token or a deactivated account loses its streams within one heartbeat
+ * plus the principal cache TTL.
+ */
+
+const crypto = require('crypto');
+const jwt = require('jsonwebtoken');
+const redisService = require('./security/redisService');
+const principalCacheService = require('./security/principalCacheService');
+const { REDIS_CHANNELS } = require('./security/utils/constants');
+const { sanitizeForLogging } = require('./security/utils/securityHelpers');
+
+// Library filters a single connection may ask for
+const MAX_LIBRARY_FILTERS = 20;
+const TICKET_AUDIENCE = 'stream';
+
+class StreamService {
+  constructor() {
+    this.instanceId = crypto.randomUUID();
+    this.heartbeatMs = parseInt(process.env.STREAM_HEARTBEAT_MS, 10) || 25 * 1000;
+    // Bytes queued on a socket before the client is considered too slow
+    this.maxBufferBytes = parseInt(process.env.STREAM_MAX_BUFFER_BYTES, 10) || 64 * 1024;
+    this.maxConnectionsPerUser = parseInt(process.env.STREAM_MAX_CONNECTIONS_PER_USER, 10) || 5;
+    this.ticketTtlSeconds = parseInt(process.env.STREAM_TICKET_TTL_SECONDS, 10) || 30;
+
+    // userId -> Set of connections
+    this.connections = new Map();
+    this.connectionCount = 0;
+    this.heartbeatTimer = null;
+    this.revalidating = null;
+
+    this.subscribed = false;
+    this.subscribing = null;
+    this.stats = { published: 0, relayed: 0, delivered: 0, slowClosed: 0, revoked: 0 };
+
+    if (typeof redisService.onSubscriberLost === 'function') {
+      // Subscribe again on a new connection at the next heartbeat or stream
+      redisService.onSubscriberLost(() => {
+        this.subscribed = false;
+      });
+    }
+  }
+
+  // Tickets are signed with their own key so no other route accepts them
+  ticketSecret() {
+    return crypto.createHmac('sha256', process.env.JWT_SECRET).update('stream-ticket').digest('hex');
+  }
+
+  /**
+   * Issue a short-lived ticket for opening an event stream
+   * EventSource cannot send headers, so the ticket goes in the URL in place
+   * of the access token. It carries the access token's version and expiry,
+   * so the stream is revoked along with that token.
+   * @param {string} userId - Authenticated user
+   * @param {Object} claims - Claims of the access token used to ask for it
+   * @returns {string} Signed ticket
+   */
+  issueTicket(userId, claims = {}) {
+    const payload = { id: userId.toString() };
+    if (claims.tokenVersion !== undefined) payload.tokenVersion = claims.tokenVersion;
+    if (claims.exp) payload.tokenExp = claims.exp;
+
+    return jwt.sign(payload, this.ticketSecret(), {
+      expiresIn: this.ticketTtlSeconds,
+      audience: TICKET_AUDIENCE
+    });
+  }
+
+  /**
+   * Verify a stream ticket
+   * @param {string} ticket - Ticket from issueTicket
+   * @returns {Object} Access token claims ({ id, tokenVersion, exp }) for connect()
+   * @throws If the ticket is invalid or expired
+   */
+  verifyTicket(ticket) {
+    const decoded = jwt.verify(ticket, this.ticketSecret(), { audience: TICKET_AUDIENCE });
+    return { id: decoded.id, tokenVersion: decoded.tokenVersion, exp: decoded.tokenExp };
+  }
+
+  /**
+   * Open an event stream for an authenticated request
+   * @param {Object} req - Express request (req.user and req.tokenClaims set by auth middleware)
+   * @param {Object} res - Express response
+   * @param {Object} options - Stream options
+   * @param {Array<string>} options.libraryIds - Only receive seat events for these libraries
+   * @returns {Object} Connection handle
+   */
+  connect(req, res, options = {}) {
+    const userId = req.user._id.toString();
+    const claims = req.tokenClaims || {};
+    const connection = {
+      id: crypto.randomUUID(),
+      userId,
+      role: req.user.role,
+      tokenVersion: claims.tokenVersion,
+      expiresAt: claims.exp ? claims.exp * 1000 : null,
+      libraryIds: options.libraryIds && options.libraryIds.length > 0
+        ? new Set(options.libraryIds.slice(0, MAX_LIBRARY_FILTERS).map(String))
+        : null,
+      res,
+      closed: false
+    };
+
+    res.writeHead(200, {
+      'Content-Type': 'text/event-stream',
+      'Cache-Control': 'no-cache, no-transform',
+      Connection: 'keep-alive',
+      // Stop reverse proxies from holding events back
+      'X-Accel-Buffering': 'no'
+    });
+    res.write(`retry: ${this.heartbeatMs}\n\n`);
+
+    let userConnections = this.connections.get(userId);
+    if (!userConnections) {
+      userConnections = new Set();
+      this.connections.set(userId, userConnections);
+    }
+    // Close the oldest stream rather than refuse a new tab
+    if (userConnections.size >= this.maxConnectionsPerUser) {
+      this.disconnect(userConnections.values().next().value);
+    }
+    userConnections.add(connection);
+    this.connectionCount++;
+
+    req.on('close', () => this.disconnect(connection));
+
+    this.startHeartbeat();
+    this.ensureSubscribed();
+    this.write(connection, this.formatEvent('ready', { connectionId: connection.id }));
+    return connection;
+  }
+
+  /**
+   * Remove a connection and end its response
+   * @param {Object} connection - Connection handle
+   */
+  disconnect(connection) {
+    if (!connection || connection.closed) return;
+    connection.closed = true;
+
+    const userConnections = this.connections.get(connection.userId);
+    if (userConnections) {
+      userConnections.delete(connection);
+      if (userConnections.size === 0) this.connections.delete(connection.userId);
+    }
+    this.connectionCount--;
+
+    if (!connection.res.writableEnded) {
+      connection.res.end();
+    }
+    if (this.connectionCount === 0) {
+      this.stopHeartbeat();
+    }
+  }
+
+  /**
+   * Serialise an SSE frame
+   * @param {string} event - Event name
+   * @param {Object} data - JSON payload
+   * @returns {string} Frame
+   */
+  formatEvent(event, data) {
+    return `event: ${event}\ndata: ${JSON.stringify(data)}\n\n`;
+  }
+
+  /**
+   * Write a frame, closing connections whose send buffer is full
+   * A client that cannot keep up is dropped; EventSource reconnects and the
+   * client refetches state, which is cheaper than buffering without bound.
+   * @param {Object} connection - Connection handle
+   * @param {string} frame - SSE frame
+   * @returns {boolean} True if the frame was queued
+   */
+  write(connection, frame) {
+    if (connection.closed) return false;
+
+    const buffered = connection.res.writableLength || 0;
+    if (buffered + Buffer.byteLength(frame) > this.maxBufferBytes) {
+      this.stats.slowClosed++;
+      this.disconnect(connection);
+      return false;
+    }
+
+    connection.res.write(frame);
+    return true;
+  }
+
+  /**
+   * Publish an event to matching connections on every instance
+   * Never throws; a failed relay only affects other instances.
+   * @param {string} event - Event name
+   * @param {Object} data - JSON payload
+   * @param {Object} target - Recipients; empty for everyone
+   * @param {Array<string>} target.userIds - Only these users
+   * @param {string} target.role - Only users with this role
+   * @param {string} target.libraryId - Library the event concerns, for filtered streams
+   */
+  publish(event, data, target = {}) {
+    const message = {
+      origin: this.instanceId,
+      event,
+      data,
+      userIds: target.userIds ? target.userIds.map(String) : undefined,
+      role: target.role,
+      libraryId: target.libraryId ? target.libraryId.toString() : undefined
+    };
+
+    this.stats.published++;
+    this.deliver(message);
+
+    if (typeof redisService.isReady !== 'function' || !redisService.isReady()) {
+      return;
+    }
+
+    redisService.publish(REDIS_CHANNELS.STREAM_EVENTS, JSON.stringify(message)).catch((error) => {
+      console.error('StreamService: Failed to relay event:', sanitizeForLogging({
+        event,
+        error: error.message
+      }));
+    });
+  }
+
+  /**
+   * Deliver an event to this instance's matching connections
+   * @param {Object} message - Event message
+   * @returns {number} Connections written to
+   */
+  deliver(message) {
+    if (this.connectionCount === 0) return 0;
+
+    const targets = [];
+    if (message.userIds) {
+      for (const userId of message.userIds) {
+        const userConnections = this.connections.get(userId);
+        if (userConnections) targets.push(...userConnections);
+      }
+    } else {
+      for (const userConnections of this.connections.values()) {
+        targets.push(...userConnections);
+      }
+    }
+
+    const frame = this.formatEvent(message.event, message.data);
+    let delivered = 0;
+    for (const connection of targets) {
+      if (message.role && message.role !== 'all' && connection.role !== message.role) continue;
+      if (message.libraryId && connection.libraryIds && !connection.libraryIds.has(message.libraryId)) continue;
+      if (this.write(connection, frame)) delivered++;
+    }
+
+    this.stats.delivered += delivered;
+    return delivered;
+  }
+
+  /**
+   * Handle an event relayed by another instance
+   * @param {string} payload - JSON message
+   */
+  handleMessage(payload) {
+    try {
+      const message = JSON.parse(payload);
+      // This instance already delivered its own events
+      if (message.origin === this.instanceId) return;
+      this.stats.relayed++;
+      this.deliver(message);
+    } catch (error) {
+      console.error('StreamService: Ignoring malformed event:', sanitizeForLogging({
+        error: error.message
+      }));
+    }
+  }
+
+  /**
+   * Subscribe to the backplane in the background if not already subscribed
+   * @returns {Promise<boolean>} Resolves true once subscribed
+   */
+  ensureSubscribed() {
+    if (this.subscribed) {
+      return Promise.resolve(true);
+    }
+    if (this.subscribing) {
+      return this.subscribing;
+    }
+    if (typeof redisService.isReady !== 'function' || !redisService.isReady()) {
+      return Promise.resolve(false);
+    }
+
+    this.subscribing = redisService.subscribe(
+      REDIS_CHANNELS.STREAM_EVENTS,
+      (payload) => this.handleMessage(payload)
+    )
+      .then(() => {
+        this.subscribed = true;
+        return true;
+      })
+      .catch(() => false)
+      .finally(() => {
+        this.subscribing = null;
+      });
+
+    return this.subscribing;
+  }
+
+  /**
+   * Start the shared heartbeat timer
+   * Comment frames keep proxies from closing idle streams and surface dead
+   * sockets; they also give subscription a retry point if Redis was down.
+   */
+  startHeartbeat() {
+    if (this.heartbeatTimer) return;
+
+    this.heartbeatTimer = setInterval(() => this.heartbeat(), this.heartbeatMs);
+    if (this.heartbeatTimer.unref) {
+      this.heartbeatTimer.unref();
+    }
+  }
+
+  /**
+   * Stop the heartbeat timer
+   */
+  stopHeartbeat() {
+    if (this.heartbeatTimer) {
+      clearInterval(this.heartbeatTimer);
+      this.heartbeatTimer = null;
+    }
+  }
+
+  /**
+   * Send a heartbeat to every connection and re-authorise them
+   */
+  heartbeat() {
+    this.ensureSubscribed();
+    for (const userConnections of this.connections.values()) {
+      for (const connection of [...userConnections]) {
+        this.write(connection, ': heartbeat\n\n');
+      }
+    }
+    this.revalidate();
+  }
+
+  /**
+   * Close streams whose token or account is no longer valid
+   * Applies the same checks as the auth middleware against the cached
+   * principal. A closed stream reconnects through the middleware, which
+   * refuses it. Lookup failures keep the stream open until the next run.
+   * @returns {Promise<number>} Connections closed
+   */
+  revalidate() {
+    if (this.revalidating) {
+      return this.revalidating;
+    }
+
+    this.revalidating = (async () => {
+      let closed = 0;
+      const now = Date.now();
+
+      for (const [userId, userConnections] of [...this.connections.entries()]) {
+        let user;
+        try {
+          user = await principalCacheService.getPrincipal(userId);
+        } catch (error) {
+          console.error('StreamService: Failed to revalidate streams:', sanitizeForLogging({
+            userId,
+            error: error.message
+          }));
+          continue;
+        }
+
+        for (const connection of [...userConnections]) {
+          const revoked = !user || !user.isActive ||
+            (connection.expiresAt !== null && connection.expiresAt <= now) ||
+            (connection.tokenVersion !== undefined && connection.tokenVersion !== (user.tokenVersion || 0));
+
+          if (revoked) {
+            this.disconnect(connection);
+            closed++;
+          } else {
+            // Role-targeted events follow role changes
+            connection.role = user.role;
+          }
+        }
+      }
+
+      this.stats.revoked += closed;
+      return closed;
+    })().finally(() => {
+      this.revalidating = null;
+    });
+
+    return this.revalidating;
+  }
+
+  /**
+   * Close every connection
+   */
+  closeAll() {
+    for (const userConnections of [...this.connections.values()]) {
+      for (const connection of [...userConnections]) {
+        this.disconnect(connection);
+      }
+    }
+    this.stopHeartbeat();
+  }
+
+  /**
+   * Get stream statistics
+   * @returns {Object} Stream statistics
+   */
+  getStats() {
+    return {
+      ...this.stats,
+      connections: this.connectionCount,
+      users: this.connections.size,
+      subscribed: this.subscribed
+    };
+  }
+}
+
+module.exports = new StreamService();
+module.exports.StreamService = StreamService;
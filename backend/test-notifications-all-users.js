@@ -1,6 +1,8 @@
 const mongoose = require('mongoose');
 const Notification = require('./models/Notification');
+const NotificationInbox = require('./models/NotificationInbox');
 const User = require('./models/User');
+const NotificationService = require('./services/notificationService');
 require('dotenv').config();
 
 const createNotificationsForAllUsers = async () => {
@@ -23,38 +25,37 @@ const createNotificationsForAllUsers = async () => {
 
     // Clear all notifications
     await Notification.deleteMany({});
+    await NotificationInbox.deleteMany({});
     console.log('\nCleared all existing notifications');
 
-    // Create notifications for each user type
+    // Create notifications for each user type; sent through the service so
+    // each one gets an inbox record
     for (const user of usersByRole.user) {
-      await Notification.create({
+      await NotificationService.sendToUsers([user._id], {
         title: 'Welcome User! 👋',
         message: 'Welcome to LibraryBook! Start exploring libraries.',
         type: 'system',
         priority: 'medium',
-        recipients: [{ userId: user._id, read: false }],
         createdBy: user._id
       });
     }
 
     for (const admin of usersByRole.admin) {
-      await Notification.create({
+      await NotificationService.sendToUsers([admin._id], {
         title: 'Admin Dashboard Ready 🔑',
         message: 'Your admin dashboard is ready. Manage your library efficiently.',
         type: 'admin',
         priority: 'medium',
-        recipients: [{ userId: admin._id, read: false }],
         createdBy: admin._id
       });
     }
 
     for (const superadmin of usersByRole.superadmin) {
-      await Notification.create({
+      await NotificationService.sendToUsers([superadmin._id], {
         title: 'Super Admin Access 👑',
         message: 'Super Admin panel is active. Monitor all system activities.',
         type: 'system',
         priority: 'high',
-        recipients: [{ userId: superadmin._id, read: false }],
         createdBy: superadmin._id
       });
     }
@@ -0,0 +1,491 @@
+/**
+ * In-memory Redis stand-in for tests
+ * Implements the subset of the node-redis v4 client API used by the security
+ * services, including key expiry and MULTI/pipeline batching, so Redis-backed
+ * behaviour can be tested without a Redis server. Every command sent is
+ * counted in `commandCount` (a MULTI counts each queued command).
+ *
+ * Lua cannot run here, so scripts are backed by JavaScript ports registered
+ * with `defineScript(source, impl)`; an EVALSHA counts as one command.
+ */
+
+const crypto = require('crypto');
+
+const globToRegex = (pattern) => new RegExp(
+  '^' + pattern.replace(/[.+^${}()|[\]\\]/g, '\\$&').replace(/\*/g, '.*').replace(/\?/g, '.') + '$'
+);
+
+const parseScore = (value) => {
+  if (value === '-inf' || value === -Infinity) return -Infinity;
+  if (value === '+inf' || value === 'inf' || value === Infinity) return Infinity;
+  if (typeof value === 'string' && value.startsWith('(')) return { exclusive: true, value: parseFloat(value.slice(1)) };
+  return parseFloat(value);
+};
+
+const inRange = (score, min, max) => {
+  const low = parseScore(min);
+  const high = parseScore(max);
+  const aboveLow = typeof low === 'object' ? score > low.value : score >= low;
+  const belowHigh = typeof high === 'object' ? score < high.value : score <= high;
+  return aboveLow && belowHigh;
+};
+
+class FakeRedisClient {
+  constructor() {
+    this.store = new Map();
+    this.expiries = new Map();
+    this.isReady = true;
+    this.commandCount = 0;
+    this.subscribers = new Map();
+    this.scriptImpls = new Map();
+    this.loadedScripts = new Set();
+  }
+
+  // ---- internals -------------------------------------------------------
+
+  alive(key) {
+    const expiresAt = this.expiries.get(key);
+    if (expiresAt !== undefined && expiresAt <= Date.now()) {
+      this.store.delete(key);
+      this.expiries.delete(key);
+    }
+    return this.store.has(key);
+  }
+
+  read(key, type) {
+    if (!this.alive(key)) return undefined;
+    const entry = this.store.get(key);
+    if (type && entry.type !== type) {
+      throw new Error('WRONGTYPE Operation against a key holding the wrong kind of value');
+    }
+    return entry.value;
+  }
+
+  write(key, type, value) {
+    this.store.set(key, { type, value });
+  }
+
+  ensure(key, type, create) {
+    let value = this.read(key, type);
+    if (value === undefined) {
+      value = create();
+      this.write(key, type, value);
+    }
+    return value;
+  }
+
+  count(n = 1) {
+    this.commandCount += n;
+  }
+
+  // ---- connection ------------------------------------------------------
+
+  on() {
+    return this;
+  }
+
+  async connect() {
+    this.isReady = true;
+  }
+
+  async quit() {
+    this.isReady = false;
+  }
+
+  async flushAll() {
+    this.count();
+    this.store.clear();
+    this.expiries.clear();
+    return 'OK';
+  }
+
+  // ---- strings ---------------------------------------------------------
+
+  async get(key) {
+    this.count();
+    const value = this.read(key, 'string');
+    return value === undefined ? null : value;
+  }
+
+  async mGet(keys) {
+    this.count();
+    return keys.map(key => {
+      const value = this.read(key, 'string');
+      return value === undefined ? null : value;
+    });
+  }
+
+  async set(key, value, options = {}) {
+    this.count();
+    if (options.NX && this.alive(key)) return null;
+    this.write(key, 'string', String(value));
+    this.expiries.delete(key);
+    if (options.EX) this.expiries.set(key, Date.now() + options.EX * 1000);
+    if (options.PX) this.expiries.set(key, Date.now() + options.PX);
+    return 'OK';
+  }
+
+  async setEx(key, seconds, value) {
+    this.count();
+    this.write(key, 'string', String(value));
+    this.expiries.set(key, Date.now() + seconds * 1000);
+    return 'OK';
+  }
+
+  async incrBy(key, increment) {
+    this.count();
+    const current = parseInt(this.read(key, 'string') || '0', 10);
+    const next = current + increment;
+    this.write(key, 'string', String(next));
+    return next;
+  }
+
+  async incr(key) {
+    this.count(-1);
+    return this.incrBy(key, 1);
+  }
+
+  async decr(key) {
+    this.count(-1);
+    return this.incrBy(key, -1);
+  }
+
+  async decrBy(key, decrement) {
+    this.count(-1);
+    return this.incrBy(key, -decrement);
+  }
+
+  async incrByFloat(key, increment) {
+    this.count();
+    const current = parseFloat(this.read(key, 'string') || '0');
+    const next = current + parseFloat(increment);
+    this.write(key, 'string', String(next));
+    return String(next);
+  }
+
+  // ---- keys ------------------------------------------------------------
+
+  async del(keys) {
+    this.count();
+    let removed = 0;
+    for (const key of [].concat(keys)) {
+      if (this.alive(key)) {
+        this.store.delete(key);
+        this.expiries.delete(key);
+        removed++;
+      }
+    }
+    return removed;
+  }
+
+  async exists(keys) {
+    this.count();
+    return [].concat(keys).filter(key => this.alive(key)).length;
+  }
+
+  async expire(key, seconds) {
+    this.count();
+    if (!this.alive(key)) return false;
+    this.expiries.set(key, Date.now() + seconds * 1000);
+    return true;
+  }
+
+  async pExpire(key, milliseconds) {
+    this.count();
+    if (!this.alive(key)) return false;
+    this.expiries.set(key, Date.now() + milliseconds);
+    return true;
+  }
+
+  async ttl(key) {
+    this.count();
+    if (!this.alive(key)) return -2;
+    const expiresAt = this.expiries.get(key);
+    return expiresAt === undefined ? -1 : Math.ceil((expiresAt - Date.now()) / 1000);
+  }
+
+  async keys(pattern) {
+    this.count();
+    const regex = globToRegex(pattern);
+    return [...this.store.keys()].filter(key => this.alive(key) && regex.test(key));
+  }
+
+  async *scanIterator({ MATCH = '*' } = {}) {
+    this.count();
+    const regex = globToRegex(MATCH);
+    for (const key of [...this.store.keys()]) {
+      if (this.alive(key) && regex.test(key)) yield key;
+    }
+  }
+
+  // ---- hashes ----------------------------------------------------------
+
+  async hSet(key, field, value) {
+    this.count();
+    const hash = this.ensure(key, 'hash', () => new Map());
+    const entries = typeof field === 'object' ? Object.entries(field) : [[field, value]];
+    let added = 0;
+    for (const [name, fieldValue] of entries) {
+      if (!hash.has(name)) added++;
+      hash.set(name, String(fieldValue));
+    }
+    return added;
+  }
+
+  async hGet(key, field) {
+    this.count();
+    const hash = this.read(key, 'hash');
+    return hash && hash.has(field) ? hash.get(field) : null;
+  }
+
+  async hGetAll(key) {
+    this.count();
+    const hash = this.read(key, 'hash');
+    return hash ? Object.fromEntries(hash) : {};
+  }
+
+  async hIncrBy(key, field, increment) {
+    this.count();
+    const hash = this.ensure(key, 'hash', () => new Map());
+    const next = parseInt(hash.get(field) || '0', 10) + increment;
+    hash.set(field, String(next));
+    return next;
+  }
+
+  async hDel(key, fields) {
+    this.count();
+    const hash = this.read(key, 'hash');
+    if (!hash) return 0;
+    return [].concat(fields).filter(field => hash.delete(field)).length;
+  }
+
+  // ---- sets ------------------------------------------------------------
+
+  async sAdd(key, members) {
+    this.count();
+    const set = this.ensure(key, 'set', () => new Set());
+    let added = 0;
+    for (const member of [].concat(members)) {
+      if (!set.has(String(member))) {
+        set.add(String(member));
+        added++;
+      }
+    }
+    return added;
+  }
+
+  async sMembers(key) {
+    this.count();
+    const set = this.read(key, 'set');
+    return set ? [...set] : [];
+  }
+
+  async sRem(key, members) {
+    this.count();
+    const set = this.read(key, 'set');
+    if (!set) return 0;
+    return [].concat(members).filter(member => set.delete(String(member))).length;
+  }
+
+  async sCard(key) {
+    this.count();
+    const set = this.read(key, 'set');
+    return set ? set.size : 0;
+  }
+
+  // ---- sorted sets -----------------------------------------------------
+
+  sortedMembers(key) {
+    const zset = this.read(key, 'zset');
+    if (!zset) return [];
+    return [...zset.entries()]
+      .map(([value, score]) => ({ value, score }))
+      .sort((a, b) => a.score - b.score || (a.value < b.value ? -1 : a.value > b.value ? 1 : 0));
+  }
+
+  async zAdd(key, members) {
+    this.count();
+    const zset = this.ensure(key, 'zset', () => new Map());
+    let added = 0;
+    for (const { score, value } of [].concat(members)) {
+      if (!zset.has(String(value))) added++;
+      zset.set(String(value), Number(score));
+    }
+    return added;
+  }
+
+  async zRem(key, members) {
+    this.count();
+    const zset = this.read(key, 'zset');
+    if (!zset) return 0;
+    return [].concat(members).filter(member => zset.delete(String(member))).length;
+  }
+
+  async zCard(key) {
+    this.count();
+    const zset = this.read(key, 'zset');
+    return zset ? zset.size : 0;
+  }
+
+  async zScore(key, member) {
+    this.count();
+    const zset = this.read(key, 'zset');
+    return zset && zset.has(String(member)) ? zset.get(String(member)) : null;
+  }
+
+  async zCount(key, min, max) {
+    this.count();
+    return this.sortedMembers(key).filter(({ score }) => inRange(score, min, max)).length;
+  }
+
+  async zRange(key, start, stop, options = {}) {
+    this.count();
+    let members = this.sortedMembers(key);
+    if (options.BY === 'SCORE') {
+      members = members.filter(({ score }) => inRange(score, start, stop));
+      if (options.REV) members.reverse();
+      if (options.LIMIT) members = members.slice(options.LIMIT.offset, options.LIMIT.offset + options.LIMIT.count);
+      return members.map(({ value }) => value);
+    }
+    if (options.REV) members.reverse();
+    const length = members.length;
+    const from = start < 0 ? Math.max(length + start, 0) : start;
+    const to = stop < 0 ? length + stop : Math.min(stop, length - 1);
+    return members.slice(from, to + 1).map(({ value }) => value);
+  }
+
+  async zRangeByScore(key, min, max, options = {}) {
+    this.count(-1);
+    return this.zRange(key, min, max, { BY: 'SCORE', LIMIT: options.LIMIT });
+  }
+
+  async zRangeByScoreWithScores(key, min, max) {
+    this.count();
+    return this.sortedMembers(key).filter(({ score }) => inRange(score, min, max));
+  }
+
+  async zRemRangeByScore(key, min, max) {
+    this.count();
+    const zset = this.read(key, 'zset');
+    if (!zset) return 0;
+    let removed = 0;
+    for (const [value, score] of [...zset.entries()]) {
+      if (inRange(score, min, max)) {
+        zset.delete(value);
+        removed++;
+      }
+    }
+    return removed;
+  }
+
+  async zRemRangeByRank(key, start, stop) {
+    this.count();
+    const zset = this.read(key, 'zset');
+    if (!zset) return 0;
+    const members = this.sortedMembers(key);
+    const length = members.length;
+    const from = start < 0 ? Math.max(length + start, 0) : start;
+    const to = stop < 0 ? length + stop : Math.min(stop, length - 1);
+    const doomed = members.slice(from, to + 1);
+    doomed.forEach(({ value }) => zset.delete(value));
+    return doomed.length;
+  }
+
+  // ---- pub/sub ---------------------------------------------------------
+
+  duplicate() {
+    const twin = Object.create(this);
+    twin.isReady = true;
+    return twin;
+  }
+
+  async publish(channel, message) {
+    this.count();
+    const listeners = this.subscribers.get(channel) || [];
+    listeners.forEach(listener => listener(message, channel));
+    return listeners.length;
+  }
+
+  async subscribe(channel, listener) {
+    this.count();
+    const listeners = this.subscribers.get(channel) || [];
+    listeners.push(listener);
+    this.subscribers.set(channel, listeners);
+  }
+
+  async unsubscribe(channel) {
+    this.count();
+    this.subscribers.delete(channel);
+  }
+
+  // ---- scripting -------------------------------------------------------
+
+  defineScript(source, impl) {
+    this.scriptImpls.set(crypto.createHash('sha1').update(source).digest('hex'), impl);
+  }
+
+  async scriptLoad(source) {
+    this.count();
+    const sha = crypto.createHash('sha1').update(source).digest('hex');
+    if (!this.scriptImpls.has(sha)) {
+      throw new Error('ERR no JavaScript port defined for script');
+    }
+    this.loadedScripts.add(sha);
+    return sha;
+  }
+
+  async evalSha(sha, { keys = [], arguments: args = [] } = {}) {
+    this.count();
+    if (!this.loadedScripts.has(sha)) {
+      throw new Error('NOSCRIPT No matching script. Please use EVAL.');
+    }
+    // Commands issued inside a script are not separate round trips
+    const before = this.commandCount;
+    try {
+      return await this.scriptImpls.get(sha)(this, keys, args);
+    } finally {
+      this.commandCount = before;
+    }
+  }
+
+  // ---- introspection ---------------------------------------------------
+
+  // Rough stand-in for MEMORY USAGE: key plus serialised value, in bytes
+  async memoryUsage(key) {
+    this.count();
+    if (!this.alive(key)) return null;
+    const { value } = this.store.get(key);
+    const serialised = value instanceof Map
+      ? JSON.stringify([...value.entries()])
+      : value instanceof Set ? JSON.stringify([...value]) : String(value);
+    return Buffer.byteLength(key) + Buffer.byteLength(serialised);
+  }
+
+  // ---- transactions ----------------------------------------------------
+
+  multi() {
+    const client = this;
+    const queue = [];
+    const batch = new Proxy({}, {
+      get(target, command) {
+        if (command === 'exec' || command === 'execAsPipeline') {
+          return async () => {
+            const results = [];
+            for (const [name, args] of queue) {
+              results.push(await client[name](...args));
+            }
+            return results;
+          };
+        }
+        if (typeof client[command] !== 'function') return undefined;
+        return (...args) => {
+          queue.push([command, args]);
+          return batch;
+        };
+      }
+    });
+    return batch;
+  }
+}
+
+module.exports = { FakeRedisClient };
@@ -0,0 +1,67 @@
+/**
+ * Redis Test Helpers
+ * Starts a throwaway redis-server so tests can run the Lua scripts for real
+ */
+
+const redis = require('redis');
+const { RedisMemoryServer } = require('redis-memory-server');
+
+let redisServer;
+let client;
+
+/**
+ * Start an in-memory Redis server and connect a client to it
+ * @returns {Object} Connected node-redis client
+ */
+const connectRedis = async () => {
+  try {
+    redisServer = new RedisMemoryServer();
+    const host = await redisServer.getHost();
+    const port = await redisServer.getPort();
+
+    client = redis.createClient({ socket: { host, port } });
+    await client.connect();
+
+    console.log('Connected to in-memory Redis for testing');
+    return client;
+  } catch (error) {
+    console.error('Redis connection failed:', error);
+    throw error; // Don't exit process in tests
+  }
+};
+
+/**
+ * Remove every key from the test server
+ */
+const clearRedis = async () => {
+  try {
+    await client.flushAll();
+  } catch (error) {
+    console.error('Redis clear failed:', error);
+  }
+};
+
+/**
+ * Disconnect the client and stop the Redis server
+ */
+const closeRedis = async () => {
+  try {
+    if (client) {
+      await client.quit();
+    }
+
+    if (redisServer) {
+      await redisServer.stop();
+    }
+
+    console.log('Disconnected from test Redis');
+  } catch (error) {
+    console.error('Redis close failed:', error);
+  }
+};
+
+module.exports = {
+  connectRedis,
+  clearRedis,
+  closeRedis
+};
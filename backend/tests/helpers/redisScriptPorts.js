@@ -0,0 +1,74 @@
+/**
+ * JavaScript ports of the Lua scripts in services/security/utils/redisScripts
+ * Registered on a FakeRedisClient so script-backed code paths can run in
+ * tests without a Redis server. Keep in step with the Lua;
+ * tests/integration/redisScripts.test.js checks both against real Redis.
+ */
+
+const {
+  SLIDING_WINDOW_RATE_LIMIT,
+  ADJUST_COUNTERS_IF_PRESENT,
+  SET_COUNTERS_IF_UNCHANGED
+} = require('../../services/security/utils/redisScripts');
+
+const slidingWindowRateLimit = async (client, keys, args) => {
+  const current = parseInt((await client.get(keys[0])) || '0', 10);
+  const previous = parseInt((await client.get(keys[1])) || '0', 10);
+  const max = Number(args[1]);
+  const estimated = Math.floor(previous * Number(args[0])) + current;
+
+  if (estimated >= max) {
+    return [0, estimated, 0];
+  }
+
+  let grant = Number(args[3]);
+  if (estimated + grant > max / 2) {
+    grant = 1;
+  }
+
+  if ((await client.incrBy(keys[0], grant)) === grant) {
+    await client.pExpire(keys[0], Number(args[2]));
+  }
+
+  return [1, estimated + 1, grant];
+};
+
+const adjustCountersIfPresent = async (client, keys, args) => {
+  const count = keys.length / 2;
+  let adjusted = 0;
+  for (let i = 0; i < count; i++) {
+    const value = client.read(keys[i], 'string');
+    if (value !== undefined || client.alive(keys[count + i])) {
+      await client.incr(keys[count + i]);
+      await client.expire(keys[count + i], Number(args[1]));
+    }
+    if (value !== undefined) {
+      // Write in place so the key keeps its TTL, like SET ... KEEPTTL
+      client.write(keys[i], 'string', String(Math.max(Number(value) + Number(args[0]), 0)));
+      adjusted++;
+    }
+  }
+  return adjusted;
+};
+
+const setCountersIfUnchanged = async (client, keys, args) => {
+  const count = keys.length / 2;
+  let written = 0;
+  for (let i = 0; i < count; i++) {
+    const version = client.read(keys[count + i], 'string') ?? '0';
+    if (version === String(args[count + i + 1])) {
+      await client.set(keys[i], args[i + 1], { EX: Number(args[0]) });
+      written++;
+    }
+  }
+  return written;
+};
+
+const registerScriptPorts = (client) => {
+  client.defineScript(SLIDING_WINDOW_RATE_LIMIT, slidingWindowRateLimit);
+  client.defineScript(ADJUST_COUNTERS_IF_PRESENT, adjustCountersIfPresent);
+  client.defineScript(SET_COUNTERS_IF_UNCHANGED, setCountersIfUnchanged);
+  return client;
+};
+
+module.exports = { registerScriptPorts };
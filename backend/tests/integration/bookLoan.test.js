@@ -0,0 +1,227 @@
+/**
+ * Integration Tests for Book Loans
+ * Tests that concurrent borrows and returns never oversell a book's copies
+ */
+
+const mongoose = require('mongoose');
+const Book = require('../../models/Book');
+const Booking = require('../../models/Booking');
+const BookWaitlist = require('../../models/BookWaitlist');
+const BookLoanService = require('../../services/bookLoanService');
+const NotificationService = require('../../services/notificationService');
+const { connectDB, clearDB, closeDB } = require('../helpers/database');
+
+const DAY_MS = 24 * 60 * 60 * 1000;
+
+describe('Book Loan Integration Tests', () => {
+  const libraryId = new mongoose.Types.ObjectId();
+  let book;
+
+  const createBook = (copies) => Book.create({
+    title: 'Dune',
+    author: 'Frank Herbert',
+    genre: 'Science Fiction',
+    language: 'English',
+    totalCopies: copies,
+    availableCopies: copies,
+    libraryId,
+    borrowPolicy: { maxDays: 14, fine: 5 },
+    createdBy: new mongoose.Types.ObjectId()
+  });
+
+  const borrow = (userId = new mongoose.Types.ObjectId()) =>
+    BookLoanService.borrow({ bookId: book._id, userId });
+
+  const openLoans = () => Booking.countDocuments({
+    bookId: book._id,
+    status: { $in: ['pending', 'confirmed', 'overdue'] }
+  });
+
+  beforeAll(async () => {
+    await connectDB();
+    await BookWaitlist.init();
+  });
+
+  afterAll(async () => {
+    BookLoanService.stopOverdueSweep();
+    await clearDB();
+    await closeDB();
+  });
+
+  beforeEach(async () => {
+    await Promise.all([Book.deleteMany({}), Booking.deleteMany({}), BookWaitlist.deleteMany({})]);
+    jest.spyOn(NotificationService, 'sendToUsers').mockResolvedValue(null);
+    book = await createBook(3);
+  });
+
+  afterEach(() => {
+    jest.restoreAllMocks();
+  });
+
+  it('should lend a copy and take it off the shelf', async () => {
+    const result = await borrow();
+
+    expect(result.success).toBe(true);
+    expect(result.booking.status).toBe('confirmed');
+    expect(result.booking.returnDate - result.booking.borrowDate).toBe(14 * DAY_MS);
+    expect((await Book.findById(book._id)).availableCopies).toBe(2);
+  });
+
+  it('should start loans now whatever date the client sends', async () => {
+    const before = Date.now();
+
+    const { booking } = await BookLoanService.borrow({
+      bookId: book._id,
+      userId: new mongoose.Types.ObjectId(),
+      borrowDate: '2099-01-01'
+    });
+
+    expect(booking.borrowDate.getTime()).toBeGreaterThanOrEqual(before);
+    expect(booking.borrowDate.getTime()).toBeLessThanOrEqual(Date.now());
+  });
+
+  it('should refuse to borrow once every copy is out', async () => {
+    await borrow();
+    await borrow();
+    await borrow();
+
+    const result = await borrow();
+
+    expect(result).toEqual({ success: false, reason: 'unavailable' });
+    expect((await Book.findById(book._id)).availableCopies).toBe(0);
+  });
+
+  it('should put the copy back if the loan cannot be stored', async () => {
+    jest.spyOn(Booking, 'create').mockRejectedValueOnce(new Error('write failed'));
+
+    await expect(borrow()).rejects.toThrow('write failed');
+
+    expect((await Book.findById(book._id)).availableCopies).toBe(3);
+  });
+
+  it('should put a returned copy back only once', async () => {
+    const { booking } = await borrow();
+
+    const results = await Promise.all([
+      BookLoanService.returnBook(booking._id),
+      BookLoanService.returnBook(booking._id),
+      BookLoanService.returnBook(booking._id)
+    ]);
+
+    expect(results.filter(result => result.success)).toHaveLength(1);
+    expect((await Book.findById(book._id)).availableCopies).toBe(3);
+  });
+
+  it('should not put a copy back for a loan that never took one', async () => {
+    await borrow();
+    const legacy = await Booking.create({
+      userId: new mongoose.Types.ObjectId(),
+      libraryId,
+      type: 'book',
+      bookId: book._id,
+      date: new Date(),
+      returnDate: new Date(Date.now() + 14 * DAY_MS),
+      amount: 0,
+      status: 'confirmed'
+    });
+
+    const result = await BookLoanService.returnBook(legacy._id);
+
+    expect(result.success).toBe(true);
+    expect((await Book.findById(book._id)).availableCopies).toBe(2);
+  });
+
+  it('should mark late loans overdue and fine them on return', async () => {
+    const { booking } = await borrow();
+    const now = new Date(booking.returnDate.getTime() + 2.5 * DAY_MS);
+
+    expect(await BookLoanService.markOverdue(now)).toBe(1);
+    expect((await Booking.findById(booking._id)).status).toBe('overdue');
+
+    const result = await BookLoanService.returnBook(booking._id, { returnedAt: now });
+
+    expect(result.fine).toBe(15);
+    expect(result.booking.status).toBe('completed');
+  });
+
+  it('should still charge the late fee when an overdue loan is cancelled', async () => {
+    const { booking } = await borrow();
+    const now = new Date(booking.returnDate.getTime() + 2.5 * DAY_MS);
+    await BookLoanService.markOverdue(now);
+
+    const result = await BookLoanService.returnBook(booking._id, { status: 'cancelled', returnedAt: now });
+
+    expect(result.fine).toBe(15);
+    expect(result.booking.status).toBe('cancelled');
+    expect(result.booking.fine).toBe(15);
+    expect((await Book.findById(book._id)).availableCopies).toBe(3);
+  });
+
+  it('should change stock without losing loans taken meanwhile', async () => {
+    await borrow();
+
+    const added = await BookLoanService.setTotalCopies(book._id, 5);
+
+    expect(added.success).toBe(true);
+    expect(added.book).toMatchObject({ totalCopies: 5, availableCopies: 4 });
+
+    await borrow();
+    await borrow();
+    const removed = await BookLoanService.setTotalCopies(book._id, 2);
+
+    expect(removed).toEqual({ success: false, reason: 'copies_on_loan' });
+    expect(await Book.findById(book._id).lean()).toMatchObject({ totalCopies: 5, availableCopies: 2 });
+
+    expect((await BookLoanService.setTotalCopies(book._id, 3)).book).toMatchObject({ totalCopies: 3, availableCopies: 0 });
+  });
+
+  it('should hand returned copies to the waitlist in order', async () => {
+    const loans = [await borrow(), await borrow(), await borrow()];
+    const first = new mongoose.Types.ObjectId();
+    const second = new mongoose.Types.ObjectId();
+
+    expect((await BookLoanService.joinWaitlist(book._id, first)).position).toBe(1);
+    expect((await BookLoanService.joinWaitlist(book._id, second)).position).toBe(2);
+    expect((await BookLoanService.joinWaitlist(book._id, first)).reason).toBe('already_waiting');
+    // Walk-up borrowers cannot jump the queue
+    expect((await borrow()).reason).toBe('waitlisted');
+
+    await BookLoanService.returnBook(loans[0].booking._id);
+
+    const handedOff = await Booking.findOne({ bookId: book._id, userId: first, status: 'confirmed' });
+    expect(handedOff).not.toBeNull();
+    expect(await BookWaitlist.countDocuments({ status: 'waiting' })).toBe(1);
+    expect((await Book.findById(book._id)).availableCopies).toBe(0);
+    expect(NotificationService.sendToUsers).toHaveBeenCalledTimes(1);
+  });
+
+  it('should never oversell under concurrent borrows', async () => {
+    book = await createBook(5);
+
+    const results = await Promise.all(Array.from({ length: 500 }, () => borrow()));
+
+    expect(results.filter(result => result.success)).toHaveLength(5);
+    expect((await Book.findById(book._id)).availableCopies).toBe(0);
+    expect(await openLoans()).toBe(5);
+  });
+
+  it('should keep copies consistent under mixed concurrent borrows and returns', async () => {
+    book = await createBook(10);
+    const initial = await Promise.all(Array.from({ length: 10 }, () => borrow()));
+
+    // Every open loan is returned twice while 300 borrowers race for the copies
+    const operations = [
+      ...initial.flatMap(({ booking }) => [
+        BookLoanService.returnBook(booking._id),
+        BookLoanService.returnBook(booking._id)
+      ]),
+      ...Array.from({ length: 300 }, () => borrow())
+    ];
+
+    await Promise.all(operations);
+
+    const current = await Book.findById(book._id);
+    expect(current.availableCopies).toBeGreaterThanOrEqual(0);
+    expect(current.availableCopies + await openLoans()).toBe(10);
+  });
+});
@@ -0,0 +1,88 @@
+/**
+ * Integration Tests for the Email Blind Index
+ * Tests that users are found by email through the HMAC index, on an index
+ */
+
+process.env.JWT_SECRET = process.env.JWT_SECRET || 'test-jwt-secret-for-blind-index-tests-0123456789';
+process.env.JWT_REFRESH_SECRET = process.env.JWT_REFRESH_SECRET || 'test-refresh-secret-for-blind-index-tests-012345';
+process.env.ENCRYPTION_KEY = process.env.ENCRYPTION_KEY || 'test-encryption-key-for-blind-index-tests-0123456789';
+process.env.FIELD_ENCRYPTION_KEY = process.env.FIELD_ENCRYPTION_KEY || 'test-field-key-for-blind-index-tests-0123456789';
+
+const User = require('../../models/User');
+const encryptionService = require('../../services/security/encryptionService');
+const { connectDB, clearDB, closeDB } = require('../helpers/database');
+
+describe('Email Blind Index Integration Tests', () => {
+  const createUser = (email) => User.create({
+    name: 'Test User',
+    email,
+    password: 'password123',
+    isVerified: true
+  });
+
+  beforeAll(async () => {
+    await connectDB();
+    await User.init();
+  });
+
+  afterAll(async () => {
+    await clearDB();
+    await closeDB();
+  });
+
+  beforeEach(async () => {
+    await User.deleteMany({});
+  });
+
+  it('should store the blind index when a user is created', async () => {
+    const user = await createUser('jane@example.com');
+
+    expect(user.emailIndex).toBe(await encryptionService.computeBlindIndex('jane@example.com', 'email'));
+  });
+
+  it('should find users by email regardless of case', async () => {
+    const user = await createUser('jane@example.com');
+
+    const found = await User.findByEmail('  Jane@Example.com ');
+
+    expect(found._id.toString()).toBe(user._id.toString());
+    expect(await User.findByEmail('someone-else@example.com')).toBeNull();
+  });
+
+  it('should look users up through the blind index', async () => {
+    await createUser('jane@example.com');
+
+    const plan = await User.find(await User.emailFilter('jane@example.com')).explain('queryPlanner');
+    const planText = JSON.stringify(plan.queryPlanner.winningPlan);
+
+    expect(planText).toContain('emailIndex_1');
+    expect(planText).not.toContain('COLLSCAN');
+  });
+
+  it('should find users whose index has not been backfilled', async () => {
+    const user = await createUser('jane@example.com');
+    await User.collection.updateOne({ _id: user._id }, { $unset: { emailIndex: 1 } });
+
+    const found = await User.findByEmail('jane@example.com');
+
+    expect(found._id.toString()).toBe(user._id.toString());
+  });
+
+  it('should recompute the index when the email changes', async () => {
+    const user = await createUser('jane@example.com');
+
+    user.email = 'jane.doe@example.com';
+    await user.save();
+    expect((await User.findByEmail('jane.doe@example.com'))._id.toString()).toBe(user._id.toString());
+
+    await User.findByIdAndUpdate(user._id, { email: 'jd@example.com' });
+    const updated = await User.findById(user._id);
+    expect(updated.emailIndex).toBe(await encryptionService.computeBlindIndex('jd@example.com', 'email'));
+  });
+
+  it('should reject a second user with the same email index', async () => {
+    await createUser('jane@example.com');
+
+    await expect(createUser('jane@example.com')).rejects.toThrow('duplicate key');
+  });
+});
@@ -0,0 +1,181 @@
+/**
+ * Integration Tests for the Redis Lua scripts
+ * Runs each script on a real Redis server and checks the result against the
+ * JavaScript port the unit tests and benchmarks use, so the two cannot drift.
+ */
+
+const redisService = require('../../services/security/redisService');
+const {
+  SLIDING_WINDOW_RATE_LIMIT,
+  ADJUST_COUNTERS_IF_PRESENT,
+  SET_COUNTERS_IF_UNCHANGED
+} = require('../../services/security/utils/redisScripts');
+const { FakeRedisClient } = require('../helpers/fakeRedis');
+const { registerScriptPorts } = require('../helpers/redisScriptPorts');
+const { connectRedis, clearRedis, closeRedis } = require('../helpers/redis');
+
+describe('Redis Script Integration Tests', () => {
+  let realClient;
+  let portClient;
+
+  // Seed both clients and run the script on each. TTLs are read from the
+  // real server only, since the stand-in rounds them differently.
+  const runOnBoth = async (script, keys, args, seed = {}) => {
+    const outcomes = [];
+    for (const client of [realClient, portClient]) {
+      for (const [key, { value, ttlSeconds }] of Object.entries(seed)) {
+        await client.set(key, String(value), ttlSeconds ? { EX: ttlSeconds } : {});
+      }
+
+      redisService.client = client;
+      const result = await redisService.runScript(script, keys, args);
+      outcomes.push({ result, values: await client.mGet(keys) });
+    }
+
+    const ttls = [];
+    for (const key of keys) {
+      ttls.push(await realClient.ttl(key));
+    }
+    return { real: outcomes[0], port: outcomes[1], ttls };
+  };
+
+  beforeAll(async () => {
+    realClient = await connectRedis();
+  });
+
+  afterAll(async () => {
+    redisService.client = null;
+    redisService.isConnected = false;
+    await closeRedis();
+  });
+
+  beforeEach(async () => {
+    await clearRedis();
+    portClient = registerScriptPorts(new FakeRedisClient());
+    redisService.isConnected = true;
+    redisService.scriptShas.clear();
+  });
+
+  describe('SLIDING_WINDOW_RATE_LIMIT', () => {
+    const keys = ['rate_limit_counter:test:current', 'rate_limit_counter:test:previous'];
+
+    it('should start a counter with an expiry on the first request', async () => {
+      const { real, port, ttls } = await runOnBoth(SLIDING_WINDOW_RATE_LIMIT, keys, [0.5, 10, 60000, 1]);
+
+      expect(real.result).toEqual([1, 1, 1]);
+      expect(real.values).toEqual(['1', null]);
+      expect(ttls[0]).toBeGreaterThan(0);
+      expect(ttls[0]).toBeLessThanOrEqual(60);
+      expect(port).toEqual(real);
+    });
+
+    it('should weight the previous window and round the estimate down', async () => {
+      const seed = { [keys[0]]: { value: 2, ttlSeconds: 60 }, [keys[1]]: { value: 10, ttlSeconds: 60 } };
+
+      const { real, port } = await runOnBoth(SLIDING_WINDOW_RATE_LIMIT, keys, [0.55, 20, 60000, 1], seed);
+
+      // floor(10 * 0.55) + 2 = 7 before this request
+      expect(real.result).toEqual([1, 8, 1]);
+      expect(real.values).toEqual(['3', '10']);
+      expect(port).toEqual(real);
+    });
+
+    it('should grant a lease well under the limit and one slot near it', async () => {
+      const { real: leased, port: leasedPort } = await runOnBoth(SLIDING_WINDOW_RATE_LIMIT, keys, [0, 100, 60000, 5]);
+      expect(leased.result).toEqual([1, 1, 5]);
+      expect(leased.values[0]).toBe('5');
+      expect(leasedPort).toEqual(leased);
+
+      await clearRedis();
+      portClient = registerScriptPorts(new FakeRedisClient());
+      const seed = { [keys[0]]: { value: 48, ttlSeconds: 60 } };
+      const { real: single, port: singlePort } = await runOnBoth(SLIDING_WINDOW_RATE_LIMIT, keys, [0, 100, 60000, 5], seed);
+      expect(single.result).toEqual([1, 49, 1]);
+      expect(single.values[0]).toBe('49');
+      expect(singlePort).toEqual(single);
+    });
+
+    it('should refuse at the limit without counting the request', async () => {
+      const seed = { [keys[0]]: { value: 4, ttlSeconds: 60 }, [keys[1]]: { value: 12, ttlSeconds: 60 } };
+
+      const { real, port } = await runOnBoth(SLIDING_WINDOW_RATE_LIMIT, keys, [0.5, 10, 60000, 1], seed);
+
+      expect(real.result).toEqual([0, 10, 0]);
+      expect(real.values).toEqual(['4', '12']);
+      expect(port).toEqual(real);
+    });
+  });
+
+  describe('ADJUST_COUNTERS_IF_PRESENT', () => {
+    const keys = [
+      'notification_unread:a', 'notification_unread:b', 'notification_unread:missing',
+      'notification_unread_version:a', 'notification_unread_version:b', 'notification_unread_version:missing'
+    ];
+
+    it('should adjust only present counters and keep their expiry', async () => {
+      const seed = {
+        [keys[0]]: { value: 3, ttlSeconds: 600 },
+        [keys[1]]: { value: 1, ttlSeconds: 600 }
+      };
+
+      const { real, port, ttls } = await runOnBoth(ADJUST_COUNTERS_IF_PRESENT, keys, [2, 600], seed);
+
+      expect(real.result).toBe(2);
+      expect(real.values).toEqual(['5', '3', null, '1', '1', null]);
+      expect(ttls[0]).toBeGreaterThan(590);
+      expect(ttls[2]).toBe(-2);
+      expect(ttls[3]).toBeGreaterThan(590);
+      expect(port).toEqual(real);
+    });
+
+    it('should bump the version of a counter being filled', async () => {
+      const seed = { [keys[5]]: { value: 0, ttlSeconds: 600 } };
+
+      const { real, port } = await runOnBoth(ADJUST_COUNTERS_IF_PRESENT, [keys[2], keys[5]], [1, 600], seed);
+
+      expect(real.result).toBe(0);
+      expect(real.values).toEqual([null, '1']);
+      expect(port).toEqual(real);
+    });
+
+    it('should never take a counter below zero', async () => {
+      const seed = { [keys[0]]: { value: 1, ttlSeconds: 600 } };
+
+      const { real, port } = await runOnBoth(ADJUST_COUNTERS_IF_PRESENT, [keys[0], keys[3]], [-3, 600], seed);
+
+      expect(real.result).toBe(1);
+      expect(real.values).toEqual(['0', '1']);
+      expect(port).toEqual(real);
+    });
+  });
+
+  describe('SET_COUNTERS_IF_UNCHANGED', () => {
+    const keys = [
+      'notification_unread:a', 'notification_unread:b',
+      'notification_unread_version:a', 'notification_unread_version:b'
+    ];
+
+    it('should write only counters whose version is unchanged', async () => {
+      const seed = {
+        [keys[1]]: { value: 7, ttlSeconds: 600 },
+        [keys[2]]: { value: 0, ttlSeconds: 600 },
+        [keys[3]]: { value: 2, ttlSeconds: 600 }
+      };
+
+      const { real, port, ttls } = await runOnBoth(SET_COUNTERS_IF_UNCHANGED, keys, [600, 4, 5, '0', '1'], seed);
+
+      expect(real.result).toBe(1);
+      expect(real.values).toEqual(['4', '7', '0', '2']);
+      expect(ttls[0]).toBeGreaterThan(590);
+      expect(port).toEqual(real);
+    });
+
+    it('should treat a missing version key as version zero', async () => {
+      const { real, port } = await runOnBoth(SET_COUNTERS_IF_UNCHANGED, [keys[0], keys[2]], [600, 3, '0']);
+
+      expect(real.result).toBe(1);
+      expect(real.values).toEqual(['3', null]);
+      expect(port).toEqual(real);
+    });
+  });
+});
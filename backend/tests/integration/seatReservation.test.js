@@ -0,0 +1,127 @@
+/**
+ * Integration Tests for Seat Reservations
+ * Tests that concurrent bookings can never hold the same seat twice
+ */
+
+const mongoose = require('mongoose');
+const SeatReservation = require('../../models/SeatReservation');
+const Library = require('../../models/Library');
+const SeatReservationService = require('../../services/seatReservationService');
+const { connectDB, clearDB, closeDB } = require('../helpers/database');
+
+describe('Seat Reservation Integration Tests', () => {
+  const libraryId = new mongoose.Types.ObjectId();
+  const timeSlot = { name: 'Morning', startTime: '09:00', endTime: '12:00' };
+  const date = '2026-01-15';
+
+  const reserve = (seatNumbers, overrides = {}) => SeatReservationService.reserveSeats({
+    libraryId,
+    date,
+    timeSlot,
+    seatNumbers,
+    userId: new mongoose.Types.ObjectId(),
+    bookingId: new mongoose.Types.ObjectId(),
+    ...overrides
+  });
+
+  beforeAll(async () => {
+    await connectDB();
+    await SeatReservation.init();
+  });
+
+  afterAll(async () => {
+    await clearDB();
+    await closeDB();
+  });
+
+  beforeEach(async () => {
+    await SeatReservation.deleteMany({});
+  });
+
+  it('should reserve free seats', async () => {
+    const result = await reserve(['A1', 'A2']);
+
+    expect(result).toEqual({ success: true, conflicts: [] });
+    expect(await SeatReservation.countDocuments()).toBe(2);
+  });
+
+  it('should report every lost seat and release the seats it did claim', async () => {
+    await reserve(['A2', 'A3']);
+
+    const result = await reserve(['A1', 'A2', 'A3']);
+
+    expect(result.success).toBe(false);
+    expect(result.conflicts.sort()).toEqual(['A2', 'A3']);
+    expect(await SeatReservation.countDocuments({ seatNumber: 'A1' })).toBe(0);
+  });
+
+  it('should treat other time slots and dates as independent', async () => {
+    await reserve(['A1']);
+
+    const otherSlot = await reserve(['A1'], { timeSlot: { name: 'Evening', startTime: '17:00', endTime: '20:00' } });
+    const otherDate = await reserve(['A1'], { date: '2026-01-16' });
+
+    expect(otherSlot.success).toBe(true);
+    expect(otherDate.success).toBe(true);
+  });
+
+  it('should treat a slot sent by name and by times as the same slot', async () => {
+    const library = await Library.collection.insertOne({
+      name: 'Central Library',
+      timeSlots: [timeSlot, { name: 'Evening', startTime: '17:00', endTime: '20:00' }]
+    });
+    const byTimes = await reserve(['A1'], { libraryId: library.insertedId });
+
+    const byName = await reserve(['A1'], { libraryId: library.insertedId, timeSlot: 'morning' });
+
+    expect(byTimes.success).toBe(true);
+    expect(byName).toEqual({ success: false, conflicts: ['A1'] });
+    expect(await SeatReservationService.getReservedSeats(library.insertedId, date, 'Morning')).toEqual(['A1']);
+  });
+
+  it('should read the times from a slot labelled with its time range', async () => {
+    await reserve(['A1']);
+
+    const byLabel = await reserve(['A1'], { timeSlot: '09:00-12:00' });
+
+    expect(byLabel).toEqual({ success: false, conflicts: ['A1'] });
+  });
+
+  it('should reject a slot name the library does not have', async () => {
+    await expect(reserve(['A1'], { timeSlot: 'Morning' })).rejects.toThrow('required for seat reservations');
+  });
+
+  it('should free seats when a booking is released', async () => {
+    const bookingId = new mongoose.Types.ObjectId();
+    await reserve(['A1', 'A2'], { bookingId });
+
+    const released = await SeatReservationService.releaseBooking(bookingId);
+
+    expect(released).toBe(2);
+    expect((await reserve(['A1'])).success).toBe(true);
+  });
+
+  it('should never double-book a seat under concurrent load', async () => {
+    const seats = Array.from({ length: 20 }, (_, i) => `A${i + 1}`);
+    // 200 bookings of 1-3 random seats all racing for the same 20 seats
+    const attempts = Array.from({ length: 200 }, () => {
+      const count = 1 + Math.floor(Math.random() * 3);
+      const picked = [...seats].sort(() => Math.random() - 0.5).slice(0, count);
+      const bookingId = new mongoose.Types.ObjectId();
+      return reserve(picked, { bookingId }).then(result => ({ ...result, bookingId, picked }));
+    });
+
+    const results = await Promise.all(attempts);
+    const reservations = await SeatReservation.find({ libraryId }).lean();
+
+    // Every seat is held at most once
+    const heldSeats = reservations.map(r => r.seatNumber);
+    expect(new Set(heldSeats).size).toBe(heldSeats.length);
+
+    // Winners hold all their seats, losers hold none
+    for (const result of results) {
+      const held = reservations.filter(r => r.bookingId.equals(result.bookingId));
+      expect(held.length).toBe(result.success ? result.picked.length : 0);
+    }
+  });
+});
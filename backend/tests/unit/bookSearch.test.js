@@ -0,0 +1,65 @@
+/**
+ * Unit Tests for Book Search
+ * Tests tokenization, search prefixes and search filters
+ */
+
+const Book = require('../../models/Book');
+const BookSearchService = require('../../services/bookSearchService');
+
+describe('Book Search', () => {
+  describe('tokenize', () => {
+    it('should lowercase, strip accents and split on punctuation', () => {
+      expect(Book.tokenize('Cien Años de Soledad: García Márquez')).toEqual([
+        'cien', 'anos', 'de', 'soledad', 'garcia', 'marquez'
+      ]);
+    });
+
+    it('should keep non-latin words', () => {
+      expect(Book.tokenize('गोदान - प्रेमचंद')).toHaveLength(2);
+    });
+  });
+
+  describe('buildSearchPrefixes', () => {
+    it('should combine unique title and author words', () => {
+      expect(Book.buildSearchPrefixes('The Hobbit', 'J. R. R. Tolkien')).toEqual([
+        'the', 'hobbit', 'j', 'r', 'tolkien'
+      ]);
+    });
+
+    it('should be refreshed when a book is validated', async () => {
+      const book = new Book({
+        title: 'Wings of Fire',
+        author: 'A. P. J. Abdul Kalam',
+        genre: 'Biography',
+        language: 'English',
+        availableCopies: 1,
+        createdBy: '507f1f77bcf86cd799439011'
+      });
+
+      await book.validate();
+
+      expect(book.searchPrefixes).toEqual(expect.arrayContaining(['wings', 'fire', 'kalam']));
+    });
+  });
+
+  describe('buildFilter', () => {
+    it('should only include provided filters', () => {
+      expect(BookSearchService.buildFilter({ genre: 'Fiction' })).toEqual({
+        isActive: true,
+        genre: 'Fiction'
+      });
+    });
+
+    it('should reject malformed library ids instead of searching every library', () => {
+      expect(BookSearchService.validateFilter({ libraryId: 'not-an-id' })).toBe('Invalid library id');
+      expect(() => BookSearchService.buildFilter({ libraryId: 'not-an-id' })).toThrow('Invalid library id');
+    });
+
+    it('should scope the filter to a valid library id', () => {
+      const libraryId = '507f1f77bcf86cd799439011';
+
+      expect(BookSearchService.validateFilter({ libraryId })).toBeNull();
+      expect(BookSearchService.buildFilter({ libraryId }).libraryId.toString()).toBe(libraryId);
+    });
+  });
+});
@@ -0,0 +1,212 @@
+/**
+ * Unit Tests for Notification Fan-out
+ * Tests broadcast storage, chunked inbox writes and inbox reads
+ */
+
+const mockQuery = (result) => {
+  const query = {
+    select: jest.fn(() => query),
+    sort: jest.fn(() => query),
+    skip: jest.fn(() => query),
+    limit: jest.fn(() => query),
+    populate: jest.fn(() => query),
+    lean: jest.fn(() => query),
+    cursor: jest.fn(() => (async function* () { yield* result; })()),
+    then: (resolve, reject) => Promise.resolve(result).then(resolve, reject)
+  };
+  return query;
+};
+
+jest.mock('../../models/Notification', () => ({
+  createNotification: jest.fn(),
+  findById: jest.fn(),
+  updateOne: jest.fn(),
+  find: jest.fn(),
+  countDocuments: jest.fn(),
+  markAsRead: jest.fn()
+}));
+
+jest.mock('../../models/NotificationInbox', () => ({
+  insertMany: jest.fn(),
+  bulkWrite: jest.fn(),
+  find: jest.fn(),
+  countDocuments: jest.fn(),
+  findOneAndDelete: jest.fn()
+}));
+
+jest.mock('../../models/User', () => ({
+  find: jest.fn()
+}));
+
+const Notification = require('../../models/Notification');
+const NotificationInbox = require('../../models/NotificationInbox');
+const User = require('../../models/User');
+const NotificationService = require('../../services/notificationService');
+
+const userIds = (count) => Array.from({ length: count }, (_, i) => ({ _id: `user${i}` }));
+
+describe('NotificationService fan-out', () => {
+  const createdAt = new Date('2026-01-15T10:00:00Z');
+
+  beforeEach(() => {
+    jest.clearAllMocks();
+    Notification.createNotification.mockImplementation(async (data) => ({ _id: 'notification1', createdAt, ...data }));
+    Notification.updateOne.mockResolvedValue({ modifiedCount: 1 });
+    NotificationInbox.insertMany.mockImplementation(async (docs) => docs);
+  });
+
+  it('should store a broadcast once and write inbox records in chunks', async () => {
+    User.find.mockReturnValue(mockQuery(userIds(2500)));
+
+    const notification = await NotificationService.sendToRole('all', {
+      title: 'Maintenance',
+      message: 'Closed on Sunday',
+      type: 'system'
+    }, 'admin1');
+
+    expect(User.find).toHaveBeenCalledWith({ isActive: true });
+    expect(Notification.createNotification).toHaveBeenCalledTimes(1);
+    expect(Notification.createNotification.mock.calls[0][0].recipients).toBeUndefined();
+    expect(NotificationInbox.insertMany.mock.calls.map(([docs]) => docs.length)).toEqual([1000, 1000, 500]);
+    expect(NotificationInbox.insertMany.mock.calls[0][0][0]).toEqual({
+      notificationId: 'notification1',
+      userId: 'user0',
+      read: false,
+      createdAt,
+      expiresAt: undefined
+    });
+    expect(notification.recipientCount).toBe(2500);
+    expect(Notification.updateOne).toHaveBeenCalledWith(
+      { _id: 'notification1' },
+      { $set: { recipientCount: 2500 } }
+    );
+  });
+
+  it('should limit how many inbox batches are written at once', async () => {
+    User.find.mockReturnValue(mockQuery(userIds(10000)));
+    let inFlight = 0;
+    let peak = 0;
+    NotificationInbox.insertMany.mockImplementation(async (docs) => {
+      inFlight++;
+      peak = Math.max(peak, inFlight);
+      await new Promise(resolve => setImmediate(resolve));
+      inFlight--;
+      return docs;
+    });
+
+    await NotificationService.sendToRole('user', { title: 't', message: 'm', type: 'system' }, 'admin1');
+
+    expect(NotificationInbox.insertMany).toHaveBeenCalledTimes(10);
+    expect(peak).toBeLessThanOrEqual(4);
+  });
+
+  it('should not create a notification when no users match', async () => {
+    User.find.mockReturnValue(mockQuery([]));
+
+    const notification = await NotificationService.sendToRole('admin', { title: 't', message: 'm', type: 'admin' }, 'admin1');
+
+    expect(notification).toBeNull();
+    expect(Notification.createNotification).not.toHaveBeenCalled();
+  });
+
+  it('should de-duplicate direct recipients', async () => {
+    const notification = await NotificationService.sendToUsers(['user1', 'user1', 'user2'], {
+      title: 't', message: 'm', type: 'booking', createdBy: 'user1'
+    });
+
+    expect(notification.recipientCount).toBe(2);
+    expect(NotificationInbox.insertMany.mock.calls[0][0].map(doc => doc.userId)).toEqual(['user1', 'user2']);
+  });
+
+  it('should skip inbox records that already exist', async () => {
+    const duplicate = new Error('E11000 duplicate key error');
+    duplicate.writeErrors = [{ code: 11000 }];
+    NotificationInbox.insertMany.mockRejectedValue(duplicate);
+
+    const notification = await NotificationService.sendToUsers(['user1', 'user2'], {
+      title: 't', message: 'm', type: 'system', createdBy: 'admin1'
+    });
+
+    expect(notification.recipientCount).toBe(2);
+  });
+
+  it('should finish a failed send when it is retried with the same id', async () => {
+    const data = { _id: 'notification1', title: 't', message: 'm', type: 'system' };
+    User.find.mockReturnValue(mockQuery(userIds(2500)));
+    Notification.findById.mockResolvedValue(null);
+    NotificationInbox.insertMany
+      .mockImplementationOnce(async (docs) => docs)
+      .mockRejectedValueOnce(new Error('connection reset'));
+
+    await expect(NotificationService.sendToRole('all', data, 'admin1')).rejects.toThrow('connection reset');
+
+    // The first batch is already in; the retry only adds what is missing
+    const stored = Notification.createNotification.mock.results[0].value;
+    Notification.findById.mockReturnValue(stored);
+    const duplicate = new Error('E11000 duplicate key error');
+    duplicate.writeErrors = Array.from({ length: 1000 }, (_, index) => ({ code: 11000, index }));
+    NotificationInbox.insertMany.mockRejectedValueOnce(duplicate);
+
+    const notification = await NotificationService.sendToRole('all', data, 'admin1');
+
+    expect(Notification.createNotification).toHaveBeenCalledTimes(1);
+    expect(Notification.findById).toHaveBeenLastCalledWith('notification1');
+    expect(notification.recipientCount).toBe(2500);
+  });
+});
+
+describe('NotificationService inbox reads', () => {
+  beforeEach(() => {
+    jest.clearAllMocks();
+  });
+
+  it('should page the inbox and merge read state into notifications', async () => {
+    NotificationInbox.find.mockReturnValue(mockQuery([
+      { notificationId: 'n2', read: false },
+      { notificationId: 'n1', read: true, readAt: new Date('2026-01-15T10:00:00Z') },
+      { notificationId: 'n0', read: false }
+    ]));
+    Notification.find.mockReturnValue(mockQuery([
+      { _id: 'n1', title: 'First' },
+      { _id: 'n2', title: 'Second' }
+    ]));
+
+    const notifications = await NotificationService.getUserNotifications('user1', 2, 3);
+
+    expect(NotificationInbox.find).toHaveBeenCalledWith({ userId: 'user1' });
+    expect(NotificationInbox.find.mock.results[0].value.skip).toHaveBeenCalledWith(3);
+    expect(notifications.map(n => [n.title, n.read])).toEqual([['Second', false], ['First', true]]);
+  });
+
+  it('should count unread inbox records', async () => {
+    NotificationInbox.countDocuments.mockResolvedValue(7);
+
+    expect(await NotificationService.getUnreadCount('user1')).toBe(7);
+    expect(NotificationInbox.countDocuments).toHaveBeenCalledWith({ userId: 'user1', read: false });
+  });
+
+  it('should only remove the notification from one inbox', async () => {
+    NotificationInbox.findOneAndDelete.mockResolvedValue({ notificationId: 'n1', userId: 'user1', read: true });
+
+    await NotificationService.deleteForUser('n1', 'user1');
+
+    expect(NotificationInbox.findOneAndDelete).toHaveBeenCalledWith({ notificationId: 'n1', userId: 'user1' });
+  });
+
+  it('should migrate embedded recipients into inbox records', async () => {
+    Notification.find.mockReturnValue(mockQuery([
+      { _id: 'n1', createdAt: new Date(), recipients: [{ userId: 'user1', read: true }, { userId: 'user2' }] }
+    ]));
+
+    const result = await NotificationService.migrateEmbeddedRecipients();
+
+    expect(result).toEqual({ notificationCount: 1, recipientCount: 2 });
+    const [operations] = NotificationInbox.bulkWrite.mock.calls[0];
+    expect(operations[0].updateOne.filter).toEqual({ notificationId: 'n1', userId: 'user1' });
+    expect(operations[0].updateOne.update.$setOnInsert.read).toBe(true);
+    expect(Notification.updateOne).toHaveBeenCalledWith(
+      { _id: 'n1' },
+      { $set: { recipientCount: 2 }, $unset: { recipients: 1 } }
+    );
+  });
+});
@@ -0,0 +1,168 @@
+/**
+ * Unit Tests for Notification Unread Counters
+ * Tests cached counts, in-place adjustments and reconciliation against an
+ * in-memory Redis stand-in
+ */
+
+const mongoose = require('mongoose');
+
+jest.mock('../../models/NotificationInbox', () => ({
+  countDocuments: jest.fn(),
+  aggregate: jest.fn(),
+  insertMany: jest.fn(),
+  findOneAndDelete: jest.fn()
+}));
+
+jest.mock('../../models/Notification', () => ({
+  markAsRead: jest.fn()
+}));
+
+const NotificationInbox = require('../../models/NotificationInbox');
+const Notification = require('../../models/Notification');
+const NotificationService = require('../../services/notificationService');
+const notificationCounterService = require('../../services/notificationCounterService');
+const redisService = require('../../services/security/redisService');
+const { FakeRedisClient } = require('../helpers/fakeRedis');
+const { registerScriptPorts } = require('../helpers/redisScriptPorts');
+
+describe('NotificationCounterService', () => {
+  const userId = new mongoose.Types.ObjectId().toString();
+  let client;
+
+  beforeEach(() => {
+    jest.clearAllMocks();
+    client = registerScriptPorts(new FakeRedisClient());
+    redisService.client = client;
+    redisService.isConnected = true;
+    redisService.scriptShas.clear();
+    jest.spyOn(notificationCounterService, 'startReconciliation').mockImplementation(() => {});
+  });
+
+  afterEach(() => {
+    jest.restoreAllMocks();
+    redisService.client = null;
+    redisService.isConnected = false;
+  });
+
+  it('should count once and serve later polls from Redis', async () => {
+    NotificationInbox.countDocuments.mockResolvedValue(3);
+
+    const counts = [];
+    for (let i = 0; i < 5; i++) {
+      counts.push(await NotificationService.getUnreadCount(userId));
+    }
+
+    expect(counts).toEqual([3, 3, 3, 3, 3]);
+    expect(NotificationInbox.countDocuments).toHaveBeenCalledTimes(1);
+    expect(await client.ttl(`notification_unread:${userId}`)).toBeGreaterThan(0);
+  });
+
+  it('should fall back to counting in Mongo while Redis is down', async () => {
+    redisService.isConnected = false;
+    NotificationInbox.countDocuments.mockResolvedValue(2);
+
+    expect(await NotificationService.getUnreadCount(userId)).toBe(2);
+    expect(client.commandCount).toBe(0);
+  });
+
+  it('should increment cached counters on fan-out and skip cold ones', async () => {
+    const coldUser = new mongoose.Types.ObjectId().toString();
+    NotificationInbox.countDocuments.mockResolvedValue(1);
+    await NotificationService.getUnreadCount(userId);
+    NotificationInbox.insertMany.mockImplementation(async (docs) => docs);
+
+    await NotificationService.insertInboxBatch({ _id: 'n1', createdAt: new Date() }, [userId, coldUser]);
+
+    expect(await client.get(`notification_unread:${userId}`)).toBe('2');
+    expect(await client.get(`notification_unread:${coldUser}`)).toBeNull();
+  });
+
+  it('should not count inbox records that already existed', async () => {
+    const otherUser = new mongoose.Types.ObjectId().toString();
+    NotificationInbox.countDocuments.mockResolvedValue(0);
+    await NotificationService.getUnreadCount(userId);
+    await NotificationService.getUnreadCount(otherUser);
+
+    const duplicate = new Error('E11000 duplicate key error');
+    duplicate.writeErrors = [{ code: 11000, index: 0 }];
+    NotificationInbox.insertMany.mockRejectedValue(duplicate);
+
+    await NotificationService.insertInboxBatch({ _id: 'n1', createdAt: new Date() }, [userId, otherUser]);
+
+    expect(await client.get(`notification_unread:${userId}`)).toBe('0');
+    expect(await client.get(`notification_unread:${otherUser}`)).toBe('1');
+  });
+
+  it('should decrement on read and on deleting an unread notification only', async () => {
+    NotificationInbox.countDocuments.mockResolvedValue(3);
+    await NotificationService.getUnreadCount(userId);
+
+    Notification.markAsRead.mockResolvedValueOnce({ modifiedCount: 1 });
+    await NotificationService.markAsRead('n1', userId);
+    // Already read: nothing modified, nothing to decrement
+    Notification.markAsRead.mockResolvedValueOnce({ modifiedCount: 0 });
+    await NotificationService.markAsRead('n1', userId);
+
+    NotificationInbox.findOneAndDelete.mockResolvedValueOnce({ read: false });
+    await NotificationService.deleteForUser('n2', userId);
+    NotificationInbox.findOneAndDelete.mockResolvedValueOnce({ read: true });
+    await NotificationService.deleteForUser('n1', userId);
+
+    expect(await NotificationService.getUnreadCount(userId)).toBe(1);
+  });
+
+  it('should never go below zero', async () => {
+    NotificationInbox.countDocuments.mockResolvedValue(0);
+    await NotificationService.getUnreadCount(userId);
+
+    await notificationCounterService.adjust([userId], -1);
+
+    expect(await NotificationService.getUnreadCount(userId)).toBe(0);
+  });
+
+  it('should correct drifted counters during reconciliation', async () => {
+    const steadyUser = new mongoose.Types.ObjectId().toString();
+    await client.set(`notification_unread:${userId}`, '9');
+    await client.set(`notification_unread:${steadyUser}`, '2');
+    NotificationInbox.aggregate.mockResolvedValue([
+      { _id: new mongoose.Types.ObjectId(userId), count: 4 },
+      { _id: new mongoose.Types.ObjectId(steadyUser), count: 2 }
+    ]);
+
+    const result = await notificationCounterService.reconcile();
+
+    expect(result).toEqual({ checked: 2, corrected: 1 });
+    expect(await client.get(`notification_unread:${userId}`)).toBe('4');
+    expect(await client.get(`notification_unread:${steadyUser}`)).toBe('2');
+  });
+
+  it('should not cache a count that raced a fan-out', async () => {
+    NotificationInbox.insertMany.mockImplementation(async (docs) => docs);
+    // The fan-out lands after the count was taken but before it is cached
+    NotificationInbox.countDocuments.mockImplementationOnce(async () => {
+      await NotificationService.insertInboxBatch({ _id: 'n1', createdAt: new Date() }, [userId]);
+      return 0;
+    });
+
+    expect(await NotificationService.getUnreadCount(userId)).toBe(0);
+    expect(await client.get(`notification_unread:${userId}`)).toBeNull();
+
+    NotificationInbox.countDocuments.mockResolvedValueOnce(1);
+    expect(await NotificationService.getUnreadCount(userId)).toBe(1);
+    expect(await client.get(`notification_unread:${userId}`)).toBe('1');
+  });
+
+  it('should keep adjustments made while reconciliation was counting', async () => {
+    await client.set(`notification_unread:${userId}`, '9');
+    NotificationInbox.insertMany.mockImplementation(async (docs) => docs);
+    NotificationInbox.aggregate.mockImplementationOnce(async () => {
+      await NotificationService.insertInboxBatch({ _id: 'n1', createdAt: new Date() }, [userId]);
+      return [{ _id: new mongoose.Types.ObjectId(userId), count: 4 }];
+    });
+
+    const result = await notificationCounterService.reconcile();
+
+    expect(result).toEqual({ checked: 1, corrected: 0 });
+    expect(await client.get(`notification_unread:${userId}`)).toBe('10');
+  });
+});
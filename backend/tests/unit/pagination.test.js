@@ -0,0 +1,139 @@
+/**
+ * Unit Tests for Cursor Pagination
+ * Tests cursor encoding, query parameter parsing and page responses
+ */
+
+const mongoose = require('mongoose');
+const {
+  MAX_LIMIT,
+  encodeCursor,
+  decodeCursor,
+  parsePagination,
+  sendPaginated
+} = require('../../utils/pagination');
+
+const createRequest = (query = {}, headers = {}) => ({ query, headers });
+
+const createResponse = () => {
+  const res = { headers: {} };
+  res.set = jest.fn((name, value) => { res.headers[name] = value; return res; });
+  res.json = jest.fn(() => res);
+  return res;
+};
+
+const createQuery = (docs) => {
+  const query = {
+    and: jest.fn(() => query),
+    select: jest.fn(() => query),
+    sort: jest.fn(() => query),
+    limit: jest.fn((limit) => Promise.resolve(docs.slice(0, limit))),
+    then: (resolve, reject) => Promise.resolve(docs).then(resolve, reject)
+  };
+  return query;
+};
+
+describe('Cursor Pagination', () => {
+  describe('cursors', () => {
+    it('should round-trip createdAt and _id', () => {
+      const doc = { _id: new mongoose.Types.ObjectId(), createdAt: new Date('2026-01-15T10:00:00Z') };
+
+      const decoded = decodeCursor(encodeCursor(doc));
+
+      expect(decoded.createdAt.toISOString()).toBe('2026-01-15T10:00:00.000Z');
+      expect(decoded.id.equals(doc._id)).toBe(true);
+    });
+
+    it('should reject malformed cursors', () => {
+      expect(decodeCursor('not-a-cursor')).toBeNull();
+      expect(decodeCursor(Buffer.from('{"c":"x","i":"y"}').toString('base64url'))).toBeNull();
+    });
+  });
+
+  describe('parsePagination', () => {
+    it('should apply the default and maximum limits', () => {
+      const cursor = encodeCursor({ _id: new mongoose.Types.ObjectId(), createdAt: new Date() });
+
+      expect(parsePagination(createRequest({ cursor })).limit).toBe(100);
+      expect(parsePagination(createRequest({ limit: '10' })).limit).toBe(10);
+      expect(parsePagination(createRequest({ limit: '100000' })).limit).toBe(MAX_LIMIT);
+    });
+
+    it('should cap requests that send neither cursor nor limit', () => {
+      expect(parsePagination(createRequest()).limit).toBe(100);
+      expect(parsePagination(createRequest({ limit: 'abc' })).limit).toBe(100);
+      expect(parsePagination(createRequest(), { defaultLimit: 20 }).limit).toBe(20);
+    });
+
+    it('should only project allowed fields', () => {
+      const page = parsePagination(
+        createRequest({ fields: 'title,password,author' }),
+        { fields: ['title', 'author'] }
+      );
+
+      expect(page.projection).toBe('title author createdAt');
+    });
+
+    it('should report invalid cursors', () => {
+      expect(parsePagination(createRequest({ cursor: 'bad' })).error).toBe('Invalid cursor');
+    });
+
+    it('should stream without a limit when NDJSON is requested', () => {
+      const page = parsePagination(createRequest({}, { accept: 'application/x-ndjson' }));
+
+      expect(page.stream).toBe(true);
+      expect(page.limit).toBeNull();
+    });
+  });
+
+  describe('sendPaginated', () => {
+    const docs = Array.from({ length: 3 }, (_, i) => ({
+      _id: new mongoose.Types.ObjectId(),
+      createdAt: new Date(Date.UTC(2026, 0, 3 - i))
+    }));
+
+    it('should return one page and announce the next cursor', async () => {
+      const res = createResponse();
+      const query = createQuery(docs);
+
+      await sendPaginated(createRequest(), res, query, { limit: 2, cursor: null, projection: null });
+
+      expect(query.sort).toHaveBeenCalledWith({ createdAt: -1, _id: -1 });
+      expect(res.json).toHaveBeenCalledWith(docs.slice(0, 2));
+      expect(decodeCursor(res.headers['X-Next-Cursor']).id.equals(docs[1]._id)).toBe(true);
+    });
+
+    it('should omit the next cursor on the last page', async () => {
+      const res = createResponse();
+
+      await sendPaginated(createRequest(), res, createQuery(docs), { limit: 5, cursor: null, projection: null });
+
+      expect(res.json).toHaveBeenCalledWith(docs);
+      expect(res.headers['X-Next-Cursor']).toBeUndefined();
+    });
+
+    it('should send the first page when the request sends no paging parameters', async () => {
+      const res = createResponse();
+      const query = createQuery(docs);
+
+      await sendPaginated(createRequest(), res, query, parsePagination(createRequest(), { defaultLimit: 2 }));
+
+      expect(query.limit).toHaveBeenCalledWith(3);
+      expect(res.json).toHaveBeenCalledWith(docs.slice(0, 2));
+      expect(decodeCursor(res.headers['X-Next-Cursor']).id.equals(docs[1]._id)).toBe(true);
+    });
+
+    it('should continue after the cursor position', async () => {
+      const query = createQuery(docs);
+      const cursor = decodeCursor(encodeCursor(docs[0]));
+
+      await sendPaginated(createRequest(), createResponse(), query, { limit: 2, cursor, projection: null });
+
+      expect(query.and).toHaveBeenCalledWith([{
+        $or: [
+          { createdAt: { $lt: cursor.createdAt } },
+          { createdAt: cursor.createdAt, _id: { $lt: cursor.id } }
+        ]
+      }]);
+    });
+  });
+});
@@ -0,0 +1,138 @@
+/**
+ * Unit Tests for Seat Availability Bitmaps
+ * Tests bitmap layout, reservation patching, ETag behaviour and
+ * invalidation across instances sharing an in-memory Redis stand-in
+ */
+
+const mockSeats = [
+  { seatNumber: 'A1', position: { row: 1, column: 1 }, isBlocked: false },
+  { seatNumber: 'A2', position: { row: 1, column: 2 }, isBlocked: true },
+  { seatNumber: 'B1', position: { row: 2, column: 1 }, isBlocked: false },
+  { seatNumber: 'B3', position: { row: 2, column: 3 }, isBlocked: false }
+];
+const mockReservations = [{ seatNumber: 'B1' }];
+
+const mockQuery = (result) => ({
+  select: jest.fn().mockReturnThis(),
+  lean: jest.fn(() => Promise.resolve(result))
+});
+
+jest.mock('../../models/Seat', () => ({
+  find: jest.fn(() => mockQuery(mockSeats))
+}));
+
+jest.mock('../../models/SeatReservation', () => ({
+  find: jest.fn(() => mockQuery(mockReservations))
+}));
+
+const Seat = require('../../models/Seat');
+const SeatReservation = require('../../models/SeatReservation');
+const { SeatAvailabilityService } = require('../../services/seatAvailabilityService');
+const redisService = require('../../services/security/redisService');
+const { FakeRedisClient } = require('../helpers/fakeRedis');
+
+const decode = (base64, size) => {
+  const bitmap = Buffer.from(base64, 'base64');
+  return Array.from({ length: size }, (_, i) => (bitmap[i >> 3] & (0x80 >> (i & 7))) !== 0);
+};
+
+describe('SeatAvailabilityService', () => {
+  const libraryId = '507f1f77bcf86cd799439011';
+  const day = new Date('2026-01-15T00:00:00.000Z');
+
+  let seatAvailabilityService;
+
+  beforeEach(async () => {
+    jest.clearAllMocks();
+    redisService.client = new FakeRedisClient();
+    redisService.isConnected = true;
+    redisService.subscriber = null;
+    seatAvailabilityService = new SeatAvailabilityService();
+    await seatAvailabilityService.ensureSubscribed();
+  });
+
+  afterEach(() => {
+    redisService.client = null;
+    redisService.subscriber = null;
+    redisService.isConnected = false;
+  });
+
+  it('should lay seats out row by row', async () => {
+    const availability = await seatAvailabilityService.getAvailability(libraryId, day, 'Morning');
+
+    expect(availability.rows).toBe(2);
+    expect(availability.columns).toBe(3);
+    expect(decode(availability.seats, 6)).toEqual([true, true, false, true, false, true]);
+  });
+
+  it('should exclude blocked and reserved seats from availability', async () => {
+    const availability = await seatAvailabilityService.getAvailability(libraryId, day, 'Morning');
+
+    expect(decode(availability.available, 6)).toEqual([true, false, false, false, false, true]);
+  });
+
+  it('should serve repeated reads from the cached bitmaps', async () => {
+    const first = await seatAvailabilityService.getAvailability(libraryId, day, 'Morning');
+    const second = await seatAvailabilityService.getAvailability(libraryId, day, 'Morning');
+
+    expect(second.etag).toBe(first.etag);
+    expect(Seat.find).toHaveBeenCalledTimes(1);
+    expect(SeatReservation.find).toHaveBeenCalledTimes(1);
+  });
+
+  it('should change the ETag when seats are reserved or released', async () => {
+    const before = await seatAvailabilityService.getAvailability(libraryId, day, 'Morning');
+
+    seatAvailabilityService.updateSeats(libraryId, day, 'Morning', ['A1'], true);
+    const reserved = await seatAvailabilityService.getAvailability(libraryId, day, 'Morning');
+    expect(decode(reserved.available, 6)[0]).toBe(false);
+    expect(reserved.etag).not.toBe(before.etag);
+
+    seatAvailabilityService.updateSeats(libraryId, day, 'Morning', ['A1'], false);
+    const released = await seatAvailabilityService.getAvailability(libraryId, day, 'Morning');
+    expect(released.etag).toBe(before.etag);
+  });
+
+  it('should rebuild the layout after the library is invalidated', async () => {
+    await seatAvailabilityService.getAvailability(libraryId, day, 'Morning');
+    seatAvailabilityService.invalidateLibrary(libraryId);
+    await seatAvailabilityService.getAvailability(libraryId, day, 'Morning');
+
+    expect(Seat.find).toHaveBeenCalledTimes(2);
+    expect(SeatReservation.find).toHaveBeenCalledTimes(2);
+  });
+
+  it('should drop another instance\'s slot when seats are reserved', async () => {
+    const other = new SeatAvailabilityService();
+    await other.ensureSubscribed();
+    await other.getAvailability(libraryId, day, 'Morning');
+
+    seatAvailabilityService.updateSeats(libraryId, day, 'Morning', ['A1'], true);
+    await other.getAvailability(libraryId, day, 'Morning');
+
+    expect(Seat.find).toHaveBeenCalledTimes(1);
+    expect(SeatReservation.find).toHaveBeenCalledTimes(2);
+  });
+
+  it('should drop another instance\'s layout when the library is invalidated', async () => {
+    const other = new SeatAvailabilityService();
+    await other.ensureSubscribed();
+    await other.getAvailability(libraryId, day, 'Morning');
+
+    seatAvailabilityService.invalidateLibrary(libraryId);
+    await other.getAvailability(libraryId, day, 'Morning');
+
+    expect(Seat.find).toHaveBeenCalledTimes(2);
+  });
+
+  it('should not serve cached bitmaps without the invalidation channel', async () => {
+    redisService.isConnected = false;
+    const standalone = new SeatAvailabilityService();
+
+    await standalone.getAvailability(libraryId, day, 'Morning');
+    await standalone.getAvailability(libraryId, day, 'Morning');
+
+    expect(Seat.find).toHaveBeenCalledTimes(2);
+    expect(SeatReservation.find).toHaveBeenCalledTimes(2);
+  });
+});
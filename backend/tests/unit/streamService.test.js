@@ -0,0 +1,207 @@
+/**
+ * Unit Tests for the Server-Sent Events stream
+ * Two services sharing an in-memory Redis stand-in play the part of two
+ * application instances.
+ */
+
+const { EventEmitter } = require('events');
+const jwt = require('jsonwebtoken');
+const { StreamService } = require('../../services/streamService');
+const redisService = require('../../services/security/redisService');
+const principalCacheService = require('../../services/security/principalCacheService');
+const { FakeRedisClient } = require('../helpers/fakeRedis');
+
+const mockResponse = () => ({
+  chunks: [],
+  writableLength: 0,
+  writableEnded: false,
+  writeHead: jest.fn(),
+  write(chunk) {
+    this.chunks.push(chunk);
+    return true;
+  },
+  end() {
+    this.writableEnded = true;
+  },
+  events(name) {
+    return this.chunks
+      .filter(chunk => chunk.startsWith(`event: ${name}\n`))
+      .map(chunk => JSON.parse(chunk.split('\ndata: ')[1]));
+  }
+});
+
+const open = (service, user, options, claims = {}) => {
+  const req = new EventEmitter();
+  req.user = { role: 'user', ...user };
+  req.tokenClaims = { id: user._id, tokenVersion: 0, ...claims };
+  const res = mockResponse();
+  const connection = service.connect(req, res, options);
+  return { req, res, connection };
+};
+
+describe('StreamService', () => {
+  let instanceA;
+  let instanceB;
+  let principals;
+
+  beforeEach(() => {
+    process.env.JWT_SECRET = 'test-jwt-secret-key-for-testing';
+    principals = {};
+    jest.spyOn(principalCacheService, 'getPrincipal').mockImplementation(async (userId) => (
+      userId in principals ? principals[userId] : { _id: userId, role: 'user', isActive: true, tokenVersion: 0 }
+    ));
+    redisService.client = new FakeRedisClient();
+    redisService.isConnected = true;
+    redisService.subscriber = null;
+    instanceA = new StreamService();
+    instanceB = new StreamService();
+  });
+
+  afterEach(() => {
+    instanceA.closeAll();
+    instanceB.closeAll();
+    redisService.client = null;
+    redisService.subscriber = null;
+    redisService.isConnected = false;
+    jest.restoreAllMocks();
+  });
+
+  it('should open an event stream and announce the connection', () => {
+    const { res } = open(instanceA, { _id: 'user1' });
+
+    expect(res.writeHead.mock.calls[0][1]['Content-Type']).toBe('text/event-stream');
+    expect(res.events('ready')).toHaveLength(1);
+  });
+
+  it('should only deliver user events to that user', () => {
+    const alice = open(instanceA, { _id: 'user1' });
+    const bob = open(instanceA, { _id: 'user2' });
+
+    instanceA.publish('notification', { title: 'Hi' }, { userIds: ['user1'] });
+
+    expect(alice.res.events('notification')).toEqual([{ title: 'Hi' }]);
+    expect(bob.res.events('notification')).toEqual([]);
+  });
+
+  it('should relay events to connections on other instances once', async () => {
+    await instanceA.ensureSubscribed();
+    await instanceB.ensureSubscribed();
+    const local = open(instanceA, { _id: 'user1' });
+    const remote = open(instanceB, { _id: 'user1' });
+
+    instanceA.publish('notification', { title: 'Hi' }, { userIds: ['user1'] });
+    await new Promise(resolve => setImmediate(resolve));
+
+    expect(local.res.events('notification')).toHaveLength(1);
+    expect(remote.res.events('notification')).toHaveLength(1);
+  });
+
+  it('should still deliver locally while Redis is down', () => {
+    redisService.isConnected = false;
+    const { res } = open(instanceA, { _id: 'user1' });
+
+    instanceA.publish('seats.changed', { status: 'blocked' });
+
+    expect(res.events('seats.changed')).toHaveLength(1);
+  });
+
+  it('should filter role and library events', () => {
+    const admin = open(instanceA, { _id: 'admin1', role: 'admin' });
+    const watcher = open(instanceA, { _id: 'user1' }, { libraryIds: ['lib1'] });
+
+    instanceA.publish('notification', { title: 'Admins' }, { role: 'admin' });
+    instanceA.publish('seats.changed', { libraryId: 'lib2' }, { libraryId: 'lib2' });
+    instanceA.publish('seats.changed', { libraryId: 'lib1' }, { libraryId: 'lib1' });
+
+    expect(admin.res.events('notification')).toHaveLength(1);
+    expect(watcher.res.events('notification')).toHaveLength(0);
+    expect(admin.res.events('seats.changed')).toHaveLength(2);
+    expect(watcher.res.events('seats.changed')).toEqual([{ libraryId: 'lib1' }]);
+  });
+
+  it('should close a connection whose send buffer is full', () => {
+    instanceA.maxBufferBytes = 1024;
+    const slow = open(instanceA, { _id: 'user1' });
+    const fast = open(instanceA, { _id: 'user2' });
+    slow.res.writableLength = 1000;
+
+    instanceA.publish('notification', { title: 'x'.repeat(100) });
+
+    expect(slow.res.writableEnded).toBe(true);
+    expect(fast.res.events('notification')).toHaveLength(1);
+    expect(instanceA.getStats().connections).toBe(1);
+    expect(instanceA.getStats().slowClosed).toBe(1);
+  });
+
+  it('should send heartbeats and forget closed connections', () => {
+    const { req, res } = open(instanceA, { _id: 'user1' });
+
+    instanceA.heartbeat();
+    expect(res.chunks[res.chunks.length - 1]).toBe(': heartbeat\n\n');
+
+    req.emit('close');
+    expect(instanceA.getStats().connections).toBe(0);
+    expect(instanceA.heartbeatTimer).toBeNull();
+  });
+
+  it('should cap streams per user by closing the oldest', () => {
+    instanceA.maxConnectionsPerUser = 2;
+    const first = open(instanceA, { _id: 'user1' });
+    open(instanceA, { _id: 'user1' });
+    open(instanceA, { _id: 'user1' });
+
+    expect(first.res.writableEnded).toBe(true);
+    expect(instanceA.getStats().connections).toBe(2);
+  });
+
+  it('should close streams of revoked tokens and deactivated accounts on the heartbeat', async () => {
+    const current = open(instanceA, { _id: 'user1' });
+    const revoked = open(instanceA, { _id: 'user2' });
+    const deactivated = open(instanceA, { _id: 'user3' });
+    const deleted = open(instanceA, { _id: 'user4' });
+    principals.user2 = { _id: 'user2', role: 'user', isActive: true, tokenVersion: 1 };
+    principals.user3 = { _id: 'user3', role: 'user', isActive: false, tokenVersion: 0 };
+    principals.user4 = null;
+
+    expect(await instanceA.revalidate()).toBe(3);
+
+    expect(current.res.writableEnded).toBe(false);
+    expect(revoked.res.writableEnded).toBe(true);
+    expect(deactivated.res.writableEnded).toBe(true);
+    expect(deleted.res.writableEnded).toBe(true);
+    expect(instanceA.getStats().revoked).toBe(3);
+  });
+
+  it('should close streams once their token expires and follow role changes', async () => {
+    const nowSeconds = Math.floor(Date.now() / 1000);
+    const expired = open(instanceA, { _id: 'user1' }, {}, { exp: nowSeconds - 1 });
+    const promoted = open(instanceA, { _id: 'user2' }, {}, { exp: nowSeconds + 600 });
+    principals.user2 = { _id: 'user2', role: 'admin', isActive: true, tokenVersion: 0 };
+
+    await instanceA.revalidate();
+    instanceA.publish('notification', { title: 'Admins' }, { role: 'admin' });
+
+    expect(expired.res.writableEnded).toBe(true);
+    expect(promoted.res.events('notification')).toHaveLength(1);
+  });
+
+  it('should issue stream tickets that carry the access token\'s version and expiry', () => {
+    const ticket = instanceA.issueTicket('user1', { id: 'user1', tokenVersion: 2, exp: 2000000000 });
+
+    expect(instanceB.verifyTicket(ticket)).toEqual({ id: 'user1', tokenVersion: 2, exp: 2000000000 });
+  });
+
+  it('should not accept a stream ticket as an access token', () => {
+    const ticket = instanceA.issueTicket('user1', { tokenVersion: 0 });
+
+    expect(() => jwt.verify(ticket, process.env.JWT_SECRET)).toThrow();
+  });
+
+  it('should reject expired stream tickets', () => {
+    const ticket = instanceA.issueTicket('user1', { tokenVersion: 0 });
+    const later = Date.now() + (instanceA.ticketTtlSeconds + 1) * 1000;
+    jest.spyOn(Date, 'now').mockReturnValue(later);
+
+    expect(() => instanceA.verifyTicket(ticket)).toThrow();
+  });
+});
@@ -0,0 +1,50 @@
+const mongoose = require('mongoose');
+const Library = require('../models/Library');
+require('dotenv').config();
+
+// Populate the GeoJSON location used by /api/libraries/nearby from the legacy coordinates.lat/lng
+const backfillLibraryLocations = async () => {
+  try {
+    await mongoose.connect(process.env.MONGODB_URI);
+    console.log('Connected to MongoDB');
+
+    const result = await Library.updateMany(
+      {
+        'coordinates.lat': { $type: 'number' },
+        'coordinates.lng': { $type: 'number' }
+      },
+      [{
+        $set: {
+          location: {
+            type: 'Point',
+            coordinates: ['$coordinates.lng', '$coordinates.lat']
+          }
+        }
+      }]
+    );
+    console.log(`Updated location for ${result.modifiedCount} libraries`);
+
+    // Placeholder points without coordinates can never match a geo query
+    const cleared = await Library.updateMany(
+      { 'coordinates.lat': { $not: { $type: 'number' } }, 'location.coordinates.1': { $exists: false } },
+      { $unset: { location: 1 } }
+    );
+    console.log(`Cleared empty location on ${cleared.modifiedCount} libraries`);
+
+    const missing = await Library.countDocuments({ location: { $exists: false } });
+    if (missing > 0) {
+      console.log(`${missing} libraries have no coordinates and will not appear in nearby search`);
+    }
+
+    // createIndexes only adds missing indexes; syncIndexes would also drop
+    // any index on the collection that the schema does not declare
+    await Library.createIndexes();
+    console.log('Library indexes are built');
+  } catch (error) {
+    console.error('Error backfilling library locations:', error);
+  } finally {
+    await mongoose.disconnect();
+  }
+};
+
+backfillLibraryLocations();
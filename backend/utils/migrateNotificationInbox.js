@@ -0,0 +1,33 @@
+const mongoose = require('mongoose');
+const Notification = require('../models/Notification');
+const NotificationInbox = require('../models/NotificationInbox');
+const NotificationService = require('../services/notificationService');
+require('dotenv').config();
+
+// Move embedded recipients[] read state into NotificationInbox records so
+// notifications sent before the inbox existed still show up for their users
+const migrateNotificationInbox = async () => {
+  try {
+    await mongoose.connect(process.env.MONGODB_URI);
+    console.log('Connected to MongoDB');
+
+    // createIndexes only adds missing indexes; syncIndexes would also drop
+    // any index on the collection that the schema does not declare
+    await NotificationInbox.createIndexes();
+    console.log('Notification inbox indexes are built');
+
+    const { notificationCount, recipientCount } = await NotificationService.migrateEmbeddedRecipients();
+    console.log(`Migrated ${recipientCount} recipients from ${notificationCount} notifications`);
+
+    const remaining = await Notification.countDocuments({ 'recipients.0': { $exists: true } });
+    if (remaining > 0) {
+      console.log(`${remaining} notifications still have embedded recipients; re-run to finish`);
+    }
+  } catch (error) {
+    console.error('Error migrating notification inbox:', error);
+  } finally {
+    await mongoose.disconnect();
+  }
+};
+
+migrateNotificationInbox();
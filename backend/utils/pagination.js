@@ -0,0 +1,141 @@
+const mongoose = require('mongoose');
+
+const DEFAULT_LIMIT = 100;
+const MAX_LIMIT = 500;
+const NDJSON_TYPE = 'application/x-ndjson';
+
+// Cursors encode the (createdAt, _id) of the last document on a page
+const encodeCursor = (doc) => Buffer.from(JSON.stringify({
+  c: new Date(doc.createdAt).toISOString(),
+  i: doc._id.toString()
+})).toString('base64url');
+
+const decodeCursor = (cursor) => {
+  try {
+    const { c, i } = JSON.parse(Buffer.from(cursor, 'base64url').toString('utf8'));
+    const createdAt = new Date(c);
+    if (isNaN(createdAt.getTime()) || !mongoose.Types.ObjectId.isValid(i)) return null;
+    return { createdAt, id: new mongoose.Types.ObjectId(i) };
+  } catch (error) {
+    return null;
+  }
+};
+
+const wantsNdjson = (req) => req.query.format === 'ndjson' ||
+  (req.headers.accept || '').includes(NDJSON_TYPE);
+
+/**
+ * Parse cursor, limit, fields and format query parameters
+ * @param {Object} req - Express request
+ * @param {Object} options - { defaultLimit, maxLimit, fields: allowed projection fields }
+ * @returns {Object} Pagination settings (limit is null only for an unbounded stream) or { error } for an invalid cursor
+ */
+const parsePagination = (req, options = {}) => {
+  const maxLimit = options.maxLimit || MAX_LIMIT;
+  const stream = wantsNdjson(req);
+  const requestedLimit = parseInt(req.query.limit, 10);
+
+  // JSON responses are always capped, so a request without paging
+  // parameters gets the first page rather than the whole collection. Only a
+  // stream without an explicit limit runs to the end of the collection
+  const limit = stream && !(requestedLimit > 0)
+    ? null
+    : Math.min(requestedLimit > 0 ? requestedLimit : (options.defaultLimit || DEFAULT_LIMIT), maxLimit);
+
+  let cursor = null;
+  if (req.query.cursor) {
+    cursor = decodeCursor(req.query.cursor);
+    if (!cursor) return { error: 'Invalid cursor' };
+  }
+
+  let projection = null;
+  if (req.query.fields && options.fields) {
+    const requested = String(req.query.fields).split(',').map(field => field.trim());
+    const selected = requested.filter(field => options.fields.includes(field));
+    if (selected.length > 0) {
+      projection = [...new Set([...selected, ...(options.requiredFields || []), 'createdAt'])].join(' ');
+    }
+  }
+
+  return { limit, cursor, projection, stream };
+};
+
+/**
+ * Run a find query one keyset page at a time and send it as JSON or NDJSON.
+ * JSON responses stay an array; the next page is announced in X-Next-Cursor.
+ * @param {Object} req - Express request
+ * @param {Object} res - Express response
+ * @param {Query} query - Mongoose find query (filters/populate already applied)
+ * @param {Object} page - Result of parsePagination
+ */
+const sendPaginated = async (req, res, query, page) => {
+  if (page.cursor) {
+    query.and([{
+      $or: [
+        { createdAt: { $lt: page.cursor.createdAt } },
+        { createdAt: page.cursor.createdAt, _id: { $lt: page.cursor.id } }
+      ]
+    }]);
+  }
+  if (page.projection) {
+    query.select(page.projection);
+  }
+  query.sort({ createdAt: -1, _id: -1 });
+
+  if (page.stream) {
+    if (page.limit) query.limit(page.limit);
+    return streamNdjson(res, query);
+  }
+
+  const docs = await query.limit(page.limit + 1);
+  const hasMore = docs.length > page.limit;
+  const items = hasMore ? docs.slice(0, page.limit) : docs;
+
+  if (hasMore) {
+    res.set('X-Next-Cursor', encodeCursor(items[items.length - 1]));
+  }
+  res.json(items);
+};
+
+// Resolve once the socket buffer drained or the client went away
+const waitForDrain = (res) => new Promise(resolve => {
+  const done = () => {
+    res.off('drain', done);
+    res.off('close', done);
+    resolve();
+  };
+  res.on('drain', done);
+  res.on('close', done);
+});
+
+// Stream documents one per line, pausing whenever the socket buffer is full
+const streamNdjson = async (res, query) => {
+  res.status(200);
+  res.set('Content-Type', NDJSON_TYPE);
+
+  const cursor = query.cursor();
+  try {
+    for await (const doc of cursor) {
+      if (res.destroyed) break;
+      if (!res.write(JSON.stringify(doc) + '\n')) {
+        await waitForDrain(res);
+      }
+    }
+    res.end();
+  } catch (error) {
+    // Headers are already out, so the only way to signal failure is to cut the stream
+    console.error('NDJSON stream error:', error.message);
+    res.destroy(error);
+  } finally {
+    await cursor.close();
+  }
+};
+
+module.exports = {
+  DEFAULT_LIMIT,
+  MAX_LIMIT,
+  encodeCursor,
+  decodeCursor,
+  parsePagination,
+  sendPaginated
+};
@@ -0,0 +1,49 @@
+const mongoose = require('mongoose');
+const Book = require('../models/Book');
+require('dotenv').config();
+
+const BATCH_SIZE = 1000;
+
+// Fill Book.searchPrefixes for existing books and build the search indexes
+const rebuildBookSearchIndex = async () => {
+  try {
+    await mongoose.connect(process.env.MONGODB_URI);
+    console.log('Connected to MongoDB');
+
+    let updated = 0;
+    let batch = [];
+    const cursor = Book.find().select('title author').lean().cursor();
+
+    for await (const book of cursor) {
+      batch.push({
+        updateOne: {
+          filter: { _id: book._id },
+          update: { $set: { searchPrefixes: Book.buildSearchPrefixes(book.title, book.author) } }
+        }
+      });
+
+      if (batch.length === BATCH_SIZE) {
+        await Book.bulkWrite(batch, { ordered: false });
+        updated += batch.length;
+        batch = [];
+      }
+    }
+
+    if (batch.length > 0) {
+      await Book.bulkWrite(batch, { ordered: false });
+      updated += batch.length;
+    }
+    console.log(`Updated search prefixes for ${updated} books`);
+
+    // createIndexes only adds missing indexes; syncIndexes would also drop
+    // any index on the collection that the schema does not declare
+    await Book.createIndexes();
+    console.log('Book search indexes are built');
+  } catch (error) {
+    console.error('Error rebuilding book search index:', error);
+  } finally {
+    await mongoose.disconnect();
+  }
+};
+
+rebuildBookSearchIndex();
@@ -0,0 +1,20 @@
+const redisService = require('../services/security/redisService');
+require('dotenv').config();
+
+// Add sessions created before the per-user session index existed to it, so
+// per-user session listing and revocation see them. Safe to re-run.
+const rebuildSessionIndex = async () => {
+  try {
+    await redisService.initialize();
+    console.log('Connected to Redis');
+
+    const indexed = await redisService.rebuildUserSessionIndex();
+    console.log(`Indexed ${indexed} sessions`);
+  } catch (error) {
+    console.error('Error rebuilding session index:', error);
+  } finally {
+    await redisService.disconnect();
+  }
+};
+
+rebuildSessionIndex();
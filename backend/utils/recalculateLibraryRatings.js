@@ -0,0 +1,20 @@
+const mongoose = require('mongoose');
+const Library = require('../models/Library');
+require('dotenv').config();
+
+// Backfill/repair Library.ratingSum and Library.ratingCount from the Rating collection
+const recalculateLibraryRatings = async () => {
+  try {
+    await mongoose.connect(process.env.MONGODB_URI);
+    console.log('Connected to MongoDB');
+
+    const updated = await Library.recalculateRatings();
+    console.log(`Recalculated rating totals for ${updated} libraries`);
+  } catch (error) {
+    console.error('Error recalculating library ratings:', error);
+  } finally {
+    await mongoose.disconnect();
+  }
+};
+
+recalculateLibraryRatings();
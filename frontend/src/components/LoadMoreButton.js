@@ -0,0 +1,27 @@
+import React from 'react';
+import { useTheme } from '../context/ThemeContext';
+
+// Appends the next page of a cursor-paged list; hidden on the last page
+const LoadMoreButton = ({ hasMore, loading, onClick, label = 'Load more' }) => {
+  const { isDark } = useTheme();
+
+  if (!hasMore) return null;
+
+  return (
+    <div className="text-center py-6">
+      <button
+        onClick={onClick}
+        disabled={loading}
+        className={`px-6 py-2 rounded-lg font-semibold transition-all duration-300 disabled:opacity-50 ${
+          isDark
+            ? 'bg-gray-700 hover:bg-gray-600 text-white'
+            : 'bg-gray-200 hover:bg-gray-300 text-gray-800'
+        }`}
+      >
+        {loading ? 'Loading...' : label}
+      </button>
+    </div>
+  );
+};
+
+export default LoadMoreButton;
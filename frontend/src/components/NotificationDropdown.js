@@ -4,6 +4,8 @@ import { useAuth } from '../hooks/useAuth';
 import { useTheme } from '../context/ThemeContext';
 import axios from '../utils/axios';
 
+const STREAM_RETRY_MS = 5000;
+
 const NotificationDropdown = () => {
   const { user } = useAuth();
   const { isDark } = useTheme();
@@ -20,6 +22,59 @@ const NotificationDropdown = () => {
     }
   }, [user]);
 
+  // New notifications are pushed over the event stream instead of polled
+  useEffect(() => {
+    const token = localStorage.getItem('token');
+    if (!user || !token || typeof EventSource === 'undefined') {
+      return undefined;
+    }
+
+    let stream = null;
+    let retryTimer = null;
+    let cancelled = false;
+
+    // EventSource cannot send the Authorization header, so each stream is
+    // opened with a short-lived ticket rather than the access token
+    const connect = async () => {
+      try {
+        const response = await axios.post('/api/stream/ticket');
+        if (cancelled) return;
+        stream = new EventSource(
+          `${axios.defaults.baseURL}/api/stream?ticket=${encodeURIComponent(response.data.ticket)}`,
+          { withCredentials: true }
+        );
+      } catch (error) {
+        if (!cancelled && error.response?.status !== 401) {
+          retryTimer = setTimeout(connect, STREAM_RETRY_MS);
+        }
+        return;
+      }
+
+      stream.addEventListener('notification', () => {
+        setUnreadCount(count => count + 1);
+      });
+      // Events may have been missed while disconnected
+      stream.addEventListener('ready', () => {
+        fetchUnreadCount();
+      });
+      // The browser reconnects with the same ticket, which soon expires;
+      // once it gives up, start over with a new one
+      stream.addEventListener('error', () => {
+        if (stream.readyState === EventSource.CLOSED && !cancelled) {
+          retryTimer = setTimeout(connect, STREAM_RETRY_MS);
+        }
+      });
+    };
+
+    connect();
+
+    return () => {
+      cancelled = true;
+      clearTimeout(retryTimer);
+      if (stream) stream.close();
+    };
+  }, [user]);
+
   useEffect(() => {
     const handleClickOutside = (event) => {
       if (dropdownRef.current && !dropdownRef.current.contains(event.target)) {
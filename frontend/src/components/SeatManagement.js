@@ -3,11 +3,15 @@ import { useAuth } from '../hooks/useAuth';
 import { useTheme } from '../context/ThemeContext';
 import axios from '../utils/axios';
 import toast from 'react-hot-toast';
+import { fetchPage } from '../utils/pagination';
+import LoadMoreButton from './LoadMoreButton';
 
 const SeatManagement = ({ libraryId, isAdmin = false }) => {
   const { user } = useAuth();
   const { isDark } = useTheme();
   const [seats, setSeats] = useState([]);
+  const [seatsCursor, setSeatsCursor] = useState(null);
+  const [loadingMoreSeats, setLoadingMoreSeats] = useState(false);
   const [loading, setLoading] = useState(true);
   const [selectedSeats, setSelectedSeats] = useState([]);
   const [showAddSeat, setShowAddSeat] = useState(false);
@@ -23,14 +27,15 @@ const SeatManagement = ({ libraryId, isAdmin = false }) => {
     fetchSeats();
   }, [libraryId]);
 
+  const seatsEndpoint = user.role === 'superadmin' 
+    ? `/api/seats/superadmin/all`
+    : `/api/seats/admin/library/${libraryId}`;
+
   const fetchSeats = async () => {
     try {
-      const endpoint = user.role === 'superadmin' 
-        ? `/api/seats/superadmin/all`
-        : `/api/seats/admin/library/${libraryId}`;
-      
-      const response = await axios.get(endpoint);
-      setSeats(response.data);
+      const page = await fetchPage(seatsEndpoint);
+      setSeats(page.items);
+      setSeatsCursor(page.nextCursor);
     } catch (error) {
       console.error('Error fetching seats:', error);
     } finally {
@@ -38,6 +43,19 @@ const SeatManagement = ({ libraryId, isAdmin = false }) => {
     }
   };
 
+  const loadMoreSeats = async () => {
+    setLoadingMoreSeats(true);
+    try {
+      const page = await fetchPage(seatsEndpoint, { cursor: seatsCursor });
+      setSeats(current => [...current, ...page.items]);
+      setSeatsCursor(page.nextCursor);
+    } catch (error) {
+      toast.error('Failed to load more seats');
+    } finally {
+      setLoadingMoreSeats(false);
+    }
+  };
+
   const handleAddSeat = async (e) => {
     e.preventDefault();
     try {
@@ -331,6 +349,12 @@ const SeatManagement = ({ libraryId, isAdmin = false }) => {
           </tbody>
         </table>
       </div>
+      <LoadMoreButton
+        hasMore={Boolean(seatsCursor)}
+        loading={loadingMoreSeats}
+        onClick={loadMoreSeats}
+        label="Load more seats"
+      />
 
       {/* Add Seat Modal */}
       {showAddSeat && (
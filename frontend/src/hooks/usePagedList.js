@@ -0,0 +1,65 @@
+import { useState, useEffect, useCallback, useRef } from 'react';
+import { fetchPage, PAGE_SIZE } from '../utils/pagination';
+
+/**
+ * Load a cursor-paged list one page at a time.
+ * The first page loads on mount and whenever the url or params change;
+ * loadMore appends the next page.
+ * @param {string|null} url - List endpoint, or null to wait
+ * @param {Object} options - { params, limit }
+ * @returns {Object} { items, setItems, loading, loadingMore, hasMore, loadMore, reload, error }
+ */
+const usePagedList = (url, { params = {}, limit = PAGE_SIZE } = {}) => {
+  const [items, setItems] = useState([]);
+  const [nextCursor, setNextCursor] = useState(null);
+  const [loading, setLoading] = useState(Boolean(url));
+  const [loadingMore, setLoadingMore] = useState(false);
+  const [error, setError] = useState(null);
+  const paramsKey = JSON.stringify(params);
+  // Responses from a previous url or params are dropped
+  const requestId = useRef(0);
+
+  const reload = useCallback(async () => {
+    if (!url) return;
+    const id = ++requestId.current;
+    setLoading(true);
+    setError(null);
+    try {
+      const page = await fetchPage(url, { params: JSON.parse(paramsKey), limit });
+      if (id !== requestId.current) return;
+      setItems(page.items);
+      setNextCursor(page.nextCursor);
+    } catch (err) {
+      if (id !== requestId.current) return;
+      setItems([]);
+      setNextCursor(null);
+      setError(err);
+    } finally {
+      if (id === requestId.current) setLoading(false);
+    }
+  }, [url, paramsKey, limit]);
+
+  const loadMore = useCallback(async () => {
+    if (!nextCursor || loadingMore) return;
+    const id = requestId.current;
+    setLoadingMore(true);
+    try {
+      const page = await fetchPage(url, { params: JSON.parse(paramsKey), limit, cursor: nextCursor });
+      if (id !== requestId.current) return;
+      setItems(current => [...current, ...page.items]);
+      setNextCursor(page.nextCursor);
+    } catch (err) {
+      setError(err);
+    } finally {
+      setLoadingMore(false);
+    }
+  }, [url, paramsKey, limit, nextCursor, loadingMore]);
+
+  useEffect(() => {
+    reload();
+  }, [reload]);
+
+  return { items, setItems, loading, loadingMore, hasMore: Boolean(nextCursor), loadMore, reload, error };
+};
+
+export default usePagedList;
@@ -7,6 +7,8 @@ import ImageUpload from '../components/ImageUpload';
 import MultipleImageUpload from '../components/MultipleImageUpload';
 import { getImageUrl, handleImageError } from '../utils/imageUtils';
 import AdminNotificationPanel from '../components/AdminNotificationPanel';
+import LoadMoreButton from '../components/LoadMoreButton';
+import { fetchPage } from '../utils/pagination';
 import {
   Chart as ChartJS,
   ArcElement,
@@ -355,6 +357,8 @@ const AdminDashboard = () => {
   const [activeTab, setActiveTab] = useState('overview');
   const [books, setBooks] = useState([]);
   const [bookings, setBookings] = useState([]);
+  const [bookingsCursor, setBookingsCursor] = useState(null);
+  const [loadingMoreBookings, setLoadingMoreBookings] = useState(false);
   const [libraryUsers, setLibraryUsers] = useState([]);
   const [offers, setOffers] = useState([]);
   const [library, setLibrary] = useState(null);
@@ -384,6 +388,15 @@ const AdminDashboard = () => {
     fetchAdminData();
   }, []);
 
+  const processBooking = (booking) => ({
+    ...booking,
+    userName: booking.user?.name || booking.userName || 'Unknown User',
+    bookTitle: booking.book?.title || booking.bookTitle || 'Unknown Book',
+    seatNumber: booking.seatNumber || 'N/A',
+    date: booking.date ? new Date(booking.date).toISOString().split('T')[0] : new Date().toISOString().split('T')[0],
+    amount: booking.amount || 0
+  });
+
   const fetchAdminData = async () => {
     try {
       const token = localStorage.getItem('token');
@@ -395,13 +408,14 @@ const AdminDashboard = () => {
         axios.get('/api/admin/library-users', { headers }).catch(() => ({ data: [] })),
         axios.get('/api/admin/admin-offers', { headers }).catch(() => ({ data: [] })),
         axios.get('/api/admin/my-library', { headers }).catch(() => ({ data: null })),
-        axios.get('/api/admin/bookings', { headers }).catch(() => ({ data: [] }))
+        // Most recent bookings first; older pages load on demand
+        fetchPage('/api/admin/bookings', { headers }).catch(() => ({ items: [], nextCursor: null }))
       ]);
       
       console.log('Books data:', booksRes.data);
       console.log('Users data:', usersRes.data);
       console.log('Offers data:', offersRes.data);
-      console.log('Bookings data:', bookingsRes.data);
+      console.log('Bookings data:', bookingsRes.items);
       
       setBooks(booksRes.data || []);
       setLibraryUsers(usersRes.data || []);
@@ -409,17 +423,10 @@ const AdminDashboard = () => {
       setLibrary(libraryRes.data);
       
       // Use real bookings data or fallback to mock data
-      const realBookings = bookingsRes.data || [];
-      const processedBookings = realBookings.map(booking => ({
-        ...booking,
-        userName: booking.user?.name || booking.userName || 'Unknown User',
-        bookTitle: booking.book?.title || booking.bookTitle || 'Unknown Book',
-        seatNumber: booking.seatNumber || 'N/A',
-        date: booking.date ? new Date(booking.date).toISOString().split('T')[0] : new Date().toISOString().split('T')[0],
-        amount: booking.amount || 0
-      }));
+      const processedBookings = bookingsRes.items.map(processBooking);
       
       setBookings(processedBookings);
+      setBookingsCursor(bookingsRes.nextCursor);
       
       // Calculate real stats from processed bookings
       const totalBooks = booksRes.data?.length || 0;
@@ -446,6 +453,19 @@ const AdminDashboard = () => {
     }
   };
 
+  const loadMoreBookings = async () => {
+    setLoadingMoreBookings(true);
+    try {
+      const page = await fetchPage('/api/admin/bookings', { cursor: bookingsCursor });
+      setBookings(current => [...current, ...page.items.map(processBooking)]);
+      setBookingsCursor(page.nextCursor);
+    } catch (error) {
+      toast.error('Failed to load more bookings');
+    } finally {
+      setLoadingMoreBookings(false);
+    }
+  };
+
   const handleAddBook = async (e) => {
     e.preventDefault();
     try {
@@ -1043,6 +1063,12 @@ const AdminDashboard = () => {
                 </tbody>
               </table>
             </div>
+            <LoadMoreButton
+              hasMore={Boolean(bookingsCursor)}
+              loading={loadingMoreBookings}
+              onClick={loadMoreBookings}
+              label="Load older bookings"
+            />
           </div>
         )}
 
@@ -6,14 +6,16 @@ import OfferModal from '../components/OfferModal';
 import axios from '../utils/axios';
 import toast from 'react-hot-toast';
 import { getImageUrl, handleImageError } from '../utils/imageUtils';
+import { fetchPage } from '../utils/pagination';
+import usePagedList from '../hooks/usePagedList';
+import LoadMoreButton from '../components/LoadMoreButton';
 
 const Books = () => {
   const { isDark } = useTheme();
   const { user } = useAuth();
   const navigate = useNavigate();
-  const [books, setBooks] = useState([]);
+  const { items: books, loading, loadingMore, hasMore, loadMore } = usePagedList('/api/books');
   const [libraries, setLibraries] = useState([]);
-  const [loading, setLoading] = useState(true);
   const [searchTerm, setSearchTerm] = useState('');
   const [selectedGenre, setSelectedGenre] = useState('');
   const [selectedLibrary, setSelectedLibrary] = useState('');
@@ -25,25 +27,14 @@ const Books = () => {
   const [bookingLoading, setBookingLoading] = useState(false);
 
   useEffect(() => {
-    fetchBooks();
     fetchLibraries();
   }, []);
 
-  const fetchBooks = async () => {
-    try {
-      const response = await axios.get('/api/books');
-      setBooks(response.data || []);
-    } catch (error) {
-      console.error('Error fetching books:', error);
-    } finally {
-      setLoading(false);
-    }
-  };
-
+  // Filter options come from the first page of libraries
   const fetchLibraries = async () => {
     try {
-      const response = await axios.get('/api/libraries');
-      setLibraries(response.data || []);
+      const { items } = await fetchPage('/api/libraries', { limit: 100 });
+      setLibraries(items);
     } catch (error) {
       console.error('Error fetching libraries:', error);
     }
@@ -315,7 +306,9 @@ const Books = () => {
           })}
         </div>
 
-        {filteredBooks.length === 0 && (
+        <LoadMoreButton hasMore={hasMore} loading={loadingMore} onClick={loadMore} label="Load more books" />
+
+        {filteredBooks.length === 0 && !hasMore && (
           <div className="text-center py-12">
             <div className="text-6xl mb-4">📚</div>
             <p className={`text-xl font-semibold mb-2 ${isDark ? 'text-white' : 'text-gray-800'}`}>
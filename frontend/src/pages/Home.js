@@ -3,6 +3,7 @@ import { Link } from 'react-router-dom';
 import { useTheme } from '../context/ThemeContext';
 import { useAuth } from '../hooks/useAuth';
 import axios from '../utils/axios';
+import { fetchPage } from '../utils/pagination';
 import OfferBanner from '../components/OfferBanner';
 import LibrarySlider from '../components/LibrarySlider';
 import MobileHomeHeader from '../components/MobileHomeHeader';
@@ -47,15 +48,17 @@ const Home = () => {
     const timeoutId = setTimeout(() => {
       const fetchLibraries = async () => {
         try {
-          let response;
+          let libraries;
           if (userLocation) {
-            response = await axios.get(`/api/libraries/nearby?lat=${userLocation.lat}&lng=${userLocation.lng}&radius=25&city=${selectedCity}`);
-            setNearbyLibraries(response.data || []);
+            const response = await axios.get(`/api/libraries/nearby?lat=${userLocation.lat}&lng=${userLocation.lng}&radius=25&city=${selectedCity}`);
+            libraries = response.data || [];
+            setNearbyLibraries(libraries);
           } else {
-            response = await axios.get(`/api/libraries?city=${selectedCity}`);
+            // The home page showcases the first page of libraries only
+            const page = await fetchPage('/api/libraries', { params: { city: selectedCity } });
+            libraries = page.items;
           }
           
-          const libraries = response.data || [];
           setAllLibraries(libraries);
           setFilteredLibraries(libraries);
         } catch (error) {
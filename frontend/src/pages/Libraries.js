@@ -1,12 +1,14 @@
 import React, { useState, useEffect } from 'react';
 import { Link } from 'react-router-dom';
-import { useQuery } from 'react-query';
+import { useQuery, useInfiniteQuery } from 'react-query';
 import axios from '../utils/axios';
+import { fetchPage } from '../utils/pagination';
 import { MapPinIcon, ClockIcon } from '@heroicons/react/24/outline';
 import { useTheme } from '../context/ThemeContext';
 import { getImageUrl, handleImageError } from '../utils/imageUtils';
 import MobileLibraryCard from '../components/MobileLibraryCard';
 import MobileLibraryHeader from '../components/MobileLibraryHeader';
+import LoadMoreButton from '../components/LoadMoreButton';
 
 
 const Libraries = () => {
@@ -38,10 +40,21 @@ const Libraries = () => {
     }
   }, []);
 
-  const { data: libraries, isLoading } = useQuery(
+  const {
+    data: libraryPages,
+    isLoading,
+    hasNextPage,
+    fetchNextPage,
+    isFetchingNextPage
+  } = useInfiniteQuery(
     ['libraries', searchTerm, selectedCity],
-    () => axios.get(`/api/libraries?search=${searchTerm}&city=${selectedCity}`).then(res => res.data)
+    ({ pageParam }) => fetchPage('/api/libraries', {
+      params: { search: searchTerm, city: selectedCity },
+      cursor: pageParam
+    }),
+    { getNextPageParam: (lastPage) => lastPage.nextCursor || undefined }
   );
+  const libraries = libraryPages?.pages.flatMap(page => page.items);
 
   // Get nearby libraries based on user location
   const { data: nearbyLibraries } = useQuery(
@@ -64,9 +77,8 @@ const Libraries = () => {
   );
 
   // Show location-based libraries first, then all libraries
-  const displayLibraries = nearbyLibraries && nearbyLibraries.length > 0 && !searchTerm && !selectedCity 
-    ? nearbyLibraries 
-    : libraries;
+  const showingNearby = nearbyLibraries && nearbyLibraries.length > 0 && !searchTerm && !selectedCity;
+  const displayLibraries = showingNearby ? nearbyLibraries : libraries;
 
   const openGallery = (images, libraryName, startIndex = 0) => {
     setGalleryImages(images);
@@ -284,6 +296,13 @@ const Libraries = () => {
           ))}
         </div>
 
+        <LoadMoreButton
+          hasMore={!showingNearby && hasNextPage}
+          loading={isFetchingNextPage}
+          onClick={() => fetchNextPage()}
+          label="Load more libraries"
+        />
+
         {displayLibraries?.length === 0 && (
           <div className="text-center py-12">
             <div className="text-6xl mb-4">🔍</div>
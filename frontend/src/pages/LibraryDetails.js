@@ -5,6 +5,8 @@ import { useAuth } from '../hooks/useAuth';
 import SeatSelection from '../components/SeatSelection';
 import OfferModal from '../components/OfferModal';
 import RatingComponent from '../components/RatingComponent';
+import LoadMoreButton from '../components/LoadMoreButton';
+import usePagedList from '../hooks/usePagedList';
 import axios from 'axios';
 import toast from 'react-hot-toast';
 
@@ -14,7 +16,6 @@ const LibraryDetails = () => {
   const { isDark } = useTheme();
   const { user } = useAuth();
   const [library, setLibrary] = useState(null);
-  const [books, setBooks] = useState([]);
   const [loading, setLoading] = useState(true);
   const [activeTab, setActiveTab] = useState('overview');
   const [showBookingModal, setShowBookingModal] = useState(false);
@@ -27,10 +28,15 @@ const LibraryDetails = () => {
   const [showOffers, setShowOffers] = useState(false);
   const [appliedOffer, setAppliedOffer] = useState(null);
   const [totalAmount, setTotalAmount] = useState(0);
+  const {
+    items: books,
+    loadingMore: loadingMoreBooks,
+    hasMore: hasMoreBooks,
+    loadMore: loadMoreBooks
+  } = usePagedList('/api/books', { params: { libraryId: id } });
 
   useEffect(() => {
     fetchLibraryDetails();
-    fetchLibraryBooks();
   }, [id]);
 
   const fetchLibraryDetails = async () => {
@@ -46,15 +52,6 @@ const LibraryDetails = () => {
     }
   };
 
-  const fetchLibraryBooks = async () => {
-    try {
-      const response = await axios.get(`/api/books?libraryId=${id}`);
-      setBooks(response.data || []);
-    } catch (error) {
-      console.error('Error fetching books:', error);
-    }
-  };
-
   const handleBookNow = (type = 'seat') => {
     if (!user) {
       toast.error('Please login to book');
@@ -301,7 +298,7 @@ const LibraryDetails = () => {
                 </div>
                 <div className="flex justify-between">
                   <span className={isDark ? 'text-gray-400' : 'text-gray-600'}>Available Books</span>
-                  <span className={`font-bold ${isDark ? 'text-white' : 'text-gray-800'}`}>{books.length}</span>
+                  <span className={`font-bold ${isDark ? 'text-white' : 'text-gray-800'}`}>{books.length}{hasMoreBooks ? '+' : ''}</span>
                 </div>
                 <div className="flex justify-between">
                   <span className={isDark ? 'text-gray-400' : 'text-gray-600'}>Rating</span>
@@ -391,6 +388,7 @@ const LibraryDetails = () => {
                 </div>
               ))}
             </div>
+            <LoadMoreButton hasMore={hasMoreBooks} loading={loadingMoreBooks} onClick={loadMoreBooks} label="Load more books" />
             {books.length === 0 && (
               <div className="text-center py-8">
                 <p className={`${isDark ? 'text-gray-400' : 'text-gray-600'}`}>No books available at this library</p>
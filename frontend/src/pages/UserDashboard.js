@@ -4,6 +4,8 @@ import { useTheme } from '../context/ThemeContext';
 import { useNavigate } from 'react-router-dom';
 import axios from 'axios';
 import toast from 'react-hot-toast';
+import usePagedList from '../hooks/usePagedList';
+import LoadMoreButton from '../components/LoadMoreButton';
 
 const UserDashboard = () => {
   const { user } = useAuth();
@@ -11,7 +13,12 @@ const UserDashboard = () => {
   const navigate = useNavigate();
   const [activeTab, setActiveTab] = useState('overview');
   const [bookings, setBookings] = useState([]);
-  const [libraries, setLibraries] = useState([]);
+  const {
+    items: libraries,
+    loadingMore: loadingMoreLibraries,
+    hasMore: hasMoreLibraries,
+    loadMore: loadMoreLibraries
+  } = usePagedList('/api/libraries');
   const [favoriteLibraries, setFavoriteLibraries] = useState([]);
   const [loading, setLoading] = useState(true);
   const [stats, setStats] = useState({
@@ -44,13 +51,9 @@ const UserDashboard = () => {
       const headers = { Authorization: `Bearer ${token}` };
       const baseURL = 'http://localhost:5000';
 
-      const [bookingsRes, librariesRes] = await Promise.all([
-        axios.get(`${baseURL}/api/user/bookings`, { headers }).catch(() => ({ data: [] })),
-        axios.get(`${baseURL}/api/libraries`, { headers }).catch(() => ({ data: [] }))
-      ]);
+      const bookingsRes = await axios.get(`${baseURL}/api/user/bookings`, { headers }).catch(() => ({ data: [] }));
 
       setBookings(bookingsRes.data || []);
-      setLibraries(librariesRes.data || []);
       
       // Calculate stats
       const totalBookings = bookingsRes.data?.length || 0;
@@ -402,6 +405,12 @@ const UserDashboard = () => {
                 </div>
               ))}
             </div>
+            <LoadMoreButton
+              hasMore={hasMoreLibraries}
+              loading={loadingMoreLibraries}
+              onClick={loadMoreLibraries}
+              label="Load more libraries"
+            />
           </div>
         )}
 
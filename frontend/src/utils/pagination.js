@@ -0,0 +1,23 @@
+import axios from './axios';
+
+// Items requested per page from cursor-paged list endpoints
+export const PAGE_SIZE = 50;
+
+/**
+ * Fetch one page of a cursor-paged list endpoint.
+ * The server announces the next page in the X-Next-Cursor header; on the
+ * last page nextCursor is null.
+ * @param {string} url - List endpoint
+ * @param {Object} options - { cursor, limit, params, ...axios config }
+ * @returns {Promise<Object>} { items, nextCursor }
+ */
+export const fetchPage = async (url, { cursor, limit = PAGE_SIZE, params = {}, ...config } = {}) => {
+  const response = await axios.get(url, {
+    ...config,
+    params: { ...params, limit, ...(cursor && { cursor }) }
+  });
+  return {
+    items: response.data || [],
+    nextCursor: response.headers['x-next-cursor'] || null
+  };
+};